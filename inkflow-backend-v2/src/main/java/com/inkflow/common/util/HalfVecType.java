@@ -10,6 +10,9 @@ import java.sql.*;
  * pgvector向量类型的Hibernate自定义类型
  * 
  * 用于将Java的float[]数组映射到PostgreSQL的vector类型
+ * 写入使用 {@link PgHalfVec} 走二进制格式，读取按驱动返回的原始字节解码（二进制或文本）
+ *
+ * @see PgVectorCodec
  */
 public class HalfVecType implements UserType<float[]> {
 
@@ -47,11 +50,11 @@ public class HalfVecType implements UserType<float[]> {
     @Override
     public float[] nullSafeGet(ResultSet rs, int position, 
             SharedSessionContractImplementor session, Object owner) throws SQLException {
-        String value = rs.getString(position);
-        if (value == null || rs.wasNull()) {
+        byte[] raw = rs.getBytes(position);
+        if (raw == null || rs.wasNull()) {
             return null;
         }
-        return parseVector(value);
+        return PgVectorCodec.decodeHalfvecOrText(raw);
     }
 
     @Override
@@ -60,7 +63,7 @@ public class HalfVecType implements UserType<float[]> {
         if (value == null) {
             st.setNull(index, Types.OTHER);
         } else {
-            st.setObject(index, formatVector(value), Types.OTHER);
+            st.setObject(index, new PgHalfVec(value));
         }
     }
 
@@ -84,36 +87,4 @@ public class HalfVecType implements UserType<float[]> {
     public float[] assemble(Serializable cached, Object owner) {
         return deepCopy((float[]) cached);
     }
-
-    /**
-     * 解析PostgreSQL vector字符串为float数组
-     * 格式: [0.1,0.2,0.3,...]
-     */
-    private float[] parseVector(String value) {
-        // 移除方括号
-        String content = value.substring(1, value.length() - 1);
-        if (content.isEmpty()) {
-            return new float[0];
-        }
-        
-        String[] parts = content.split(",");
-        float[] result = new float[parts.length];
-        for (int i = 0; i < parts.length; i++) {
-            result[i] = Float.parseFloat(parts[i].trim());
-        }
-        return result;
-    }
-
-    /**
-     * 将float数组格式化为PostgreSQL vector字符串
-     */
-    private String formatVector(float[] value) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < value.length; i++) {
-            if (i > 0) sb.append(",");
-            sb.append(value[i]);
-        }
-        sb.append("]");
-        return sb.toString();
-    }
 }
@@ -0,0 +1,70 @@
+package com.inkflow.common.util;
+
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+
+import java.sql.SQLException;
+
+/**
+ * pgvector halfvec 参数对象
+ *
+ * 连接已为 halfvec 启用二进制发送时，驱动通过 {@link PGBinaryObject} 直接写入二进制格式；
+ * 否则回退到 {@link #getValue()} 的文本格式。文本仅在真正需要时才生成。
+ */
+public class PgHalfVec extends PGobject implements PGBinaryObject {
+
+    public static final String TYPE = "halfvec";
+
+    private float[] vector;
+
+    public PgHalfVec() {
+        setType(TYPE);
+    }
+
+    public PgHalfVec(float[] vector) {
+        this();
+        this.vector = vector;
+    }
+
+    public float[] getVector() {
+        return vector;
+    }
+
+    @Override
+    public String getValue() {
+        return vector == null ? null : PgVectorCodec.formatText(vector);
+    }
+
+    @Override
+    public void setValue(String value) throws SQLException {
+        try {
+            this.vector = value == null ? null : PgVectorCodec.parseText(value);
+        } catch (RuntimeException e) {
+            throw new SQLException("无效的halfvec文本: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isNull() {
+        return vector == null;
+    }
+
+    @Override
+    public void setByteValue(byte[] value, int offset) throws SQLException {
+        try {
+            this.vector = PgVectorCodec.decodeHalfvec(value, offset);
+        } catch (RuntimeException e) {
+            throw new SQLException("无效的halfvec二进制数据: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int lengthInBytes() {
+        return vector == null ? 0 : PgVectorCodec.halfvecLength(vector);
+    }
+
+    @Override
+    public void toBytes(byte[] bytes, int offset) {
+        PgVectorCodec.encodeHalfvec(vector, bytes, offset);
+    }
+}
@@ -0,0 +1,198 @@
+package com.inkflow.common.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * pgvector 向量编解码工具
+ *
+ * 支持 pgvector 的二进制收发格式（halfvec_send/halfvec_recv、vector_send/vector_recv）：
+ * <pre>
+ * int16 维度 | int16 保留位(0) | 维度 × (halfvec: float16 / vector: float32)，网络字节序
+ * </pre>
+ * 二进制格式每个1024维半精度向量仅2KB，且无需逐元素的字符串格式化和解析。
+ * 连接未协商二进制传输时驱动仍会返回文本格式 "[0.1,0.2,...]"，解码时自动识别。
+ */
+public final class PgVectorCodec {
+
+    /** 头部长度：维度 + 保留位 */
+    public static final int HEADER_BYTES = 4;
+
+    /** pgvector 允许的最大维度 */
+    private static final int MAX_DIMENSION = 16000;
+
+    private static final VarHandle SHORT_BE =
+            MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle FLOAT_BE =
+            MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+
+    private PgVectorCodec() {
+    }
+
+    // ==================== halfvec 二进制 ====================
+
+    /**
+     * halfvec 二进制编码长度
+     */
+    public static int halfvecLength(float[] vector) {
+        return HEADER_BYTES + vector.length * Short.BYTES;
+    }
+
+    /**
+     * 编码为 halfvec 二进制格式
+     */
+    public static byte[] encodeHalfvec(float[] vector) {
+        byte[] bytes = new byte[halfvecLength(vector)];
+        encodeHalfvec(vector, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * 编码为 halfvec 二进制格式写入目标数组
+     */
+    public static void encodeHalfvec(float[] vector, byte[] bytes, int offset) {
+        writeHeader(vector.length, bytes, offset);
+        int position = offset + HEADER_BYTES;
+        for (float value : vector) {
+            SHORT_BE.set(bytes, position, Float.floatToFloat16(value));
+            position += Short.BYTES;
+        }
+    }
+
+    /**
+     * 解码 halfvec 二进制格式
+     */
+    public static float[] decodeHalfvec(byte[] bytes, int offset) {
+        int dimension = readDimension(bytes, offset);
+        float[] vector = new float[dimension];
+        int position = offset + HEADER_BYTES;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = Float.float16ToFloat((short) SHORT_BE.get(bytes, position));
+            position += Short.BYTES;
+        }
+        return vector;
+    }
+
+    // ==================== vector 二进制 ====================
+
+    /**
+     * 编码为 vector（float32）二进制格式
+     */
+    public static byte[] encodeVector(float[] vector) {
+        byte[] bytes = new byte[HEADER_BYTES + vector.length * Float.BYTES];
+        writeHeader(vector.length, bytes, 0);
+        int position = HEADER_BYTES;
+        for (float value : vector) {
+            FLOAT_BE.set(bytes, position, value);
+            position += Float.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * 解码 vector（float32）二进制格式
+     */
+    public static float[] decodeVector(byte[] bytes, int offset) {
+        int dimension = readDimension(bytes, offset);
+        float[] vector = new float[dimension];
+        int position = offset + HEADER_BYTES;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) FLOAT_BE.get(bytes, position);
+            position += Float.BYTES;
+        }
+        return vector;
+    }
+
+    // ==================== 自动识别 ====================
+
+    /**
+     * 解码驱动返回的原始字节
+     *
+     * 以 '[' 开头时按文本格式解析，否则按 halfvec 二进制格式解析。
+     * 二进制首字节为维度高位（维度不超过16000，必小于 '['），两者不会混淆。
+     *
+     * @param raw ResultSet.getBytes 返回的原始字节
+     * @return 向量，raw为null时返回null
+     */
+    public static float[] decodeHalfvecOrText(byte[] raw) {
+        if (raw == null) {
+            return null;
+        }
+        if (raw.length > 0 && raw[0] == '[') {
+            return parseText(raw);
+        }
+        return decodeHalfvec(raw, 0);
+    }
+
+    // ==================== 文本格式 ====================
+
+    /**
+     * 格式化为文本格式 "[0.1,0.2,...]"
+     * 仅在连接未启用二进制传输时作为回退使用
+     */
+    public static String formatText(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 12 + 2);
+        sb.append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * 解析文本格式 "[0.1,0.2,...]"
+     * 直接在字节上定位分隔符，避免 String.split 的正则和中间数组
+     */
+    public static float[] parseText(byte[] text) {
+        int end = text.length - 1;
+        while (end > 0 && text[end] != ']') {
+            end--;
+        }
+        if (end <= 1) {
+            return new float[0];
+        }
+        int dimension = 1;
+        for (int i = 1; i < end; i++) {
+            if (text[i] == ',') dimension++;
+        }
+        float[] vector = new float[dimension];
+        int start = 1;
+        int index = 0;
+        for (int i = 1; i <= end; i++) {
+            if (i == end || text[i] == ',') {
+                vector[index++] = Float.parseFloat(
+                        new String(text, start, i - start, StandardCharsets.ISO_8859_1).trim());
+                start = i + 1;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 解析文本格式 "[0.1,0.2,...]"
+     */
+    public static float[] parseText(String text) {
+        return parseText(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    // ==================== 内部方法 ====================
+
+    private static void writeHeader(int dimension, byte[] bytes, int offset) {
+        if (dimension > MAX_DIMENSION) {
+            throw new IllegalArgumentException("向量维度超出pgvector上限: " + dimension);
+        }
+        SHORT_BE.set(bytes, offset, (short) dimension);
+        SHORT_BE.set(bytes, offset + Short.BYTES, (short) 0);
+    }
+
+    private static int readDimension(byte[] bytes, int offset) {
+        int dimension = Short.toUnsignedInt((short) SHORT_BE.get(bytes, offset));
+        if (dimension > MAX_DIMENSION) {
+            throw new IllegalArgumentException("无效的pgvector二进制数据，维度: " + dimension);
+        }
+        return dimension;
+    }
+}
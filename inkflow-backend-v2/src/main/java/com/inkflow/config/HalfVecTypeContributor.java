@@ -0,0 +1,19 @@
+package com.inkflow.config;
+
+import com.inkflow.common.util.HalfVecType;
+import org.hibernate.boot.model.TypeContributions;
+import org.hibernate.boot.model.TypeContributor;
+import org.hibernate.service.ServiceRegistry;
+
+/**
+ * 注册 float[] -> halfvec 的Hibernate类型
+ *
+ * 通过 META-INF/services/org.hibernate.boot.model.TypeContributor 由Hibernate在启动时加载
+ */
+public class HalfVecTypeContributor implements TypeContributor {
+
+    @Override
+    public void contribute(TypeContributions typeContributions, ServiceRegistry serviceRegistry) {
+        typeContributions.contributeType(new HalfVecType());
+    }
+}
@@ -0,0 +1,98 @@
+package com.inkflow.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.core.QueryExecutor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * pgvector 配置
+ *
+ * 1. 将 HalfVecType 注册为 float[] 的Hibernate类型（见 {@link HalfVecTypeContributor}），原生查询可直接以 float[] 绑定查询向量
+ * 2. 为每个物理连接启用 halfvec/vector 的二进制收发，避免每行1024维向量的文本格式化和解析
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Configuration
+public class PgVectorConfig {
+
+    /**
+     * 包装数据源，在连接首次借出时注册二进制传输类型
+     * 当 inkflow.pgvector.binary-transfer=false 时关闭，回退文本格式
+     */
+    @Bean
+    @ConditionalOnProperty(name = "inkflow.pgvector.binary-transfer", havingValue = "true", matchIfMissing = true)
+    public static BeanPostProcessor pgVectorBinaryTransferPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof BinaryTransferDataSource)) {
+                    log.info("[PgVectorConfig] 为数据源 {} 启用 halfvec/vector 二进制传输", beanName);
+                    return new BinaryTransferDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * 为 PostgreSQL 物理连接注册 pgvector 类型的二进制收发
+     * 连接池复用物理连接，每个连接只注册一次；非 PostgreSQL 连接（如测试用H2）直接跳过
+     */
+    static class BinaryTransferDataSource extends DelegatingDataSource {
+
+        private static final List<String> VECTOR_TYPES = List.of("halfvec", "vector");
+
+        private final Set<BaseConnection> registered = Collections.synchronizedSet(
+                Collections.newSetFromMap(new WeakHashMap<>()));
+
+        BinaryTransferDataSource(DataSource targetDataSource) {
+            super(targetDataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return register(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return register(super.getConnection(username, password));
+        }
+
+        private Connection register(Connection connection) throws SQLException {
+            if (!connection.isWrapperFor(BaseConnection.class)) {
+                return connection;
+            }
+            BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+            if (registered.contains(pgConnection)) {
+                return connection;
+            }
+            QueryExecutor executor = pgConnection.getQueryExecutor();
+            for (String type : VECTOR_TYPES) {
+                int oid = pgConnection.getTypeInfo().getPGType(type);
+                if (oid != Oid.UNSPECIFIED) {
+                    executor.addBinaryReceiveOid(oid);
+                    executor.addBinarySendOid(oid);
+                }
+            }
+            registered.add(pgConnection);
+            return connection;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 /**
  * Spring AI 配置类
@@ -28,9 +29,10 @@ public class SpringAIConfig {
 
     /**
      * 配置 EmbeddingModel Bean
-     * 使用 OpenAI 兼容的 API（支持本地 TEI 服务）
+     * 使用 OpenAI 兼容的 API（支持本地 TEI 服务）；offline profile 下由 OfflineModelConfig 提供替身
      */
     @Bean
+    @Profile("!offline")
     @ConditionalOnMissingBean(EmbeddingModel.class)
     public EmbeddingModel embeddingModel() {
         log.info("配置 EmbeddingModel: baseUrl={}", baseUrl);
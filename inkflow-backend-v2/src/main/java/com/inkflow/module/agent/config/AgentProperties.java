@@ -11,7 +11,9 @@ import java.util.List;
 public record AgentProperties(
     FastPathConfig fastPath,
     ThinkingConfig thinking,
-    LazyExecutionConfig lazyExecution
+    LazyExecutionConfig lazyExecution,
+    SpeculativeRetrievalConfig speculativeRetrieval,
+    StreamingConfig streaming
 ) {
     
     /**
@@ -34,7 +36,8 @@ public record AgentProperties(
     public record ThinkingConfig(
         double ruleConfidenceThreshold,
         String llmModel,
-        long timeoutMs
+        long timeoutMs,
+        IntentCacheConfig intentCache
     ) {
         public ThinkingConfig {
             if (ruleConfidenceThreshold <= 0) {
@@ -46,6 +49,80 @@ public record AgentProperties(
             if (timeoutMs <= 0) {
                 timeoutMs = 2000;
             }
+            if (intentCache == null) {
+                intentCache = IntentCacheConfig.defaults();
+            }
+        }
+    }
+    
+    /**
+     * 意图分析结果缓存配置
+     * 缓存 LLM 意图分析结果，相同或近似重复的消息在同一创作阶段内直接复用
+     */
+    public record IntentCacheConfig(
+        boolean enabled,
+        int maxSize,
+        long ttlMs,
+        double nearDuplicateThreshold,
+        int maxMessageLength
+    ) {
+        public IntentCacheConfig {
+            if (maxSize <= 0) {
+                maxSize = 5000;
+            }
+            if (ttlMs <= 0) {
+                ttlMs = 600_000;
+            }
+            if (nearDuplicateThreshold <= 0 || nearDuplicateThreshold > 1) {
+                nearDuplicateThreshold = 0.8;
+            }
+            if (maxMessageLength <= 0) {
+                maxMessageLength = 500;
+            }
+        }
+        
+        public static IntentCacheConfig defaults() {
+            return new IntentCacheConfig(true, 0, 0, 0, 0);
+        }
+    }
+    
+    /**
+     * 推测式检索配置
+     * 规则引擎置信度不足、等待 LLM 意图分析期间，若候选意图对应检索密集型工作流，提前启动其检索
+     */
+    public record SpeculativeRetrievalConfig(
+        boolean enabled
+    ) {
+        public static SpeculativeRetrievalConfig defaults() {
+            return new SpeculativeRetrievalConfig(true);
+        }
+    }
+    
+    /**
+     * 流式输出配置
+     * 把模型逐 token 输出的内容片段按时间窗口或字节数合并后再作为一个 content 事件发送，
+     * 首个片段不等待窗口直接发送；客户端可在请求中覆盖窗口（0 表示不合并），上限为 maxWindowMs
+     */
+    public record StreamingConfig(
+        boolean coalesceEnabled,
+        long coalesceWindowMs,
+        int coalesceMaxBytes,
+        long maxWindowMs
+    ) {
+        public StreamingConfig {
+            if (coalesceWindowMs <= 0) {
+                coalesceWindowMs = 30;
+            }
+            if (coalesceMaxBytes <= 0) {
+                coalesceMaxBytes = 1024;
+            }
+            if (maxWindowMs <= 0) {
+                maxWindowMs = 200;
+            }
+        }
+        
+        public static StreamingConfig defaults() {
+            return new StreamingConfig(true, 0, 0, 0);
         }
     }
     
@@ -8,9 +8,12 @@ import com.inkflow.module.agent.dto.ChatResponseDto;
 import com.inkflow.module.agent.lazy.LazyExecutionManager;
 import com.inkflow.module.agent.orchestration.AgentOrchestrator;
 import com.inkflow.module.agent.routing.AgentRouter;
+import com.inkflow.module.agent.routing.ThinkingAgent;
 import com.inkflow.module.agent.service.RequestAdapterService;
 import com.inkflow.module.agent.tool.ToolRegistry;
 import com.inkflow.module.agent.workflow.WorkflowExecutor;
+import com.inkflow.module.ai_bridge.chat.DynamicChatModelFactory;
+import com.inkflow.module.ai_bridge.chat.HedgedChatModel;
 import com.inkflow.module.auth.entity.User;
 import com.inkflow.module.project.entity.CreationPhase;
 import io.swagger.v3.oas.annotations.Operation;
@@ -49,6 +52,8 @@ public class AgentController {
     private final LazyExecutionManager lazyExecutionManager;
     private final ToolRegistry toolRegistry;
     private final RequestAdapterService requestAdapterService;
+    private final ThinkingAgent thinkingAgent;
+    private final DynamicChatModelFactory chatModelFactory;
 
     // ========== 核心聊天端点 ==========
 
@@ -206,5 +211,23 @@ public class AgentController {
         return ResponseEntity.ok(toolRegistry.getToolStats());
     }
 
+    @GetMapping("/thinking/stats")
+    @Operation(summary = "获取意图分析统计（缓存命中率、LLM 调用率）")
+    public ResponseEntity<ThinkingAgent.ThinkingStats> getThinkingStats() {
+        return ResponseEntity.ok(thinkingAgent.getStats());
+    }
+
+    @GetMapping("/routing/speculation/stats")
+    @Operation(summary = "获取推测式检索统计（命中率、浪费率）")
+    public ResponseEntity<AgentRouter.SpeculationStats> getSpeculationStats() {
+        return ResponseEntity.ok(agentRouter.getSpeculationStats());
+    }
+
+    @GetMapping("/hedging/stats")
+    @Operation(summary = "获取 LLM 对冲请求统计（对冲率、对冲胜出率、预算拒绝次数）")
+    public ResponseEntity<HedgedChatModel.HedgeStats> getHedgeStats() {
+        return ResponseEntity.ok(chatModelFactory.getHedgeStats());
+    }
+
     public record ToolSummary(String name, String description, String provider) {}
 }
@@ -53,6 +53,14 @@ public abstract class BaseAgent<I, O> implements CapableAgent<I, O> {
      */
     protected abstract O parseResponse(String response, I input);
 
+    /**
+     * 选择执行使用的模型
+     * 短小且对延迟敏感的 Agent 可覆盖为 {@link DynamicChatModelFactory#getLatencyCriticalModel()}
+     */
+    protected ChatModel resolveChatModel() {
+        return chatModelFactory.getDefaultModel();
+    }
+
     @Override
     public String getDescription() {
         return getCapability().category().getDescription();
@@ -66,7 +74,7 @@ public abstract class BaseAgent<I, O> implements CapableAgent<I, O> {
         publishThought("开始执行...");
 
         try {
-            ChatModel model = chatModelFactory.getDefaultModel();
+            ChatModel model = resolveChatModel();
             ChatClient client = ChatClient.builder(model)
                     .defaultSystem(getSystemPrompt())
                     .build();
@@ -105,7 +113,7 @@ public abstract class BaseAgent<I, O> implements CapableAgent<I, O> {
     public Flux<String> stream(I input) {
         publishThought("开始流式生成...");
 
-        ChatModel model = chatModelFactory.getDefaultModel();
+        ChatModel model = resolveChatModel();
         ChatClient client = ChatClient.builder(model)
                 .defaultSystem(getSystemPrompt())
                 .build();
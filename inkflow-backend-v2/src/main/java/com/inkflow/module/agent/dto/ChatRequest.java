@@ -62,6 +62,20 @@ public record ChatRequest(
         this(message, projectId, null, phase, null, null);
     }
     
+    /**
+     * 发起请求的用户ID（由 RequestAdapterService 写入 metadata），未知时返回 null
+     */
+    public UUID userId() {
+        if (metadata == null || !(metadata.get("userId") instanceof String value)) {
+            return null;
+        }
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
     /**
      * 检查是否有 Fast Path 提示
      */
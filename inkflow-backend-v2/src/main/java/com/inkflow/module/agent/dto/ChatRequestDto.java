@@ -46,7 +46,13 @@ public record ChatRequestDto(
     Boolean consistency,
     
     @Parameter(description = "是否启用 RAG 检索（默认 true）")
-    Boolean ragEnabled
+    Boolean ragEnabled,
+    
+    @Parameter(description = "流式输出合并窗口毫秒数（可选，0 表示逐片段发送，不传使用服务端默认值）")
+    Integer streamWindowMs,
+    
+    @Parameter(description = "流式输出合并字节上限（可选，不传使用服务端默认值）")
+    Integer streamMaxBytes
 ) {
     /**
      * 是否为场景创作请求
@@ -0,0 +1,218 @@
+package com.inkflow.module.agent.event;
+
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式内容片段合并
+ * 模型逐 token 输出的片段若各自成为一个 SSE 事件，每个 token 都要经历一次 JSON 序列化、事件编码和 flush。
+ * 这里在进入 SSE 编码之前按时间窗口或字节数合并片段：
+ * - 首个片段直接发送，不影响首字延迟
+ * - 之后的片段进入缓冲区，缓冲区非空后 windowMs 到期或累计达到 maxBytes（UTF-8）即作为一个片段发送
+ * - 上游结束或出错时先发送缓冲区中的剩余内容
+ *
+ * 窗口和字节上限从请求 metadata 读取（由 RequestAdapterService 按客户端参数和服务端配置写入），
+ * 窗口为 0 时原样透传。
+ */
+@Slf4j
+public final class ContentChunkCoalescer {
+
+    /**
+     * 请求 metadata 中的合并窗口键（毫秒）
+     */
+    public static final String METADATA_WINDOW_MS = "streamWindowMs";
+
+    /**
+     * 请求 metadata 中的合并字节上限键
+     */
+    public static final String METADATA_MAX_BYTES = "streamMaxBytes";
+
+    public static final long DEFAULT_WINDOW_MS = 30;
+    public static final int DEFAULT_MAX_BYTES = 1024;
+
+    private ContentChunkCoalescer() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 按请求 metadata 中的参数合并片段，未设置时使用默认窗口
+     */
+    public static Flux<String> coalesce(Flux<String> chunks, Map<String, Object> metadata) {
+        long windowMs = DEFAULT_WINDOW_MS;
+        int maxBytes = DEFAULT_MAX_BYTES;
+        if (metadata != null) {
+            if (metadata.get(METADATA_WINDOW_MS) instanceof Number window) {
+                windowMs = window.longValue();
+            }
+            if (metadata.get(METADATA_MAX_BYTES) instanceof Number bytes) {
+                maxBytes = bytes.intValue();
+            }
+        }
+        return coalesce(chunks, windowMs, maxBytes);
+    }
+
+    /**
+     * 合并片段
+     *
+     * @param chunks 上游片段
+     * @param windowMs 合并窗口（毫秒），不大于 0 时原样透传
+     * @param maxBytes 缓冲区达到该字节数（UTF-8）时立即发送
+     */
+    public static Flux<String> coalesce(Flux<String> chunks, long windowMs, int maxBytes) {
+        if (windowMs <= 0) {
+            return chunks;
+        }
+        return Flux.create(sink -> {
+            CoalescingSubscriber subscriber = new CoalescingSubscriber(sink, windowMs, Math.max(maxBytes, 1));
+            sink.onDispose(subscriber);
+            // 手动订阅不会继承下游 Context，显式写入，保证上游读取到请求上下文
+            chunks.contextWrite(sink.contextView()).subscribe(subscriber);
+        });
+    }
+
+    /**
+     * 按 UTF-8 编码计算字节数（不分配数组）
+     */
+    static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // 代理对两个 char 共 4 字节
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 合并订阅者
+     * 上游线程和定时器线程都可能发送，发送与缓冲区操作在同一把锁内完成以保证片段顺序
+     */
+    private static final class CoalescingSubscriber extends BaseSubscriber<String> {
+
+        private final FluxSink<String> sink;
+        private final long windowMs;
+        private final int maxBytes;
+
+        private final StringBuilder buffer = new StringBuilder();
+        private int bufferedBytes;
+        private boolean firstEmitted;
+        private boolean terminated;
+        private Disposable pendingFlush;
+
+        private int upstreamChunks;
+        private int emittedChunks;
+
+        CoalescingSubscriber(FluxSink<String> sink, long windowMs, int maxBytes) {
+            this.sink = sink;
+            this.windowMs = windowMs;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            // 下游背压由 FluxSink 的缓冲处理，上游按模型输出速度推送
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        protected void hookOnNext(String chunk) {
+            synchronized (this) {
+                if (terminated || chunk.isEmpty()) {
+                    return;
+                }
+                upstreamChunks++;
+                if (!firstEmitted) {
+                    firstEmitted = true;
+                    emit(chunk);
+                    return;
+                }
+                buffer.append(chunk);
+                bufferedBytes += utf8Length(chunk);
+                if (bufferedBytes >= maxBytes) {
+                    emitBuffer();
+                } else if (pendingFlush == null) {
+                    pendingFlush = Schedulers.parallel().schedule(this::flushWindow, windowMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+                emitBuffer();
+                terminated = true;
+                log.debug("[ContentChunkCoalescer] 合并完成: {} 个片段 -> {} 个事件", upstreamChunks, emittedChunks);
+                sink.complete();
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+                emitBuffer();
+                terminated = true;
+                sink.error(throwable);
+            }
+        }
+
+        @Override
+        protected void hookOnCancel() {
+            synchronized (this) {
+                terminated = true;
+                cancelPendingFlush();
+            }
+        }
+
+        private void flushWindow() {
+            synchronized (this) {
+                pendingFlush = null;
+                if (!terminated) {
+                    emitBuffer();
+                }
+            }
+        }
+
+        private void emitBuffer() {
+            cancelPendingFlush();
+            if (buffer.isEmpty()) {
+                return;
+            }
+            String merged = buffer.toString();
+            buffer.setLength(0);
+            bufferedBytes = 0;
+            emit(merged);
+        }
+
+        private void emit(String content) {
+            emittedChunks++;
+            sink.next(content);
+        }
+
+        private void cancelPendingFlush() {
+            if (pendingFlush != null) {
+                pendingFlush.dispose();
+                pendingFlush = null;
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.inkflow.module.agent.event;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.http.codec.ServerSentEvent;
 
 import java.time.LocalDateTime;
@@ -27,7 +29,9 @@ public record SSEEvent(
     LocalDateTime timestamp
 ) {
     
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     
     /**
      * 创建内容事件
@@ -7,6 +7,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.http.codec.ServerSentEvent;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,6 +31,16 @@ public class SSEEventBuilder {
 
     private static final ObjectMapper MAPPER = createObjectMapper();
 
+    /**
+     * 流式内容片段事件的预序列化 JSON 框架
+     * 与 SSEEvent.content(content).toServerSentEvent() 的字段和顺序一致，只需转义内容并拼接时间戳
+     */
+    private static final String CONTENT_CHUNK_PREFIX = "{\"type\":\"" + SSEEventType.CONTENT.name() + "\",\"content\":\"";
+    private static final String CONTENT_CHUNK_TIMESTAMP = "\",\"timestamp\":\"";
+    private static final String CONTENT_CHUNK_SUFFIX = "\"}";
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     // ==================== 事件类型常量 ====================
 
     /**
@@ -140,6 +151,28 @@ public class SSEEventBuilder {
         return buildJsonEvent(EVENT_CONTENT, data);
     }
 
+    /**
+     * 构建流式内容片段事件
+     * data 为 JSON（type/content/timestamp），格式与 SSEEvent.content(content).toServerSentEvent() 相同，
+     * 但使用预序列化的框架直接拼接，不经过 ObjectMapper，供逐片段输出的热路径使用
+     * 
+     * Requirements: 7.1
+     * 
+     * @param content 文本片段
+     * @return ServerSentEvent
+     */
+    public static ServerSentEvent<String> contentChunk(String content) {
+        String timestamp = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(LocalDateTime.now());
+        StringBuilder json = new StringBuilder(CONTENT_CHUNK_PREFIX.length() + content.length() + 64);
+        json.append(CONTENT_CHUNK_PREFIX);
+        appendEscaped(json, content);
+        json.append(CONTENT_CHUNK_TIMESTAMP).append(timestamp).append(CONTENT_CHUNK_SUFFIX);
+        return ServerSentEvent.<String>builder()
+                .event(EVENT_CONTENT)
+                .data(json.toString())
+                .build();
+    }
+
     // ==================== 思考事件 ====================
 
     /**
@@ -428,6 +461,32 @@ public class SSEEventBuilder {
         }
     }
 
+    /**
+     * 按 JSON 字符串规则转义（与 Jackson 默认输出一致：只转义引号、反斜杠和控制字符）
+     */
+    private static void appendEscaped(StringBuilder json, String text) {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            json.append(text, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                case '\b' -> json.append("\\b");
+                case '\f' -> json.append("\\f");
+                default -> json.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        json.append(text, start, text.length());
+    }
+
     /**
      * 将异常转换为用户友好消息
      */
@@ -6,6 +6,7 @@ import com.inkflow.module.agent.core.*;
 import com.inkflow.module.agent.dto.ChatRequest;
 import com.inkflow.module.agent.lazy.LazyExecutionManager;
 import com.inkflow.module.ai_bridge.chat.DynamicChatModelFactory;
+import com.inkflow.module.ai_bridge.chat.HedgedChatModel;
 import com.inkflow.module.project.entity.CreationPhase;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
@@ -124,6 +125,14 @@ public class NameGeneratorAgent extends BaseAgent<ChatRequest, String> {
         return response;
     }
 
+    /**
+     * 名称生成输出短、用户等待结果，使用对冲请求模型
+     */
+    @Override
+    protected ChatModel resolveChatModel() {
+        return chatModelFactory.getLatencyCriticalModel();
+    }
+
     /**
      * 流式名称生成
      */
@@ -141,7 +150,7 @@ public class NameGeneratorAgent extends BaseAgent<ChatRequest, String> {
         }
 
         try {
-            ChatModel model = chatModelFactory.getDefaultModel();
+            ChatModel model = resolveChatModel();
             ChatClient client = ChatClient.builder(model)
                     .defaultSystem(getSystemPrompt())
                     .build();
@@ -166,7 +175,8 @@ public class NameGeneratorAgent extends BaseAgent<ChatRequest, String> {
                     .doOnError(e -> {
                         publishThought("生成失败: " + e.getMessage());
                         log.error("[NameGeneratorAgent] 流式生成失败", e);
-                    });
+                    })
+                    .contextWrite(HedgedChatModel.withUser(input.userId()));
         } catch (Exception e) {
             log.error("[NameGeneratorAgent] 创建 ChatClient 失败", e);
             return Flux.error(e);
@@ -6,6 +6,7 @@ import com.inkflow.module.agent.core.*;
 import com.inkflow.module.agent.dto.ChatRequest;
 import com.inkflow.module.agent.lazy.LazyExecutionManager;
 import com.inkflow.module.ai_bridge.chat.DynamicChatModelFactory;
+import com.inkflow.module.ai_bridge.chat.HedgedChatModel;
 import com.inkflow.module.project.entity.CreationPhase;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
@@ -135,6 +136,14 @@ public class SummaryAgent extends BaseAgent<ChatRequest, String> {
         return response;
     }
 
+    /**
+     * 摘要生成输出短、用户等待结果，使用对冲请求模型
+     */
+    @Override
+    protected ChatModel resolveChatModel() {
+        return chatModelFactory.getLatencyCriticalModel();
+    }
+
     /**
      * 流式摘要生成
      */
@@ -152,7 +161,7 @@ public class SummaryAgent extends BaseAgent<ChatRequest, String> {
         }
 
         try {
-            ChatModel model = chatModelFactory.getDefaultModel();
+            ChatModel model = resolveChatModel();
             ChatClient client = ChatClient.builder(model)
                     .defaultSystem(getSystemPrompt())
                     .build();
@@ -177,7 +186,8 @@ public class SummaryAgent extends BaseAgent<ChatRequest, String> {
                     .doOnError(e -> {
                         publishThought("生成失败: " + e.getMessage());
                         log.error("[SummaryAgent] 流式生成失败", e);
-                    });
+                    })
+                    .contextWrite(HedgedChatModel.withUser(input.userId()));
         } catch (Exception e) {
             log.error("[SummaryAgent] 创建 ChatClient 失败", e);
             return Flux.error(e);
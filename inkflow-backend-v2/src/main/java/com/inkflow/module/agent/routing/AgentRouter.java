@@ -1,10 +1,14 @@
 package com.inkflow.module.agent.routing;
 
+import com.inkflow.module.agent.config.AgentProperties;
 import com.inkflow.module.agent.core.*;
 import com.inkflow.module.agent.dto.ChatRequest;
 import com.inkflow.module.agent.event.SSEEvent;
 import com.inkflow.module.agent.event.SSEEventType;
+import com.inkflow.module.agent.workflow.PrefetchHandle;
+import com.inkflow.module.agent.workflow.Workflow;
 import com.inkflow.module.agent.workflow.WorkflowExecutor;
+import com.inkflow.module.ai_bridge.context.RequestContextHolder;
 import com.inkflow.module.project.entity.CreationPhase;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.codec.ServerSentEvent;
@@ -13,6 +17,7 @@ import reactor.core.publisher.Flux;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Agent 路由器
@@ -21,6 +26,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * 路由流程：
  * 1. 尝试 Fast Path（intentHint 或命令前缀）
  * 2. 如果无法 Fast Path，使用 ThinkingAgent 分析意图
+ *    （规则引擎置信度不足时，按候选意图推测式启动检索，与 LLM 分析并行）
  * 3. 委托给 WorkflowExecutor 执行对应工作流
  * 
  * @see Requirements 10.4
@@ -30,27 +36,41 @@ import java.util.concurrent.ConcurrentHashMap;
 public class AgentRouter {
     
     private final FastPathFilter fastPathFilter;
+    private final RuleBasedClassifier ruleClassifier;
     private final ThinkingAgent thinkingAgent;
     private final WorkflowExecutor workflowExecutor;
+    private final boolean speculativeRetrievalEnabled;
     private final Map<String, CapableAgent<?, ?>> agents = new ConcurrentHashMap<>();
     
+    private final AtomicLong speculationStartCount = new AtomicLong();
+    private final AtomicLong speculationHitCount = new AtomicLong();
+    private final AtomicLong speculationWasteCount = new AtomicLong();
+    
     /**
      * 构造函数
      * 
      * @param fastPathFilter Fast Path 过滤器
+     * @param ruleClassifier 规则引擎分类器
      * @param thinkingAgent 意图分析 Agent
      * @param workflowExecutor 工作流执行器
+     * @param agentProperties Agent 配置
      * @param agentList 所有 Agent 列表（用于兼容性和查询）
      * @see Requirements 10.4
      */
     public AgentRouter(
             FastPathFilter fastPathFilter,
+            RuleBasedClassifier ruleClassifier,
             ThinkingAgent thinkingAgent,
             WorkflowExecutor workflowExecutor,
+            AgentProperties agentProperties,
             List<CapableAgent<?, ?>> agentList) {
         this.fastPathFilter = fastPathFilter;
+        this.ruleClassifier = ruleClassifier;
         this.thinkingAgent = thinkingAgent;
         this.workflowExecutor = workflowExecutor;
+        this.speculativeRetrievalEnabled = (agentProperties.speculativeRetrieval() != null
+                ? agentProperties.speculativeRetrieval()
+                : AgentProperties.SpeculativeRetrievalConfig.defaults()).enabled();
         
         // 注册所有 Agent（用于兼容性查询）
         for (CapableAgent<?, ?> agent : agentList) {
@@ -76,46 +96,191 @@ public class AgentRouter {
             
             IntentResult intentResult;
             Flux<ServerSentEvent<String>> prefixEvents;
+            PrefetchHandle prefetch = null;
             
-            if (fastPathResult.isPresent()) {
-                // Fast Path 成功
-                FastPathResult fp = fastPathResult.get();
-                intentResult = new IntentResult(
-                    fp.intent(),
-                    1.0,
-                    List.of(),
-                    IntentResult.IntentSource.FAST_PATH,
-                    fp.targetAgent()
-                );
-                prefixEvents = Flux.just(
-                    SSEEvent.thought("Fast Path 路由: " + fp.intent()).toServerSentEvent()
-                );
-            } else {
-                // 2. 使用 ThinkingAgent 分析
-                intentResult = thinkingAgent.analyze(request.message(), request.currentPhase());
-                prefixEvents = Flux.just(
-                    SSEEvent.thought("分析用户意图...").toServerSentEvent(),
-                    SSEEvent.thought("意图识别: " + intentResult.intent() + 
-                            " (置信度: " + Math.round(intentResult.confidence() * 100) + "%)").toServerSentEvent()
-                );
-            }
+            try {
+                if (fastPathResult.isPresent()) {
+                    // Fast Path 成功
+                    FastPathResult fp = fastPathResult.get();
+                    intentResult = new IntentResult(
+                        fp.intent(),
+                        1.0,
+                        List.of(),
+                        IntentResult.IntentSource.FAST_PATH,
+                        fp.targetAgent()
+                    );
+                    prefixEvents = Flux.just(
+                        SSEEvent.thought("Fast Path 路由: " + fp.intent()).toServerSentEvent()
+                    );
+                } else {
+                    // 2. 规则引擎分类，置信度不足时先推测式启动检索，再使用 ThinkingAgent 分析
+                    RuleBasedClassifier.ClassificationResult ruleResult =
+                            ruleClassifier.classify(request.message(), request.currentPhase());
+                    if (!ruleResult.isHighConfidence()) {
+                        prefetch = startSpeculativeRetrieval(request, ruleResult);
+                    }
+                    intentResult = analyzeIntent(request, ruleResult);
+                    prefixEvents = Flux.just(
+                        SSEEvent.thought("分析用户意图...").toServerSentEvent(),
+                        SSEEvent.thought("意图识别: " + intentResult.intent() + 
+                                " (置信度: " + Math.round(intentResult.confidence() * 100) + "%)").toServerSentEvent()
+                    );
+                }
             
-            // 3. 应用阶段优先级调整（仅在低置信度时）
-            Intent finalIntent = applyPhasePriorityForIntent(intentResult, request.currentPhase());
+                // 3. 应用阶段优先级调整（仅在低置信度时）
+                Intent finalIntent = applyPhasePriorityForIntent(intentResult, request.currentPhase());
             
-            log.info("[AgentRouter] 路由请求: intent={}, confidence={}, projectId={}", 
-                finalIntent, intentResult.confidence(), request.projectId());
+                log.info("[AgentRouter] 路由请求: intent={}, confidence={}, projectId={}", 
+                    finalIntent, intentResult.confidence(), request.projectId());
             
-            // 4. 委托给 WorkflowExecutor 执行
-            return Flux.concat(prefixEvents,
-                workflowExecutor.execute(finalIntent, request)
-            );
+                // 4. 最终意图与推测一致时交给工作流采用预取结果，否则取消预取
+                if (prefetch == null) {
+                    return Flux.concat(prefixEvents,
+                        workflowExecutor.execute(finalIntent, request)
+                    );
+                }
+                PrefetchHandle settledPrefetch = prefetch;
+                ChatRequest workflowRequest = settleSpeculation(settledPrefetch, finalIntent, request);
+            
+                // 5. 委托给 WorkflowExecutor 执行
+                return Flux.concat(prefixEvents,
+                    workflowExecutor.execute(finalIntent, workflowRequest)
+                ).doFinally(signal -> settledPrefetch.cancel());
+            } catch (RuntimeException e) {
+                // 意图分析或路由在预取启动后失败，预取结果不会再被使用，立即取消
+                if (prefetch != null) {
+                    prefetch.cancel();
+                }
+                throw e;
+            }
         }).onErrorResume(e -> {
             log.error("[AgentRouter] 路由失败: {}", e.getMessage(), e);
             return Flux.just(SSEEvent.error("路由失败: " + e.getMessage()).toServerSentEvent());
         });
     }
     
+    /**
+     * 推测式启动检索
+     * 依次检查规则引擎主意图、阶段优先意图和备选意图，
+     * 第一个对应支持预取的工作流的候选意图即启动该工作流的检索
+     * 
+     * @return 预取句柄，没有检索密集型候选意图时返回 null
+     */
+    private PrefetchHandle startSpeculativeRetrieval(ChatRequest request, 
+            RuleBasedClassifier.ClassificationResult ruleResult) {
+        if (!speculativeRetrievalEnabled || request.projectId() == null) {
+            return null;
+        }
+        
+        Set<Intent> candidates = new LinkedHashSet<>();
+        candidates.add(ruleResult.intent());
+        if (request.currentPhase() != null) {
+            Intent phasePreferredIntent = getPhasePreferredIntent(request.currentPhase());
+            if (phasePreferredIntent != null) {
+                candidates.add(phasePreferredIntent);
+            }
+        }
+        candidates.addAll(ruleResult.alternatives());
+        
+        for (Intent candidate : candidates) {
+            Workflow workflow = workflowExecutor.getWorkflowForIntent(candidate);
+            if (workflow.supportsPrefetch()) {
+                speculationStartCount.incrementAndGet();
+                log.debug("[AgentRouter] 推测式预取: candidate={}, workflow={}, projectId={}",
+                        candidate, workflow.getName(), request.projectId());
+                return PrefetchHandle.start(workflow, request);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 在请求用户的上下文中执行意图分析
+     * LLM 分析走对冲请求模型，对冲预算按 RequestContextHolder 中的用户计算
+     */
+    private IntentResult analyzeIntent(ChatRequest request, RuleBasedClassifier.ClassificationResult ruleResult) {
+        UUID userId = request.userId();
+        if (userId == null || RequestContextHolder.isBound()) {
+            return thinkingAgent.analyze(request.message(), request.currentPhase(), ruleResult);
+        }
+        try {
+            return RequestContextHolder.call(
+                RequestContextHolder.createContext(userId, request.projectId()),
+                () -> thinkingAgent.analyze(request.message(), request.currentPhase(), ruleResult)
+            );
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("意图分析失败", e);
+        }
+    }
+    
+    /**
+     * 结算推测式预取
+     * 最终意图对应的工作流与预取目标一致时，把句柄放入请求 metadata 供工作流采用；否则取消预取
+     * 
+     * @return 交给工作流执行的请求
+     */
+    private ChatRequest settleSpeculation(PrefetchHandle prefetch, Intent finalIntent, ChatRequest request) {
+        if (workflowExecutor.getWorkflowForIntent(finalIntent) != prefetch.workflow()) {
+            speculationWasteCount.incrementAndGet();
+            prefetch.cancel();
+            log.debug("[AgentRouter] 推测式预取未命中，已取消: finalIntent={}, workflow={}",
+                    finalIntent, prefetch.workflow().getName());
+            return request;
+        }
+        
+        speculationHitCount.incrementAndGet();
+        Map<String, Object> metadata = new HashMap<>(
+            request.metadata() != null ? request.metadata() : Map.of()
+        );
+        metadata.put(PrefetchHandle.METADATA_KEY, prefetch);
+        return new ChatRequest(
+            request.message(),
+            request.projectId(),
+            request.sessionId(),
+            request.currentPhase(),
+            request.intentHint(),
+            metadata
+        );
+    }
+    
+    /**
+     * 获取推测式检索统计
+     */
+    public SpeculationStats getSpeculationStats() {
+        long started = speculationStartCount.get();
+        long hits = speculationHitCount.get();
+        long wastes = speculationWasteCount.get();
+        return new SpeculationStats(
+            speculativeRetrievalEnabled,
+            started,
+            hits,
+            wastes,
+            started > 0 ? (double) hits / started : 0.0,
+            started > 0 ? (double) wastes / started : 0.0
+        );
+    }
+    
+    /**
+     * 推测式检索统计
+     *
+     * @param enabled 是否启用
+     * @param startCount 启动的预取次数
+     * @param hitCount 最终意图一致、被工作流采用的次数
+     * @param wasteCount 最终意图不一致、被取消的次数
+     * @param hitRate 命中率
+     * @param wasteRate 浪费率
+     */
+    public record SpeculationStats(
+        boolean enabled,
+        long startCount,
+        long hitCount,
+        long wasteCount,
+        double hitRate,
+        double wasteRate
+    ) {}
+    
     /**
      * 应用阶段优先级调整（返回调整后的 Intent）
      * 根据当前创作阶段调整目标意图
@@ -0,0 +1,236 @@
+package com.inkflow.module.agent.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.inkflow.module.agent.config.AgentProperties;
+import com.inkflow.module.agent.core.IntentResult;
+import com.inkflow.module.project.entity.CreationPhase;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LLM 意图分析结果缓存
+ *
+ * 键为 归一化消息 + 创作阶段，归一化只保留字母数字并统一小写（忽略空白和标点差异）。
+ * 精确未命中时做近似重复匹配：对归一化消息的字符二元组计算 MinHash 签名，
+ * 按 LSH 分段（16段 × 4行）索引，候选签名的估计 Jaccard 相似度不低于阈值即视为命中，
+ * 覆盖用户稍作修改后重发的消息。两个缓存使用相同的 TTL，过期后重新走 LLM。
+ */
+final class IntentResultCache {
+
+    private static final int NUM_HASHES = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = NUM_HASHES / BANDS;
+    /** 归一化后短于该长度的消息只做精确匹配，短消息的二元组太少，相似度估计不可靠 */
+    private static final int NEAR_DUPLICATE_MIN_LENGTH = 8;
+
+    /** MinHash 各哈希函数的种子（固定序列，保证签名在进程内稳定） */
+    private static final int[] SEEDS = new int[NUM_HASHES];
+
+    static {
+        long state = 0x5DEECE66DL;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            SEEDS[i] = (int) mix64(state);
+        }
+    }
+
+    private final Cache<CacheKey, CachedIntent> results;
+    private final Cache<BandKey, CacheKey> bands;
+    private final double nearDuplicateThreshold;
+    private final int maxMessageLength;
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    IntentResultCache(AgentProperties.IntentCacheConfig config) {
+        Duration ttl = Duration.ofMillis(config.ttlMs());
+        this.results = Caffeine.newBuilder()
+                .maximumSize(config.maxSize())
+                .expireAfterWrite(ttl)
+                .build();
+        this.bands = Caffeine.newBuilder()
+                .maximumSize((long) config.maxSize() * BANDS)
+                .expireAfterWrite(ttl)
+                .build();
+        this.nearDuplicateThreshold = config.nearDuplicateThreshold();
+        this.maxMessageLength = config.maxMessageLength();
+    }
+
+    /**
+     * 准备一次查询：归一化消息并计算签名，供 get/put 共用
+     *
+     * @return 消息为空或过长（不缓存）时返回 null
+     */
+    Probe prepare(String message, CreationPhase phase) {
+        String text = normalize(message);
+        if (text.isEmpty() || text.length() > maxMessageLength) {
+            return null;
+        }
+        if (text.length() < NEAR_DUPLICATE_MIN_LENGTH) {
+            return new Probe(new CacheKey(phase, text), null, null);
+        }
+        int[] signature = signature(text);
+        return new Probe(new CacheKey(phase, text), signature, bandHashes(signature));
+    }
+
+    /**
+     * 查询缓存，先精确匹配再近似重复匹配
+     *
+     * @return 未命中返回 null
+     */
+    Hit get(Probe probe) {
+        CachedIntent exact = results.getIfPresent(probe.key());
+        if (exact != null) {
+            exactHits.incrementAndGet();
+            return new Hit(exact.result(), false, 1.0);
+        }
+        if (probe.signature() != null) {
+            CachedIntent best = null;
+            double bestSimilarity = 0;
+            for (int band = 0; band < BANDS; band++) {
+                CacheKey candidateKey = bands.getIfPresent(new BandKey(probe.key().phase(), probe.bandHashes()[band]));
+                if (candidateKey == null) {
+                    continue;
+                }
+                CachedIntent candidate = results.getIfPresent(candidateKey);
+                if (candidate == null || candidate.signature() == null) {
+                    continue;
+                }
+                double similarity = similarity(probe.signature(), candidate.signature());
+                if (similarity > bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best != null && bestSimilarity >= nearDuplicateThreshold) {
+                nearHits.incrementAndGet();
+                return new Hit(best.result(), true, bestSimilarity);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存
+     */
+    void put(Probe probe, IntentResult result) {
+        results.put(probe.key(), new CachedIntent(result, probe.signature()));
+        if (probe.bandHashes() != null) {
+            for (long bandHash : probe.bandHashes()) {
+                bands.put(new BandKey(probe.key().phase(), bandHash), probe.key());
+            }
+        }
+    }
+
+    Stats stats() {
+        return new Stats(results.estimatedSize(), exactHits.get(), nearHits.get(), misses.get());
+    }
+
+    // ==================== 归一化与 MinHash ====================
+
+    /**
+     * 只保留字母数字并逐字符小写
+     */
+    static String normalize(String message) {
+        if (message == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder(message.length());
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                text.append(KeywordAutomaton.toLowerCase(c));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * 字符二元组的 MinHash 签名
+     */
+    static int[] signature(String text) {
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int i = 1; i < text.length(); i++) {
+            int shingle = text.charAt(i - 1) << 16 | text.charAt(i);
+            for (int h = 0; h < NUM_HASHES; h++) {
+                int value = mix32(shingle ^ SEEDS[h]);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 签名中相同位置取值相等的比例，即 Jaccard 相似度的无偏估计
+     */
+    static double similarity(int[] left, int[] right) {
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (left[i] == right[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / NUM_HASHES;
+    }
+
+    private static long[] bandHashes(int[] signature) {
+        long[] hashes = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long hash = band;
+            for (int row = 0; row < ROWS; row++) {
+                hash = hash * 0x9E3779B97F4A7C15L + signature[band * ROWS + row];
+            }
+            hashes[band] = mix64(hash);
+        }
+        return hashes;
+    }
+
+    /**
+     * murmur3 finalizer
+     */
+    private static int mix32(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // ==================== 数据结构 ====================
+
+    record CacheKey(CreationPhase phase, String text) {}
+
+    record BandKey(CreationPhase phase, long hash) {}
+
+    record CachedIntent(IntentResult result, int[] signature) {}
+
+    /**
+     * 一次查询的归一化键与签名，短消息的 signature/bandHashes 为 null
+     */
+    record Probe(CacheKey key, int[] signature, long[] bandHashes) {}
+
+    /**
+     * 命中结果，精确命中时 similarity 为 1.0
+     */
+    record Hit(IntentResult result, boolean nearDuplicate, double similarity) {}
+
+    record Stats(long size, long exactHits, long nearHits, long misses) {}
+}
@@ -0,0 +1,201 @@
+package com.inkflow.module.agent.routing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 关键词多模式匹配自动机（Aho–Corasick）
+ * 按 UTF-16 字符建立转移，中文关键词无需分词即可匹配；构建时统一小写，
+ * 匹配时调用方逐字符经 {@link #toLowerCase(char)} 小写后调用 {@link #next(int, char)}，
+ * 一次扫描得到全部命中，过程中不分配对象。
+ *
+ * 每个节点的子节点按字符排序后二分查找；在根节点时，不是任何关键词首字符的字符直接留在根节点，
+ * 不出现在任何关键词中的字符从任意状态直接回到根节点，普通消息中绝大多数字符只需一次位图判断。
+ */
+final class KeywordAutomaton {
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    /** 关键词中出现过的字符位图（65536位） */
+    private final long[] alphabet = new long[1 << 10];
+    /** 关键词首字符位图（根节点的子节点） */
+    private final long[] firstChars = new long[1 << 10];
+    /** 每个节点的子节点字符（升序） */
+    private final char[][] labels;
+    /** 每个节点的子节点编号，与 labels 一一对应 */
+    private final int[][] targets;
+    /** 失配指针 */
+    private final int[] fail;
+    /** 到达节点时命中的关键词编号（含失配链上的后缀命中） */
+    private final int[][] outputs;
+    /** 关键词长度（小写后） */
+    private final int[] patternLengths;
+
+    private KeywordAutomaton(char[][] labels, int[][] targets, int[] fail, int[][] outputs, int[] patternLengths) {
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.outputs = outputs;
+        this.patternLengths = patternLengths;
+        for (char[] nodeLabels : labels) {
+            for (char c : nodeLabels) {
+                alphabet[c >>> 6] |= 1L << c;
+            }
+        }
+        for (char c : labels[0]) {
+            firstChars[c >>> 6] |= 1L << c;
+        }
+    }
+
+    /**
+     * 构建自动机
+     *
+     * @param patterns 关键词，编号为列表下标；允许重复，重复的关键词各自输出
+     */
+    static KeywordAutomaton build(List<String> patterns) {
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        children.add(new TreeMap<>());
+        nodeOutputs.add(new ArrayList<>());
+
+        int[] patternLengths = new int[patterns.size()];
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            patternLengths[id] = pattern.length();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = toLowerCase(pattern.charAt(i));
+                Integer child = children.get(node).get(c);
+                if (child == null) {
+                    child = children.size();
+                    children.add(new TreeMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                    children.get(node).put(c, child);
+                }
+                node = child;
+            }
+            nodeOutputs.get(node).add(id);
+        }
+
+        int size = children.size();
+        char[][] labels = new char[size][];
+        int[][] targets = new int[size][];
+        for (int node = 0; node < size; node++) {
+            TreeMap<Character, Integer> nodeChildren = children.get(node);
+            labels[node] = new char[nodeChildren.size()];
+            targets[node] = new int[nodeChildren.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> entry : nodeChildren.entrySet()) {
+                labels[node][i] = entry.getKey();
+                targets[node][i] = entry.getValue();
+                i++;
+            }
+        }
+
+        // 按层次遍历计算失配指针，并把失配节点的输出并入当前节点
+        int[] fail = new int[size];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < labels[node].length; i++) {
+                char c = labels[node][i];
+                int child = targets[node][i];
+                int state = fail[node];
+                int next;
+                while ((next = child(labels, targets, state, c)) < 0 && state != 0) {
+                    state = fail[state];
+                }
+                fail[child] = next >= 0 ? next : 0;
+                nodeOutputs.get(child).addAll(nodeOutputs.get(fail[child]));
+                queue.add(child);
+            }
+        }
+
+        int[][] outputs = new int[size][];
+        for (int node = 0; node < size; node++) {
+            List<Integer> ids = nodeOutputs.get(node);
+            outputs[node] = ids.isEmpty() ? NO_OUTPUT : ids.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new KeywordAutomaton(labels, targets, fail, outputs, patternLengths);
+    }
+
+    /**
+     * 初始状态
+     */
+    static int root() {
+        return 0;
+    }
+
+    /**
+     * 读入一个（已小写的）字符后的状态
+     */
+    int next(int state, char c) {
+        if ((alphabet[c >>> 6] & (1L << c)) == 0) {
+            return 0;
+        }
+        if (state == 0 && (firstChars[c >>> 6] & (1L << c)) == 0) {
+            return 0;
+        }
+        while (true) {
+            int target = child(labels, targets, state, c);
+            if (target >= 0) {
+                return target;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * 逐字符小写，与 String.toLowerCase 对单个字符的结果一致（不处理需要扩展为多个字符的特殊映射）
+     * ASCII 和 CJK 区段（标点、假名、汉字，均无大小写）走快速路径
+     */
+    static char toLowerCase(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        if (c >= 0x3000 && c < 0xA000) {
+            return c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * 到达该状态时命中的关键词编号，返回内部数组，调用方不得修改
+     */
+    int[] outputs(int state) {
+        return outputs[state];
+    }
+
+    /**
+     * 关键词长度，用于由命中结束位置推算起始位置
+     */
+    int patternLength(int patternId) {
+        return patternLengths[patternId];
+    }
+
+    /**
+     * 关键词数量
+     */
+    int patternCount() {
+        return patternLengths.length;
+    }
+
+    private static int child(char[][] labels, int[][] targets, int state, char c) {
+        int index = Arrays.binarySearch(labels[state], c);
+        return index >= 0 ? targets[state][index] : -1;
+    }
+}
@@ -6,10 +6,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * 基于规则的意图分类器
  * 使用关键词匹配和阶段上下文进行快速分类
+ * 关键词表在类加载时编译为 Aho–Corasick 自动机，分类只需对消息扫描一次；
+ * 打分用的临时数组从缓冲区池中复用，每次分类只分配结果对象
  * 设计目标：延迟 < 10ms
  *
  */
@@ -29,6 +32,67 @@ public class RuleBasedClassifier {
         CreationPhase.REVISION, List.of(Intent.CHECK_CONSISTENCY, Intent.ANALYZE_STYLE)
     );
     
+    /**
+     * 全部意图关键词编译成的自动机，关键词编号对应以下数组下标
+     */
+    private static final KeywordAutomaton KEYWORD_AUTOMATON;
+    
+    /**
+     * 关键词所属意图
+     */
+    private static final Intent[] KEYWORD_INTENTS;
+    
+    /**
+     * 关键词基础分数：1.0 + 关键词长度 × 0.1（关键词越长，权重越高）
+     */
+    private static final double[] KEYWORD_SCORES;
+    
+    /**
+     * 关键词出现在消息开头时的分数倍数
+     */
+    private static final double LEADING_KEYWORD_BOOST = 1.5;
+    
+    /**
+     * 阶段匹配的意图分数倍数
+     */
+    private static final double PHASE_PRIORITY_BOOST = 1.2;
+    
+    private static final Intent[] INTENTS = Intent.values();
+    
+    /**
+     * 备选意图最多个数
+     */
+    private static final int MAX_ALTERNATIVES = 3;
+    
+    /**
+     * 缓冲区池槽位数（2 的幂）
+     */
+    private static final int SCRATCH_POOL_SIZE = 16;
+    
+    /**
+     * 分类临时缓冲区池
+     * 应用启用了虚拟线程，每个请求都在新线程上执行，ThreadLocal 无法复用，因此使用固定槽位的无锁池：
+     * 取不到时临时分配，归还时槽位已满则丢弃
+     */
+    private static final AtomicReferenceArray<Scratch> SCRATCH_POOL = new AtomicReferenceArray<>(SCRATCH_POOL_SIZE);
+    
+    static {
+        List<String> keywords = new ArrayList<>();
+        List<Intent> owners = new ArrayList<>();
+        for (Intent intent : INTENTS) {
+            for (String keyword : intent.getKeywords()) {
+                keywords.add(keyword);
+                owners.add(intent);
+            }
+        }
+        KEYWORD_AUTOMATON = KeywordAutomaton.build(keywords);
+        KEYWORD_INTENTS = owners.toArray(new Intent[0]);
+        KEYWORD_SCORES = new double[keywords.size()];
+        for (int i = 0; i < keywords.size(); i++) {
+            KEYWORD_SCORES[i] = 1.0 + keywords.get(i).length() * 0.1;
+        }
+    }
+    
     /**
      * 分类用户消息
      * 
@@ -43,80 +107,160 @@ public class RuleBasedClassifier {
             return ClassificationResult.lowConfidence(Intent.GENERAL_CHAT, 0.3);
         }
         
-        String normalizedMessage = message.toLowerCase().trim();
+        Scratch scratch = acquireScratch();
+        try {
+            return classify(message, phase, scratch, startTime);
+        } finally {
+            releaseScratch(scratch);
+        }
+    }
+    
+    private ClassificationResult classify(String message, CreationPhase phase, Scratch scratch, long startTime) {
+        // 1. 关键词匹配：一次扫描，等价于对 trim 后的小写消息逐个 contains
+        double[] scores = scratch.scores;
+        calculateKeywordScores(message, scores, scratch.matched);
         
-        // 1. 精确关键词匹配
-        Map<Intent, Double> scores = new HashMap<>();
-        for (Intent intent : Intent.values()) {
-            double score = calculateKeywordScore(normalizedMessage, intent);
-            if (score > 0) {
-                scores.put(intent, score);
+        // 2. 应用阶段优先级加成
+        List<Intent> priorityIntents = phase != null ? PHASE_PRIORITY_INTENTS.get(phase) : null;
+        if (priorityIntents != null) {
+            for (int i = 0; i < priorityIntents.size(); i++) {
+                int ordinal = priorityIntents.get(i).ordinal();
+                // 阶段匹配的意图获得 20% 加成
+                scores[ordinal] *= PHASE_PRIORITY_BOOST;
             }
         }
         
-        // 2. 应用阶段优先级加成
-        if (phase != null && PHASE_PRIORITY_INTENTS.containsKey(phase)) {
-            List<Intent> priorityIntents = PHASE_PRIORITY_INTENTS.get(phase);
-            for (Intent intent : priorityIntents) {
-                if (scores.containsKey(intent)) {
-                    // 阶段匹配的意图获得 20% 加成
-                    scores.put(intent, scores.get(intent) * 1.2);
+        // 3. 选择最高分意图（同分取枚举顺序靠前者）
+        int best = -1;
+        int matchCount = 0;
+        for (int ordinal = 0; ordinal < scores.length; ordinal++) {
+            if (scores[ordinal] > 0) {
+                matchCount++;
+                if (best < 0 || scores[ordinal] > scores[best]) {
+                    best = ordinal;
                 }
             }
         }
-        
-        // 3. 选择最高分意图
-        if (scores.isEmpty()) {
+        if (best < 0) {
             return ClassificationResult.lowConfidence(Intent.GENERAL_CHAT, 0.4);
         }
         
-        Intent bestIntent = Collections.max(scores.entrySet(), Map.Entry.comparingByValue()).getKey();
-        double bestScore = scores.get(bestIntent);
+        Intent bestIntent = INTENTS[best];
         
         // 4. 计算置信度
-        double confidence = calculateConfidence(bestScore, scores.size());
+        double confidence = calculateConfidence(scores[best], matchCount);
         
         // 5. 收集备选意图
-        List<Intent> alternatives = scores.entrySet().stream()
-            .filter(e -> !e.getKey().equals(bestIntent))
-            .sorted(Map.Entry.<Intent, Double>comparingByValue().reversed())
-            .limit(3)
-            .map(Map.Entry::getKey)
-            .toList();
+        scores[best] = 0;
+        List<Intent> alternatives = topIntents(scores, Math.min(MAX_ALTERNATIVES, matchCount - 1), scratch.alternatives);
         
-        long elapsedNanos = System.nanoTime() - startTime;
-        log.debug("[RuleClassifier] 分类完成: intent={}, confidence={:.2f}, 耗时={}μs", 
-                bestIntent, confidence, elapsedNanos / 1000);
+        if (log.isDebugEnabled()) {
+            long elapsedNanos = System.nanoTime() - startTime;
+            log.debug("[RuleClassifier] 分类完成: intent={}, confidence={}, 耗时={}μs", 
+                    bestIntent, confidence, elapsedNanos / 1000);
+        }
         
         return new ClassificationResult(bestIntent, confidence, alternatives);
     }
     
     /**
-     * 计算关键词匹配分数
+     * 计算各意图的关键词匹配分数（按 Intent.ordinal() 索引），写入 scores
+     * 每个关键词无论出现几次只计一次；关键词位于消息开头（忽略首尾空白）时分数 × 1.5
      */
-    private double calculateKeywordScore(String message, Intent intent) {
-        double score = 0.0;
-        String[] keywords = intent.getKeywords();
+    private void calculateKeywordScores(String message, double[] scores, long[] matched) {
+        int start = 0;
+        int end = message.length();
+        while (start < end && message.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && message.charAt(end - 1) <= ' ') {
+            end--;
+        }
         
-        for (String keyword : keywords) {
-            String lowerKeyword = keyword.toLowerCase();
-            if (message.contains(lowerKeyword)) {
-                // 基础分数
-                double keywordScore = 1.0;
-                
-                // 关键词越长，权重越高
-                keywordScore += keyword.length() * 0.1;
-                
-                // 如果关键词在消息开头，权重更高
-                if (message.startsWith(lowerKeyword)) {
-                    keywordScore *= 1.5;
+        Arrays.fill(scores, 0);
+        Arrays.fill(matched, 0);
+        int state = KeywordAutomaton.root();
+        for (int i = start; i < end; i++) {
+            state = KEYWORD_AUTOMATON.next(state, KeywordAutomaton.toLowerCase(message.charAt(i)));
+            for (int keywordId : KEYWORD_AUTOMATON.outputs(state)) {
+                long bit = 1L << keywordId;
+                if ((matched[keywordId >>> 6] & bit) != 0) {
+                    continue;
                 }
-                
-                score += keywordScore;
+                matched[keywordId >>> 6] |= bit;
+                // 首次命中位置最靠前，若关键词出现在开头，首次命中必然是开头那一次
+                double keywordScore = KEYWORD_SCORES[keywordId];
+                if (i + 1 - KEYWORD_AUTOMATON.patternLength(keywordId) == start) {
+                    keywordScore *= LEADING_KEYWORD_BOOST;
+                }
+                scores[KEYWORD_INTENTS[keywordId].ordinal()] += keywordScore;
             }
         }
-        
-        return score;
+    }
+    
+    /**
+     * 按分数降序取前 n 个有分数的意图（同分取枚举顺序靠前者），会清零被选中的分数
+     * n 不超过 MAX_ALTERNATIVES，selected 为暂存选中意图的缓冲区
+     */
+    private List<Intent> topIntents(double[] scores, int n, Intent[] selected) {
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            int best = -1;
+            for (int ordinal = 0; ordinal < scores.length; ordinal++) {
+                if (scores[ordinal] > 0 && (best < 0 || scores[ordinal] > scores[best])) {
+                    best = ordinal;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            selected[count++] = INTENTS[best];
+            scores[best] = 0;
+        }
+        return switch (count) {
+            case 0 -> List.of();
+            case 1 -> List.of(selected[0]);
+            case 2 -> List.of(selected[0], selected[1]);
+            default -> List.of(selected[0], selected[1], selected[2]);
+        };
+    }
+    
+    /**
+     * 从池中取一个缓冲区，从当前线程对应的槽位开始找，池为空时新分配
+     */
+    private static Scratch acquireScratch() {
+        int from = (int) Thread.currentThread().threadId();
+        for (int k = 0; k < SCRATCH_POOL_SIZE; k++) {
+            Scratch scratch = SCRATCH_POOL.getAndSet((from + k) & (SCRATCH_POOL_SIZE - 1), null);
+            if (scratch != null) {
+                return scratch;
+            }
+        }
+        return new Scratch();
+    }
+    
+    /**
+     * 归还缓冲区，放入第一个空槽位，池满则丢弃
+     */
+    private static void releaseScratch(Scratch scratch) {
+        int from = (int) Thread.currentThread().threadId();
+        for (int k = 0; k < SCRATCH_POOL_SIZE; k++) {
+            if (SCRATCH_POOL.compareAndSet((from + k) & (SCRATCH_POOL_SIZE - 1), null, scratch)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 单次分类的临时缓冲区，同一时刻只被一个线程持有，使用前由 calculateKeywordScores 清零
+     */
+    private static final class Scratch {
+        /** 各意图分数，按 Intent.ordinal() 索引 */
+        final double[] scores = new double[INTENTS.length];
+        /** 已命中关键词位图 */
+        final long[] matched = new long[(KEYWORD_AUTOMATON.patternCount() + 63) >>> 6];
+        /** 备选意图暂存 */
+        final Intent[] alternatives = new Intent[MAX_ALTERNATIVES];
     }
     
     /**
@@ -1,5 +1,6 @@
 package com.inkflow.module.agent.routing;
 
+import com.inkflow.module.agent.config.AgentProperties;
 import com.inkflow.module.agent.core.*;
 import com.inkflow.module.agent.event.AgentThoughtEvent;
 import com.inkflow.module.ai_bridge.chat.DynamicChatModelFactory;
@@ -11,8 +12,11 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 思考 Agent
@@ -21,7 +25,8 @@ import java.util.concurrent.TimeoutException;
  * 工作流程：
  * 1. 首先使用规则引擎进行快速分类（<10ms）
  * 2. 如果规则引擎置信度 >= 0.9，直接返回结果
- * 3. 否则使用轻量级 LLM 进行分析（~500ms）
+ * 3. 否则先查意图结果缓存（相同或近似重复的消息 + 同一创作阶段），命中直接返回
+ * 4. 未命中时使用轻量级 LLM 进行分析（~500ms，主提供商超过 p95 延迟时对冲到备用提供商），成功结果写入缓存
  * 
  * Requirements: 3.1-3.6
  */
@@ -37,13 +42,32 @@ public class ThinkingAgent {
     private final DynamicChatModelFactory chatModelFactory;
     private final ApplicationEventPublisher eventPublisher;
     
+    /** LLM 意图分析结果缓存，关闭时为 null */
+    private final IntentResultCache intentCache;
+    /** 每个 ChatModel 预构建一个带系统提示词的 ChatClient，避免每次分析重新构建 */
+    private final Map<ChatModel, ChatClient> chatClients = new ConcurrentHashMap<>();
+    
+    private final AtomicLong analyzeCount = new AtomicLong();
+    private final AtomicLong ruleDecisionCount = new AtomicLong();
+    private final AtomicLong llmCallCount = new AtomicLong();
+    private final AtomicLong llmFailureCount = new AtomicLong();
+    private final AtomicLong llmTotalTimeMs = new AtomicLong();
+    
     public ThinkingAgent(
             RuleBasedClassifier ruleClassifier,
             DynamicChatModelFactory chatModelFactory,
-            ApplicationEventPublisher eventPublisher) {
+            ApplicationEventPublisher eventPublisher,
+            AgentProperties agentProperties) {
         this.ruleClassifier = ruleClassifier;
         this.chatModelFactory = chatModelFactory;
         this.eventPublisher = eventPublisher;
+        
+        AgentProperties.IntentCacheConfig cacheConfig = agentProperties.thinking() != null
+                ? agentProperties.thinking().intentCache()
+                : AgentProperties.IntentCacheConfig.defaults();
+        this.intentCache = cacheConfig.enabled() ? new IntentResultCache(cacheConfig) : null;
+        log.info("[ThinkingAgent] 意图结果缓存: enabled={}, maxSize={}, ttl={}ms, nearDuplicateThreshold={}",
+                cacheConfig.enabled(), cacheConfig.maxSize(), cacheConfig.ttlMs(), cacheConfig.nearDuplicateThreshold());
     }
     
     /**
@@ -54,8 +78,6 @@ public class ThinkingAgent {
      * @return 意图分析结果
      */
     public IntentResult analyze(String message, CreationPhase phase) {
-        publishThought("开始分析用户意图...");
-        
         // 1. 规则引擎快速分类
         long ruleStartTime = System.currentTimeMillis();
         RuleBasedClassifier.ClassificationResult ruleResult = ruleClassifier.classify(message, phase);
@@ -64,22 +86,66 @@ public class ThinkingAgent {
         log.debug("[ThinkingAgent] 规则引擎分类: intent={}, confidence={}, 耗时={}ms",
                 ruleResult.intent(), ruleResult.confidence(), ruleElapsed);
         
+        return analyze(message, phase, ruleResult);
+    }
+    
+    /**
+     * 分析用户意图（规则引擎分类已由调用方完成）
+     * 供路由器在等待 LLM 分析前根据规则候选意图启动推测式检索
+     * 
+     * @param message 用户消息
+     * @param phase 当前创作阶段
+     * @param ruleResult 规则引擎分类结果
+     * @return 意图分析结果
+     */
+    public IntentResult analyze(String message, CreationPhase phase,
+            RuleBasedClassifier.ClassificationResult ruleResult) {
+        publishThought("开始分析用户意图...");
+        analyzeCount.incrementAndGet();
+        
         // 2. 如果规则引擎置信度足够高，直接返回
         if (ruleResult.isHighConfidence()) {
+            ruleDecisionCount.incrementAndGet();
             publishThought(String.format("规则引擎识别意图: %s (置信度: %.0f%%)", 
                     ruleResult.intent(), ruleResult.confidence() * 100));
             return IntentResult.fromRule(ruleResult.intent(), ruleResult.confidence());
         }
         
-        // 3. 需要 LLM 分析
+        // 3. 查询意图结果缓存
+        IntentResultCache.Probe probe = intentCache != null ? intentCache.prepare(message, phase) : null;
+        if (probe != null) {
+            IntentResultCache.Hit hit = intentCache.get(probe);
+            if (hit != null) {
+                IntentResult cached = hit.result();
+                publishThought(hit.nearDuplicate()
+                        ? String.format("命中近似消息的意图缓存: %s (相似度: %.0f%%)", cached.intent(), hit.similarity() * 100)
+                        : String.format("命中意图缓存: %s", cached.intent()));
+                return cached;
+            }
+        }
+        
+        // 4. 需要 LLM 分析
         publishThought("规则引擎置信度不足，启用 LLM 分析...");
+        llmCallCount.incrementAndGet();
+        long llmStartTime = System.currentTimeMillis();
         
         try {
             IntentResult llmResult = analyzewithLLM(message, phase, ruleResult);
+            llmTotalTimeMs.addAndGet(System.currentTimeMillis() - llmStartTime);
+            if (llmResult.source() == IntentResult.IntentSource.LLM) {
+                // 只缓存 LLM 给出的结果，解析失败降级的规则结果下次仍重试 LLM
+                if (probe != null) {
+                    intentCache.put(probe, llmResult);
+                }
+            } else {
+                llmFailureCount.incrementAndGet();
+            }
             publishThought(String.format("LLM 识别意图: %s (置信度: %.0f%%)", 
                     llmResult.intent(), llmResult.confidence() * 100));
             return llmResult;
         } catch (Exception e) {
+            llmTotalTimeMs.addAndGet(System.currentTimeMillis() - llmStartTime);
+            llmFailureCount.incrementAndGet();
             log.warn("[ThinkingAgent] LLM 分析失败，使用规则引擎结果: {}", e.getMessage());
             publishThought("LLM 分析失败，使用规则引擎结果");
             // 降级到规则引擎结果
@@ -93,10 +159,11 @@ public class ThinkingAgent {
     private IntentResult analyzewithLLM(String message, CreationPhase phase, 
             RuleBasedClassifier.ClassificationResult ruleHint) {
         
-        ChatModel model = chatModelFactory.getDefaultModel();
-        ChatClient client = ChatClient.builder(model)
+        // 意图分析是每轮对话的关键路径，使用对冲请求模型
+        ChatModel model = chatModelFactory.getLatencyCriticalModel();
+        ChatClient client = chatClients.computeIfAbsent(model, m -> ChatClient.builder(m)
                 .defaultSystem(buildSystemPrompt())
-                .build();
+                .build());
         
         String userPrompt = buildUserPrompt(message, phase, ruleHint);
         
@@ -247,6 +314,66 @@ public class ThinkingAgent {
         return "";
     }
     
+    /**
+     * 获取意图分析统计
+     */
+    public ThinkingStats getStats() {
+        long analyzed = analyzeCount.get();
+        long llmCalls = llmCallCount.get();
+        IntentResultCache.Stats cacheStats = intentCache != null
+                ? intentCache.stats()
+                : new IntentResultCache.Stats(0, 0, 0, 0);
+        long lookups = cacheStats.exactHits() + cacheStats.nearHits() + cacheStats.misses();
+        return new ThinkingStats(
+                analyzed,
+                ruleDecisionCount.get(),
+                intentCache != null,
+                cacheStats.size(),
+                cacheStats.exactHits(),
+                cacheStats.nearHits(),
+                cacheStats.misses(),
+                lookups > 0 ? (double) (cacheStats.exactHits() + cacheStats.nearHits()) / lookups : 0.0,
+                llmCalls,
+                llmFailureCount.get(),
+                analyzed > 0 ? (double) llmCalls / analyzed : 0.0,
+                llmCalls > 0 ? (double) llmTotalTimeMs.get() / llmCalls : 0.0,
+                chatClients.size()
+        );
+    }
+    
+    /**
+     * 意图分析统计
+     *
+     * @param analyzeCount 意图分析总次数
+     * @param ruleDecisionCount 规则引擎高置信度直接决定的次数
+     * @param cacheEnabled 是否启用意图结果缓存
+     * @param cacheSize 缓存条目数（估计值）
+     * @param cacheExactHits 精确命中次数
+     * @param cacheNearHits 近似重复命中次数
+     * @param cacheMisses 未命中次数
+     * @param cacheHitRate 缓存命中率（精确 + 近似）
+     * @param llmCallCount LLM 调用次数
+     * @param llmFailureCount LLM 调用失败或响应无法解析、降级为规则结果的次数
+     * @param llmFallbackRate 需要调用 LLM 的分析占全部分析的比例
+     * @param avgLlmTimeMs LLM 调用平均耗时
+     * @param chatClientCount 已预构建的 ChatClient 数
+     */
+    public record ThinkingStats(
+        long analyzeCount,
+        long ruleDecisionCount,
+        boolean cacheEnabled,
+        long cacheSize,
+        long cacheExactHits,
+        long cacheNearHits,
+        long cacheMisses,
+        double cacheHitRate,
+        long llmCallCount,
+        long llmFailureCount,
+        double llmFallbackRate,
+        double avgLlmTimeMs,
+        int chatClientCount
+    ) {}
+    
     /**
      * 发布思考过程事件
      */
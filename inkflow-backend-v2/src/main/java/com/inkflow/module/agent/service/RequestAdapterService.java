@@ -1,8 +1,10 @@
 package com.inkflow.module.agent.service;
 
+import com.inkflow.module.agent.config.AgentProperties;
 import com.inkflow.module.agent.core.Intent;
 import com.inkflow.module.agent.dto.ChatRequest;
 import com.inkflow.module.agent.dto.ChatRequestDto;
+import com.inkflow.module.agent.event.ContentChunkCoalescer;
 import com.inkflow.module.ai_bridge.service.PhaseInferenceService;
 import com.inkflow.module.project.entity.CreationPhase;
 import lombok.RequiredArgsConstructor;
@@ -23,6 +25,7 @@ import java.util.UUID;
 public class RequestAdapterService {
 
     private final PhaseInferenceService phaseInferenceService;
+    private final AgentProperties agentProperties;
 
     /**
      * 适配请求（统一入口）
@@ -112,9 +115,36 @@ public class RequestAdapterService {
         }
         if (dto.sceneType() != null) metadata.put("sceneType", dto.sceneType());
         
+        // 流式输出合并参数
+        putStreamingOptions(metadata, dto);
+        
         return metadata;
     }
 
+    /**
+     * 按客户端参数和服务端配置确定流式输出合并窗口，客户端窗口不超过配置上限
+     */
+    private void putStreamingOptions(Map<String, Object> metadata, ChatRequestDto dto) {
+        AgentProperties.StreamingConfig streaming = agentProperties.streaming() != null
+            ? agentProperties.streaming()
+            : AgentProperties.StreamingConfig.defaults();
+        
+        long windowMs;
+        if (!streaming.coalesceEnabled()) {
+            windowMs = 0;
+        } else if (dto.streamWindowMs() != null) {
+            windowMs = Math.min(Math.max(dto.streamWindowMs(), 0), streaming.maxWindowMs());
+        } else {
+            windowMs = streaming.coalesceWindowMs();
+        }
+        int maxBytes = dto.streamMaxBytes() != null && dto.streamMaxBytes() > 0
+            ? dto.streamMaxBytes()
+            : streaming.coalesceMaxBytes();
+        
+        metadata.put(ContentChunkCoalescer.METADATA_WINDOW_MS, windowMs);
+        metadata.put(ContentChunkCoalescer.METADATA_MAX_BYTES, maxBytes);
+    }
+
     private Intent parseIntentHint(String message) {
         if (message == null || message.isBlank()) return null;
         
@@ -5,7 +5,9 @@ import com.inkflow.module.agent.context.ContextEvent;
 import com.inkflow.module.agent.core.BaseAgent;
 import com.inkflow.module.agent.core.CapableAgent;
 import com.inkflow.module.agent.dto.ChatRequest;
+import com.inkflow.module.agent.event.ContentChunkCoalescer;
 import com.inkflow.module.agent.event.SSEEvent;
+import com.inkflow.module.agent.event.SSEEventBuilder;
 import com.inkflow.module.agent.orchestration.AgentOrchestrator;
 import com.inkflow.module.agent.skill.PromptInjector;
 import com.inkflow.module.agent.skill.SkillContext;
@@ -97,10 +99,11 @@ public abstract class AbstractWorkflow implements Workflow {
                 // Phase 2: Agent 执行
                 CapableAgent<ChatRequest, String> agent = getMainAgent(request);
                 publishThought(request.sessionId(), "执行 " + agent.getName());
-                return agent.stream(enrichedRequest);
+                // 按时间窗口/字节数合并 token 片段，减少 SSE 事件数
+                return ContentChunkCoalescer.coalesce(agent.stream(enrichedRequest), request.metadata());
             })
             .doOnNext(chunk -> generatedContent.append(chunk))
-            .map(content -> SSEEvent.content(content).toServerSentEvent())
+            .map(SSEEventBuilder::contentChunk)
             .concatWith(executePostProcessing(request, generatedContent));  // Phase 3: 同步后处理
     }
 
@@ -0,0 +1,75 @@
+package com.inkflow.module.agent.workflow;
+
+import com.inkflow.module.agent.dto.ChatRequest;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Optional;
+
+/**
+ * 推测式预取句柄
+ * 路由器在意图分析期间通过 {@link #start(Workflow, ChatRequest)} 立即启动目标工作流的检索，
+ * 最终意图对应同一工作流时把句柄放入请求 metadata，由工作流预处理通过 {@link #adopt(ChatRequest, Workflow)} 采用；
+ * 否则调用 {@link #cancel()} 取消尚未完成的检索。
+ *
+ */
+public final class PrefetchHandle {
+
+    /**
+     * 请求 metadata 中存放句柄的键
+     */
+    public static final String METADATA_KEY = "speculativePrefetch";
+
+    private final Workflow workflow;
+    private final Sinks.One<PreprocessingContext> result = Sinks.one();
+    private final Disposable subscription;
+
+    private PrefetchHandle(Workflow workflow, Mono<PreprocessingContext> source) {
+        this.workflow = workflow;
+        this.subscription = source.subscribe(
+            result::tryEmitValue,
+            result::tryEmitError,
+            result::tryEmitEmpty
+        );
+    }
+
+    /**
+     * 启动预取（立即订阅）
+     */
+    public static PrefetchHandle start(Workflow workflow, ChatRequest request) {
+        return new PrefetchHandle(workflow, workflow.prefetch(request));
+    }
+
+    /**
+     * 从请求中取出属于该工作流的预取结果
+     *
+     * @param request 聊天请求
+     * @param workflow 当前执行的工作流
+     * @return 预取结果，未预取或预取的是其他工作流时为空
+     */
+    public static Optional<Mono<PreprocessingContext>> adopt(ChatRequest request, Workflow workflow) {
+        if (request.metadata() == null) {
+            return Optional.empty();
+        }
+        Object value = request.metadata().get(METADATA_KEY);
+        if (value instanceof PrefetchHandle handle && handle.workflow == workflow) {
+            return Optional.of(handle.result.asMono());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 预取的目标工作流
+     */
+    public Workflow workflow() {
+        return workflow;
+    }
+
+    /**
+     * 取消预取，已完成时无影响
+     */
+    public void cancel() {
+        subscription.dispose();
+    }
+}
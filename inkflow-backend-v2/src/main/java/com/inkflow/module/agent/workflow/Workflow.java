@@ -4,6 +4,7 @@ import com.inkflow.module.agent.core.Intent;
 import com.inkflow.module.agent.dto.ChatRequest;
 import org.springframework.http.codec.ServerSentEvent;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -46,6 +47,27 @@ public interface Workflow {
         return getSupportedIntents().contains(intent);
     }
     
+    /**
+     * 是否支持推测式预取
+     * 支持的工作流在意图尚未最终确定时即可由路由器提前启动检索
+     * 
+     * @return 是否支持
+     */
+    default boolean supportsPrefetch() {
+        return false;
+    }
+    
+    /**
+     * 推测式预取：只包含预处理中的检索部分（无副作用、不发布思考事件），
+     * 结果通过 {@link PrefetchHandle} 交给本工作流的预处理采用
+     * 
+     * @param request 聊天请求
+     * @return 检索结果（additionalContext 为空）
+     */
+    default Mono<PreprocessingContext> prefetch(ChatRequest request) {
+        return Mono.empty();
+    }
+    
     /**
      * 获取工作流类型
      * 
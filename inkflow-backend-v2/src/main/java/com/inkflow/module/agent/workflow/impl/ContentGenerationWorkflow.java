@@ -31,7 +31,7 @@ import java.util.*;
  * 
  * 执行流程：
  * 1. 预检：检查角色状态、场景逻辑、时间线一致性
- * 2. 并行预处理：RAG检索 + 角色状态 + 风格样本
+ * 2. 并行预处理：RAG检索 + 角色状态 + 风格样本（支持路由阶段推测预取）
  * 3. Skill 注入：ActionSkill, PsychologySkill, DescriptionSkill
  * 4. WriterAgent 执行
  * 5. 同步一致性检查（在 done 之前）
@@ -117,8 +117,16 @@ public class ContentGenerationWorkflow extends AbstractWorkflow {
             preflightMono = Mono.just(new PreflightResult(true, Collections.emptyList()));
         }
         
-        // 2. 并行预处理
-        publishThought(request.sessionId(), "并行预处理: RAG检索 + 角色状态 + 风格样本");
+        // 2. 并行预处理（路由阶段已推测预取时直接采用）
+        Optional<Mono<PreprocessingContext>> prefetched = PrefetchHandle.adopt(request, this);
+        Mono<PreprocessingContext> retrievalMono;
+        if (prefetched.isPresent()) {
+            publishThought(request.sessionId(), "采用意图分析期间预取的 RAG检索 + 角色状态 + 风格样本");
+            retrievalMono = prefetched.get();
+        } else {
+            publishThought(request.sessionId(), "并行预处理: RAG检索 + 角色状态 + 风格样本");
+            retrievalMono = retrieve(projectId, query);
+        }
         
         return preflightMono.flatMap(preflightResult -> {
             // 发送预检结果 SSE 事件
@@ -131,52 +139,73 @@ public class ContentGenerationWorkflow extends AbstractWorkflow {
                 publishThought(request.sessionId(), "⚠️ 预检发现严重问题，建议检查后再继续");
             }
             
-            // 并行执行三个预处理任务
-            return Mono.zip(
-                // Task 1: RAG 检索
-                hybridSearchService.search(projectId, query, 5)
-                    .onErrorResume(e -> {
-                        log.warn("[ContentGenerationWorkflow] RAG检索失败: {}", e.getMessage());
-                        return Mono.just(Collections.emptyList());
-                    }),
-                
-                // Task 2: 角色状态获取（包装为 Mono）
-                Mono.fromCallable(() -> getCharacterStates(projectId))
-                    .subscribeOn(Schedulers.boundedElastic())
-                    .onErrorResume(e -> {
-                        log.warn("[ContentGenerationWorkflow] 角色状态获取失败: {}", e.getMessage());
-                        return Mono.just(Collections.<UUID, CharacterState>emptyMap());
-                    }),
-                
-                // Task 3: 风格样本获取
-                hybridSearchService.buildContextForGeneration(projectId, query, 3)
-                    .onErrorResume(e -> {
-                        log.warn("[ContentGenerationWorkflow] 风格样本获取失败: {}", e.getMessage());
-                        return Mono.just("");
-                    })
-            ).map(tuple -> {
-                List<SearchResult> ragResults = tuple.getT1();
-                Map<UUID, CharacterState> characterStates = tuple.getT2();
-                String styleContext = tuple.getT3();
-                
-                log.debug("[ContentGenerationWorkflow] 预处理完成: RAG={}, 角色={}, 风格长度={}",
-                    ragResults.size(), characterStates.size(), styleContext.length());
-                
+            return retrievalMono.map(retrieval -> {
                 // 将预检结果存入额外数据
                 Map<String, Object> extraData = new HashMap<>();
                 extraData.put("preflightResult", preflightResult);
                 extraData.put("consistencyEnabled", consistencyEnabled);
                 
                 return new PreprocessingContext(
-                    ragResults,
-                    characterStates,
-                    styleContext,
+                    retrieval.ragResults(),
+                    retrieval.characterStates(),
+                    retrieval.styleContext(),
                     extraData
                 );
             });
         }).subscribeOn(Schedulers.boundedElastic()); // 确保整个预处理在弹性线程池执行
     }
     
+    @Override
+    public boolean supportsPrefetch() {
+        return true;
+    }
+    
+    /**
+     * 推测式预取：RAG检索 + 角色状态 + 风格样本（不含预检）
+     */
+    @Override
+    public Mono<PreprocessingContext> prefetch(ChatRequest request) {
+        return retrieve(request.projectId(), request.message());
+    }
+    
+    /**
+     * 并行执行三个检索任务，任一失败时以空结果代替
+     */
+    private Mono<PreprocessingContext> retrieve(UUID projectId, String query) {
+        return Mono.zip(
+            // Task 1: RAG 检索
+            hybridSearchService.search(projectId, query, 5)
+                .onErrorResume(e -> {
+                    log.warn("[ContentGenerationWorkflow] RAG检索失败: {}", e.getMessage());
+                    return Mono.just(Collections.emptyList());
+                }),
+            
+            // Task 2: 角色状态获取（包装为 Mono）
+            Mono.fromCallable(() -> getCharacterStates(projectId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.warn("[ContentGenerationWorkflow] 角色状态获取失败: {}", e.getMessage());
+                    return Mono.just(Collections.<UUID, CharacterState>emptyMap());
+                }),
+            
+            // Task 3: 风格样本获取
+            hybridSearchService.buildContextForGeneration(projectId, query, 3, getType().name())
+                .onErrorResume(e -> {
+                    log.warn("[ContentGenerationWorkflow] 风格样本获取失败: {}", e.getMessage());
+                    return Mono.just("");
+                })
+        ).map(tuple -> {
+            List<SearchResult> ragResults = tuple.getT1();
+            Map<UUID, CharacterState> characterStates = tuple.getT2();
+            String styleContext = tuple.getT3();
+            
+            log.debug("[ContentGenerationWorkflow] 检索完成: RAG={}, 角色={}, 风格长度={}",
+                ragResults.size(), characterStates.size(), styleContext.length());
+            
+            return new PreprocessingContext(ragResults, characterStates, styleContext, Map.of());
+        });
+    }
+    
     /**
      * 执行预检
      */
@@ -3,7 +3,9 @@ package com.inkflow.module.agent.workflow.impl;
 import com.inkflow.module.agent.core.CapableAgent;
 import com.inkflow.module.agent.core.Intent;
 import com.inkflow.module.agent.dto.ChatRequest;
+import com.inkflow.module.agent.event.ContentChunkCoalescer;
 import com.inkflow.module.agent.event.SSEEvent;
+import com.inkflow.module.agent.event.SSEEventBuilder;
 import com.inkflow.module.agent.impl.*;
 import com.inkflow.module.agent.workflow.Workflow;
 import com.inkflow.module.agent.workflow.WorkflowType;
@@ -97,8 +99,8 @@ public class SimpleAgentWorkflow implements Workflow {
             // 直接执行，无预处理
             return Flux.just(SSEEvent.thought("执行 " + finalAgent.getName()).toServerSentEvent())
                 .concatWith(
-                    finalAgent.stream(request)
-                        .map(content -> SSEEvent.content(content).toServerSentEvent())
+                    ContentChunkCoalescer.coalesce(finalAgent.stream(request), request.metadata())
+                        .map(SSEEventBuilder::contentChunk)
                 )
                 .concatWith(Flux.just(SSEEvent.done().toServerSentEvent()))
                 .onErrorResume(error -> {
@@ -49,6 +49,40 @@ public class DynamicChatModelFactory {
     @Value("${spring.ai.deepseek.base-url:https://api.deepseek.com}")
     private String deepseekBaseUrl;
 
+    // ==================== 对冲请求配置 ====================
+
+    @Value("${inkflow.ai.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    /**
+     * 备用提供商，为空时使用默认模型之外的另一个已配置提供商
+     */
+    @Value("${inkflow.ai.hedging.secondary-provider:}")
+    private String hedgingSecondaryProvider;
+
+    /**
+     * 备用模型，为空时使用该提供商的默认模型
+     */
+    @Value("${inkflow.ai.hedging.secondary-model:}")
+    private String hedgingSecondaryModel;
+
+    @Value("${inkflow.ai.hedging.initial-delay-ms:2000}")
+    private long hedgingInitialDelayMs;
+
+    @Value("${inkflow.ai.hedging.min-delay-ms:300}")
+    private long hedgingMinDelayMs;
+
+    @Value("${inkflow.ai.hedging.max-delay-ms:10000}")
+    private long hedgingMaxDelayMs;
+
+    @Value("${inkflow.ai.hedging.min-samples:20}")
+    private int hedgingMinSamples;
+
+    @Value("${inkflow.ai.hedging.budget-per-minute:10}")
+    private int hedgingBudgetPerMinute;
+
+    private static final String HEDGED_MODEL_CACHE_KEY = "hedged:default";
+
     /**
      * 缓存已创建的ChatModel实例
      */
@@ -101,6 +135,65 @@ public class DynamicChatModelFactory {
         throw new IllegalStateException("未配置任何AI提供商");
     }
 
+    /**
+     * 获取延迟敏感调用（意图分析、名称生成、摘要）使用的模型
+     * 配置了备用提供商时返回包装默认模型的 {@link HedgedChatModel}：
+     * 默认模型超过其 p95 延迟未响应时向备用提供商发起对冲请求；否则直接返回默认模型
+     */
+    public ChatModel getLatencyCriticalModel() {
+        ChatModel primary = getDefaultModel();
+        if (!hedgingEnabled) {
+            return primary;
+        }
+        Provider primaryProvider = isProviderConfigured(Provider.DEEPSEEK) ? Provider.DEEPSEEK : Provider.OPENAI;
+        Provider secondaryProvider = resolveHedgeProvider(primaryProvider);
+        if (secondaryProvider == null) {
+            return primary;
+        }
+        // 备用模型先行解析，避免在 computeIfAbsent 中嵌套更新 modelCache
+        ChatModel secondary = getModel(secondaryProvider, resolveHedgeModelName(secondaryProvider));
+        return modelCache.computeIfAbsent(HEDGED_MODEL_CACHE_KEY, k -> {
+            log.info("启用对冲请求: primary={}, secondary={}, 每用户每分钟预算={}",
+                    primaryProvider, secondaryProvider, hedgingBudgetPerMinute);
+            return new HedgedChatModel(primary, secondary,
+                    new HedgedChatModel.Settings(hedgingInitialDelayMs, hedgingMinDelayMs,
+                            hedgingMaxDelayMs, hedgingMinSamples),
+                    new HedgeBudget(hedgingBudgetPerMinute));
+        });
+    }
+
+    /**
+     * 获取对冲统计，未启用对冲时 active 为 false
+     */
+    public HedgedChatModel.HedgeStats getHedgeStats() {
+        return modelCache.get(HEDGED_MODEL_CACHE_KEY) instanceof HedgedChatModel hedged
+                ? hedged.getStats()
+                : HedgedChatModel.HedgeStats.inactive();
+    }
+
+    /**
+     * 确定对冲使用的备用提供商，与主提供商相同或未配置时返回 null
+     */
+    private Provider resolveHedgeProvider(Provider primaryProvider) {
+        Provider candidate;
+        if (hedgingSecondaryProvider != null && !hedgingSecondaryProvider.isBlank()) {
+            candidate = Provider.fromCode(hedgingSecondaryProvider);
+        } else {
+            candidate = primaryProvider == Provider.DEEPSEEK ? Provider.OPENAI : Provider.DEEPSEEK;
+        }
+        return candidate != primaryProvider && isProviderConfigured(candidate) ? candidate : null;
+    }
+
+    private String resolveHedgeModelName(Provider provider) {
+        if (hedgingSecondaryModel != null && !hedgingSecondaryModel.isBlank()) {
+            return hedgingSecondaryModel;
+        }
+        return switch (provider) {
+            case OPENAI -> "gpt-4-turbo";
+            case DEEPSEEK -> "deepseek-chat";
+        };
+    }
+
     /**
      * 根据提供商和模型名获取ChatModel
      */
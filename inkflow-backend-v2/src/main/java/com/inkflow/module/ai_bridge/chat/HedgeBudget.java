@@ -0,0 +1,95 @@
+package com.inkflow.module.ai_bridge.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * 对冲请求预算
+ * 每个用户一个令牌桶，容量为每分钟允许的对冲次数，按容量/分钟匀速补充。
+ * 每次对冲都会让同一 Prompt 额外消耗一份 Token，预算用尽后只等待主模型，
+ * 以此限制单个用户因对冲产生的额外 Token 开销。无用户上下文的调用共用一个桶。
+ */
+final class HedgeBudget {
+
+    /** 无用户上下文时共用的预算键 */
+    private static final UUID SHARED_KEY = new UUID(0L, 0L);
+    private static final long REFILL_PERIOD_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final int hedgesPerMinute;
+    private final Cache<UUID, Bucket> buckets;
+
+    HedgeBudget(int hedgesPerMinute) {
+        this.hedgesPerMinute = hedgesPerMinute;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+    }
+
+    /**
+     * 尝试为一次对冲扣减预算
+     *
+     * @param userId 用户ID，可为 null
+     * @return 预算充足返回 true
+     */
+    boolean tryAcquire(UUID userId) {
+        if (hedgesPerMinute <= 0) {
+            return false;
+        }
+        return buckets.get(userId != null ? userId : SHARED_KEY, k -> new Bucket(hedgesPerMinute))
+                .tryAcquire();
+    }
+
+    /**
+     * 退回一次已扣减但未发出的对冲
+     *
+     * @param userId 用户ID，可为 null
+     */
+    void release(UUID userId) {
+        if (hedgesPerMinute <= 0) {
+            return;
+        }
+        Bucket bucket = buckets.getIfPresent(userId != null ? userId : SHARED_KEY);
+        if (bucket != null) {
+            bucket.release();
+        }
+    }
+
+    int hedgesPerMinute() {
+        return hedgesPerMinute;
+    }
+
+    /**
+     * 令牌桶，初始为满
+     */
+    private static final class Bucket {
+
+        private final int capacity;
+        private double tokens;
+        private long lastRefillNanos;
+
+        Bucket(int capacity) {
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (double) (now - lastRefillNanos) * capacity / REFILL_PERIOD_NANOS);
+            lastRefillNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized void release() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+    }
+}
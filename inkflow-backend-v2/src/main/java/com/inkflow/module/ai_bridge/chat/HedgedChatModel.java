@@ -0,0 +1,399 @@
+package com.inkflow.module.ai_bridge.chat;
+
+import com.inkflow.module.ai_bridge.context.RequestContextHolder;
+import com.inkflow.module.ai_bridge.context.RequestContextHolder.RequestContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 对冲请求 ChatModel
+ * 用于意图分析、名称生成、摘要这类短小且对延迟敏感的调用：
+ * - 主模型先发出请求，超过其近期观测到的 p95 延迟仍未返回时，把同一消息发给备用提供商（模型名与厂商参数使用备用模型的配置）
+ * - 先返回完整响应的一方胜出，另一方被取消（call 中断执行线程，stream 取消订阅）
+ * - 每次对冲扣减发起用户的 {@link HedgeBudget}，预算用尽时只等待主模型
+ *
+ * 流式调用以首个响应片段作为胜出依据，阈值使用首片段延迟的 p95。
+ * 样本不足时使用初始延迟；主模型在对冲前失败直接抛出，失败重试仍由 AIErrorHandler 负责。
+ * 用户从 {@link RequestContextHolder} 获取，流式调用优先读取 Reactor Context 中的 {@link #CONTEXT_USER_ID}。
+ */
+@Slf4j
+public final class HedgedChatModel implements ChatModel {
+
+    /**
+     * Reactor Context 中的用户ID键，见 {@link #withUser(UUID)}
+     */
+    public static final String CONTEXT_USER_ID = "inkflow.hedge.userId";
+
+    /**
+     * 主请求和对冲请求都在虚拟线程中执行，取消时中断阻塞的网络读写
+     */
+    private static final ExecutorService HEDGE_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ChatModel primary;
+    private final ChatModel secondary;
+    private final Settings settings;
+    private final HedgeBudget budget;
+
+    private final LatencyWindow callLatency = new LatencyWindow();
+    private final LatencyWindow firstChunkLatency = new LatencyWindow();
+
+    // ==================== 统计 ====================
+
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong streamCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+    private final AtomicLong budgetDeniedCount = new AtomicLong();
+
+    HedgedChatModel(ChatModel primary, ChatModel secondary, Settings settings, HedgeBudget budget) {
+        this.primary = primary;
+        this.secondary = secondary;
+        this.settings = settings;
+        this.budget = budget;
+    }
+
+    /**
+     * 为流式调用指定对冲预算所属用户
+     * 用法：{@code client.prompt()...stream().content().contextWrite(HedgedChatModel.withUser(userId))}
+     */
+    public static Context withUser(UUID userId) {
+        return userId != null ? Context.of(CONTEXT_USER_ID, userId) : Context.empty();
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return primary.getDefaultOptions();
+    }
+
+    // ==================== 同步调用 ====================
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        callCount.incrementAndGet();
+        RequestContext context = RequestContextHolder.currentOrNull();
+        long delayMs = callLatency.hedgeDelayMs(settings);
+        long startNanos = System.nanoTime();
+
+        Race race = new Race();
+        Future<?> primaryTask = HEDGE_EXECUTOR.submit(() -> race.run(false, bind(context, () -> primary.call(prompt))));
+        Future<?> secondaryTask = null;
+        try {
+            Outcome outcome;
+            try {
+                outcome = race.winner.get(delayMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                UUID userId = context != null ? context.userId() : null;
+                if (!race.winner.isDone() && tryStartHedge(userId, delayMs)) {
+                    if (race.addAttempt()) {
+                        Prompt hedgePrompt = secondaryPrompt(prompt);
+                        secondaryTask = HEDGE_EXECUTOR.submit(() -> race.run(true, bind(context, () -> secondary.call(hedgePrompt))));
+                    } else {
+                        // 扣减预算后主模型恰好结束，对冲未发出
+                        abandonHedge(userId);
+                    }
+                }
+                outcome = race.winner.get();
+            }
+            settle(outcome.hedge(), callLatency, startNanos);
+            return outcome.response();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("对冲请求失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("对冲请求被中断", e);
+        } finally {
+            // 已完成的任务取消无影响，落败或调用方被中断的请求在此中断
+            primaryTask.cancel(true);
+            if (secondaryTask != null) {
+                secondaryTask.cancel(true);
+            }
+        }
+    }
+
+    // ==================== 流式调用 ====================
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        RequestContext context = RequestContextHolder.currentOrNull();
+        return Flux.deferContextual(contextView -> {
+            streamCount.incrementAndGet();
+            UUID userId = contextView.<UUID>getOrEmpty(CONTEXT_USER_ID)
+                    .orElse(context != null ? context.userId() : null);
+            long delayMs = firstChunkLatency.hedgeDelayMs(settings);
+            long startNanos = System.nanoTime();
+
+            AtomicBoolean settled = new AtomicBoolean();
+            AtomicReference<Throwable> primaryError = new AtomicReference<>();
+            Sinks.One<Boolean> primaryFailed = Sinks.one();
+
+            Flux<ChatResponse> primaryStream = primary.stream(prompt)
+                    .doOnNext(response -> {
+                        if (settled.compareAndSet(false, true)) {
+                            settle(false, firstChunkLatency, startNanos);
+                        }
+                    })
+                    .doOnError(e -> {
+                        primaryError.set(e);
+                        primaryFailed.tryEmitValue(true);
+                    });
+
+            // 主模型在对冲时刻前失败或已出首片段时，对冲分支为空
+            Flux<ChatResponse> hedgeStream = Mono.delay(Duration.ofMillis(delayMs))
+                    .takeUntilOther(primaryFailed.asMono())
+                    .filter(tick -> !settled.get() && tryStartHedge(userId, delayMs))
+                    .flatMapMany(tick -> secondary.stream(secondaryPrompt(prompt)))
+                    .doOnNext(response -> {
+                        if (settled.compareAndSet(false, true)) {
+                            settle(true, firstChunkLatency, startNanos);
+                        }
+                    });
+
+            // 先发出片段的一方胜出，另一方被取消；双方都没有片段时抛出主模型的异常
+            return Flux.firstWithValue(primaryStream, hedgeStream)
+                    .onErrorMap(NoSuchElementException.class,
+                            e -> primaryError.get() != null ? primaryError.get() : e);
+        });
+    }
+
+    // ==================== 内部方法 ====================
+
+    private boolean tryStartHedge(UUID userId, long delayMs) {
+        if (!budget.tryAcquire(userId)) {
+            budgetDeniedCount.incrementAndGet();
+            log.debug("[HedgedChatModel] 用户 {} 对冲预算已用尽，继续等待主模型", userId);
+            return false;
+        }
+        hedgeCount.incrementAndGet();
+        log.debug("[HedgedChatModel] 主模型超过 {}ms 未响应，向备用提供商发起对冲请求", delayMs);
+        return true;
+    }
+
+    /**
+     * 已扣减预算但未发出的对冲，退回预算并撤销计数
+     */
+    private void abandonHedge(UUID userId) {
+        budget.release(userId);
+        hedgeCount.decrementAndGet();
+    }
+
+    /**
+     * 构建发给备用提供商的 Prompt
+     * 调用方的选项来自主模型（ChatClient 以 {@link #getDefaultOptions()} 为基础），包含主模型名和厂商专属参数，
+     * 原样转发会让备用提供商收到主模型的模型名。这里只保留可移植参数和工具配置，模型名取备用模型的默认值，
+     * 其余参数由备用模型与自身默认选项合并补齐。
+     */
+    Prompt secondaryPrompt(Prompt prompt) {
+        ChatOptions source = prompt.getOptions();
+        ChatOptions defaults = secondary.getDefaultOptions();
+        ToolCallingChatOptions.Builder builder = ToolCallingChatOptions.builder();
+        if (source instanceof ToolCallingChatOptions tools) {
+            if (tools.getToolCallbacks() != null) {
+                builder.toolCallbacks(tools.getToolCallbacks());
+            }
+            if (tools.getToolNames() != null) {
+                builder.toolNames(tools.getToolNames());
+            }
+            if (tools.getToolContext() != null) {
+                builder.toolContext(tools.getToolContext());
+            }
+            builder.internalToolExecutionEnabled(tools.getInternalToolExecutionEnabled());
+        }
+        if (source != null) {
+            builder.temperature(source.getTemperature())
+                    .maxTokens(source.getMaxTokens())
+                    .topP(source.getTopP())
+                    .topK(source.getTopK())
+                    .frequencyPenalty(source.getFrequencyPenalty())
+                    .presencePenalty(source.getPresencePenalty())
+                    .stopSequences(source.getStopSequences());
+        }
+        builder.model(defaults != null ? defaults.getModel() : null);
+        return new Prompt(prompt.getInstructions(), builder.build());
+    }
+
+    /**
+     * 记录胜出方
+     * 对冲胜出时主模型耗时至少为当前耗时，同样计入主模型的延迟窗口，避免慢请求从样本中消失导致 p95 偏低
+     */
+    private void settle(boolean hedge, LatencyWindow window, long startNanos) {
+        window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        if (hedge) {
+            hedgeWinCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 在调用方的请求上下文中执行（ScopedValue 不会自动传递到执行器线程）
+     */
+    private static <T> Callable<T> bind(RequestContext context, Callable<T> callable) {
+        if (context == null) {
+            return callable;
+        }
+        return () -> RequestContextHolder.call(context, callable);
+    }
+
+    /**
+     * 获取对冲统计
+     */
+    public HedgeStats getStats() {
+        long requests = callCount.get() + streamCount.get();
+        long hedges = hedgeCount.get();
+        return new HedgeStats(
+                true,
+                callCount.get(),
+                streamCount.get(),
+                hedges,
+                hedgeWinCount.get(),
+                budgetDeniedCount.get(),
+                requests > 0 ? (double) hedges / requests : 0.0,
+                hedges > 0 ? (double) hedgeWinCount.get() / hedges : 0.0,
+                callLatency.hedgeDelayMs(settings),
+                firstChunkLatency.hedgeDelayMs(settings),
+                budget.hedgesPerMinute()
+        );
+    }
+
+    // ==================== 数据结构 ====================
+
+    /**
+     * 对冲参数
+     *
+     * @param initialDelayMs 样本不足时的对冲延迟
+     * @param minDelayMs 对冲延迟下限
+     * @param maxDelayMs 对冲延迟上限
+     * @param minSamples 使用观测 p95 所需的最少样本数
+     */
+    public record Settings(long initialDelayMs, long minDelayMs, long maxDelayMs, int minSamples) {}
+
+    /**
+     * 对冲统计
+     *
+     * @param active 是否已启用对冲（未配置备用提供商时为 false）
+     * @param callCount 同步调用次数
+     * @param streamCount 流式调用次数
+     * @param hedgeCount 发起对冲次数
+     * @param hedgeWinCount 对冲请求胜出次数
+     * @param budgetDeniedCount 因预算不足未对冲次数
+     * @param hedgeRate 对冲比例
+     * @param hedgeWinRate 对冲胜出比例
+     * @param callHedgeDelayMs 当前同步调用的对冲延迟
+     * @param streamHedgeDelayMs 当前流式调用的对冲延迟
+     * @param hedgesPerMinute 每用户每分钟对冲预算
+     */
+    public record HedgeStats(
+            boolean active,
+            long callCount,
+            long streamCount,
+            long hedgeCount,
+            long hedgeWinCount,
+            long budgetDeniedCount,
+            double hedgeRate,
+            double hedgeWinRate,
+            long callHedgeDelayMs,
+            long streamHedgeDelayMs,
+            int hedgesPerMinute
+    ) {
+        public static HedgeStats inactive() {
+            return new HedgeStats(false, 0, 0, 0, 0, 0, 0.0, 0.0, 0, 0, 0);
+        }
+    }
+
+    record Outcome(ChatResponse response, boolean hedge) {}
+
+    /**
+     * 一次同步调用的竞速状态
+     * 任一方成功即完成；全部失败时以最先失败的异常完成
+     */
+    static final class Race {
+
+        final CompletableFuture<Outcome> winner = new CompletableFuture<>();
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+
+        void run(boolean hedge, Callable<ChatResponse> call) {
+            try {
+                winner.complete(new Outcome(call.call(), hedge));
+            } catch (Throwable e) {
+                if (!firstError.compareAndSet(null, e) && firstError.get() != e) {
+                    firstError.get().addSuppressed(e);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    winner.completeExceptionally(firstError.get());
+                }
+            }
+        }
+
+        /**
+         * 登记对冲请求，主模型已失败或已完成时返回 false
+         */
+        boolean addAttempt() {
+            pending.incrementAndGet();
+            return !winner.isDone();
+        }
+    }
+
+    /**
+     * 最近 {@value #SIZE} 次延迟的滑动窗口
+     */
+    static final class LatencyWindow {
+
+        private static final int SIZE = 128;
+
+        private final long[] samples = new long[SIZE];
+        private int count;
+        private int next;
+        private long p95 = -1;
+
+        synchronized void record(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % SIZE;
+            if (count < SIZE) {
+                count++;
+            }
+            p95 = -1;
+        }
+
+        /**
+         * 对冲延迟：样本不足时为初始延迟，否则为 p95 并限制在上下限之间
+         */
+        synchronized long hedgeDelayMs(Settings settings) {
+            if (count < settings.minSamples()) {
+                return settings.initialDelayMs();
+            }
+            if (p95 < 0) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                p95 = sorted[(int) Math.ceil(count * 0.95) - 1];
+            }
+            return Math.clamp(p95, settings.minDelayMs(), settings.maxDelayMs());
+        }
+    }
+}
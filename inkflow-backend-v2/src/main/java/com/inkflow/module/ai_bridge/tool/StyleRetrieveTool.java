@@ -33,6 +33,11 @@ public class StyleRetrieveTool {
 
     private final HybridSearchService hybridSearchService;
 
+    /**
+     * 风格样本上下文的Token预算标识（inkflow.rag.context-budget.workflow-budgets）
+     */
+    private static final String CONTEXT_BUDGET_KEY = "STYLE_SAMPLE";
+
     @Value("${inkflow.style.min-samples:3}")
     private int minSamples;
 
@@ -59,7 +64,7 @@ public class StyleRetrieveTool {
 
             // 检索相似内容作为风格参考
             String styleContext = hybridSearchService
-                    .buildContextForGeneration(projectUuid, context, sampleLimit)
+                    .buildContextForGeneration(projectUuid, context, sampleLimit, CONTEXT_BUDGET_KEY)
                     .block();
 
             if (styleContext == null || styleContext.isBlank()) {
@@ -101,7 +106,7 @@ public class StyleRetrieveTool {
             };
 
             String samples = hybridSearchService
-                    .buildContextForGeneration(projectUuid, query, maxSamples)
+                    .buildContextForGeneration(projectUuid, query, maxSamples, CONTEXT_BUDGET_KEY)
                     .block();
 
             if (samples == null || samples.isBlank()) {
@@ -137,7 +142,7 @@ public class StyleRetrieveTool {
 
             // 检索相似内容
             String existingContent = hybridSearchService
-                    .buildContextForGeneration(projectUuid, newContent, minSamples)
+                    .buildContextForGeneration(projectUuid, newContent, minSamples, CONTEXT_BUDGET_KEY)
                     .block();
 
             if (existingContent == null || existingContent.isBlank()) {
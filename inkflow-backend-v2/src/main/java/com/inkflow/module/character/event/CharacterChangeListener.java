@@ -5,20 +5,22 @@ import com.inkflow.module.consistency.service.ProactiveConsistencyService;
 import com.inkflow.module.evolution.entity.EntityType;
 import com.inkflow.module.evolution.service.EvolutionAnalysisService;
 import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.event.KnowledgeChunkChangedEvent;
 import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
 import com.inkflow.module.rag.service.ParentChildSearchService;
 import com.inkflow.module.character.entity.Character;
 import com.inkflow.module.character.repository.CharacterRepository;
+import com.inkflow.module.character.service.CharacterIndexingSourceLoader;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.lang.Nullable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -44,6 +46,7 @@ public class CharacterChangeListener {
     private final ParentChildSearchService parentChildSearchService;
     private final KnowledgeChunkRepository knowledgeChunkRepository;
     private final CharacterRepository characterRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * 处理角色变更事件
@@ -135,18 +138,13 @@ public class CharacterChangeListener {
             }
 
             // 构建索引内容
-            String content = buildCharacterContent(character);
+            String content = CharacterIndexingSourceLoader.indexContent(character);
             if (content.isBlank()) {
                 return;
             }
 
             // 构建元数据
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("name", character.getName());
-            metadata.put("role", character.getRole());
-            if (character.getArchetype() != null) {
-                metadata.put("archetype", character.getArchetype());
-            }
+            Map<String, Object> metadata = CharacterIndexingSourceLoader.indexMetadata(character);
 
             // 创建父子块索引
             parentChildSearchService.createParentChildIndex(
@@ -166,29 +164,6 @@ public class CharacterChangeListener {
         }
     }
 
-    /**
-     * 构建角色内容用于 RAG 索引
-     */
-    private String buildCharacterContent(Character character) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("角色名称: ").append(character.getName()).append("\n");
-        
-        if (character.getRole() != null) {
-            sb.append("角色类型: ").append(character.getRole()).append("\n");
-        }
-        if (character.getDescription() != null && !character.getDescription().isBlank()) {
-            sb.append("角色描述: ").append(character.getDescription()).append("\n");
-        }
-        if (character.getPersonality() != null && !character.getPersonality().isEmpty()) {
-            sb.append("性格特点: ").append(character.getPersonality().toString()).append("\n");
-        }
-        if (character.getArchetype() != null) {
-            sb.append("原型: ").append(character.getArchetype()).append("\n");
-        }
-        
-        return sb.toString();
-    }
-
     /**
      * 清理关联数据
      * Requirements: 2.4
@@ -207,6 +182,8 @@ public class CharacterChangeListener {
         try {
             // 删除关联的 RAG 知识块
             int deletedCount = knowledgeChunkRepository.deleteBySourceId(event.getCharacterId());
+            eventPublisher.publishEvent(KnowledgeChunkChangedEvent.sourceDeleted(
+                    this, event.getProjectId(), event.getCharacterId()));
             log.debug("Deleted {} knowledge chunks for Character: {}", deletedCount, event.getCharacterId());
         } catch (Exception e) {
             log.error("Failed to delete knowledge chunks for Character: {}", event.getCharacterId(), e);
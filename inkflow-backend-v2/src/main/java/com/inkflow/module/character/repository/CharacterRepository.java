@@ -1,6 +1,7 @@
 package com.inkflow.module.character.repository;
 
 import com.inkflow.module.character.entity.Character;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -73,4 +74,12 @@ public interface CharacterRepository extends JpaRepository<Character, UUID> {
                    "WHERE c.id = :characterId AND c.deleted_at IS NULL",
            nativeQuery = true)
     List<UUID> findRelatedCharacterIds(@Param("characterId") UUID characterId);
+
+    /**
+     * 按ID升序分页列出项目下的角色ID（键集分页，用于全量重建索引）
+     */
+    @Query("SELECT c.id FROM Character c WHERE c.projectId = :projectId AND c.id > :afterId ORDER BY c.id")
+    List<UUID> findIdsByProjectIdAfter(@Param("projectId") UUID projectId,
+                                       @Param("afterId") UUID afterId,
+                                       Pageable pageable);
 }
@@ -0,0 +1,104 @@
+package com.inkflow.module.character.service;
+
+import com.inkflow.module.character.entity.Character;
+import com.inkflow.module.character.repository.CharacterRepository;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.service.IndexingSourceLoader;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 角色索引来源加载器
+ * 读取角色的最新设定，拼装为索引内容
+ */
+@Component
+public class CharacterIndexingSourceLoader implements IndexingSourceLoader {
+
+    private final CharacterRepository characterRepository;
+
+    public CharacterIndexingSourceLoader(CharacterRepository characterRepository) {
+        this.characterRepository = characterRepository;
+    }
+
+    @Override
+    public String sourceType() {
+        return KnowledgeChunk.SOURCE_TYPE_CHARACTER;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<IndexingSource> load(UUID sourceId) {
+        return characterRepository.findById(sourceId).map(CharacterIndexingSourceLoader::toSource);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UUID> listSourceIds(UUID projectId, UUID afterId, int limit) {
+        return characterRepository.findIdsByProjectIdAfter(projectId, afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countSources(UUID projectId) {
+        return characterRepository.countByProjectId(projectId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<UUID, IndexingSource> loadAll(Collection<UUID> sourceIds) {
+        Map<UUID, IndexingSource> sources = new LinkedHashMap<>();
+        for (Character character : characterRepository.findAllById(sourceIds)) {
+            sources.put(character.getId(), toSource(character));
+        }
+        return sources;
+    }
+
+    private static IndexingSource toSource(Character character) {
+        return new IndexingSource(character.getProjectId(), indexContent(character), indexMetadata(character));
+    }
+
+    /**
+     * 构建角色内容用于 RAG 索引
+     */
+    public static String indexContent(Character character) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("角色名称: ").append(character.getName()).append("\n");
+
+        if (character.getRole() != null) {
+            sb.append("角色类型: ").append(character.getRole()).append("\n");
+        }
+        if (character.getDescription() != null && !character.getDescription().isBlank()) {
+            sb.append("角色描述: ").append(character.getDescription()).append("\n");
+        }
+        if (character.getPersonality() != null && !character.getPersonality().isEmpty()) {
+            sb.append("性格特点: ").append(character.getPersonality().toString()).append("\n");
+        }
+        if (character.getArchetype() != null) {
+            sb.append("原型: ").append(character.getArchetype()).append("\n");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * 构建角色索引元数据
+     */
+    public static Map<String, Object> indexMetadata(Character character) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("name", character.getName());
+        metadata.put("role", character.getRole());
+        if (character.getArchetype() != null) {
+            metadata.put("archetype", character.getArchetype());
+        }
+        return metadata;
+    }
+}
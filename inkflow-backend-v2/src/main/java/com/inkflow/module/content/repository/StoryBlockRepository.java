@@ -1,6 +1,7 @@
 package com.inkflow.module.content.repository;
 
 import com.inkflow.module.content.entity.StoryBlock;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -64,4 +65,21 @@ public interface StoryBlockRepository extends JpaRepository<StoryBlock, UUID> {
      */
     @Query("SELECT COALESCE(SUM(sb.wordCount), 0) FROM StoryBlock sb WHERE sb.chapterId = :chapterId AND sb.deleted = false")
     int sumWordCountByChapterId(@Param("chapterId") UUID chapterId);
+
+    /**
+     * 按ID升序分页列出项目下未删除的剧情块ID（键集分页，用于全量重建索引）
+     */
+    @Query("SELECT sb.id FROM StoryBlock sb WHERE sb.deleted = false AND sb.id > :afterId " +
+           "AND sb.chapterId IN (SELECT c.id FROM Chapter c WHERE c.projectId = :projectId AND c.deleted = false) " +
+           "ORDER BY sb.id")
+    List<UUID> findIdsByProjectIdAfter(@Param("projectId") UUID projectId,
+                                       @Param("afterId") UUID afterId,
+                                       Pageable pageable);
+
+    /**
+     * 统计项目下未删除的剧情块数量
+     */
+    @Query("SELECT COUNT(sb) FROM StoryBlock sb WHERE sb.deleted = false " +
+           "AND sb.chapterId IN (SELECT c.id FROM Chapter c WHERE c.projectId = :projectId AND c.deleted = false)")
+    long countByProjectId(@Param("projectId") UUID projectId);
 }
@@ -0,0 +1,96 @@
+package com.inkflow.module.content.service;
+
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.event.KnowledgeChunkChangedEvent;
+import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
+import com.inkflow.module.rag.service.ParentChildSearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 剧情块直接索引器
+ *
+ * 索引队列关闭时的回退路径，独立成 Bean 以便 @Async 经代理生效，
+ * Embedding 生成和索引清理不在剧情块保存事务内同步执行
+ */
+@Component
+public class StoryBlockDirectIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(StoryBlockDirectIndexer.class);
+
+    @Nullable
+    private final ParentChildSearchService parentChildSearchService;
+    private final KnowledgeChunkRepository knowledgeChunkRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public StoryBlockDirectIndexer(
+        @Nullable ParentChildSearchService parentChildSearchService,
+        KnowledgeChunkRepository knowledgeChunkRepository,
+        ApplicationEventPublisher eventPublisher
+    ) {
+        this.parentChildSearchService = parentChildSearchService;
+        this.knowledgeChunkRepository = knowledgeChunkRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * 是否可以创建索引
+     */
+    public boolean isAvailable() {
+        return parentChildSearchService != null;
+    }
+
+    /**
+     * 异步创建剧情块的父子块索引
+     *
+     * @param projectId 项目ID
+     * @param blockId 剧情块ID
+     * @param content 剧情块内容
+     * @param metadata 索引元数据
+     */
+    @Async
+    public void index(UUID projectId, UUID blockId, String content, Map<String, Object> metadata) {
+        if (parentChildSearchService == null) {
+            return;
+        }
+        try {
+            KnowledgeChunk parent = parentChildSearchService.createParentChildIndex(
+                    projectId,
+                    KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK,
+                    blockId,
+                    content,
+                    metadata
+            ).block();
+            if (parent != null) {
+                log.debug("Created parent-child index for block: {}, parentId: {}", blockId, parent.getId());
+            }
+        } catch (Exception e) {
+            log.error("Failed to create parent-child index for block: {}", blockId, e);
+        }
+    }
+
+    /**
+     * 异步删除剧情块的知识块
+     *
+     * @param blockId 剧情块ID
+     */
+    @Async
+    @Transactional
+    public void delete(UUID blockId) {
+        try {
+            int deletedCount = knowledgeChunkRepository.deleteBySourceId(blockId);
+            eventPublisher.publishEvent(KnowledgeChunkChangedEvent.sourceDeleted(this, null, blockId));
+            log.debug("Deleted {} knowledge chunks for block: {}", deletedCount, blockId);
+        } catch (Exception e) {
+            log.error("Error deleting knowledge chunks for block: {}", blockId, e);
+        }
+    }
+}
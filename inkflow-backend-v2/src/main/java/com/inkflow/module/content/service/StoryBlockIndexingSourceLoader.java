@@ -0,0 +1,107 @@
+package com.inkflow.module.content.service;
+
+import com.inkflow.module.content.entity.Chapter;
+import com.inkflow.module.content.entity.StoryBlock;
+import com.inkflow.module.content.repository.ChapterRepository;
+import com.inkflow.module.content.repository.StoryBlockRepository;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.service.IndexingSourceLoader;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 剧情块索引来源加载器
+ * 索引任务执行时读取剧情块的最新内容和所属项目
+ */
+@Component
+public class StoryBlockIndexingSourceLoader implements IndexingSourceLoader {
+
+    private final StoryBlockRepository storyBlockRepository;
+    private final ChapterRepository chapterRepository;
+
+    public StoryBlockIndexingSourceLoader(
+        StoryBlockRepository storyBlockRepository,
+        ChapterRepository chapterRepository
+    ) {
+        this.storyBlockRepository = storyBlockRepository;
+        this.chapterRepository = chapterRepository;
+    }
+
+    @Override
+    public String sourceType() {
+        return KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<IndexingSource> load(UUID sourceId) {
+        return storyBlockRepository.findById(sourceId)
+            .filter(block -> !block.isDeleted())
+            .flatMap(block -> chapterRepository.findById(block.getChapterId())
+                .map(chapter -> new IndexingSource(
+                    chapter.getProjectId(),
+                    block.getContent(),
+                    indexMetadata(block)
+                )));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UUID> listSourceIds(UUID projectId, UUID afterId, int limit) {
+        return storyBlockRepository.findIdsByProjectIdAfter(projectId, afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countSources(UUID projectId) {
+        return storyBlockRepository.countByProjectId(projectId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<UUID, IndexingSource> loadAll(Collection<UUID> sourceIds) {
+        List<StoryBlock> blocks = storyBlockRepository.findAllById(sourceIds).stream()
+            .filter(block -> !block.isDeleted())
+            .toList();
+        Map<UUID, Chapter> chapters = chapterRepository.findAllById(
+                blocks.stream().map(StoryBlock::getChapterId).collect(Collectors.toSet())).stream()
+            .collect(Collectors.toMap(Chapter::getId, Function.identity()));
+
+        Map<UUID, IndexingSource> sources = new LinkedHashMap<>();
+        for (StoryBlock block : blocks) {
+            Chapter chapter = chapters.get(block.getChapterId());
+            if (chapter != null) {
+                sources.put(block.getId(), new IndexingSource(
+                    chapter.getProjectId(),
+                    block.getContent(),
+                    indexMetadata(block)
+                ));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * 构建剧情块索引元数据
+     */
+    static Map<String, Object> indexMetadata(StoryBlock block) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("chapterId", block.getChapterId().toString());
+        metadata.put("blockType", block.getBlockType().name());
+        if (block.getMetadata() != null) {
+            metadata.putAll(block.getMetadata());
+        }
+        return metadata;
+    }
+}
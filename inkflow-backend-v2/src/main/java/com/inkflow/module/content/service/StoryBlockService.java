@@ -7,16 +7,13 @@ import com.inkflow.module.content.entity.StoryBlock;
 import com.inkflow.module.content.repository.ChapterRepository;
 import com.inkflow.module.content.repository.StoryBlockRepository;
 import com.inkflow.module.rag.entity.KnowledgeChunk;
-import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
-import com.inkflow.module.rag.service.ParentChildSearchService;
+import com.inkflow.module.rag.service.IndexingQueueService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.Nullable;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -34,22 +31,22 @@ public class StoryBlockService {
     private final StoryBlockRepository storyBlockRepository;
     private final ChapterRepository chapterRepository;
     private final LexorankService lexorankService;
+    private final StoryBlockDirectIndexer directIndexer;
     @Nullable
-    private final ParentChildSearchService parentChildSearchService;
-    private final KnowledgeChunkRepository knowledgeChunkRepository;
+    private final IndexingQueueService indexingQueueService;
     
     public StoryBlockService(
         StoryBlockRepository storyBlockRepository,
         ChapterRepository chapterRepository,
         LexorankService lexorankService,
-        @Nullable ParentChildSearchService parentChildSearchService,
-        KnowledgeChunkRepository knowledgeChunkRepository
+        StoryBlockDirectIndexer directIndexer,
+        @Nullable IndexingQueueService indexingQueueService
     ) {
         this.storyBlockRepository = storyBlockRepository;
         this.chapterRepository = chapterRepository;
         this.lexorankService = lexorankService;
-        this.parentChildSearchService = parentChildSearchService;
-        this.knowledgeChunkRepository = knowledgeChunkRepository;
+        this.directIndexer = directIndexer;
+        this.indexingQueueService = indexingQueueService;
     }
     
     /**
@@ -162,7 +159,7 @@ public class StoryBlockService {
         // 更新章节字数
         updateChapterWordCount(chapterId);
         
-        // 触发父子块索引更新（会先删除旧索引再创建新索引）
+        // 触发父子块索引更新（索引队列按剧情块去抖，连续保存只索引最后一次）
         triggerIndexing(block);
         
         return block;
@@ -297,14 +294,27 @@ public class StoryBlockService {
     // ==================== 父子块索引方法 ====================
 
     /**
-     * 异步触发剧情块的父子块索引创建
+     * 触发剧情块的父子块索引创建
      * 在创建或更新剧情块后调用，为内容创建语义分块索引
      * 
+     * 启用索引队列时与剧情块写入同事务入队，由队列去抖后执行；否则直接异步创建索引
+     * 
      * @param block 剧情块
      */
-    @Async
     public void triggerIndexing(StoryBlock block) {
-        if (parentChildSearchService == null) {
+        if (indexingQueueService != null && indexingQueueService.isEnabled()) {
+            Chapter chapter = chapterRepository.findById(block.getChapterId()).orElse(null);
+            if (chapter == null) {
+                log.warn("Chapter not found for block: {}, skipping indexing", block.getId());
+                return;
+            }
+            // 内容为空时同样入队，由队列删除旧索引
+            indexingQueueService.enqueueIndex(
+                    chapter.getProjectId(), KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK, block.getId());
+            return;
+        }
+
+        if (!directIndexer.isAvailable()) {
             log.debug("ParentChildSearchService not available, skipping indexing for block: {}", block.getId());
             return;
         }
@@ -326,44 +336,35 @@ public class StoryBlockService {
             UUID projectId = chapter.getProjectId();
             
             // 构建元数据
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("chapterId", block.getChapterId().toString());
-            metadata.put("blockType", block.getBlockType().name());
-            if (block.getMetadata() != null) {
-                metadata.putAll(block.getMetadata());
-            }
+            Map<String, Object> metadata = StoryBlockIndexingSourceLoader.indexMetadata(block);
 
-            // 创建父子块索引
-            parentChildSearchService.createParentChildIndex(
-                    projectId,
-                    KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK,
-                    block.getId(),
-                    block.getContent(),
-                    metadata
-            ).subscribe(
-                    parent -> log.debug("Created parent-child index for block: {}, parentId: {}", 
-                            block.getId(), parent.getId()),
-                    error -> log.error("Failed to create parent-child index for block: {}", 
-                            block.getId(), error)
-            );
+            // 异步创建父子块索引，不占用保存事务
+            directIndexer.index(projectId, block.getId(), block.getContent(), metadata);
         } catch (Exception e) {
             log.error("Error triggering indexing for block: {}", block.getId(), e);
         }
     }
 
     /**
-     * 异步触发剧情块的索引删除
+     * 触发剧情块的索引删除
      * 在删除剧情块后调用，清理相关的知识块
      * 
+     * 启用索引队列时入队删除任务，覆盖该剧情块尚未执行的索引任务
+     * 
      * @param blockId 剧情块ID
      */
-    @Async
     public void triggerIndexDeletion(UUID blockId) {
-        try {
-            int deletedCount = knowledgeChunkRepository.deleteBySourceId(blockId);
-            log.debug("Deleted {} knowledge chunks for block: {}", deletedCount, blockId);
-        } catch (Exception e) {
-            log.error("Error deleting knowledge chunks for block: {}", blockId, e);
+        if (indexingQueueService != null && indexingQueueService.isEnabled()) {
+            UUID projectId = storyBlockRepository.findById(blockId)
+                    .flatMap(block -> chapterRepository.findById(block.getChapterId()))
+                    .map(Chapter::getProjectId)
+                    .orElse(null);
+            if (projectId != null) {
+                indexingQueueService.enqueueDelete(projectId, KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK, blockId);
+                return;
+            }
         }
+
+        directIndexer.delete(blockId);
     }
 }
@@ -13,6 +13,7 @@ import com.inkflow.module.project.entity.CreationPhase;
 import com.inkflow.module.project.entity.Project;
 import com.inkflow.module.project.entity.ProjectStatus;
 import com.inkflow.module.project.repository.ProjectRepository;
+import com.inkflow.module.rag.service.ProjectReindexService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -42,18 +43,21 @@ public class ImportService {
     private final VolumeRepository volumeRepository;
     private final ChapterRepository chapterRepository;
     private final StoryBlockRepository storyBlockRepository;
+    private final ProjectReindexService projectReindexService;
     private final ObjectMapper objectMapper;
     
     public ImportService(
         ProjectRepository projectRepository,
         VolumeRepository volumeRepository,
         ChapterRepository chapterRepository,
-        StoryBlockRepository storyBlockRepository
+        StoryBlockRepository storyBlockRepository,
+        ProjectReindexService projectReindexService
     ) {
         this.projectRepository = projectRepository;
         this.volumeRepository = volumeRepository;
         this.chapterRepository = chapterRepository;
         this.storyBlockRepository = storyBlockRepository;
+        this.projectReindexService = projectReindexService;
         
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
@@ -116,6 +120,9 @@ public class ImportService {
             }
         }
         
+        // 导入的剧情块不触发逐条索引，与导入同事务提交全量重建任务，由后台批量写入
+        projectReindexService.start(project.getId(), false);
+        
         log.info("导入项目成功: projectId={}, userId={}, title={}", 
             project.getId(), userId, project.getTitle());
         
@@ -2,6 +2,8 @@ package com.inkflow.module.rag.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.Map;
+
 /**
  * RAG模块统一配置类
  * 整合混合检索、向量嵌入、语义分块、全文搜索和重排序的所有配置。
@@ -16,7 +18,14 @@ public record RagProperties(
     ChunkingConfig chunking,
     FullTextConfig fullText,
     RerankerConfig reranker,
-    SearchConfig search
+    SearchConfig search,
+    VectorIndexConfig vectorIndex,
+    IndexingQueueConfig indexingQueue,
+    PartitionConfig partition,
+    ReindexConfig reindex,
+    BulkWriteConfig bulkWrite,
+    ContextBudgetConfig contextBudget,
+    OfflineModelConfig offlineModel
 ) {
     
     /**
@@ -25,17 +34,168 @@ public record RagProperties(
      */
     public record SearchConfig(
         /** 是否使用父子块检索策略（小块检索，大块返回） */
-        boolean useParentChild
+        boolean useParentChild,
+        /** 检索结果缓存配置 */
+        ResultCacheConfig resultCache,
+        /** 两阶段量化向量检索配置 */
+        QuantizedSearchConfig quantized,
+        /** pgvector HNSW查询参数自适应配置 */
+        HnswTuningConfig hnsw
     ) {
         // Default value constants
         public static final boolean DEFAULT_USE_PARENT_CHILD = true;
         
         public SearchConfig {
             // useParentChild 是 boolean，无需特殊处理，默认值在 defaults() 中设置
+            if (resultCache == null) resultCache = ResultCacheConfig.defaults();
+            if (quantized == null) quantized = QuantizedSearchConfig.defaults();
+            if (hnsw == null) hnsw = HnswTuningConfig.defaults();
         }
         
         public static SearchConfig defaults() {
-            return new SearchConfig(DEFAULT_USE_PARENT_CHILD);
+            return new SearchConfig(DEFAULT_USE_PARENT_CHILD, ResultCacheConfig.defaults(),
+                    QuantizedSearchConfig.defaults(), HnswTuningConfig.defaults());
+        }
+    }
+
+    /**
+     * pgvector HNSW查询参数自适应配置
+     * 每次查询在事务内按请求数量和项目过滤选择度设置 hnsw.ef_search（pgvector 0.8+ 同时启用迭代扫描），
+     * 返回行数不足时放宽参数重试，最后可退化为精确扫描
+     */
+    public record HnswTuningConfig(
+        /** 是否启用自适应查询参数，关闭时使用pgvector默认值 */
+        boolean enabled,
+        /** ef_search = 索引扫描行数 × 该倍数 */
+        double efMultiplier,
+        /** ef_search 下限 */
+        int minEfSearch,
+        /** ef_search 上限（pgvector允许的最大值为1000） */
+        int maxEfSearch,
+        /** 项目在分区中的行数占比低于该值时视为选择性过滤，启用迭代扫描 */
+        double selectiveThreshold,
+        /** 返回行数不足时的最大重试次数，每次 ef_search 和扫描上限放大 retryGrowth 倍 */
+        int maxRetries,
+        /** 重试时参数放大倍数 */
+        int retryGrowth,
+        /** 重试后仍不足且项目可检索行数不超过该值时，退化为精确扫描；0表示不退化 */
+        long exactFallbackMaxRows,
+        /** 项目行数/分区行数统计的缓存时间（毫秒） */
+        long statsTtlMs
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = true;
+        public static final double DEFAULT_EF_MULTIPLIER = 2.0;
+        public static final int DEFAULT_MIN_EF_SEARCH = 40;
+        public static final int DEFAULT_MAX_EF_SEARCH = 1000;
+        public static final double DEFAULT_SELECTIVE_THRESHOLD = 0.5;
+        public static final int DEFAULT_MAX_RETRIES = 2;
+        public static final int DEFAULT_RETRY_GROWTH = 4;
+        public static final long DEFAULT_EXACT_FALLBACK_MAX_ROWS = 20_000L;
+        public static final long DEFAULT_STATS_TTL_MS = 300_000L;
+
+        public HnswTuningConfig {
+            if (efMultiplier <= 0) efMultiplier = DEFAULT_EF_MULTIPLIER;
+            if (minEfSearch <= 0) minEfSearch = DEFAULT_MIN_EF_SEARCH;
+            if (maxEfSearch <= 0 || maxEfSearch > DEFAULT_MAX_EF_SEARCH) maxEfSearch = DEFAULT_MAX_EF_SEARCH;
+            if (minEfSearch > maxEfSearch) minEfSearch = maxEfSearch;
+            if (selectiveThreshold <= 0 || selectiveThreshold > 1) selectiveThreshold = DEFAULT_SELECTIVE_THRESHOLD;
+            if (maxRetries < 0) maxRetries = DEFAULT_MAX_RETRIES;
+            if (retryGrowth < 2) retryGrowth = DEFAULT_RETRY_GROWTH;
+            if (exactFallbackMaxRows < 0) exactFallbackMaxRows = DEFAULT_EXACT_FALLBACK_MAX_ROWS;
+            if (statsTtlMs <= 0) statsTtlMs = DEFAULT_STATS_TTL_MS;
+        }
+
+        public static HnswTuningConfig defaults() {
+            return new HnswTuningConfig(
+                DEFAULT_ENABLED,
+                DEFAULT_EF_MULTIPLIER,
+                DEFAULT_MIN_EF_SEARCH,
+                DEFAULT_MAX_EF_SEARCH,
+                DEFAULT_SELECTIVE_THRESHOLD,
+                DEFAULT_MAX_RETRIES,
+                DEFAULT_RETRY_GROWTH,
+                DEFAULT_EXACT_FALLBACK_MAX_ROWS,
+                DEFAULT_STATS_TTL_MS
+            );
+        }
+    }
+
+    /**
+     * 两阶段量化向量检索配置
+     * 先在二值量化列(embedding_bin)上按汉明距离取 limit × oversampling 个候选，再用halfvec列精确重排
+     */
+    public record QuantizedSearchConfig(
+        /** 是否启用两阶段量化检索，关闭时直接查询halfvec索引 */
+        boolean enabled,
+        /** 过采样倍数，越大召回越高、延迟越高 */
+        int oversampling,
+        /** 最少候选数，避免小limit时候选过少 */
+        int minCandidates,
+        /** 最多候选数，限制精确重排的开销 */
+        int maxCandidates,
+        /** 影子对比精确检索的采样率（0-1），用于统计recall@k */
+        double shadowSampleRate
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = false;
+        public static final int DEFAULT_OVERSAMPLING = 8;
+        public static final int DEFAULT_MIN_CANDIDATES = 80;
+        public static final int DEFAULT_MAX_CANDIDATES = 1000;
+        public static final double DEFAULT_SHADOW_SAMPLE_RATE = 0.05;
+
+        public QuantizedSearchConfig {
+            if (oversampling <= 0) oversampling = DEFAULT_OVERSAMPLING;
+            if (minCandidates <= 0) minCandidates = DEFAULT_MIN_CANDIDATES;
+            if (maxCandidates <= 0) maxCandidates = DEFAULT_MAX_CANDIDATES;
+            if (maxCandidates < minCandidates) maxCandidates = minCandidates;
+            if (shadowSampleRate < 0 || shadowSampleRate > 1) shadowSampleRate = DEFAULT_SHADOW_SAMPLE_RATE;
+        }
+
+        /**
+         * 计算粗排候选数，不小于limit
+         */
+        public int candidateLimit(int limit) {
+            long candidates = (long) limit * oversampling;
+            candidates = Math.max(minCandidates, Math.min(maxCandidates, candidates));
+            return (int) Math.max(limit, candidates);
+        }
+
+        public static QuantizedSearchConfig defaults() {
+            return new QuantizedSearchConfig(
+                DEFAULT_ENABLED,
+                DEFAULT_OVERSAMPLING,
+                DEFAULT_MIN_CANDIDATES,
+                DEFAULT_MAX_CANDIDATES,
+                DEFAULT_SHADOW_SAMPLE_RATE
+            );
+        }
+    }
+
+    /**
+     * 检索结果缓存配置
+     * 缓存条目按项目索引版本标记，知识块写入后版本递增，旧结果自动失效
+     */
+    public record ResultCacheConfig(
+        /** 是否启用检索结果缓存 */
+        boolean enabled,
+        /** 最大缓存条目数 */
+        int maxSize,
+        /** 兜底过期时间（毫秒） */
+        long ttlMs
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = true;
+        public static final int DEFAULT_MAX_SIZE = 2000;
+        public static final long DEFAULT_TTL_MS = 600_000L;
+
+        public ResultCacheConfig {
+            if (maxSize <= 0) maxSize = DEFAULT_MAX_SIZE;
+            if (ttlMs <= 0) ttlMs = DEFAULT_TTL_MS;
+        }
+
+        public static ResultCacheConfig defaults() {
+            return new ResultCacheConfig(DEFAULT_ENABLED, DEFAULT_MAX_SIZE, DEFAULT_TTL_MS);
         }
     }
     
@@ -56,7 +216,9 @@ public record RagProperties(
         /** 召回倍数（用于两阶段检索） */
         int recallMultiplier,
         /** 相似度阈值（用于去重） */
-        double similarityThreshold
+        double similarityThreshold,
+        /** 多路召回融合配置 */
+        FusionConfig fusion
     ) {
         // Default value constants
         public static final double DEFAULT_RRF_K = 60.0;
@@ -74,6 +236,7 @@ public record RagProperties(
             if (defaultTopK <= 0) defaultTopK = DEFAULT_TOP_K;
             if (recallMultiplier <= 0) recallMultiplier = DEFAULT_RECALL_MULTIPLIER;
             if (similarityThreshold <= 0) similarityThreshold = DEFAULT_SIMILARITY_THRESHOLD;
+            if (fusion == null) fusion = FusionConfig.defaults();
         }
         
         public static HybridSearchConfig defaults() {
@@ -84,11 +247,77 @@ public record RagProperties(
                 DEFAULT_ENABLE_RERANKER,
                 DEFAULT_TOP_K,
                 DEFAULT_RECALL_MULTIPLIER,
-                DEFAULT_SIMILARITY_THRESHOLD
+                DEFAULT_SIMILARITY_THRESHOLD,
+                FusionConfig.defaults()
             );
         }
     }
 
+    /**
+     * 多路召回融合配置
+     * 每一路召回独立配置开关、权重和RRF常数，融合分数 = Σ weight / (k + rank)
+     */
+    public record FusionConfig(
+        /** 传统向量检索（块级）；未使用父子块检索时始终启用 */
+        RetrieverConfig vector,
+        /** 父子块检索（子块召回，父块返回），需同时开启 search.use-parent-child */
+        RetrieverConfig parentChild,
+        /** 全文检索 */
+        RetrieverConfig fullText,
+        /** 百科标题/别名匹配 */
+        RetrieverConfig wikiTitle,
+        /** 时间线新近度（按章节顺序对已召回结果排序） */
+        RetrieverConfig recency
+    ) {
+        public FusionConfig {
+            if (vector == null) vector = RetrieverConfig.disabledByDefault();
+            if (parentChild == null) parentChild = RetrieverConfig.enabledByDefault();
+            if (fullText == null) fullText = RetrieverConfig.enabledByDefault();
+            if (wikiTitle == null) wikiTitle = RetrieverConfig.enabledByDefault();
+            if (recency == null) recency = new RetrieverConfig(false, RetrieverConfig.DEFAULT_RECENCY_WEIGHT, 0);
+        }
+
+        public static FusionConfig defaults() {
+            return new FusionConfig(null, null, null, null, null);
+        }
+    }
+
+    /**
+     * 单路召回配置
+     */
+    public record RetrieverConfig(
+        /** 是否启用 */
+        boolean enabled,
+        /** 融合权重 */
+        double weight,
+        /** RRF常数，未配置时使用 hybrid-search.rrf-k */
+        double k
+    ) {
+        // Default value constants
+        public static final double DEFAULT_WEIGHT = 1.0;
+        public static final double DEFAULT_RECENCY_WEIGHT = 0.3;
+
+        public RetrieverConfig {
+            if (weight <= 0) weight = DEFAULT_WEIGHT;
+            if (k < 0) k = 0;
+        }
+
+        public static RetrieverConfig enabledByDefault() {
+            return new RetrieverConfig(true, DEFAULT_WEIGHT, 0);
+        }
+
+        public static RetrieverConfig disabledByDefault() {
+            return new RetrieverConfig(false, DEFAULT_WEIGHT, 0);
+        }
+
+        /**
+         * 获取有效的RRF常数
+         */
+        public double effectiveK(double defaultK) {
+            return k > 0 ? k : defaultK;
+        }
+    }
+
 
     /**
      * 向量嵌入服务配置
@@ -121,7 +350,11 @@ public record RagProperties(
         /** 是否启用降级 */
         boolean enableFallback,
         /** 断路器配置 */
-        CircuitBreakerConfig circuitBreaker
+        CircuitBreakerConfig circuitBreaker,
+        /** 单条请求合并配置 */
+        CoalescingConfig coalescing,
+        /** L3持久化缓存配置 */
+        PersistentCacheConfig persistentCache
     ) {
         // Default value constants
         public static final String DEFAULT_PROVIDER = "local-bge";
@@ -151,6 +384,8 @@ public record RagProperties(
             if (cacheExpirationSeconds <= 0) cacheExpirationSeconds = DEFAULT_CACHE_EXPIRATION_SECONDS;
             if (cacheMaxSize <= 0) cacheMaxSize = DEFAULT_CACHE_MAX_SIZE;
             if (circuitBreaker == null) circuitBreaker = CircuitBreakerConfig.embeddingDefaults();
+            if (coalescing == null) coalescing = CoalescingConfig.defaults();
+            if (persistentCache == null) persistentCache = PersistentCacheConfig.defaults();
         }
         
         public static EmbeddingConfig defaults() {
@@ -168,7 +403,80 @@ public record RagProperties(
                 DEFAULT_CACHE_EXPIRATION_SECONDS,
                 DEFAULT_CACHE_MAX_SIZE,
                 DEFAULT_ENABLE_FALLBACK,
-                CircuitBreakerConfig.embeddingDefaults()
+                CircuitBreakerConfig.embeddingDefaults(),
+                CoalescingConfig.defaults(),
+                PersistentCacheConfig.defaults()
+            );
+        }
+    }
+
+    /**
+     * 单条Embedding请求合并配置
+     * 在时间窗口内把并发的单条请求合并为一次批量调用，相同文本共享同一次调用
+     */
+    public record CoalescingConfig(
+        /** 是否启用请求合并 */
+        boolean enabled,
+        /** 合并窗口（毫秒），窗口内到达的请求合并为一批 */
+        long windowMs,
+        /** 单批最大条数，达到后立即发送 */
+        int maxBatchSize
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = true;
+        public static final long DEFAULT_WINDOW_MS = 5L;
+        public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
+        public CoalescingConfig {
+            if (windowMs < 0) windowMs = DEFAULT_WINDOW_MS;
+            if (maxBatchSize <= 0) maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        }
+
+        public static CoalescingConfig defaults() {
+            return new CoalescingConfig(
+                DEFAULT_ENABLED,
+                DEFAULT_WINDOW_MS,
+                DEFAULT_MAX_BATCH_SIZE
+            );
+        }
+    }
+
+    /**
+     * L3持久化Embedding缓存配置（embedding_cache表）
+     */
+    public record PersistentCacheConfig(
+        /** 是否启用L3缓存 */
+        boolean enabled,
+        /** 最大保留条数，超出后按最近访问时间淘汰 */
+        long maxEntries,
+        /** 超过该天数未访问的条目直接淘汰 */
+        int maxIdleDays,
+        /** 单次淘汰删除的最大条数 */
+        int purgeBatchSize,
+        /** 异步写入队列容量（批次数），队列满时丢弃本次写入 */
+        int writeQueueCapacity
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = true;
+        public static final long DEFAULT_MAX_ENTRIES = 500_000L;
+        public static final int DEFAULT_MAX_IDLE_DAYS = 90;
+        public static final int DEFAULT_PURGE_BATCH_SIZE = 5000;
+        public static final int DEFAULT_WRITE_QUEUE_CAPACITY = 256;
+
+        public PersistentCacheConfig {
+            if (maxEntries <= 0) maxEntries = DEFAULT_MAX_ENTRIES;
+            if (maxIdleDays <= 0) maxIdleDays = DEFAULT_MAX_IDLE_DAYS;
+            if (purgeBatchSize <= 0) purgeBatchSize = DEFAULT_PURGE_BATCH_SIZE;
+            if (writeQueueCapacity <= 0) writeQueueCapacity = DEFAULT_WRITE_QUEUE_CAPACITY;
+        }
+
+        public static PersistentCacheConfig defaults() {
+            return new PersistentCacheConfig(
+                DEFAULT_ENABLED,
+                DEFAULT_MAX_ENTRIES,
+                DEFAULT_MAX_IDLE_DAYS,
+                DEFAULT_PURGE_BATCH_SIZE,
+                DEFAULT_WRITE_QUEUE_CAPACITY
             );
         }
     }
@@ -197,7 +505,11 @@ public record RagProperties(
         /** 上下文窗口大小 */
         int contextWindowSize,
         /** 上下文重叠大小 */
-        int contextOverlapSize
+        int contextOverlapSize,
+        /** 断崖检测滑动窗口（句子边界数） */
+        int windowSentences,
+        /** 每个窗口中词面相似度最低、需要语义打分的边界比例（0-1） */
+        double lexicalCandidateRatio
     ) {
         // Default value constants
         public static final int DEFAULT_MAX_CHILD_SIZE = 400;
@@ -210,6 +522,8 @@ public record RagProperties(
         public static final boolean DEFAULT_USE_RERANKER = true;
         public static final int DEFAULT_CONTEXT_WINDOW_SIZE = 1000;
         public static final int DEFAULT_CONTEXT_OVERLAP_SIZE = 100;
+        public static final int DEFAULT_WINDOW_SENTENCES = 32;
+        public static final double DEFAULT_LEXICAL_CANDIDATE_RATIO = 0.4;
         
         public ChunkingConfig {
             if (maxChildSize <= 0) maxChildSize = DEFAULT_MAX_CHILD_SIZE;
@@ -221,6 +535,8 @@ public record RagProperties(
             if (similarityThreshold <= 0) similarityThreshold = DEFAULT_SIMILARITY_THRESHOLD;
             if (contextWindowSize <= 0) contextWindowSize = DEFAULT_CONTEXT_WINDOW_SIZE;
             if (contextOverlapSize <= 0) contextOverlapSize = DEFAULT_CONTEXT_OVERLAP_SIZE;
+            if (windowSentences <= 0) windowSentences = DEFAULT_WINDOW_SENTENCES;
+            if (lexicalCandidateRatio <= 0 || lexicalCandidateRatio > 1) lexicalCandidateRatio = DEFAULT_LEXICAL_CANDIDATE_RATIO;
         }
         
         public static ChunkingConfig defaults() {
@@ -234,7 +550,9 @@ public record RagProperties(
                 DEFAULT_SIMILARITY_THRESHOLD,
                 DEFAULT_USE_RERANKER,
                 DEFAULT_CONTEXT_WINDOW_SIZE,
-                DEFAULT_CONTEXT_OVERLAP_SIZE
+                DEFAULT_CONTEXT_OVERLAP_SIZE,
+                DEFAULT_WINDOW_SENTENCES,
+                DEFAULT_LEXICAL_CANDIDATE_RATIO
             );
         }
     }
@@ -264,7 +582,9 @@ public record RagProperties(
         /** 高亮配置 */
         HighlightConfig highlight,
         /** zhparser 中文分词配置 */
-        ZhparserConfig zhparser
+        ZhparserConfig zhparser,
+        /** 查询编译与分词结果缓存配置 */
+        QueryCacheConfig queryCache
     ) {
         // Default value constants
         public static final boolean DEFAULT_ENABLED = false;
@@ -286,6 +606,7 @@ public record RagProperties(
             if (retryDelayMs <= 0) retryDelayMs = DEFAULT_RETRY_DELAY_MS;
             if (highlight == null) highlight = HighlightConfig.defaults();
             if (zhparser == null) zhparser = ZhparserConfig.defaults();
+            if (queryCache == null) queryCache = QueryCacheConfig.defaults();
         }
         
         public static FullTextConfig defaults() {
@@ -299,10 +620,44 @@ public record RagProperties(
                 DEFAULT_RETRY_DELAY_MS,
                 DEFAULT_FALLBACK_TO_KEYWORD,
                 HighlightConfig.defaults(),
-                ZhparserConfig.defaults()
+                ZhparserConfig.defaults(),
+                QueryCacheConfig.defaults()
             );
         }
     }
+
+    /**
+     * 全文查询缓存配置
+     * 查询计划缓存：查询文本 → 预处理结果、查询类型和SQL模板，命中时跳过正则预处理和SQL拼接；
+     * 分词缓存：zhparser 分词/tsquery 结果，自定义词典变更时整体失效
+     */
+    public record QueryCacheConfig(
+        /** 是否启用缓存 */
+        boolean enabled,
+        /** 查询计划缓存最大条目数 */
+        int planMaxSize,
+        /** 分词结果缓存最大条目数 */
+        int segmentationMaxSize,
+        /** 分词结果过期时间（毫秒），兜底数据库侧词典被直接修改的情况 */
+        long segmentationTtlMs
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = true;
+        public static final int DEFAULT_PLAN_MAX_SIZE = 10_000;
+        public static final int DEFAULT_SEGMENTATION_MAX_SIZE = 5_000;
+        public static final long DEFAULT_SEGMENTATION_TTL_MS = 600_000L;
+
+        public QueryCacheConfig {
+            if (planMaxSize <= 0) planMaxSize = DEFAULT_PLAN_MAX_SIZE;
+            if (segmentationMaxSize <= 0) segmentationMaxSize = DEFAULT_SEGMENTATION_MAX_SIZE;
+            if (segmentationTtlMs <= 0) segmentationTtlMs = DEFAULT_SEGMENTATION_TTL_MS;
+        }
+
+        public static QueryCacheConfig defaults() {
+            return new QueryCacheConfig(DEFAULT_ENABLED, DEFAULT_PLAN_MAX_SIZE,
+                    DEFAULT_SEGMENTATION_MAX_SIZE, DEFAULT_SEGMENTATION_TTL_MS);
+        }
+    }
     
     /**
      * 高亮显示配置
@@ -412,7 +767,7 @@ public record RagProperties(
         boolean enableFallback,
         /** 是否启用缓存 */
         boolean enableCache,
-        /** 缓存最大条目数 */
+        /** 缓存最大得分对数（每个 查询-文档 得分为一条） */
         int cacheMaxSize,
         /** 缓存过期时间（毫秒） */
         long cacheExpirationMs,
@@ -431,7 +786,7 @@ public record RagProperties(
         public static final int DEFAULT_TOP_K_MULTIPLIER = 2;
         public static final boolean DEFAULT_ENABLE_FALLBACK = true;
         public static final boolean DEFAULT_ENABLE_CACHE = true;
-        public static final int DEFAULT_CACHE_MAX_SIZE = 1000;
+        public static final int DEFAULT_CACHE_MAX_SIZE = 50000;
         public static final long DEFAULT_CACHE_EXPIRATION_MS = 300000L; // 5 minutes
         
         public RerankerConfig {
@@ -518,6 +873,365 @@ public record RagProperties(
         }
     }
     
+    /**
+     * 进程内向量索引配置
+     * 按项目分片的内存ANN索引（HNSW图 + 暴力扫描），作为pgvector之外的可选召回路径
+     */
+    public record VectorIndexConfig(
+        /** 是否启用进程内向量索引 */
+        boolean enabled,
+        /** 检索模式: hnsw 或 brute-force */
+        String mode,
+        /** 最多常驻内存的项目分片数（LRU淘汰） */
+        int maxShards,
+        /** HNSW每层最大连接数M */
+        int m,
+        /** HNSW构建时候选集大小 */
+        int efConstruction,
+        /** HNSW查询时候选集大小 */
+        int efSearch,
+        /** 小于该规模的分片直接暴力扫描 */
+        int bruteForceThreshold,
+        /** 影子对比pgvector的采样率（0-1），用于计算recall@k */
+        double shadowSampleRate
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = false;
+        public static final String MODE_HNSW = "hnsw";
+        public static final String MODE_BRUTE_FORCE = "brute-force";
+        public static final String DEFAULT_MODE = MODE_HNSW;
+        public static final int DEFAULT_MAX_SHARDS = 32;
+        public static final int DEFAULT_M = 16;
+        public static final int DEFAULT_EF_CONSTRUCTION = 128;
+        public static final int DEFAULT_EF_SEARCH = 64;
+        public static final int DEFAULT_BRUTE_FORCE_THRESHOLD = 2000;
+        public static final double DEFAULT_SHADOW_SAMPLE_RATE = 0.05;
+
+        public VectorIndexConfig {
+            if (mode == null || mode.isBlank()) mode = DEFAULT_MODE;
+            if (maxShards <= 0) maxShards = DEFAULT_MAX_SHARDS;
+            if (m <= 0) m = DEFAULT_M;
+            if (efConstruction <= 0) efConstruction = DEFAULT_EF_CONSTRUCTION;
+            if (efSearch <= 0) efSearch = DEFAULT_EF_SEARCH;
+            if (bruteForceThreshold < 0) bruteForceThreshold = DEFAULT_BRUTE_FORCE_THRESHOLD;
+            if (shadowSampleRate < 0 || shadowSampleRate > 1) shadowSampleRate = DEFAULT_SHADOW_SAMPLE_RATE;
+        }
+
+        /** 是否使用暴力扫描模式 */
+        public boolean isBruteForce() {
+            return MODE_BRUTE_FORCE.equalsIgnoreCase(mode);
+        }
+
+        public static VectorIndexConfig defaults() {
+            return new VectorIndexConfig(
+                DEFAULT_ENABLED,
+                DEFAULT_MODE,
+                DEFAULT_MAX_SHARDS,
+                DEFAULT_M,
+                DEFAULT_EF_CONSTRUCTION,
+                DEFAULT_EF_SEARCH,
+                DEFAULT_BRUTE_FORCE_THRESHOLD,
+                DEFAULT_SHADOW_SAMPLE_RATE
+            );
+        }
+    }
+
+    /**
+     * 索引任务队列配置（indexing_jobs 发件箱表）
+     */
+    public record IndexingQueueConfig(
+        /** 是否启用持久化索引队列，关闭时回退为直接异步索引 */
+        boolean enabled,
+        /** 去抖窗口（毫秒），窗口内同一来源的多次写入只索引最后一次 */
+        long debounceMs,
+        /** 并发索引的最大任务数 */
+        int workers,
+        /** 最大重试次数，超过后任务标记为失败 */
+        int maxAttempts,
+        /** 重试退避基数（毫秒），按 2^n 递增 */
+        long backoffBaseMs,
+        /** 重试退避上限（毫秒） */
+        long backoffMaxMs,
+        /** 运行中任务的租约时长（毫秒），超时视为实例崩溃并重新入队 */
+        long leaseTimeoutMs,
+        /** 单个任务的执行超时（毫秒） */
+        long jobTimeoutMs
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = true;
+        public static final long DEFAULT_DEBOUNCE_MS = 2000L;
+        public static final int DEFAULT_WORKERS = 4;
+        public static final int DEFAULT_MAX_ATTEMPTS = 6;
+        public static final long DEFAULT_BACKOFF_BASE_MS = 2000L;
+        public static final long DEFAULT_BACKOFF_MAX_MS = 300_000L;
+        public static final long DEFAULT_LEASE_TIMEOUT_MS = 600_000L;
+        public static final long DEFAULT_JOB_TIMEOUT_MS = 120_000L;
+
+        public IndexingQueueConfig {
+            if (debounceMs < 0) debounceMs = DEFAULT_DEBOUNCE_MS;
+            if (workers <= 0) workers = DEFAULT_WORKERS;
+            if (maxAttempts <= 0) maxAttempts = DEFAULT_MAX_ATTEMPTS;
+            if (backoffBaseMs <= 0) backoffBaseMs = DEFAULT_BACKOFF_BASE_MS;
+            if (backoffMaxMs < backoffBaseMs) backoffMaxMs = Math.max(DEFAULT_BACKOFF_MAX_MS, backoffBaseMs);
+            if (leaseTimeoutMs <= 0) leaseTimeoutMs = DEFAULT_LEASE_TIMEOUT_MS;
+            if (jobTimeoutMs <= 0) jobTimeoutMs = DEFAULT_JOB_TIMEOUT_MS;
+            // 执行期间不续约，租约不大于任务超时会让仍在执行的任务被当作崩溃回收并重复执行
+            if (leaseTimeoutMs <= jobTimeoutMs) {
+                throw new IllegalArgumentException("inkflow.rag.indexing-queue.lease-timeout-ms (" + leaseTimeoutMs
+                        + ") 必须大于 job-timeout-ms (" + jobTimeoutMs + ")");
+            }
+        }
+
+        /** 第 attempts 次失败后的重试延迟 */
+        public long backoffMs(int attempts) {
+            int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+            return Math.min(backoffBaseMs << exponent, backoffMaxMs);
+        }
+
+        public static IndexingQueueConfig defaults() {
+            return new IndexingQueueConfig(
+                DEFAULT_ENABLED,
+                DEFAULT_DEBOUNCE_MS,
+                DEFAULT_WORKERS,
+                DEFAULT_MAX_ATTEMPTS,
+                DEFAULT_BACKOFF_BASE_MS,
+                DEFAULT_BACKOFF_MAX_MS,
+                DEFAULT_LEASE_TIMEOUT_MS,
+                DEFAULT_JOB_TIMEOUT_MS
+            );
+        }
+    }
+
+    /**
+     * knowledge_chunks 分区配置
+     * 小项目共享按哈希划分的 DEFAULT 分区，知识块数超过阈值的项目迁移到独享分区（独立HNSW图）
+     */
+    public record PartitionConfig(
+        /** 是否在夜间任务中自动将大项目迁移到独享分区 */
+        boolean autoPromote,
+        /** 迁移到独享分区的知识块数阈值 */
+        long dedicatedThreshold,
+        /** 单次任务最多迁移的项目数（迁移期间阻塞共享分区写入） */
+        int maxPromotionsPerRun
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_AUTO_PROMOTE = true;
+        public static final long DEFAULT_DEDICATED_THRESHOLD = 20_000L;
+        public static final int DEFAULT_MAX_PROMOTIONS_PER_RUN = 2;
+
+        public PartitionConfig {
+            if (dedicatedThreshold <= 0) dedicatedThreshold = DEFAULT_DEDICATED_THRESHOLD;
+            if (maxPromotionsPerRun <= 0) maxPromotionsPerRun = DEFAULT_MAX_PROMOTIONS_PER_RUN;
+        }
+
+        public static PartitionConfig defaults() {
+            return new PartitionConfig(
+                DEFAULT_AUTO_PROMOTE,
+                DEFAULT_DEDICATED_THRESHOLD,
+                DEFAULT_MAX_PROMOTIONS_PER_RUN
+            );
+        }
+    }
+
+    /**
+     * 项目全量重建索引配置
+     * 按来源ID游标分批流式读取，批内并发分块、大批量生成embedding、单事务批量写入，每批完成后持久化游标
+     */
+    public record ReindexConfig(
+        /** 每批处理的来源数，也是游标持久化粒度 */
+        int sourceBatchSize,
+        /** 单次Embedding API调用的最大文本数 */
+        int embeddingBatchSize,
+        /** 批内并发分块的来源数 */
+        int chunkingConcurrency,
+        /** 同时运行的重建任务数 */
+        int maxConcurrentJobs,
+        /** 吞吐目标（子块/秒），低于目标时记录告警 */
+        double targetChunksPerSecond,
+        /** 任务租约超时（毫秒），超时未续约的任务视为实例崩溃，由其他实例接管续跑；须大于单批超时 */
+        long leaseTimeoutMs,
+        /** 单批超时（毫秒），也是两次续约之间的最长间隔 */
+        long batchTimeoutMs
+    ) {
+        // Default value constants
+        public static final int DEFAULT_SOURCE_BATCH_SIZE = 64;
+        public static final int DEFAULT_EMBEDDING_BATCH_SIZE = 256;
+        public static final int DEFAULT_CHUNKING_CONCURRENCY = 8;
+        public static final int DEFAULT_MAX_CONCURRENT_JOBS = 1;
+        public static final double DEFAULT_TARGET_CHUNKS_PER_SECOND = 200.0;
+        public static final long DEFAULT_LEASE_TIMEOUT_MS = 900_000L;
+        public static final long DEFAULT_BATCH_TIMEOUT_MS = 600_000L;
+
+        public ReindexConfig {
+            if (sourceBatchSize <= 0) sourceBatchSize = DEFAULT_SOURCE_BATCH_SIZE;
+            if (embeddingBatchSize <= 0) embeddingBatchSize = DEFAULT_EMBEDDING_BATCH_SIZE;
+            if (chunkingConcurrency <= 0) chunkingConcurrency = DEFAULT_CHUNKING_CONCURRENCY;
+            if (maxConcurrentJobs <= 0) maxConcurrentJobs = DEFAULT_MAX_CONCURRENT_JOBS;
+            if (targetChunksPerSecond <= 0) targetChunksPerSecond = DEFAULT_TARGET_CHUNKS_PER_SECOND;
+            if (leaseTimeoutMs <= 0) leaseTimeoutMs = DEFAULT_LEASE_TIMEOUT_MS;
+            if (batchTimeoutMs <= 0) batchTimeoutMs = DEFAULT_BATCH_TIMEOUT_MS;
+            // 租约只在批次之间续约，不大于单批超时会让执行中的任务被回收并重复执行
+            if (leaseTimeoutMs <= batchTimeoutMs) {
+                throw new IllegalArgumentException("inkflow.rag.reindex.lease-timeout-ms (" + leaseTimeoutMs
+                        + ") 必须大于 batch-timeout-ms (" + batchTimeoutMs + ")");
+            }
+        }
+
+        public static ReindexConfig defaults() {
+            return new ReindexConfig(
+                DEFAULT_SOURCE_BATCH_SIZE,
+                DEFAULT_EMBEDDING_BATCH_SIZE,
+                DEFAULT_CHUNKING_CONCURRENCY,
+                DEFAULT_MAX_CONCURRENT_JOBS,
+                DEFAULT_TARGET_CHUNKS_PER_SECOND,
+                DEFAULT_LEASE_TIMEOUT_MS,
+                DEFAULT_BATCH_TIMEOUT_MS
+            );
+        }
+    }
+
+    /**
+     * 知识块批量写入配置
+     * 子块以 PostgreSQL COPY 二进制格式写入，已有块经临时表 INSERT ... ON CONFLICT 合并
+     */
+    public record BulkWriteConfig(
+        /** 是否启用COPY写入，关闭时使用JPA saveAll */
+        boolean enabled,
+        /** 启用COPY的最少行数，行数较少时JPA批量插入开销更低 */
+        int minRows
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = true;
+        public static final int DEFAULT_MIN_ROWS = 8;
+
+        public BulkWriteConfig {
+            if (minRows <= 0) minRows = DEFAULT_MIN_ROWS;
+        }
+
+        public static BulkWriteConfig defaults() {
+            return new BulkWriteConfig(DEFAULT_ENABLED, DEFAULT_MIN_ROWS);
+        }
+    }
+
+    /**
+     * 生成上下文的Token预算配置
+     * 父块按命中子块截取窗口，去除重叠片段后按 得分/Token 贪心装入预算
+     */
+    public record ContextBudgetConfig(
+        /** 是否启用预算打包，关闭时按原方式拼接全部父块 */
+        boolean enabled,
+        /** 未单独配置的工作流使用的默认Token预算 */
+        int defaultTokenBudget,
+        /** 按工作流（WorkflowType名称或工具标识）配置的Token预算 */
+        Map<String, Integer> workflowBudgets,
+        /** 每个片段的标题、分隔符等格式开销（Token） */
+        int perItemOverheadTokens,
+        /** 近重复阈值：字符三元组包含度达到该值时视为重复片段 */
+        double duplicateThreshold,
+        /** 同一父块内截取窗口的重叠比例达到该值时视为重叠片段 */
+        double spanOverlapThreshold
+    ) {
+        // Default value constants
+        public static final boolean DEFAULT_ENABLED = true;
+        public static final int DEFAULT_TOKEN_BUDGET = 2000;
+        public static final int DEFAULT_PER_ITEM_OVERHEAD_TOKENS = 12;
+        public static final double DEFAULT_DUPLICATE_THRESHOLD = 0.8;
+        public static final double DEFAULT_SPAN_OVERLAP_THRESHOLD = 0.5;
+
+        public ContextBudgetConfig {
+            if (defaultTokenBudget <= 0) defaultTokenBudget = DEFAULT_TOKEN_BUDGET;
+            if (workflowBudgets == null) workflowBudgets = Map.of();
+            if (perItemOverheadTokens < 0) perItemOverheadTokens = DEFAULT_PER_ITEM_OVERHEAD_TOKENS;
+            if (duplicateThreshold <= 0 || duplicateThreshold > 1) duplicateThreshold = DEFAULT_DUPLICATE_THRESHOLD;
+            if (spanOverlapThreshold <= 0 || spanOverlapThreshold > 1) spanOverlapThreshold = DEFAULT_SPAN_OVERLAP_THRESHOLD;
+        }
+
+        /**
+         * 获取工作流的Token预算，未配置时返回默认预算
+         */
+        public int budgetFor(String workflow) {
+            if (workflow == null) {
+                return defaultTokenBudget;
+            }
+            Integer budget = workflowBudgets.get(workflow);
+            return budget != null && budget > 0 ? budget : defaultTokenBudget;
+        }
+
+        public static ContextBudgetConfig defaults() {
+            return new ContextBudgetConfig(
+                DEFAULT_ENABLED,
+                DEFAULT_TOKEN_BUDGET,
+                Map.of(),
+                DEFAULT_PER_ITEM_OVERHEAD_TOKENS,
+                DEFAULT_DUPLICATE_THRESHOLD,
+                DEFAULT_SPAN_OVERLAP_THRESHOLD
+            );
+        }
+    }
+
+    /**
+     * 离线模型替身配置（仅 offline profile 生效）
+     * 以特征哈希嵌入模型和BM25词面重排序替代 TEI 嵌入服务与 Reranker 端点，
+     * 可注入调用延迟和故障率，用于单机无网络的压测
+     */
+    public record OfflineModelConfig(
+        /** 嵌入向量维度，需与 knowledge_chunks.embedding 列一致 */
+        int dimension,
+        /** 每次嵌入调用的固定延迟（毫秒） */
+        long embeddingLatencyMs,
+        /** 批量嵌入时每条文本追加的延迟（毫秒） */
+        long embeddingPerTextLatencyMs,
+        /** 嵌入调用失败率（0-1），失败时抛出 503 */
+        double embeddingFailureRate,
+        /** 每次重排序/相似度调用的固定延迟（毫秒） */
+        long rerankLatencyMs,
+        /** 重排序调用失败率（0-1），失败时返回 503 */
+        double rerankFailureRate,
+        /** 延迟随机抖动上限（毫秒），实际延迟 = 固定延迟 + [0, 抖动] */
+        long latencyJitterMs,
+        /** BM25 词频饱和参数 k1 */
+        double bm25K1,
+        /** BM25 文档长度归一化参数 b */
+        double bm25B
+    ) {
+        // Default value constants
+        public static final int DEFAULT_DIMENSION = 1024;
+        public static final long DEFAULT_EMBEDDING_LATENCY_MS = 20L;
+        public static final long DEFAULT_EMBEDDING_PER_TEXT_LATENCY_MS = 1L;
+        public static final double DEFAULT_EMBEDDING_FAILURE_RATE = 0.0;
+        public static final long DEFAULT_RERANK_LATENCY_MS = 30L;
+        public static final double DEFAULT_RERANK_FAILURE_RATE = 0.0;
+        public static final long DEFAULT_LATENCY_JITTER_MS = 10L;
+        public static final double DEFAULT_BM25_K1 = 1.2;
+        public static final double DEFAULT_BM25_B = 0.75;
+
+        public OfflineModelConfig {
+            if (dimension <= 0) dimension = DEFAULT_DIMENSION;
+            if (embeddingLatencyMs < 0) embeddingLatencyMs = DEFAULT_EMBEDDING_LATENCY_MS;
+            if (embeddingPerTextLatencyMs < 0) embeddingPerTextLatencyMs = DEFAULT_EMBEDDING_PER_TEXT_LATENCY_MS;
+            if (embeddingFailureRate < 0 || embeddingFailureRate > 1) embeddingFailureRate = DEFAULT_EMBEDDING_FAILURE_RATE;
+            if (rerankLatencyMs < 0) rerankLatencyMs = DEFAULT_RERANK_LATENCY_MS;
+            if (rerankFailureRate < 0 || rerankFailureRate > 1) rerankFailureRate = DEFAULT_RERANK_FAILURE_RATE;
+            if (latencyJitterMs < 0) latencyJitterMs = DEFAULT_LATENCY_JITTER_MS;
+            if (bm25K1 <= 0) bm25K1 = DEFAULT_BM25_K1;
+            if (bm25B < 0 || bm25B > 1) bm25B = DEFAULT_BM25_B;
+        }
+
+        public static OfflineModelConfig defaults() {
+            return new OfflineModelConfig(
+                DEFAULT_DIMENSION,
+                DEFAULT_EMBEDDING_LATENCY_MS,
+                DEFAULT_EMBEDDING_PER_TEXT_LATENCY_MS,
+                DEFAULT_EMBEDDING_FAILURE_RATE,
+                DEFAULT_RERANK_LATENCY_MS,
+                DEFAULT_RERANK_FAILURE_RATE,
+                DEFAULT_LATENCY_JITTER_MS,
+                DEFAULT_BM25_K1,
+                DEFAULT_BM25_B
+            );
+        }
+    }
+
     /**
      * 使用默认值创建RagProperties实例
      */
@@ -528,6 +1242,13 @@ public record RagProperties(
         if (fullText == null) fullText = FullTextConfig.defaults();
         if (reranker == null) reranker = RerankerConfig.defaults();
         if (search == null) search = SearchConfig.defaults();
+        if (vectorIndex == null) vectorIndex = VectorIndexConfig.defaults();
+        if (indexingQueue == null) indexingQueue = IndexingQueueConfig.defaults();
+        if (partition == null) partition = PartitionConfig.defaults();
+        if (reindex == null) reindex = ReindexConfig.defaults();
+        if (bulkWrite == null) bulkWrite = BulkWriteConfig.defaults();
+        if (contextBudget == null) contextBudget = ContextBudgetConfig.defaults();
+        if (offlineModel == null) offlineModel = OfflineModelConfig.defaults();
     }
     
     /**
@@ -540,7 +1261,14 @@ public record RagProperties(
             ChunkingConfig.defaults(),
             FullTextConfig.defaults(),
             RerankerConfig.defaults(),
-            SearchConfig.defaults()
+            SearchConfig.defaults(),
+            VectorIndexConfig.defaults(),
+            IndexingQueueConfig.defaults(),
+            PartitionConfig.defaults(),
+            ReindexConfig.defaults(),
+            BulkWriteConfig.defaults(),
+            ContextBudgetConfig.defaults(),
+            OfflineModelConfig.defaults()
         );
     }
 }
@@ -10,6 +10,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,18 @@ public class RagController {
     private final HybridSearchService hybridSearchService;
     private final RerankerService rerankerService;
     private final EmbeddingCacheService embeddingCacheService;
+    private final InMemoryVectorIndexService vectorIndexService;
+    private final PersistentEmbeddingStore persistentEmbeddingStore;
+    private final IndexingQueueService indexingQueueService;
+    private final SearchResultCache searchResultCache;
+    private final QuantizedVectorSearchService quantizedSearchService;
+    private final KnowledgeChunkPartitionService partitionService;
+    private final HnswSearchTuner hnswSearchTuner;
+    private final ProjectReindexService projectReindexService;
+    private final KnowledgeChunkBulkWriter bulkWriter;
+    private final ContextPackerService contextPacker;
+    private final FullTextSearchService fullTextSearchService;
+    private final ZhparserDictionaryService zhparserDictionaryService;
 
     /**
      * 混合检索 - 结合向量检索和全文检索
@@ -40,7 +53,7 @@ public class RagController {
      *
      */
     @PostMapping("/search")
-    @Operation(summary = "混合检索", description = "结合向量检索和全文检索，使用RRF算法融合结果")
+    @Operation(summary = "混合检索", description = "结合向量、全文和百科标题等多路召回，使用加权RRF算法融合结果")
     public Mono<ResponseEntity<List<SearchResult>>> search(
             @Parameter(description = "项目ID") @RequestParam UUID projectId,
             @Parameter(description = "查询文本") @RequestParam String query,
@@ -123,6 +136,228 @@ public class RagController {
         return ResponseEntity.ok(RagCacheStatistics.create(embeddingCacheStats, rerankerStats));
     }
 
+    /**
+     * 获取L3持久化Embedding缓存统计
+     * GET /api/rag/cache/persistent/stats
+     */
+    @GetMapping("/cache/persistent/stats")
+    @Operation(summary = "获取L3缓存统计", description = "获取embedding_cache表持久化缓存的命中、写入和淘汰统计")
+    public ResponseEntity<PersistentEmbeddingStore.Stats> getPersistentCacheStatistics() {
+        log.debug("获取L3缓存统计");
+        return ResponseEntity.ok(persistentEmbeddingStore.getStats());
+    }
+
+    /**
+     * 获取检索结果缓存统计
+     * GET /api/rag/search/cache/stats
+     */
+    @GetMapping("/search/cache/stats")
+    @Operation(summary = "获取检索结果缓存统计", description = "获取混合检索结果缓存的命中率和版本失效统计")
+    public ResponseEntity<SearchResultCacheStatistics> getSearchResultCacheStatistics() {
+        log.debug("获取检索结果缓存统计");
+        return ResponseEntity.ok(searchResultCache.getStatistics());
+    }
+
+    /**
+     * 获取多路召回融合统计
+     * GET /api/rag/search/fusion/stats
+     */
+    @GetMapping("/search/fusion/stats")
+    @Operation(summary = "获取召回融合统计", description = "获取多路召回的重叠率、提前截断比例和各路对最终结果的贡献")
+    public ResponseEntity<RankFusionStatistics> getFusionStatistics() {
+        log.debug("获取召回融合统计");
+        return ResponseEntity.ok(hybridSearchService.getFusionStatistics());
+    }
+
+    /**
+     * 获取Embedding请求合并统计
+     * GET /api/rag/embedding/batch-stats
+     */
+    @GetMapping("/embedding/batch-stats")
+    @Operation(summary = "获取Embedding合并统计", description = "获取单条Embedding请求合并的批大小和等待时间统计")
+    public ResponseEntity<EmbeddingBatchStatistics> getEmbeddingBatchStatistics() {
+        log.debug("获取Embedding合并统计");
+        return ResponseEntity.ok(embeddingService.getBatchStatistics());
+    }
+
+    /**
+     * 获取索引任务队列统计
+     * GET /api/rag/indexing/stats
+     */
+    @GetMapping("/indexing/stats")
+    @Operation(summary = "获取索引队列统计", description = "获取索引任务队列的积压、滞后和执行耗时统计")
+    public ResponseEntity<IndexingQueueStatistics> getIndexingQueueStatistics() {
+        log.debug("获取索引队列统计");
+        return ResponseEntity.ok(indexingQueueService.getStatistics());
+    }
+
+    /**
+     * 获取进程内向量索引统计
+     * GET /api/rag/vector-index/stats
+     */
+    @GetMapping("/vector-index/stats")
+    @Operation(summary = "获取向量索引统计", description = "获取进程内向量索引的分片、延迟分位数和影子对比召回率")
+    public ResponseEntity<VectorIndexStatistics> getVectorIndexStatistics() {
+        log.debug("获取向量索引统计");
+        return ResponseEntity.ok(vectorIndexService.getStatistics());
+    }
+
+    /**
+     * 获取两阶段量化检索统计
+     * GET /api/rag/vector-search/quantized/stats
+     */
+    @GetMapping("/vector-search/quantized/stats")
+    @Operation(summary = "获取量化检索统计", description = "获取二值粗排 + halfvec重排的延迟分位数和影子对比召回率")
+    public ResponseEntity<QuantizedSearchStatistics> getQuantizedSearchStatistics() {
+        log.debug("获取量化检索统计");
+        return ResponseEntity.ok(quantizedSearchService.getStatistics());
+    }
+
+    /**
+     * 获取HNSW查询参数自适应统计
+     * GET /api/rag/vector-search/hnsw/stats
+     */
+    @GetMapping("/vector-search/hnsw/stats")
+    @Operation(summary = "获取HNSW参数统计", description = "获取每次向量查询选择的ef_search、迭代扫描、重试和精确检索退化统计")
+    public ResponseEntity<HnswTuningStatistics> getHnswTuningStatistics() {
+        log.debug("获取HNSW参数统计");
+        return ResponseEntity.ok(hnswSearchTuner.getStatistics());
+    }
+
+    /**
+     * 淘汰项目的向量索引分片，下次查询时重新加载
+     */
+    @DeleteMapping("/vector-index/{projectId}")
+    @Operation(summary = "淘汰向量索引分片", description = "从内存中移除项目的向量索引分片")
+    public ResponseEntity<Void> evictVectorIndex(@PathVariable UUID projectId) {
+        log.info("淘汰向量索引分片: projectId={}", projectId);
+        vectorIndexService.evict(projectId);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * 获取知识块分区统计
+     * GET /api/rag/partitions/stats
+     */
+    @GetMapping("/partitions/stats")
+    @Operation(summary = "获取分区统计", description = "获取knowledge_chunks共享分区和项目独享分区的规模与迁移统计")
+    public ResponseEntity<ChunkPartitionStatistics> getPartitionStatistics() {
+        log.debug("获取知识块分区统计");
+        return ResponseEntity.ok(partitionService.getStatistics());
+    }
+
+    /**
+     * 将项目迁移到独享分区
+     */
+    @PostMapping("/partitions/{projectId}/promote")
+    @Operation(summary = "迁移独享分区", description = "将项目的知识块从共享分区迁移到独享分区，迁移期间共享分区只读")
+    public Mono<ResponseEntity<Map<String, String>>> promotePartition(@PathVariable UUID projectId) {
+        log.info("迁移项目到独享分区: projectId={}", projectId);
+        return Mono.fromCallable(() -> partitionService.promote(projectId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(partition -> ResponseEntity.ok(Map.of("partition", partition)))
+                .defaultIfEmpty(ResponseEntity.internalServerError().build());
+    }
+
+    /**
+     * 提交项目全量重建索引任务
+     * POST /api/rag/reindex/{projectId}?forceReembed=true
+     */
+    @PostMapping("/reindex/{projectId}")
+    @Operation(summary = "项目全量重建索引", description = "后台分批重建项目全部剧情块、知识条目和角色的索引；切换Embedding模型时使用forceReembed重新生成全部向量")
+    public Mono<ResponseEntity<ReindexJobProgress>> startReindex(
+            @PathVariable UUID projectId,
+            @Parameter(description = "是否跳过向量复用和缓存，重新生成全部向量") @RequestParam(defaultValue = "false") boolean forceReembed) {
+        log.info("提交项目重建索引: projectId={}, forceReembed={}", projectId, forceReembed);
+        return Mono.fromCallable(() -> projectReindexService.start(projectId, forceReembed))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(progress -> ResponseEntity.accepted().body(progress));
+    }
+
+    /**
+     * 续跑项目最近一次失败或取消的重建索引任务
+     */
+    @PostMapping("/reindex/{projectId}/resume")
+    @Operation(summary = "续跑重建索引", description = "从已持久化的游标继续项目最近一次失败或取消的重建索引任务")
+    public Mono<ResponseEntity<ReindexJobProgress>> resumeReindex(@PathVariable UUID projectId) {
+        log.info("续跑项目重建索引: projectId={}", projectId);
+        return Mono.fromCallable(() -> projectReindexService.resume(projectId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(progress -> progress.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * 取消项目重建索引任务
+     */
+    @DeleteMapping("/reindex/{projectId}")
+    @Operation(summary = "取消重建索引", description = "取消项目未结束的重建索引任务，已提交的批次保留")
+    public Mono<ResponseEntity<Void>> cancelReindex(@PathVariable UUID projectId) {
+        log.info("取消项目重建索引: projectId={}", projectId);
+        return Mono.fromCallable(() -> projectReindexService.cancel(projectId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(cancelled -> cancelled
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.notFound().<Void>build());
+    }
+
+    /**
+     * 获取项目重建索引进度
+     */
+    @GetMapping("/reindex/{projectId}")
+    @Operation(summary = "获取重建索引进度", description = "获取项目最近一次重建索引任务的进度、吞吐和预计剩余时间")
+    public Mono<ResponseEntity<ReindexJobProgress>> getReindexProgress(@PathVariable UUID projectId) {
+        return Mono.fromCallable(() -> projectReindexService.getProgress(projectId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(progress -> progress.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * 获取重建索引统计
+     * GET /api/rag/reindex/stats
+     */
+    @GetMapping("/reindex/stats")
+    @Operation(summary = "获取重建索引统计", description = "获取重建索引任务数、批次吞吐与目标对比")
+    public ResponseEntity<ReindexStatistics> getReindexStatistics() {
+        log.debug("获取重建索引统计");
+        return ResponseEntity.ok(projectReindexService.getStatistics());
+    }
+
+    /**
+     * 获取知识块批量写入统计
+     * GET /api/rag/bulk-write/stats
+     */
+    @GetMapping("/bulk-write/stats")
+    @Operation(summary = "获取批量写入统计", description = "获取知识块COPY写入、临时表合并和JPA回退的行数与写入速度")
+    public ResponseEntity<KnowledgeChunkBulkWriter.Stats> getBulkWriteStatistics() {
+        log.debug("获取知识块批量写入统计");
+        return ResponseEntity.ok(bulkWriter.getStats());
+    }
+
+    /**
+     * 获取生成上下文打包统计
+     * GET /api/rag/context-packer/stats
+     */
+    @GetMapping("/context-packer/stats")
+    @Operation(summary = "获取上下文打包统计", description = "获取Token预算打包的装入、去重、截取片段数和节省的Token比例")
+    public ResponseEntity<ContextPackerService.Stats> getContextPackerStatistics() {
+        log.debug("获取上下文打包统计");
+        return ResponseEntity.ok(contextPacker.getStats());
+    }
+
+    /**
+     * 获取全文查询缓存统计
+     * GET /api/rag/full-text/query-cache/stats
+     */
+    @GetMapping("/full-text/query-cache/stats")
+    @Operation(summary = "获取全文查询缓存统计", description = "获取查询计划缓存和zhparser分词缓存的命中率、条目数与词典版本")
+    public ResponseEntity<Map<String, Object>> getFullTextQueryCacheStatistics() {
+        log.debug("获取全文查询缓存统计");
+        return ResponseEntity.ok(Map.of(
+                "queryPlan", fullTextSearchService.getQueryCacheStats(),
+                "segmentation", zhparserDictionaryService.getSegmentationCacheStats()
+        ));
+    }
+
     /**
      * 获取项目嵌入统计
      */
@@ -160,10 +395,11 @@ public class RagController {
      * 清空所有缓存
      */
     @PostMapping("/cache/clear")
-    @Operation(summary = "清空缓存", description = "清空Embedding和Reranker缓存")
+    @Operation(summary = "清空缓存", description = "清空Embedding、Reranker和检索结果缓存")
     public Mono<ResponseEntity<Void>> clearCache() {
         log.info("清空所有RAG缓存");
         rerankerService.clearCache();
+        searchResultCache.clear();
         return embeddingCacheService.clear()
                 .thenReturn(ResponseEntity.noContent().build());
     }
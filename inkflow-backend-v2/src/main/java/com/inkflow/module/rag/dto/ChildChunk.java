@@ -56,6 +56,11 @@ public class ChildChunk {
      */
     private UUID sourceId;
 
+    /**
+     * 子块向量（分块时已生成则非空，可直接复用，无需再次调用Embedding）
+     */
+    private float[] embedding;
+
     /**
      * 获取子块长度
      */
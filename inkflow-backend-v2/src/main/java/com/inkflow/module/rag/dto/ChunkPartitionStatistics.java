@@ -0,0 +1,98 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * knowledge_chunks 分区统计DTO
+ * 用于观察共享分区与独享分区的规模和迁移情况。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkPartitionStatistics {
+
+    /**
+     * 是否自动迁移大项目
+     */
+    private boolean autoPromote;
+
+    /**
+     * 迁移到独享分区的知识块数阈值
+     */
+    private long dedicatedThreshold;
+
+    /**
+     * 共享哈希子分区数
+     */
+    private long sharedPartitions;
+
+    /**
+     * 独享分区数
+     */
+    private long dedicatedPartitions;
+
+    /**
+     * 累计迁移次数
+     */
+    private long promotions;
+
+    /**
+     * 累计迁移失败次数
+     */
+    private long promotionFailures;
+
+    /**
+     * 累计删除的空独享分区数
+     */
+    private long droppedPartitions;
+
+    /**
+     * 最近一次整理时间
+     */
+    private Instant lastRebalanceAt;
+
+    /**
+     * 各分区明细
+     */
+    private List<PartitionInfo> partitions;
+
+    /**
+     * 单个分区信息
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PartitionInfo {
+
+        /**
+         * 分区表名
+         */
+        private String name;
+
+        /**
+         * 是否为项目独享分区
+         */
+        private boolean dedicated;
+
+        /**
+         * 估算行数（来自统计信息）
+         */
+        private long estimatedRows;
+
+        /**
+         * 表和索引总大小（字节）
+         */
+        private long totalBytes;
+    }
+}
@@ -0,0 +1,75 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Embedding请求合并统计DTO
+ * 用于监控单条请求合并为批量调用的效果。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingBatchStatistics {
+
+    /**
+     * 是否启用请求合并
+     */
+    private boolean enabled;
+
+    /**
+     * 合并窗口（毫秒）
+     */
+    private long windowMs;
+
+    /**
+     * 单批上限
+     */
+    private int maxBatchSizeLimit;
+
+    /**
+     * 提交的单条请求数
+     */
+    private long submittedRequests;
+
+    /**
+     * 与进行中请求共享结果的请求数（同文本去重）
+     */
+    private long dedupedRequests;
+
+    /**
+     * 实际发出的批量调用次数
+     */
+    private long batches;
+
+    /**
+     * 失败的批次数
+     */
+    private long failedBatches;
+
+    /**
+     * 平均批大小
+     */
+    private double averageBatchSize;
+
+    /**
+     * 最大批大小
+     */
+    private long maxBatchSize;
+
+    /**
+     * 请求在窗口中等待的P50时间（微秒）
+     */
+    private long waitP50Micros;
+
+    /**
+     * 请求在窗口中等待的P99时间（微秒）
+     */
+    private long waitP99Micros;
+}
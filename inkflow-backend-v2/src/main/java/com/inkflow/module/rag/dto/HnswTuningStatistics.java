@@ -0,0 +1,97 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * HNSW查询参数自适应统计DTO
+ * 记录每次向量查询选择的 ef_search、迭代扫描和重试情况。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HnswTuningStatistics {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled;
+
+    /**
+     * pgvector扩展版本
+     */
+    private String pgvectorVersion;
+
+    /**
+     * 是否支持迭代扫描（pgvector 0.8+）
+     */
+    private boolean iterativeScanAvailable;
+
+    /**
+     * 向量查询次数
+     */
+    private long queries;
+
+    /**
+     * 带HNSW参数的执行次数（含重试，不含精确检索）
+     */
+    private long attempts;
+
+    /**
+     * 平均 ef_search
+     */
+    private double averageEfSearch;
+
+    /**
+     * 最大 ef_search
+     */
+    private int maxEfSearch;
+
+    /**
+     * ef_search 分布（桶上界 -> 次数）
+     */
+    private Map<String, Long> efSearchHistogram;
+
+    /**
+     * 启用迭代扫描的执行次数
+     */
+    private long iterativeScanAttempts;
+
+    /**
+     * 因返回行数不足而放宽参数的重试次数
+     */
+    private long retries;
+
+    /**
+     * 退化为精确检索的次数
+     */
+    private long exactFallbacks;
+
+    /**
+     * 最终仍返回不足的查询次数
+     */
+    private long shortResults;
+
+    /**
+     * 查询P50延迟（微秒，含重试）
+     */
+    private long p50Micros;
+
+    /**
+     * 查询P99延迟（微秒，含重试）
+     */
+    private long p99Micros;
+
+    /**
+     * 已缓存选择度的过滤条件数
+     */
+    private long cachedFilters;
+}
@@ -0,0 +1,90 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 索引任务队列统计DTO
+ * 用于监控队列积压、索引滞后和执行耗时。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexingQueueStatistics {
+
+    /**
+     * 是否启用索引队列
+     */
+    private boolean enabled;
+
+    /**
+     * 最大并发任务数
+     */
+    private int workers;
+
+    /**
+     * 当前执行中的任务数（本实例）
+     */
+    private int activeWorkers;
+
+    /**
+     * 待执行任务数（队列深度）
+     */
+    private long pendingJobs;
+
+    /**
+     * 执行中任务数（所有实例）
+     */
+    private long runningJobs;
+
+    /**
+     * 重试耗尽的任务数
+     */
+    private long failedJobs;
+
+    /**
+     * 最早未完成任务的滞后时间（毫秒）
+     */
+    private long oldestLagMs;
+
+    /**
+     * 本实例入队次数
+     */
+    private long enqueuedJobs;
+
+    /**
+     * 本实例完成的任务数
+     */
+    private long completedJobs;
+
+    /**
+     * 本实例失败的执行次数（含重试）
+     */
+    private long failedAttempts;
+
+    /**
+     * 执行耗时P50（毫秒）
+     */
+    private long processingP50Ms;
+
+    /**
+     * 执行耗时P99（毫秒）
+     */
+    private long processingP99Ms;
+
+    /**
+     * 入队到完成的滞后P50（毫秒）
+     */
+    private long lagP50Ms;
+
+    /**
+     * 入队到完成的滞后P99（毫秒）
+     */
+    private long lagP99Ms;
+}
@@ -0,0 +1,85 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 两阶段量化检索统计DTO
+ * 用于对比量化检索与精确检索的延迟和召回质量，辅助调节过采样倍数。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuantizedSearchStatistics {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled;
+
+    /**
+     * 过采样倍数
+     */
+    private int oversampling;
+
+    /**
+     * 最少候选数
+     */
+    private int minCandidates;
+
+    /**
+     * 最多候选数
+     */
+    private int maxCandidates;
+
+    /**
+     * 量化检索次数
+     */
+    private long queries;
+
+    /**
+     * 平均粗排候选数
+     */
+    private double averageCandidates;
+
+    /**
+     * 量化检索P50延迟（微秒）
+     */
+    private long quantizedP50Micros;
+
+    /**
+     * 量化检索P99延迟（微秒）
+     */
+    private long quantizedP99Micros;
+
+    /**
+     * 精确检索（影子查询）次数
+     */
+    private long exactQueries;
+
+    /**
+     * 精确检索P50延迟（微秒）
+     */
+    private long exactP50Micros;
+
+    /**
+     * 精确检索P99延迟（微秒）
+     */
+    private long exactP99Micros;
+
+    /**
+     * 影子对比次数
+     */
+    private long shadowQueries;
+
+    /**
+     * 影子对比的平均recall@k (0-1)
+     */
+    private double averageRecall;
+}
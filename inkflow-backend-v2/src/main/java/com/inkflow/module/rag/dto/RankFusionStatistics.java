@@ -0,0 +1,102 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 多路召回融合统计DTO
+ * 用于观察各路召回的重叠程度和对最终结果的贡献。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RankFusionStatistics {
+
+    /**
+     * 融合次数
+     */
+    private long fusions;
+
+    /**
+     * top-k 提前确定的融合次数
+     */
+    private long earlyCutoffs;
+
+    /**
+     * 提前确定比例 (0-1)
+     */
+    private double earlyCutoffRate;
+
+    /**
+     * 每次融合的平均候选文档数
+     */
+    private double averageCandidates;
+
+    /**
+     * 候选文档中出现在两路及以上召回的比例 (0-1)
+     */
+    private double overlapRate;
+
+    /**
+     * top-k 确定后跳过的结果条数
+     */
+    private long skippedEntries;
+
+    /**
+     * 融合耗时P50（微秒）
+     */
+    private long fusionP50Micros;
+
+    /**
+     * 融合耗时P99（微秒）
+     */
+    private long fusionP99Micros;
+
+    /**
+     * 各路召回统计，键为召回名称
+     */
+    private Map<String, RetrieverStats> retrievers;
+
+    /**
+     * 单路召回统计
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RetrieverStats {
+
+        /**
+         * 参与融合次数
+         */
+        private long participations;
+
+        /**
+         * 召回结果总数
+         */
+        private long results;
+
+        /**
+         * 进入最终 top-k 的结果数
+         */
+        private long topHits;
+
+        /**
+         * 仅由该路召回、进入最终 top-k 的结果数
+         */
+        private long exclusiveTopHits;
+
+        /**
+         * 独占比例 (0-1)，越高说明该路召回补充的新结果越多
+         */
+        private double exclusiveTopRate;
+    }
+}
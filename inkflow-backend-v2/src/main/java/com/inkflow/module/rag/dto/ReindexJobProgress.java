@@ -0,0 +1,117 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * 项目全量重建索引进度DTO
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexJobProgress {
+
+    /**
+     * 任务ID
+     */
+    private UUID jobId;
+
+    /**
+     * 项目ID
+     */
+    private UUID projectId;
+
+    /**
+     * 任务状态: PENDING, RUNNING, COMPLETED, FAILED, CANCELLED
+     */
+    private String status;
+
+    /**
+     * 是否强制重新生成全部向量
+     */
+    private boolean forceReembed;
+
+    /**
+     * 当前处理的来源类型
+     */
+    private String currentSourceType;
+
+    /**
+     * 来源总数（任务开始时统计）
+     */
+    private Long totalSources;
+
+    /**
+     * 已完成的来源数（重建 + 跳过 + 失败）
+     */
+    private long completedSources;
+
+    /**
+     * 已重建的来源数
+     */
+    private long processedSources;
+
+    /**
+     * 内容未变化而跳过的来源数
+     */
+    private long skippedSources;
+
+    /**
+     * 重建失败的来源数
+     */
+    private long failedSources;
+
+    /**
+     * 完成比例（0-1），来源总数未知时为 null
+     */
+    private Double progress;
+
+    /**
+     * 已写入的子块数
+     */
+    private long chunksWritten;
+
+    /**
+     * 平均吞吐（子块/秒），按累计执行耗时计算
+     */
+    private double chunksPerSecond;
+
+    /**
+     * 吞吐目标（子块/秒）
+     */
+    private double targetChunksPerSecond;
+
+    /**
+     * 预计剩余时间（秒），无法估算时为 null
+     */
+    private Long estimatedRemainingSeconds;
+
+    /**
+     * 最近一次失败原因
+     */
+    private String lastError;
+
+    /**
+     * 创建时间
+     */
+    private Instant createdAt;
+
+    /**
+     * 首次开始执行时间
+     */
+    private Instant startedAt;
+
+    /**
+     * 结束时间
+     */
+    private Instant finishedAt;
+}
@@ -0,0 +1,80 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 项目全量重建索引统计DTO
+ * 用于监控批处理吞吐是否达到目标。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexStatistics {
+
+    /**
+     * 待执行任务数（所有实例）
+     */
+    private long pendingJobs;
+
+    /**
+     * 执行中任务数（所有实例）
+     */
+    private long runningJobs;
+
+    /**
+     * 本实例执行中的任务数
+     */
+    private int activeJobs;
+
+    /**
+     * 本实例完成的批次数
+     */
+    private long completedBatches;
+
+    /**
+     * 本实例整批失败后降级为逐个重建的批次数
+     */
+    private long degradedBatches;
+
+    /**
+     * 本实例重建的来源数
+     */
+    private long processedSources;
+
+    /**
+     * 本实例写入的子块数
+     */
+    private long chunksWritten;
+
+    /**
+     * 本实例累计吞吐（子块/秒），按批次执行耗时计算
+     */
+    private double chunksPerSecond;
+
+    /**
+     * 吞吐目标（子块/秒）
+     */
+    private double targetChunksPerSecond;
+
+    /**
+     * 低于吞吐目标的批次数
+     */
+    private long belowTargetBatches;
+
+    /**
+     * 单批耗时P50（毫秒）
+     */
+    private long batchP50Ms;
+
+    /**
+     * 单批耗时P99（毫秒）
+     */
+    private long batchP99Ms;
+}
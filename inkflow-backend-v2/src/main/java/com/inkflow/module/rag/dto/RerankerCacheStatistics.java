@@ -7,7 +7,7 @@ import lombok.NoArgsConstructor;
 
 /**
  * 重排序缓存统计DTO
- * 用于监控RerankerService的缓存性能。
+ * 用于监控RerankerService的得分对缓存性能，命中率按 (查询, 文档) 得分对统计。
  *
  * @author zsg
  * @date 2025/12/17
@@ -19,53 +19,81 @@ import lombok.NoArgsConstructor;
 public class RerankerCacheStatistics {
 
     /**
-     * 缓存命中次数
+     * 得分对命中次数
      */
     private long cacheHits;
 
     /**
-     * 缓存未命中次数
+     * 得分对未命中次数
      */
     private long cacheMisses;
 
     /**
-     * 总请求次数
+     * 得分对查询总数
      */
-    private long totalRequests;
+    private long totalPairLookups;
 
     /**
-     * 命中率 (0-100%)
+     * 得分对命中率 (0-100%)
      */
     private double hitRate;
 
     /**
-     * 当前缓存大小
+     * 重排序/相似度请求总数
+     */
+    private long totalRequests;
+
+    /**
+     * 全部得分对命中、无需调用模型的请求数
+     */
+    private long fullyCachedRequests;
+
+    /**
+     * 实际发送给模型打分的得分对数
      */
-    private int cacheSize;
+    private long pairsSentToModel;
 
     /**
-     * 最大缓存大小
+     * 当前缓存大小（得分对数）
+     */
+    private long cacheSize;
+
+    /**
+     * 最大缓存大小（得分对数）
      */
     private int maxCacheSize;
 
+    /**
+     * 容量淘汰次数
+     */
+    private long evictions;
+
     /**
      * 计算命中率
      */
     public static RerankerCacheStatistics create(
-            long cacheHits, 
-            long cacheMisses, 
-            int cacheSize, 
-            int maxCacheSize) {
-        long totalRequests = cacheHits + cacheMisses;
-        double hitRate = totalRequests > 0 ? (cacheHits * 100.0 / totalRequests) : 0.0;
+            long cacheHits,
+            long cacheMisses,
+            long totalRequests,
+            long fullyCachedRequests,
+            long pairsSentToModel,
+            long cacheSize,
+            int maxCacheSize,
+            long evictions) {
+        long totalPairLookups = cacheHits + cacheMisses;
+        double hitRate = totalPairLookups > 0 ? (cacheHits * 100.0 / totalPairLookups) : 0.0;
         
         return RerankerCacheStatistics.builder()
                 .cacheHits(cacheHits)
                 .cacheMisses(cacheMisses)
-                .totalRequests(totalRequests)
+                .totalPairLookups(totalPairLookups)
                 .hitRate(hitRate)
+                .totalRequests(totalRequests)
+                .fullyCachedRequests(fullyCachedRequests)
+                .pairsSentToModel(pairsSentToModel)
                 .cacheSize(cacheSize)
                 .maxCacheSize(maxCacheSize)
+                .evictions(evictions)
                 .build();
     }
 }
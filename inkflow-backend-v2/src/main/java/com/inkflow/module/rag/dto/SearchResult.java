@@ -16,7 +16,7 @@ import java.util.UUID;
  * @date 2025/12/17
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class SearchResult {
@@ -92,6 +92,11 @@ public class SearchResult {
      */
     private Integer blockOrder;
 
+    /**
+     * 命中的子块内容（父子块检索时用于在父块中截取上下文窗口）
+     */
+    private String matchedContent;
+
     /**
      * 设置余弦距离并计算相似度
      */
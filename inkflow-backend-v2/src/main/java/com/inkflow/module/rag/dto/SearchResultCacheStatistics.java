@@ -0,0 +1,65 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 检索结果缓存统计DTO
+ * 用于监控重复检索的命中情况和版本失效次数。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchResultCacheStatistics {
+
+    /**
+     * 是否启用检索结果缓存
+     */
+    private boolean enabled;
+
+    /**
+     * 当前缓存条目数
+     */
+    private long size;
+
+    /**
+     * 最大缓存条目数
+     */
+    private int maxSize;
+
+    /**
+     * 命中次数
+     */
+    private long hits;
+
+    /**
+     * 未命中次数（含版本过期）
+     */
+    private long misses;
+
+    /**
+     * 命中率 (0-1)
+     */
+    private double hitRate;
+
+    /**
+     * 因索引版本变化淘汰的条目数
+     */
+    private long staleEvictions;
+
+    /**
+     * 索引版本递增次数
+     */
+    private long versionBumps;
+
+    /**
+     * 已记录版本的项目数
+     */
+    private int trackedProjects;
+}
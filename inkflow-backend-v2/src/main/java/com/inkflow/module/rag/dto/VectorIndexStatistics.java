@@ -0,0 +1,110 @@
+package com.inkflow.module.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 进程内向量索引统计DTO
+ * 用于对比内存索引与pgvector的延迟和召回质量。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorIndexStatistics {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled;
+
+    /**
+     * 检索模式 (hnsw / brute-force)
+     */
+    private String mode;
+
+    /**
+     * 是否使用SIMD内核
+     */
+    private boolean simdEnabled;
+
+    /**
+     * 当前常驻内存的项目分片数
+     */
+    private long residentShards;
+
+    /**
+     * 最大分片数
+     */
+    private int maxShards;
+
+    /**
+     * 常驻内存的知识块数量
+     */
+    private long residentChunks;
+
+    /**
+     * 估算占用内存（字节）
+     */
+    private long memoryBytes;
+
+    /**
+     * 分片加载次数
+     */
+    private long shardLoads;
+
+    /**
+     * 分片淘汰次数
+     */
+    private long shardEvictions;
+
+    /**
+     * 回退到pgvector的次数
+     */
+    private long fallbacks;
+
+    /**
+     * 内存索引查询次数
+     */
+    private long indexQueries;
+
+    /**
+     * 内存索引查询P50延迟（微秒）
+     */
+    private long indexP50Micros;
+
+    /**
+     * 内存索引查询P99延迟（微秒）
+     */
+    private long indexP99Micros;
+
+    /**
+     * pgvector查询次数
+     */
+    private long pgvectorQueries;
+
+    /**
+     * pgvector查询P50延迟（微秒）
+     */
+    private long pgvectorP50Micros;
+
+    /**
+     * pgvector查询P99延迟（微秒）
+     */
+    private long pgvectorP99Micros;
+
+    /**
+     * 影子对比次数
+     */
+    private long shadowQueries;
+
+    /**
+     * 影子对比的平均recall@k (0-1)
+     */
+    private double averageRecall;
+}
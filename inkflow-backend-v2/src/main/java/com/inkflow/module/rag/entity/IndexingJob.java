@@ -0,0 +1,123 @@
+package com.inkflow.module.rag.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * RAG索引任务实体（发件箱）
+ * 每个来源最多一条任务：重复入队时覆盖操作类型并推迟执行时间（去抖，后写覆盖先写）
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Entity
+@Table(name = "indexing_jobs")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexingJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    /**
+     * 所属项目ID
+     */
+    @Column(name = "project_id", nullable = false)
+    private UUID projectId;
+
+    /**
+     * 来源类型: story_block, wiki_entry, character, chapter_summary
+     */
+    @Column(name = "source_type", nullable = false, length = 50)
+    private String sourceType;
+
+    /**
+     * 来源实体ID
+     */
+    @Column(name = "source_id", nullable = false, unique = true)
+    private UUID sourceId;
+
+    /**
+     * 操作类型
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Operation operation;
+
+    /**
+     * 任务状态
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private Status status = Status.PENDING;
+
+    /**
+     * 入队代数，每次重新入队递增
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Long generation = 1L;
+
+    /**
+     * 已失败次数
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    /**
+     * 最近一次失败原因
+     */
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    /**
+     * 最早可执行时间
+     */
+    @Column(name = "available_at", nullable = false)
+    private Instant availableAt;
+
+    /**
+     * 首次入队时间
+     */
+    @Column(name = "enqueued_at", nullable = false)
+    private Instant enqueuedAt;
+
+    /**
+     * 被工作线程领取的时间
+     */
+    @Column(name = "locked_at")
+    private Instant lockedAt;
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    /**
+     * 操作类型
+     */
+    public enum Operation {
+        /** 重建来源索引 */
+        INDEX,
+        /** 删除来源索引 */
+        DELETE
+    }
+
+    /**
+     * 任务状态
+     */
+    public enum Status {
+        /** 待执行 */
+        PENDING,
+        /** 执行中 */
+        RUNNING,
+        /** 重试耗尽 */
+        FAILED
+    }
+}
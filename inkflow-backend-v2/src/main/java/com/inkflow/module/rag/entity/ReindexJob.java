@@ -0,0 +1,154 @@
+package com.inkflow.module.rag.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * 项目全量重建索引任务实体
+ * 按来源类型依次遍历项目的全部来源，每批提交后持久化游标（来源类型 + 最后来源ID），崩溃后从游标续跑
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Entity
+@Table(name = "reindex_jobs")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    /**
+     * 所属项目ID
+     */
+    @Column(name = "project_id", nullable = false)
+    private UUID projectId;
+
+    /**
+     * 任务状态
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private Status status = Status.PENDING;
+
+    /**
+     * 是否跳过向量复用和缓存，重新生成全部子块向量（切换Embedding模型时使用）
+     */
+    @Column(name = "force_reembed", nullable = false)
+    @Builder.Default
+    private Boolean forceReembed = false;
+
+    /**
+     * 游标：当前处理的来源类型，null 表示尚未开始
+     */
+    @Column(name = "cursor_source_type", length = 50)
+    private String cursorSourceType;
+
+    /**
+     * 游标：当前来源类型下最后一个已提交批次的来源ID
+     */
+    @Column(name = "cursor_source_id")
+    private UUID cursorSourceId;
+
+    /**
+     * 已重建的来源数
+     */
+    @Column(name = "processed_sources", nullable = false)
+    @Builder.Default
+    private Long processedSources = 0L;
+
+    /**
+     * 内容未变化或为空而跳过的来源数
+     */
+    @Column(name = "skipped_sources", nullable = false)
+    @Builder.Default
+    private Long skippedSources = 0L;
+
+    /**
+     * 重建失败的来源数（所在批次失败后逐个重试仍失败）
+     */
+    @Column(name = "failed_sources", nullable = false)
+    @Builder.Default
+    private Long failedSources = 0L;
+
+    /**
+     * 已写入的子块数
+     */
+    @Column(name = "chunks_written", nullable = false)
+    @Builder.Default
+    private Long chunksWritten = 0L;
+
+    /**
+     * 任务开始时统计的来源总数
+     */
+    @Column(name = "total_sources")
+    private Long totalSources;
+
+    /**
+     * 累计执行耗时（毫秒），不含排队和崩溃中断时间
+     */
+    @Column(name = "active_millis", nullable = false)
+    @Builder.Default
+    private Long activeMillis = 0L;
+
+    /**
+     * 最近一次失败原因
+     */
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "started_at")
+    private Instant startedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    /**
+     * 租约令牌，每次领取时重新生成，进度写入时校验
+     */
+    @Column(name = "lease_token")
+    private UUID leaseToken;
+
+    /**
+     * 租约时间，执行中每批续约
+     */
+    @Column(name = "locked_at")
+    private Instant lockedAt;
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    /**
+     * 任务是否已结束
+     */
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    /**
+     * 任务状态
+     */
+    public enum Status {
+        /** 待执行 */
+        PENDING,
+        /** 执行中 */
+        RUNNING,
+        /** 已完成 */
+        COMPLETED,
+        /** 失败 */
+        FAILED,
+        /** 已取消 */
+        CANCELLED
+    }
+}
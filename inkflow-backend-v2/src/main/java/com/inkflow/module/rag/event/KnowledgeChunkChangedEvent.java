@@ -0,0 +1,91 @@
+package com.inkflow.module.rag.event;
+
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 知识块变更事件
+ *
+ * 当knowledge_chunks表中的块被写入或删除时发布此事件，
+ * 用于同步进程内向量索引等派生数据
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public class KnowledgeChunkChangedEvent extends ApplicationEvent {
+
+    private final UUID projectId;
+    private final UUID sourceId;
+    private final Operation operation;
+    private final List<KnowledgeChunk> chunks;
+
+    public KnowledgeChunkChangedEvent(
+            Object source,
+            UUID projectId,
+            UUID sourceId,
+            Operation operation,
+            List<KnowledgeChunk> chunks
+    ) {
+        super(source);
+        this.projectId = projectId;
+        this.sourceId = sourceId;
+        this.operation = operation;
+        this.chunks = chunks != null ? chunks : List.of();
+    }
+
+    /**
+     * 操作类型枚举
+     */
+    public enum Operation {
+        /** 新增或更新块 */
+        UPSERT,
+        /** 删除某个来源的全部块 */
+        DELETE_SOURCE,
+        /** 删除整个项目的块 */
+        DELETE_PROJECT
+    }
+
+    /**
+     * 项目ID，删除来源时可能为null（此时由监听方自行定位）
+     */
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public UUID getSourceId() {
+        return sourceId;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public List<KnowledgeChunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * 便捷工厂方法 - 块已保存
+     */
+    public static KnowledgeChunkChangedEvent upserted(Object source, UUID projectId, UUID sourceId,
+                                                      List<KnowledgeChunk> chunks) {
+        return new KnowledgeChunkChangedEvent(source, projectId, sourceId, Operation.UPSERT, chunks);
+    }
+
+    /**
+     * 便捷工厂方法 - 来源的块已删除
+     */
+    public static KnowledgeChunkChangedEvent sourceDeleted(Object source, UUID projectId, UUID sourceId) {
+        return new KnowledgeChunkChangedEvent(source, projectId, sourceId, Operation.DELETE_SOURCE, null);
+    }
+
+    /**
+     * 便捷工厂方法 - 项目的块已全部删除
+     */
+    public static KnowledgeChunkChangedEvent projectDeleted(Object source, UUID projectId) {
+        return new KnowledgeChunkChangedEvent(source, projectId, null, Operation.DELETE_PROJECT, null);
+    }
+}
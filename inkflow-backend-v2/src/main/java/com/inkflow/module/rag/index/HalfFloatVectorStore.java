@@ -0,0 +1,100 @@
+package com.inkflow.module.rag.index;
+
+import java.util.Arrays;
+
+/**
+ * 半精度向量紧凑存储
+ *
+ * 所有向量顺序存放在一个 short[] 中，按序号(ordinal)寻址，
+ * 与数据库中的 halfvec(1024) 精度一致，内存占用为 float[] 的一半。
+ * 写入的向量应已归一化，点积即余弦相似度。
+ *
+ * 非线程安全，由 {@link ProjectVectorShard} 的读写锁保护。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+final class HalfFloatVectorStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int dimension;
+    private short[] data;
+    private int size;
+
+    /**
+     * 构建图时用于两两比较的解码缓冲区（仅写线程使用）
+     */
+    private final float[] scratch;
+
+    HalfFloatVectorStore(int dimension) {
+        this(dimension, INITIAL_CAPACITY);
+    }
+
+    HalfFloatVectorStore(int dimension, int initialCapacity) {
+        this.dimension = dimension;
+        this.data = new short[Math.max(1, initialCapacity) * dimension];
+        this.scratch = new float[dimension];
+    }
+
+    /**
+     * 追加向量，返回其序号
+     */
+    int add(float[] normalized) {
+        if (normalized.length != dimension) {
+            throw new IllegalArgumentException(
+                    "向量维度不匹配: expected=" + dimension + ", actual=" + normalized.length);
+        }
+        ensureCapacity(size + 1);
+        VectorKernels.encode(normalized, data, size * dimension, dimension);
+        return size++;
+    }
+
+    /**
+     * 查询向量与存储向量的相似度
+     */
+    float similarity(float[] query, int ordinal) {
+        return VectorKernels.dotHalf(query, data, ordinal * dimension, dimension);
+    }
+
+    /**
+     * 两个存储向量之间的相似度
+     */
+    float similarity(int a, int b) {
+        VectorKernels.decode(data, a * dimension, scratch, dimension);
+        return VectorKernels.dotHalf(scratch, data, b * dimension, dimension);
+    }
+
+    /**
+     * 解码指定序号的向量
+     */
+    float[] get(int ordinal) {
+        float[] vector = new float[dimension];
+        VectorKernels.decode(data, ordinal * dimension, vector, dimension);
+        return vector;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 估算占用的堆内存字节数
+     */
+    long memoryBytes() {
+        return (long) data.length * Short.BYTES;
+    }
+
+    private void ensureCapacity(int required) {
+        int capacity = data.length / dimension;
+        if (required <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(required, capacity + (capacity >> 1));
+        data = Arrays.copyOf(data, newCapacity * dimension);
+    }
+}
@@ -0,0 +1,281 @@
+package com.inkflow.module.rag.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * 紧凑的HNSW（分层可导航小世界）图
+ *
+ * 节点即 {@link HalfFloatVectorStore} 中的序号，需按序号递增插入。
+ * 邻接表使用 int[] 存储，下标0为邻居数量，其后为邻居序号。
+ * 删除通过调用方的过滤谓词实现（墓碑），墓碑节点仍参与图导航。
+ *
+ * 非线程安全，由 {@link ProjectVectorShard} 的读写锁保护。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+final class HnswGraph {
+
+    private final HalfFloatVectorStore vectors;
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    /** links[node][level] = {count, neighbor...} */
+    private int[][][] links;
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswGraph(HalfFloatVectorStore vectors, int m, int efConstruction, long seed) {
+        this.vectors = vectors;
+        this.m = Math.max(2, m);
+        this.maxConnections0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.random = new SplittableRandom(seed);
+        this.links = new int[Math.max(16, vectors.size())][][];
+    }
+
+    /**
+     * 将已写入向量存储的节点接入图中
+     *
+     * @param node 节点序号，必须等于当前图大小
+     */
+    void add(int node) {
+        if (node != size) {
+            throw new IllegalStateException("HNSW节点必须按序号递增插入: expected=" + size + ", actual=" + node);
+        }
+        int level = randomLevel();
+        ensureCapacity(node + 1);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxConnections(l) + 1];
+        }
+        links[node] = nodeLinks;
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        float[] query = vectors.get(node);
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(query, current, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            ScoredNodeHeap.OrdinalHits candidates = searchLayer(query, current, efConstruction, l, null, node)
+                    .drainDescending();
+            int[] selected = selectNeighbors(candidates.ordinals(), candidates.scores(), m);
+            int[] own = nodeLinks[l];
+            for (int neighbor : selected) {
+                own[++own[0]] = neighbor;
+                connect(neighbor, node, l);
+            }
+            if (candidates.size() > 0) {
+                current = candidates.ordinals()[0];
+            }
+        }
+
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * K近邻搜索
+     *
+     * @param query  归一化后的查询向量
+     * @param k      返回数量
+     * @param ef     搜索候选集大小
+     * @param accept 结果过滤谓词（墓碑、来源类型等），null表示不过滤
+     * @return 按相似度降序排列的命中
+     */
+    ScoredNodeHeap.OrdinalHits search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0 || k <= 0) {
+            return new ScoredNodeHeap.OrdinalHits(new int[0], new float[0]);
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, current, l);
+        }
+        ScoredNodeHeap results = searchLayer(query, current, Math.max(ef, k), 0, accept, -1);
+        while (results.size() > k) {
+            results.pop();
+        }
+        return results.drainDescending();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 估算邻接表占用的堆内存字节数
+     */
+    long memoryBytes() {
+        long bytes = (long) links.length * 8;
+        for (int i = 0; i < size; i++) {
+            for (int[] level : links[i]) {
+                bytes += 16 + (long) level.length * Integer.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    // ==================== 图构建 ====================
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = vectors.similarity(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbors = links[current][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int candidate = neighbors[i];
+                float score = vectors.similarity(query, candidate);
+                if (score > best) {
+                    best = score;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层束搜索，返回以最差结果为堆顶的结果堆
+     *
+     * @param exclude 构建阶段排除自身节点，查询阶段传 -1
+     */
+    private ScoredNodeHeap searchLayer(float[] query, int entry, int ef, int level,
+                                       IntPredicate accept, int exclude) {
+        BitSet visited = new BitSet(size);
+        ScoredNodeHeap candidates = ScoredNodeHeap.maxHeap(ef * 2);
+        ScoredNodeHeap results = ScoredNodeHeap.minHeap(ef + 1);
+
+        float entryScore = vectors.similarity(query, entry);
+        visited.set(entry);
+        if (exclude >= 0) {
+            visited.set(exclude);
+        }
+        candidates.push(entry, entryScore);
+        if (entry != exclude && (accept == null || accept.test(entry))) {
+            results.push(entry, entryScore);
+        }
+
+        while (!candidates.isEmpty()) {
+            float candidateScore = candidates.topScore();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            int[] neighbors = links[candidate][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float score = vectors.similarity(query, neighbor);
+                if (results.size() < ef || score > results.topScore()) {
+                    candidates.push(neighbor, score);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.push(neighbor, score);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * HNSW启发式邻居选择：候选者比已选邻居更接近目标时才保留，
+     * 数量不足时用被淘汰的候选补齐
+     *
+     * @param ordinals 按相似度降序排列的候选
+     * @param scores   候选与目标的相似度
+     */
+    private int[] selectNeighbors(int[] ordinals, float[] scores, int limit) {
+        if (ordinals.length <= limit) {
+            return ordinals;
+        }
+        int[] selected = new int[limit];
+        int selectedCount = 0;
+        int[] pruned = new int[ordinals.length];
+        int prunedCount = 0;
+
+        for (int i = 0; i < ordinals.length && selectedCount < limit; i++) {
+            int candidate = ordinals[i];
+            boolean keep = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (vectors.similarity(candidate, selected[j]) > scores[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[selectedCount++] = candidate;
+            } else {
+                pruned[prunedCount++] = candidate;
+            }
+        }
+        for (int i = 0; i < prunedCount && selectedCount < limit; i++) {
+            selected[selectedCount++] = pruned[i];
+        }
+        return selectedCount == limit ? selected : Arrays.copyOf(selected, selectedCount);
+    }
+
+    /**
+     * 为邻居添加反向连接，超出上限时重新裁剪
+     */
+    private void connect(int node, int newNeighbor, int level) {
+        int[] neighbors = links[node][level];
+        int capacity = neighbors.length - 1;
+        if (neighbors[0] < capacity) {
+            neighbors[++neighbors[0]] = newNeighbor;
+            return;
+        }
+
+        ScoredNodeHeap heap = ScoredNodeHeap.maxHeap(capacity + 1);
+        for (int i = 1; i <= neighbors[0]; i++) {
+            heap.push(neighbors[i], vectors.similarity(node, neighbors[i]));
+        }
+        heap.push(newNeighbor, vectors.similarity(node, newNeighbor));
+        ScoredNodeHeap.OrdinalHits ranked = heap.drainDescending();
+        int[] selected = selectNeighbors(ranked.ordinals(), ranked.scores(), capacity);
+
+        neighbors[0] = selected.length;
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnections0 : m;
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble();
+        return (int) (-Math.log(r) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > links.length) {
+            links = Arrays.copyOf(links, Math.max(required, links.length + (links.length >> 1)));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.inkflow.module.rag.index;
+
+import java.util.Arrays;
+
+/**
+ * 固定窗口的延迟采样器
+ *
+ * 使用环形缓冲区保留最近N次耗时（微秒），按需计算分位数。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public final class LatencyRecorder {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+    private long total;
+
+    public LatencyRecorder(int capacity) {
+        this.samples = new long[Math.max(16, capacity)];
+    }
+
+    /**
+     * 记录一次耗时
+     */
+    public synchronized void record(long nanos) {
+        samples[next] = nanos / 1_000;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        total++;
+    }
+
+    /**
+     * 计算分位数（微秒）
+     *
+     * @param percentile 0-100
+     */
+    public long percentileMicros(double percentile) {
+        long[] snapshot;
+        synchronized (this) {
+            if (count == 0) {
+                return 0;
+            }
+            snapshot = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(snapshot);
+        int index = (int) Math.ceil(percentile / 100.0 * snapshot.length) - 1;
+        return snapshot[Math.max(0, Math.min(index, snapshot.length - 1))];
+    }
+
+    /**
+     * 累计记录次数
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+}
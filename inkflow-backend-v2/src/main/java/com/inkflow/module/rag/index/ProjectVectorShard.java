@@ -0,0 +1,303 @@
+package com.inkflow.module.rag.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 单个项目的进程内向量索引分片
+ *
+ * 持有项目全部可检索知识块的半精度向量、HNSW图以及块元数据（来源、类型、层级）。
+ * 删除采用墓碑标记，墓碑比例过高时整体重建以回收空间并恢复图质量。
+ * 读多写少：检索共享读锁，写入/删除/重建独占写锁。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public final class ProjectVectorShard {
+
+    /** 墓碑占比超过该值时重建 */
+    private static final double COMPACTION_RATIO = 0.3;
+    /** 墓碑数量低于该值时不重建 */
+    private static final int COMPACTION_MIN_DELETED = 64;
+
+    private final UUID projectId;
+    private final Settings settings;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private HalfFloatVectorStore vectors;
+    private HnswGraph graph;
+    private final List<UUID> chunkIds = new ArrayList<>();
+    private final List<UUID> sourceIds = new ArrayList<>();
+    private final List<String> sourceTypes = new ArrayList<>();
+    private final BitSet childChunks = new BitSet();
+    private final BitSet deleted = new BitSet();
+    private final Map<UUID, Integer> ordinalByChunkId = new HashMap<>();
+    private final Map<UUID, List<Integer>> ordinalsBySourceId = new HashMap<>();
+    private int deletedCount;
+
+    /**
+     * 分片参数
+     *
+     * @param m                   HNSW每层连接数
+     * @param efConstruction      构建候选集大小
+     * @param efSearch            查询候选集大小
+     * @param bruteForce          是否始终暴力扫描
+     * @param bruteForceThreshold 规模低于该值时暴力扫描
+     */
+    public record Settings(int m, int efConstruction, int efSearch, boolean bruteForce, int bruteForceThreshold) {
+    }
+
+    /**
+     * 待写入分片的块
+     */
+    public record Entry(UUID chunkId, UUID sourceId, String sourceType, boolean child, float[] embedding) {
+    }
+
+    public ProjectVectorShard(UUID projectId, Settings settings) {
+        this.projectId = projectId;
+        this.settings = settings;
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 批量写入块，已存在的块先置为墓碑再追加
+     */
+    public void addAll(List<Entry> entries) {
+        lock.writeLock().lock();
+        try {
+            for (Entry entry : entries) {
+                removeChunkInternal(entry.chunkId());
+                addInternal(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除来源的全部块
+     *
+     * @return 删除的块数量
+     */
+    public int removeSource(UUID sourceId) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> ordinals = ordinalsBySourceId.remove(sourceId);
+            if (ordinals == null) {
+                return 0;
+            }
+            int removed = 0;
+            for (int ordinal : ordinals) {
+                if (!deleted.get(ordinal)) {
+                    deleted.set(ordinal);
+                    ordinalByChunkId.remove(chunkIds.get(ordinal));
+                    deletedCount++;
+                    removed++;
+                }
+            }
+            compactIfNeeded();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除单个块
+     */
+    public boolean removeChunk(UUID chunkId) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = removeChunkInternal(chunkId);
+            if (removed) {
+                compactIfNeeded();
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 检索 ====================
+
+    /**
+     * K近邻检索
+     *
+     * @param queryEmbedding 查询向量（无需归一化）
+     * @param k              返回数量
+     * @param sourceType     来源类型过滤，null表示不过滤
+     * @param childOnly      是否只检索子块
+     * @return 按相似度降序排列的命中
+     */
+    public List<VectorHit> search(float[] queryEmbedding, int k, String sourceType, boolean childOnly) {
+        lock.readLock().lock();
+        try {
+            if (vectors == null || liveCountInternal() == 0 || k <= 0) {
+                return Collections.emptyList();
+            }
+            if (queryEmbedding.length != vectors.dimension()) {
+                throw new IllegalArgumentException(
+                        "查询向量维度不匹配: expected=" + vectors.dimension() + ", actual=" + queryEmbedding.length);
+            }
+            float[] query = VectorKernels.normalize(queryEmbedding);
+            IntPredicate accept = ordinal -> !deleted.get(ordinal)
+                    && (!childOnly || childChunks.get(ordinal))
+                    && (sourceType == null || sourceType.equals(sourceTypes.get(ordinal)));
+
+            ScoredNodeHeap.OrdinalHits hits;
+            if (settings.bruteForce() || liveCountInternal() < settings.bruteForceThreshold()) {
+                hits = bruteForce(query, k, accept);
+            } else {
+                hits = graph.search(query, k, settings.efSearch(), accept);
+                // 过滤条件过于严格时图搜索可能凑不满k个，退回精确扫描
+                if (hits.size() < k) {
+                    hits = bruteForce(query, k, accept);
+                }
+            }
+            return toVectorHits(hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 状态 ====================
+
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * 有效（非墓碑）块数量
+     */
+    public int liveCount() {
+        lock.readLock().lock();
+        try {
+            return liveCountInternal();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 估算占用的堆内存字节数
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            if (vectors == null) {
+                return 0;
+            }
+            return vectors.memoryBytes() + graph.memoryBytes() + (long) chunkIds.size() * 96;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 内部方法 ====================
+
+    private void addInternal(Entry entry) {
+        if (vectors == null) {
+            vectors = new HalfFloatVectorStore(entry.embedding().length);
+            graph = newGraph(vectors);
+        }
+        int ordinal = vectors.add(VectorKernels.normalize(entry.embedding()));
+        chunkIds.add(entry.chunkId());
+        sourceIds.add(entry.sourceId());
+        sourceTypes.add(entry.sourceType());
+        childChunks.set(ordinal, entry.child());
+        ordinalByChunkId.put(entry.chunkId(), ordinal);
+        ordinalsBySourceId.computeIfAbsent(entry.sourceId(), id -> new ArrayList<>()).add(ordinal);
+        if (!settings.bruteForce()) {
+            graph.add(ordinal);
+        }
+    }
+
+    private boolean removeChunkInternal(UUID chunkId) {
+        Integer ordinal = ordinalByChunkId.remove(chunkId);
+        if (ordinal == null) {
+            return false;
+        }
+        deleted.set(ordinal);
+        deletedCount++;
+        List<Integer> sourceOrdinals = ordinalsBySourceId.get(sourceIds.get(ordinal));
+        if (sourceOrdinals != null) {
+            sourceOrdinals.remove(ordinal);
+            if (sourceOrdinals.isEmpty()) {
+                ordinalsBySourceId.remove(sourceIds.get(ordinal));
+            }
+        }
+        return true;
+    }
+
+    private ScoredNodeHeap.OrdinalHits bruteForce(float[] query, int k, IntPredicate accept) {
+        ScoredNodeHeap heap = ScoredNodeHeap.minHeap(k + 1);
+        int size = vectors.size();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (!accept.test(ordinal)) {
+                continue;
+            }
+            float score = vectors.similarity(query, ordinal);
+            if (heap.size() < k) {
+                heap.push(ordinal, score);
+            } else if (score > heap.topScore()) {
+                heap.pop();
+                heap.push(ordinal, score);
+            }
+        }
+        return heap.drainDescending();
+    }
+
+    private List<VectorHit> toVectorHits(ScoredNodeHeap.OrdinalHits hits) {
+        List<VectorHit> results = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            int ordinal = hits.ordinals()[i];
+            results.add(new VectorHit(chunkIds.get(ordinal), sourceIds.get(ordinal), hits.scores()[i]));
+        }
+        return results;
+    }
+
+    private int liveCountInternal() {
+        return chunkIds.size() - deletedCount;
+    }
+
+    /**
+     * 墓碑过多时用有效块重建存储和图
+     */
+    private void compactIfNeeded() {
+        if (deletedCount < COMPACTION_MIN_DELETED || deletedCount < chunkIds.size() * COMPACTION_RATIO) {
+            return;
+        }
+        HalfFloatVectorStore oldVectors = vectors;
+        List<Entry> live = new ArrayList<>(liveCountInternal());
+        for (int ordinal = 0; ordinal < chunkIds.size(); ordinal++) {
+            if (!deleted.get(ordinal)) {
+                live.add(new Entry(chunkIds.get(ordinal), sourceIds.get(ordinal),
+                        sourceTypes.get(ordinal), childChunks.get(ordinal), oldVectors.get(ordinal)));
+            }
+        }
+
+        vectors = new HalfFloatVectorStore(oldVectors.dimension(), live.size());
+        graph = newGraph(vectors);
+        chunkIds.clear();
+        sourceIds.clear();
+        sourceTypes.clear();
+        childChunks.clear();
+        deleted.clear();
+        ordinalByChunkId.clear();
+        ordinalsBySourceId.clear();
+        deletedCount = 0;
+        live.forEach(this::addInternal);
+    }
+
+    private HnswGraph newGraph(HalfFloatVectorStore store) {
+        return new HnswGraph(store, settings.m(), settings.efConstruction(), projectId.getMostSignificantBits());
+    }
+}
@@ -0,0 +1,136 @@
+package com.inkflow.module.rag.index;
+
+import java.util.Arrays;
+
+/**
+ * 基于原始数组的 (节点序号, 分数) 二叉堆
+ *
+ * HNSW搜索的热路径上避免 PriorityQueue 的装箱开销。
+ * maxHeap=true 时堆顶为分数最高的节点，否则为分数最低的节点。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+final class ScoredNodeHeap {
+
+    private final boolean maxHeap;
+    private int[] nodes;
+    private float[] scores;
+    private int size;
+
+    ScoredNodeHeap(int initialCapacity, boolean maxHeap) {
+        int capacity = Math.max(4, initialCapacity);
+        this.maxHeap = maxHeap;
+        this.nodes = new int[capacity];
+        this.scores = new float[capacity];
+    }
+
+    static ScoredNodeHeap maxHeap(int initialCapacity) {
+        return new ScoredNodeHeap(initialCapacity, true);
+    }
+
+    static ScoredNodeHeap minHeap(int initialCapacity) {
+        return new ScoredNodeHeap(initialCapacity, false);
+    }
+
+    void push(int node, float score) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size << 1);
+            scores = Arrays.copyOf(scores, size << 1);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(score, scores[parent])) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        scores[i] = score;
+    }
+
+    /**
+     * 弹出堆顶节点
+     */
+    int pop() {
+        int top = nodes[0];
+        int lastNode = nodes[--size];
+        float lastScore = scores[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = (i << 1) + 1;
+            int right = child + 1;
+            if (right < size && before(scores[right], scores[child])) {
+                child = right;
+            }
+            if (!before(scores[child], lastScore)) {
+                break;
+            }
+            nodes[i] = nodes[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        nodes[i] = lastNode;
+        scores[i] = lastScore;
+        return top;
+    }
+
+    int topNode() {
+        return nodes[0];
+    }
+
+    float topScore() {
+        return scores[0];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * 取出全部元素，按分数从高到低排列（会清空堆）
+     */
+    OrdinalHits drainDescending() {
+        int count = size;
+        int[] outNodes = new int[count];
+        float[] outScores = new float[count];
+        if (maxHeap) {
+            for (int i = 0; i < count; i++) {
+                outScores[i] = scores[0];
+                outNodes[i] = pop();
+            }
+        } else {
+            for (int i = count - 1; i >= 0; i--) {
+                outScores[i] = scores[0];
+                outNodes[i] = pop();
+            }
+        }
+        return new OrdinalHits(outNodes, outScores);
+    }
+
+    private boolean before(float a, float b) {
+        return maxHeap ? a > b : a < b;
+    }
+
+    /**
+     * 按分数降序排列的检索命中
+     */
+    record OrdinalHits(int[] ordinals, float[] scores) {
+
+        int size() {
+            return ordinals.length;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.inkflow.module.rag.index;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 Vector API 的SIMD内核
+ *
+ * 仅在 simd profile 下编译，由 {@link VectorKernels} 在确认 jdk.incubator.vector 模块可用后反射加载。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+final class SimdKernels implements VectorKernels.Simd {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * 半精度解码的单批次缓冲区（一个向量宽度），每个线程一份
+     */
+    private static final ThreadLocal<float[]> LANES = ThreadLocal.withInitial(() -> new float[SPECIES.length()]);
+
+    SimdKernels() {
+    }
+
+    @Override
+    public float dot(float[] a, float[] b, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 半精度点积：按向量宽度逐批解码后立即参与乘加，不再单独做整条向量的解码
+     * Vector API 没有 binary16 转换算子，解码使用 Float.float16ToFloat（x86 上为 F16C 内建）
+     */
+    @Override
+    public float dotHalf(float[] query, short[] packed, int offset, int length) {
+        float[] lanes = LANES.get();
+        int step = SPECIES.length();
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+        for (; i < upperBound; i += step) {
+            int base = offset + i;
+            for (int lane = 0; lane < step; lane++) {
+                lanes[lane] = Float.float16ToFloat(packed[base + lane]);
+            }
+            FloatVector vq = FloatVector.fromArray(SPECIES, query, i);
+            FloatVector vh = FloatVector.fromArray(SPECIES, lanes, 0);
+            acc = vq.fma(vh, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * Float.float16ToFloat(packed[offset + i]);
+        }
+        return sum;
+    }
+}
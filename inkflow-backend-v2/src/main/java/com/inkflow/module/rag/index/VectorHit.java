@@ -0,0 +1,15 @@
+package com.inkflow.module.rag.index;
+
+import java.util.UUID;
+
+/**
+ * 进程内向量索引的检索命中
+ *
+ * @param chunkId    知识块ID
+ * @param sourceId   来源实体ID
+ * @param similarity 余弦相似度
+ * @author zsg
+ * @date 2025/12/17
+ */
+public record VectorHit(UUID chunkId, UUID sourceId, double similarity) {
+}
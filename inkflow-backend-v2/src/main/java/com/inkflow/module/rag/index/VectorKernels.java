@@ -0,0 +1,122 @@
+package com.inkflow.module.rag.index;
+
+/**
+ * 向量计算内核
+ *
+ * 提供点积与归一化等基础运算。SIMD 实现 SimdKernels 依赖孵化模块 jdk.incubator.vector，
+ * 只在 simd profile 下编译（mvn -Psimd）；运行时模块存在且该类已编译时使用SIMD，否则退化为标量循环。
+ * 半精度向量以 short[] 紧凑存储（IEEE 754 binary16），计算时解码为 float。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public final class VectorKernels {
+
+    /**
+     * SIMD实现，不可用时为 null
+     */
+    private static final Simd SIMD = loadSimd();
+
+    private VectorKernels() {
+    }
+
+    /**
+     * 是否使用SIMD路径
+     */
+    public static boolean isSimdAvailable() {
+        return SIMD != null;
+    }
+
+    /**
+     * float向量点积
+     */
+    public static float dot(float[] a, float[] b, int length) {
+        if (SIMD != null) {
+            return SIMD.dot(a, b, length);
+        }
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * float查询向量与半精度存储向量的点积
+     *
+     * @param query  查询向量
+     * @param packed 半精度紧凑存储
+     * @param offset 存储向量起始偏移
+     * @param length 向量维度
+     */
+    public static float dotHalf(float[] query, short[] packed, int offset, int length) {
+        if (SIMD != null) {
+            return SIMD.dotHalf(query, packed, offset, length);
+        }
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += query[i] * Float.float16ToFloat(packed[offset + i]);
+        }
+        return sum;
+    }
+
+    /**
+     * 将半精度向量解码到目标数组
+     */
+    public static void decode(short[] packed, int offset, float[] target, int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] = Float.float16ToFloat(packed[offset + i]);
+        }
+    }
+
+    /**
+     * 将float向量编码为半精度写入目标数组
+     */
+    public static void encode(float[] source, short[] packed, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            packed[offset + i] = Float.floatToFloat16(source[i]);
+        }
+    }
+
+    /**
+     * 返回L2归一化后的副本，零向量原样返回
+     */
+    public static float[] normalize(float[] vector) {
+        float[] copy = vector.clone();
+        float norm = (float) Math.sqrt(dot(copy, copy, copy.length));
+        if (norm == 0f) {
+            return copy;
+        }
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] /= norm;
+        }
+        return copy;
+    }
+
+    /**
+     * 加载SIMD实现：需要运行时存在 jdk.incubator.vector 模块（--add-modules），且构建时启用了 simd profile
+     */
+    private static Simd loadSimd() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (Simd) Class.forName("com.inkflow.module.rag.index.SimdKernels")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // 默认构建未编译 SimdKernels
+            return null;
+        }
+    }
+
+    /**
+     * SIMD内核接口，由 SimdKernels 实现
+     */
+    interface Simd {
+
+        float dot(float[] a, float[] b, int length);
+
+        float dotHalf(float[] query, short[] packed, int offset, int length);
+    }
+}
@@ -0,0 +1,150 @@
+package com.inkflow.module.rag.offline;
+
+import com.inkflow.module.rag.dto.RerankResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BM25词面重排序模型（离线替身）
+ *
+ * 替代 Reranker 端点的 /rerank 与 /similarity 接口：
+ * - rerank：以本次候选集为语料计算 IDF，按 BM25 打分，再除以“全部查询词都命中”时的上界归一化到 0-1
+ * - similarity：两段文本词频向量的余弦相似度
+ * 词项为汉字/字母数字的一元组和二元组（中文无需分词即可得到可用的词面匹配）。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public class Bm25RerankModel {
+
+    private final double k1;
+    private final double b;
+    private final SimulatedFaults faults;
+
+    public Bm25RerankModel(double k1, double b) {
+        this(k1, b, SimulatedFaults.none());
+    }
+
+    Bm25RerankModel(double k1, double b, SimulatedFaults faults) {
+        this.k1 = k1;
+        this.b = b;
+        this.faults = faults;
+    }
+
+    /**
+     * 重排序候选文本
+     *
+     * @param query 查询文本
+     * @param documents 候选文本
+     * @param topK 返回数量
+     * @return 按得分降序排列的结果，index 为候选在输入中的位置
+     */
+    public List<RerankResult> rerank(String query, List<String> documents, int topK) {
+        faults.apply(documents.size());
+
+        List<Map<Long, Integer>> termFrequencies = new ArrayList<>(documents.size());
+        Map<Long, Integer> documentFrequency = new HashMap<>();
+        long totalLength = 0;
+        for (String document : documents) {
+            Map<Long, Integer> tf = termFrequency(document);
+            termFrequencies.add(tf);
+            tf.keySet().forEach(term -> documentFrequency.merge(term, 1, Integer::sum));
+            totalLength += length(tf);
+        }
+        double avgLength = documents.isEmpty() ? 0 : (double) totalLength / documents.size();
+
+        Map<Long, Integer> queryTerms = termFrequency(query);
+        Map<Long, Double> idf = new HashMap<>(queryTerms.size());
+        double upperBound = 0;
+        for (Long term : queryTerms.keySet()) {
+            int df = documentFrequency.getOrDefault(term, 0);
+            double termIdf = Math.log(1 + (documents.size() - df + 0.5) / (df + 0.5));
+            idf.put(term, termIdf);
+            upperBound += termIdf * (k1 + 1);
+        }
+
+        List<RerankResult> results = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Map<Long, Integer> tf = termFrequencies.get(i);
+            double norm = k1 * (1 - b + b * (avgLength > 0 ? length(tf) / avgLength : 1));
+            double score = 0;
+            for (Map.Entry<Long, Double> entry : idf.entrySet()) {
+                Integer frequency = tf.get(entry.getKey());
+                if (frequency != null) {
+                    score += entry.getValue() * frequency * (k1 + 1) / (frequency + norm);
+                }
+            }
+            results.add(RerankResult.of(i, upperBound > 0 ? Math.min(1.0, score / upperBound) : 0.0,
+                    documents.get(i)));
+        }
+        results.sort(Comparator.comparingDouble(RerankResult::getScore).reversed()
+                .thenComparingInt(RerankResult::getIndex));
+        return topK < results.size() ? new ArrayList<>(results.subList(0, Math.max(topK, 0))) : results;
+    }
+
+    /**
+     * 计算两段文本的词面相似度（0-1）
+     */
+    public double similarity(String text1, String text2) {
+        faults.apply(1);
+        Map<Long, Integer> left = termFrequency(text1);
+        Map<Long, Integer> right = termFrequency(text2);
+        if (left.isEmpty() || right.isEmpty()) {
+            return 0.0;
+        }
+        double dot = 0;
+        for (Map.Entry<Long, Integer> entry : left.entrySet()) {
+            Integer other = right.get(entry.getKey());
+            if (other != null) {
+                dot += (double) entry.getValue() * other;
+            }
+        }
+        return dot / Math.sqrt(squaredNorm(left) * squaredNorm(right));
+    }
+
+    /**
+     * 统计一元组和二元组词频，二元组编码为 ((前一字符 + 1) << 21 | 当前字符)，码点不超过21位，与一元组不会冲突
+     */
+    private static Map<Long, Integer> termFrequency(String text) {
+        Map<Long, Integer> frequencies = new HashMap<>();
+        if (text == null) {
+            return frequencies;
+        }
+        long previous = -1;
+        for (int i = 0; i < text.length(); ) {
+            int raw = text.codePointAt(i);
+            i += Character.charCount(raw);
+            int codePoint = Character.toLowerCase(raw);
+            if (!Character.isLetterOrDigit(codePoint)) {
+                previous = -1;
+                continue;
+            }
+            frequencies.merge((long) codePoint, 1, Integer::sum);
+            if (previous >= 0) {
+                frequencies.merge((previous + 1) << 21 | codePoint, 1, Integer::sum);
+            }
+            previous = codePoint;
+        }
+        return frequencies;
+    }
+
+    private static long length(Map<Long, Integer> termFrequency) {
+        long length = 0;
+        for (int frequency : termFrequency.values()) {
+            length += frequency;
+        }
+        return length;
+    }
+
+    private static double squaredNorm(Map<Long, Integer> termFrequency) {
+        double sum = 0;
+        for (int frequency : termFrequency.values()) {
+            sum += (double) frequency * frequency;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,117 @@
+package com.inkflow.module.rag.offline;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 特征哈希嵌入模型（离线替身）
+ *
+ * 把文本的汉字/字母数字一元组和二元组按哈希映射到固定维度（带符号），再做L2归一化。
+ * 相同文本总是得到相同向量，字面重叠越多余弦相似度越高，足以在没有嵌入服务的环境下
+ * 跑通写入、检索链路和召回率评测；不代表真实语义模型的效果。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public class HashingEmbeddingModel implements EmbeddingModel {
+
+    private static final float UNIGRAM_WEIGHT = 0.5f;
+    private static final float BIGRAM_WEIGHT = 1.0f;
+
+    private final int dimension;
+    private final SimulatedFaults faults;
+
+    /**
+     * 不注入延迟和故障的实例，供基准测试和召回率评测直接使用
+     */
+    public HashingEmbeddingModel(int dimension) {
+        this(dimension, SimulatedFaults.none());
+    }
+
+    HashingEmbeddingModel(int dimension, SimulatedFaults faults) {
+        this.dimension = dimension;
+        this.faults = faults;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        faults.apply(texts.size());
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vectorize(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        faults.apply(1);
+        return vectorize(text);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return dimension;
+    }
+
+    private float[] vectorize(String text) {
+        float[] vector = new float[dimension];
+        if (text == null) {
+            return vector;
+        }
+        int previous = -1;
+        for (int i = 0; i < text.length(); ) {
+            int raw = text.codePointAt(i);
+            i += Character.charCount(raw);
+            int codePoint = Character.toLowerCase(raw);
+            if (!Character.isLetterOrDigit(codePoint)) {
+                previous = -1;
+                continue;
+            }
+            add(vector, mix(codePoint), UNIGRAM_WEIGHT);
+            if (previous >= 0) {
+                add(vector, mix(previous * 0x01000193 ^ codePoint), BIGRAM_WEIGHT);
+            }
+            previous = codePoint;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < dimension; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private void add(float[] vector, int hash, float weight) {
+        vector[Math.floorMod(hash, dimension)] += (hash & 0x8000_0000) == 0 ? weight : -weight;
+    }
+
+    /**
+     * murmur3 finalizer
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,64 @@
+package com.inkflow.module.rag.offline;
+
+import com.inkflow.module.rag.config.RagProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 离线模型替身配置
+ * 以 --spring.profiles.active=offline 启动时，用特征哈希嵌入模型替代 TEI 嵌入服务，
+ * 用BM25词面打分替代 Reranker 端点，整条写入/检索链路无需任何外部模型服务。
+ * 注入的故障与真实客户端抛出的异常类型一致（嵌入：RestClient 503；重排序：WebClient 503），
+ * 因此 EmbeddingService 与 RerankerService 的重试、断路器、批量和缓存逻辑保持原样参与压测。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Configuration
+@Profile(OfflineModelConfig.PROFILE)
+public class OfflineModelConfig {
+
+    public static final String PROFILE = "offline";
+
+    @Bean
+    @Primary
+    public EmbeddingModel offlineEmbeddingModel(RagProperties ragProperties) {
+        RagProperties.OfflineModelConfig config = ragProperties.offlineModel();
+        log.warn("使用离线嵌入模型替身: dimension={}, latency={}ms+{}ms/条, jitter={}ms, failureRate={}",
+                config.dimension(), config.embeddingLatencyMs(), config.embeddingPerTextLatencyMs(),
+                config.latencyJitterMs(), config.embeddingFailureRate());
+        SimulatedFaults faults = new SimulatedFaults(
+                config.embeddingLatencyMs(),
+                config.embeddingPerTextLatencyMs(),
+                config.latencyJitterMs(),
+                config.embeddingFailureRate(),
+                () -> new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE, "模拟嵌入服务故障"));
+        return new HashingEmbeddingModel(config.dimension(), faults);
+    }
+
+    @Bean
+    public Bm25RerankModel bm25RerankModel(RagProperties ragProperties) {
+        RagProperties.OfflineModelConfig config = ragProperties.offlineModel();
+        log.warn("使用离线BM25重排序替身: latency={}ms, jitter={}ms, failureRate={}",
+                config.rerankLatencyMs(), config.latencyJitterMs(), config.rerankFailureRate());
+        SimulatedFaults faults = new SimulatedFaults(
+                config.rerankLatencyMs(),
+                0,
+                config.latencyJitterMs(),
+                config.rerankFailureRate(),
+                () -> WebClientResponseException.create(HttpStatus.SERVICE_UNAVAILABLE, "模拟重排序服务故障",
+                        HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8, null));
+        return new Bm25RerankModel(config.bm25K1(), config.bm25B(), faults);
+    }
+}
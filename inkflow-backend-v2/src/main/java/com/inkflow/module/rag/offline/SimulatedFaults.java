@@ -0,0 +1,61 @@
+package com.inkflow.module.rag.offline;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 模拟远程调用的延迟与故障
+ *
+ * 延迟 = 固定延迟 + 每条输入延迟 × 条数 + [0, 抖动]，在调用线程上阻塞等待（与真实HTTP客户端一致）；
+ * 按故障率抛出调用方原本会收到的异常类型，使重试、断路器和降级逻辑走与线上相同的分支。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+final class SimulatedFaults {
+
+    private static final SimulatedFaults NONE = new SimulatedFaults(0, 0, 0, 0, () -> null);
+
+    private final long latencyMs;
+    private final long perItemLatencyMs;
+    private final long jitterMs;
+    private final double failureRate;
+    private final Supplier<? extends RuntimeException> failure;
+
+    SimulatedFaults(long latencyMs, long perItemLatencyMs, long jitterMs, double failureRate,
+                    Supplier<? extends RuntimeException> failure) {
+        this.latencyMs = latencyMs;
+        this.perItemLatencyMs = perItemLatencyMs;
+        this.jitterMs = jitterMs;
+        this.failureRate = failureRate;
+        this.failure = failure;
+    }
+
+    /**
+     * 不注入延迟和故障
+     */
+    static SimulatedFaults none() {
+        return NONE;
+    }
+
+    /**
+     * 模拟一次调用
+     *
+     * @param items 本次调用包含的输入条数
+     */
+    void apply(int items) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delayMs = latencyMs + perItemLatencyMs * items + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0);
+        if (delayMs > 0) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("模拟延迟被中断", e);
+            }
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            throw failure.get();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.inkflow.module.rag.repository;
+
+import java.util.UUID;
+
+/**
+ * 知识块向量投影接口
+ * 仅加载构建进程内向量索引所需的列，避免读取正文和元数据
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public interface ChunkVectorProjection {
+
+    UUID getId();
+
+    UUID getSourceId();
+
+    String getSourceType();
+
+    String getChunkLevel();
+
+    float[] getEmbedding();
+}
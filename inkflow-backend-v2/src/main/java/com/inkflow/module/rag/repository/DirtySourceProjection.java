@@ -0,0 +1,19 @@
+package com.inkflow.module.rag.repository;
+
+import java.util.UUID;
+
+/**
+ * 含脏块的来源投影
+ * 用于把待重新索引的来源补入索引任务队列
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public interface DirtySourceProjection {
+
+    UUID getProjectId();
+
+    String getSourceType();
+
+    UUID getSourceId();
+}
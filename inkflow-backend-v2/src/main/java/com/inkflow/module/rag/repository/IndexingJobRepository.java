@@ -0,0 +1,113 @@
+package com.inkflow.module.rag.repository;
+
+import com.inkflow.module.rag.entity.IndexingJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 索引任务仓储接口
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Repository
+public interface IndexingJobRepository extends JpaRepository<IndexingJob, UUID> {
+
+    // ==================== 入队 ====================
+
+    /**
+     * 入队或覆盖同一来源的任务（去抖，后写覆盖先写）
+     * 执行中的任务保持 RUNNING，仅递增代数，完成时由工作线程重新置为待执行
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO indexing_jobs (project_id, source_type, source_id, operation, status,
+                                   generation, attempts, available_at, enqueued_at, updated_at)
+        VALUES (:projectId, :sourceType, :sourceId, :operation, 'PENDING',
+                1, 0, :availableAt, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT (source_id) DO UPDATE SET
+            project_id = EXCLUDED.project_id,
+            source_type = EXCLUDED.source_type,
+            operation = EXCLUDED.operation,
+            status = CASE WHEN indexing_jobs.status = 'RUNNING' THEN 'RUNNING' ELSE 'PENDING' END,
+            generation = indexing_jobs.generation + 1,
+            attempts = 0,
+            last_error = NULL,
+            available_at = EXCLUDED.available_at,
+            enqueued_at = CASE WHEN indexing_jobs.status = 'FAILED'
+                               THEN CURRENT_TIMESTAMP ELSE indexing_jobs.enqueued_at END,
+            updated_at = CURRENT_TIMESTAMP
+        """, nativeQuery = true)
+    int upsert(
+            @Param("projectId") UUID projectId,
+            @Param("sourceType") String sourceType,
+            @Param("sourceId") UUID sourceId,
+            @Param("operation") String operation,
+            @Param("availableAt") Instant availableAt);
+
+    // ==================== 领取与完成 ====================
+
+    /**
+     * 锁定到期的待执行任务，多实例间通过 SKIP LOCKED 互不争抢
+     */
+    @Query(value = """
+        SELECT * FROM indexing_jobs
+        WHERE status = 'PENDING' AND available_at <= :now
+        ORDER BY available_at
+        LIMIT :limit
+        FOR UPDATE SKIP LOCKED
+        """, nativeQuery = true)
+    List<IndexingJob> lockDueJobs(@Param("now") Instant now, @Param("limit") int limit);
+
+    /**
+     * 删除已完成的任务，执行期间被重新入队（代数变化）时不删除
+     */
+    @Modifying
+    @Query("DELETE FROM IndexingJob j WHERE j.id = :id AND j.generation = :generation")
+    int deleteCompleted(@Param("id") UUID id, @Param("generation") long generation);
+
+    /**
+     * 将执行期间被重新入队的任务置回待执行
+     */
+    @Modifying
+    @Query("""
+        UPDATE IndexingJob j
+        SET j.status = com.inkflow.module.rag.entity.IndexingJob.Status.PENDING, j.lockedAt = NULL, j.updatedAt = CURRENT_TIMESTAMP
+        WHERE j.id = :id AND j.status = com.inkflow.module.rag.entity.IndexingJob.Status.RUNNING
+        """)
+    int release(@Param("id") UUID id);
+
+    /**
+     * 回收租约超时的执行中任务（实例崩溃或重启）
+     */
+    @Modifying
+    @Query("""
+        UPDATE IndexingJob j
+        SET j.status = com.inkflow.module.rag.entity.IndexingJob.Status.PENDING, j.lockedAt = NULL, j.updatedAt = CURRENT_TIMESTAMP
+        WHERE j.status = com.inkflow.module.rag.entity.IndexingJob.Status.RUNNING AND j.lockedAt < :cutoff
+        """)
+    int releaseExpired(@Param("cutoff") Instant cutoff);
+
+    // ==================== 统计查询 ====================
+
+    long countByStatus(IndexingJob.Status status);
+
+    /**
+     * 来源是否存在未失败的任务（待执行或执行中）
+     */
+    boolean existsBySourceIdAndStatusNot(UUID sourceId, IndexingJob.Status status);
+
+    /**
+     * 最早的未完成任务入队时间，用于计算索引滞后
+     */
+    @Query("SELECT MIN(j.enqueuedAt) FROM IndexingJob j WHERE j.status <> com.inkflow.module.rag.entity.IndexingJob.Status.FAILED")
+    Optional<Instant> findOldestEnqueuedAt();
+}
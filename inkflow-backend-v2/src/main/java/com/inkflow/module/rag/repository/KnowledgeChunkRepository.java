@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -34,6 +35,34 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
      */
     Optional<KnowledgeChunk> findBySourceIdAndIsActiveTrue(UUID sourceId);
 
+    /**
+     * 按来源ID查找全部活跃的知识块（父块和子块）
+     * 带项目ID以便分区裁剪，只扫描项目所在分区
+     */
+    @Query("""
+        SELECT kc FROM KnowledgeChunk kc
+        WHERE kc.projectId = :projectId AND kc.sourceId = :sourceId AND kc.isActive = true
+        ORDER BY kc.chunkOrder
+        """)
+    List<KnowledgeChunk> findAllActiveBySourceId(@Param("projectId") UUID projectId, @Param("sourceId") UUID sourceId);
+
+    /**
+     * 批量查找多个来源的全部活跃知识块，用于全量重建索引时按批读取旧索引
+     */
+    @Query("""
+        SELECT kc FROM KnowledgeChunk kc
+        WHERE kc.projectId = :projectId AND kc.sourceId IN :sourceIds AND kc.isActive = true
+        ORDER BY kc.sourceId, kc.chunkOrder
+        """)
+    List<KnowledgeChunk> findAllActiveBySourceIdIn(@Param("projectId") UUID projectId,
+                                                   @Param("sourceIds") Collection<UUID> sourceIds);
+
+    /**
+     * 按项目ID和块ID批量查找
+     * 替代 findAllById：主键为 (id, project_id)，只按ID查询会探测所有分区
+     */
+    List<KnowledgeChunk> findByProjectIdAndIdIn(UUID projectId, Collection<UUID> ids);
+
     /**
      * 按来源ID和类型查找活跃的知识块
      */
@@ -51,11 +80,25 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
 
     // ==================== 版本控制查询 ====================
 
+    /**
+     * 查找来源当前活跃索引的版本号
+     */
+    @Query("SELECT MAX(kc.version) FROM KnowledgeChunk kc WHERE kc.projectId = :projectId AND kc.sourceId = :sourceId AND kc.isActive = true")
+    Optional<Integer> findActiveVersionBySourceId(@Param("projectId") UUID projectId, @Param("sourceId") UUID sourceId);
+
+    /**
+     * 获取来源的事务级咨询锁，事务结束时自动释放
+     * 同一来源的索引重建（队列、监听器、全量重建）在读取最新版本号之前串行化，避免并发重建算出相同版本号
+     */
+    @Query(value = "SELECT 1 FROM (SELECT pg_advisory_xact_lock(hashtext(CAST(:sourceId AS text)))) AS source_lock",
+           nativeQuery = true)
+    Integer lockSourceForIndexing(@Param("sourceId") UUID sourceId);
+
     /**
      * 查找来源的最新版本号
      */
-    @Query("SELECT MAX(kc.version) FROM KnowledgeChunk kc WHERE kc.sourceId = :sourceId")
-    Optional<Integer> findMaxVersionBySourceId(@Param("sourceId") UUID sourceId);
+    @Query("SELECT MAX(kc.version) FROM KnowledgeChunk kc WHERE kc.projectId = :projectId AND kc.sourceId = :sourceId")
+    Optional<Integer> findMaxVersionBySourceId(@Param("projectId") UUID projectId, @Param("sourceId") UUID sourceId);
 
     /**
      * 查找脏数据块
@@ -67,6 +110,15 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
      */
     List<KnowledgeChunk> findByIsDirtyTrue();
 
+    /**
+     * 查找含脏块的来源（去重），用于补入索引任务队列
+     */
+    @Query("""
+        SELECT DISTINCT kc.projectId AS projectId, kc.sourceType AS sourceType, kc.sourceId AS sourceId
+        FROM KnowledgeChunk kc
+        WHERE kc.isDirty = true AND kc.isActive = true
+        """)
+    List<DirtySourceProjection> findDirtySources();
 
     // ==================== 向量相似性搜索 ====================
 
@@ -75,7 +127,7 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
      * 只返回活跃且非脏的数据
      *
      * @param projectId 项目ID
-     * @param queryVector 查询向量字符串 (例如 "[0.1, 0.2, ...]")
+     * @param queryVector 查询向量（以halfvec二进制格式绑定）
      * @param limit 最大结果数
      * @return 按相似度排序的知识块列表
      */
@@ -85,12 +137,12 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
           AND kc.is_active = true
           AND kc.is_dirty = false
           AND kc.embedding IS NOT NULL
-        ORDER BY kc.embedding <=> cast(:queryVector as vector)
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
         LIMIT :limit
         """, nativeQuery = true)
     List<KnowledgeChunk> findSimilarByProjectId(
             @Param("projectId") UUID projectId,
-            @Param("queryVector") String queryVector,
+            @Param("queryVector") float[] queryVector,
             @Param("limit") int limit);
 
     /**
@@ -103,13 +155,13 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
           AND kc.is_active = true
           AND kc.is_dirty = false
           AND kc.embedding IS NOT NULL
-        ORDER BY kc.embedding <=> cast(:queryVector as vector)
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
         LIMIT :limit
         """, nativeQuery = true)
     List<KnowledgeChunk> findSimilarByProjectIdAndSourceType(
             @Param("projectId") UUID projectId,
             @Param("sourceType") String sourceType,
-            @Param("queryVector") String queryVector,
+            @Param("queryVector") float[] queryVector,
             @Param("limit") int limit);
 
     /**
@@ -122,12 +174,139 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
           AND kc.is_active = true
           AND kc.is_dirty = false
           AND kc.embedding IS NOT NULL
-        ORDER BY kc.embedding <=> cast(:queryVector as vector)
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
         LIMIT :limit
         """, nativeQuery = true)
     List<KnowledgeChunk> findSimilarChildChunks(
             @Param("projectId") UUID projectId,
-            @Param("queryVector") String queryVector,
+            @Param("queryVector") float[] queryVector,
+            @Param("limit") int limit);
+
+    /**
+     * 按来源类型过滤、只检索子块的向量相似性搜索 (parent-child策略)
+     */
+    @Query(value = """
+        SELECT kc.* FROM knowledge_chunks kc
+        WHERE kc.project_id = :projectId
+          AND kc.source_type = :sourceType
+          AND kc.chunk_level = 'child'
+          AND kc.is_active = true
+          AND kc.is_dirty = false
+          AND kc.embedding IS NOT NULL
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<KnowledgeChunk> findSimilarChildChunksBySourceType(
+            @Param("projectId") UUID projectId,
+            @Param("sourceType") String sourceType,
+            @Param("queryVector") float[] queryVector,
+            @Param("limit") int limit);
+
+    // ==================== 两阶段量化检索 ====================
+
+    /**
+     * 两阶段量化检索：先在二值量化列上按汉明距离取候选，再用halfvec精确重排
+     * 只返回活跃且非脏的数据
+     *
+     * @param projectId 项目ID
+     * @param queryVector 查询向量（以halfvec二进制格式绑定）
+     * @param candidateLimit 粗排候选数（limit × 过采样倍数）
+     * @param limit 最大结果数
+     * @return 按精确余弦距离排序的知识块列表
+     */
+    @Query(value = """
+        SELECT kc.* FROM (
+            SELECT c.id FROM knowledge_chunks c
+            WHERE c.project_id = :projectId
+              AND c.is_active = true
+              AND c.is_dirty = false
+              AND c.embedding_bin IS NOT NULL
+            ORDER BY c.embedding_bin <~> binary_quantize(cast(:queryVector as halfvec))::bit(1024)
+            LIMIT :candidateLimit
+        ) candidates
+        JOIN knowledge_chunks kc ON kc.id = candidates.id AND kc.project_id = :projectId
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<KnowledgeChunk> findSimilarQuantizedByProjectId(
+            @Param("projectId") UUID projectId,
+            @Param("queryVector") float[] queryVector,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 按来源类型过滤的两阶段量化检索
+     */
+    @Query(value = """
+        SELECT kc.* FROM (
+            SELECT c.id FROM knowledge_chunks c
+            WHERE c.project_id = :projectId
+              AND c.source_type = :sourceType
+              AND c.is_active = true
+              AND c.is_dirty = false
+              AND c.embedding_bin IS NOT NULL
+            ORDER BY c.embedding_bin <~> binary_quantize(cast(:queryVector as halfvec))::bit(1024)
+            LIMIT :candidateLimit
+        ) candidates
+        JOIN knowledge_chunks kc ON kc.id = candidates.id AND kc.project_id = :projectId
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<KnowledgeChunk> findSimilarQuantizedByProjectIdAndSourceType(
+            @Param("projectId") UUID projectId,
+            @Param("sourceType") String sourceType,
+            @Param("queryVector") float[] queryVector,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 在子块中执行两阶段量化检索 (parent-child策略)
+     */
+    @Query(value = """
+        SELECT kc.* FROM (
+            SELECT c.id FROM knowledge_chunks c
+            WHERE c.project_id = :projectId
+              AND c.chunk_level = 'child'
+              AND c.is_active = true
+              AND c.is_dirty = false
+              AND c.embedding_bin IS NOT NULL
+            ORDER BY c.embedding_bin <~> binary_quantize(cast(:queryVector as halfvec))::bit(1024)
+            LIMIT :candidateLimit
+        ) candidates
+        JOIN knowledge_chunks kc ON kc.id = candidates.id AND kc.project_id = :projectId
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<KnowledgeChunk> findSimilarQuantizedChildChunks(
+            @Param("projectId") UUID projectId,
+            @Param("queryVector") float[] queryVector,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 按来源类型过滤、只检索子块的两阶段量化检索 (parent-child策略)
+     */
+    @Query(value = """
+        SELECT kc.* FROM (
+            SELECT c.id FROM knowledge_chunks c
+            WHERE c.project_id = :projectId
+              AND c.source_type = :sourceType
+              AND c.chunk_level = 'child'
+              AND c.is_active = true
+              AND c.is_dirty = false
+              AND c.embedding_bin IS NOT NULL
+            ORDER BY c.embedding_bin <~> binary_quantize(cast(:queryVector as halfvec))::bit(1024)
+            LIMIT :candidateLimit
+        ) candidates
+        JOIN knowledge_chunks kc ON kc.id = candidates.id AND kc.project_id = :projectId
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<KnowledgeChunk> findSimilarQuantizedChildChunksBySourceType(
+            @Param("projectId") UUID projectId,
+            @Param("sourceType") String sourceType,
+            @Param("queryVector") float[] queryVector,
+            @Param("candidateLimit") int candidateLimit,
             @Param("limit") int limit);
 
     /**
@@ -139,13 +318,13 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
           AND kc.is_active = true
           AND kc.is_dirty = false
           AND kc.embedding IS NOT NULL
-          AND (kc.embedding <=> cast(:queryVector as vector)) < :threshold
-        ORDER BY kc.embedding <=> cast(:queryVector as vector)
+          AND (kc.embedding <=> cast(:queryVector as halfvec)) < :threshold
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
         LIMIT :limit
         """, nativeQuery = true)
     List<KnowledgeChunk> findSimilarWithThreshold(
             @Param("projectId") UUID projectId,
-            @Param("queryVector") String queryVector,
+            @Param("queryVector") float[] queryVector,
             @Param("threshold") double threshold,
             @Param("limit") int limit);
 
@@ -162,20 +341,37 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
                kc.chunk_level as chunkLevel,
                kc.parent_id as parentId,
                kc.chunk_order as chunkOrder,
-               (kc.embedding <=> cast(:queryVector as vector)) as cosineDistance
+               (kc.embedding <=> cast(:queryVector as halfvec)) as cosineDistance
         FROM knowledge_chunks kc
         WHERE kc.project_id = :projectId
           AND kc.is_active = true
           AND kc.is_dirty = false
           AND kc.embedding IS NOT NULL
-        ORDER BY kc.embedding <=> cast(:queryVector as vector)
+        ORDER BY kc.embedding <=> cast(:queryVector as halfvec)
         LIMIT :limit
         """, nativeQuery = true)
     List<SimilarityProjection> findSimilarWithScore(
             @Param("projectId") UUID projectId,
-            @Param("queryVector") String queryVector,
+            @Param("queryVector") float[] queryVector,
             @Param("limit") int limit);
 
+    // ==================== 进程内索引加载 ====================
+
+    /**
+     * 加载项目中所有可检索块的向量
+     * 与向量相似性搜索的过滤条件保持一致（活跃、非脏、有嵌入）
+     */
+    @Query("""
+        SELECT kc.id AS id, kc.sourceId AS sourceId, kc.sourceType AS sourceType,
+               kc.chunkLevel AS chunkLevel, kc.embedding AS embedding
+        FROM KnowledgeChunk kc
+        WHERE kc.projectId = :projectId
+          AND kc.isActive = true
+          AND kc.isDirty = false
+          AND kc.embedding IS NOT NULL
+        """)
+    List<ChunkVectorProjection> findIndexableVectorsByProjectId(@Param("projectId") UUID projectId);
+
     // ==================== 删除操作 ====================
 
     /**
@@ -204,20 +400,32 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
      * 停用旧版本 (原子切换)
      */
     @Modifying
-    @Query("UPDATE KnowledgeChunk kc SET kc.isActive = false WHERE kc.sourceId = :sourceId AND kc.version < :version")
-    int deactivateOldVersions(@Param("sourceId") UUID sourceId, @Param("version") int version);
+    @Query("""
+        UPDATE KnowledgeChunk kc SET kc.isActive = false
+        WHERE kc.projectId = :projectId AND kc.sourceId = :sourceId AND kc.version < :version
+        """)
+    int deactivateOldVersions(
+            @Param("projectId") UUID projectId,
+            @Param("sourceId") UUID sourceId,
+            @Param("version") int version);
 
     /**
      * 删除指定来源的旧版本非活跃记录
      * 用于清理旧版本以节省存储空间
      *
+     * @param projectId 项目ID（用于分区裁剪）
      * @param sourceId 来源ID
      * @param cutoffVersion 截止版本号，删除小于此版本的记录
      * @return 删除的记录数
      */
     @Modifying
-    @Query("DELETE FROM KnowledgeChunk kc WHERE kc.sourceId = :sourceId AND kc.version < :cutoffVersion AND kc.isActive = false")
+    @Query("""
+        DELETE FROM KnowledgeChunk kc
+        WHERE kc.projectId = :projectId AND kc.sourceId = :sourceId
+          AND kc.version < :cutoffVersion AND kc.isActive = false
+        """)
     int deleteBySourceIdAndVersionLessThanAndIsActiveFalse(
+            @Param("projectId") UUID projectId,
             @Param("sourceId") UUID sourceId,
             @Param("cutoffVersion") int cutoffVersion);
 
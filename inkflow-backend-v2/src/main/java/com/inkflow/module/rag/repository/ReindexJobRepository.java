@@ -0,0 +1,144 @@
+package com.inkflow.module.rag.repository;
+
+import com.inkflow.module.rag.entity.ReindexJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 项目全量重建索引任务仓储接口
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Repository
+public interface ReindexJobRepository extends JpaRepository<ReindexJob, UUID> {
+
+    /**
+     * 查找项目未结束的任务（每个项目最多一个）
+     */
+    @Query("""
+        SELECT j FROM ReindexJob j
+        WHERE j.projectId = :projectId
+          AND j.status IN (com.inkflow.module.rag.entity.ReindexJob.Status.PENDING,
+                           com.inkflow.module.rag.entity.ReindexJob.Status.RUNNING)
+        """)
+    Optional<ReindexJob> findActiveByProjectId(@Param("projectId") UUID projectId);
+
+    /**
+     * 项目最近一次任务
+     */
+    Optional<ReindexJob> findFirstByProjectIdOrderByCreatedAtDesc(UUID projectId);
+
+    /**
+     * 锁定待执行任务，多实例间通过 SKIP LOCKED 互不争抢
+     */
+    @Query(value = """
+        SELECT * FROM reindex_jobs
+        WHERE status = 'PENDING'
+        ORDER BY created_at
+        LIMIT :limit
+        FOR UPDATE SKIP LOCKED
+        """, nativeQuery = true)
+    List<ReindexJob> lockPendingJobs(@Param("limit") int limit);
+
+    /**
+     * 记录任务开始时统计的来源总数
+     */
+    @Modifying
+    @Query("UPDATE ReindexJob j SET j.totalSources = :total WHERE j.id = :id AND j.leaseToken = :leaseToken")
+    int updateTotalSources(@Param("id") UUID id, @Param("leaseToken") UUID leaseToken, @Param("total") long total);
+
+    /**
+     * 提交一批进度：推进游标、累加计数并续约
+     * 任务已被取消或被其他实例接管（令牌变化）时返回 0，执行者应停止
+     */
+    @Modifying
+    @Query("""
+        UPDATE ReindexJob j
+        SET j.cursorSourceType = :sourceType, j.cursorSourceId = :sourceId,
+            j.processedSources = j.processedSources + :processed,
+            j.skippedSources = j.skippedSources + :skipped,
+            j.failedSources = j.failedSources + :failed,
+            j.chunksWritten = j.chunksWritten + :chunks,
+            j.activeMillis = j.activeMillis + :millis,
+            j.lockedAt = :now, j.updatedAt = :now
+        WHERE j.id = :id AND j.leaseToken = :leaseToken
+          AND j.status = com.inkflow.module.rag.entity.ReindexJob.Status.RUNNING
+        """)
+    int advance(@Param("id") UUID id,
+                @Param("leaseToken") UUID leaseToken,
+                @Param("sourceType") String sourceType,
+                @Param("sourceId") UUID sourceId,
+                @Param("processed") long processed,
+                @Param("skipped") long skipped,
+                @Param("failed") long failed,
+                @Param("chunks") long chunks,
+                @Param("millis") long millis,
+                @Param("now") Instant now);
+
+    /**
+     * 批次执行期间续约，避免长批次被误判为租约超时
+     * 任务已被取消或被其他实例接管时返回 0
+     */
+    @Modifying
+    @Query("""
+        UPDATE ReindexJob j
+        SET j.lockedAt = :now, j.updatedAt = :now
+        WHERE j.id = :id AND j.leaseToken = :leaseToken
+          AND j.status = com.inkflow.module.rag.entity.ReindexJob.Status.RUNNING
+        """)
+    int heartbeat(@Param("id") UUID id, @Param("leaseToken") UUID leaseToken, @Param("now") Instant now);
+
+    /**
+     * 结束执行中的任务（完成、失败或因断路器打开暂停回待执行）
+     */
+    @Modifying
+    @Query("""
+        UPDATE ReindexJob j
+        SET j.status = :status, j.lastError = :error, j.leaseToken = NULL, j.lockedAt = NULL,
+            j.finishedAt = :finishedAt, j.updatedAt = CURRENT_TIMESTAMP
+        WHERE j.id = :id AND j.leaseToken = :leaseToken
+          AND j.status = com.inkflow.module.rag.entity.ReindexJob.Status.RUNNING
+        """)
+    int release(@Param("id") UUID id,
+                @Param("leaseToken") UUID leaseToken,
+                @Param("status") ReindexJob.Status status,
+                @Param("error") String error,
+                @Param("finishedAt") Instant finishedAt);
+
+    /**
+     * 取消项目未结束的任务，执行中的任务在下一批提交时停止
+     */
+    @Modifying
+    @Query("""
+        UPDATE ReindexJob j
+        SET j.status = com.inkflow.module.rag.entity.ReindexJob.Status.CANCELLED,
+            j.finishedAt = CURRENT_TIMESTAMP, j.updatedAt = CURRENT_TIMESTAMP
+        WHERE j.projectId = :projectId
+          AND j.status IN (com.inkflow.module.rag.entity.ReindexJob.Status.PENDING,
+                           com.inkflow.module.rag.entity.ReindexJob.Status.RUNNING)
+        """)
+    int cancelActive(@Param("projectId") UUID projectId);
+
+    /**
+     * 回收租约超时的执行中任务（实例崩溃或重启），从已持久化的游标续跑
+     */
+    @Modifying
+    @Query("""
+        UPDATE ReindexJob j
+        SET j.status = com.inkflow.module.rag.entity.ReindexJob.Status.PENDING,
+            j.leaseToken = NULL, j.lockedAt = NULL, j.updatedAt = CURRENT_TIMESTAMP
+        WHERE j.status = com.inkflow.module.rag.entity.ReindexJob.Status.RUNNING AND j.lockedAt < :cutoff
+        """)
+    int releaseExpired(@Param("cutoff") Instant cutoff);
+
+    long countByStatus(ReindexJob.Status status);
+}
@@ -0,0 +1,443 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.SearchResult;
+import com.inkflow.module.usage.service.TokenCounterService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 生成上下文打包服务
+ *
+ * 检索结果直接拼接时，整段父块、与父块重叠的子块和近重复片段都会进入提示词，
+ * 拉长首Token延迟并增加费用。打包流程：
+ * 1. 父块超过上下文窗口时，按命中子块截取窗口（{@link #extractContextWindow}）
+ * 2. 按 得分/Token 从高到低贪心装入，Token 数由 {@link TokenCounterService} 估算
+ * 3. 同一父块内窗口重叠、或字符三元组包含度超过阈值的片段视为重复，不重复装入；
+ *    覆盖已选片段且得分不低的更大片段在预算允许时替换已选片段
+ * 4. 预算连一个片段都放不下时，截断得分最高的片段，保证上下文非空
+ *
+ * 输出保持输入顺序，排序与分组格式由调用方决定。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContextPackerService {
+
+    private final TokenCounterService tokenCounterService;
+    private final RagProperties ragProperties;
+
+    /** 非命中截断时，句末位置不早于窗口的该比例才按句子截断 */
+    private static final double SENTENCE_CUT_MIN_RATIO = 0.6;
+
+    private static final String ELLIPSIS = "...";
+
+    // 统计
+    private final AtomicLong packCalls = new AtomicLong(0);
+    private final AtomicLong candidateCount = new AtomicLong(0);
+    private final AtomicLong selectedCount = new AtomicLong(0);
+    private final AtomicLong duplicateDropped = new AtomicLong(0);
+    private final AtomicLong budgetDropped = new AtomicLong(0);
+    private final AtomicLong trimmedWindows = new AtomicLong(0);
+    private final AtomicLong rawTokens = new AtomicLong(0);
+    private final AtomicLong packedTokens = new AtomicLong(0);
+
+    // ==================== 打包 ====================
+
+    /**
+     * 按工作流的Token预算打包检索结果
+     *
+     * @param results 检索结果（按相关度排序）
+     * @param workflow 工作流标识（WorkflowType名称），null使用默认预算
+     * @return 装入预算的片段，保持输入顺序
+     */
+    public List<PackedSegment> pack(List<SearchResult> results, String workflow) {
+        return pack(results, ragProperties.contextBudget().budgetFor(workflow));
+    }
+
+    /**
+     * 按指定Token预算打包检索结果
+     *
+     * @param results 检索结果（按相关度排序）
+     * @param tokenBudget Token预算
+     * @return 装入预算的片段，保持输入顺序
+     */
+    public List<PackedSegment> pack(List<SearchResult> results, int tokenBudget) {
+        if (results == null || results.isEmpty()) {
+            return List.of();
+        }
+        RagProperties.ContextBudgetConfig config = ragProperties.contextBudget();
+        int windowSize = ragProperties.chunking().contextWindowSize();
+
+        List<Candidate> candidates = new ArrayList<>(results.size());
+        long raw = 0;
+        for (int i = 0; i < results.size(); i++) {
+            SearchResult result = results.get(i);
+            if (result.getContent() == null || result.getContent().isBlank()) {
+                continue;
+            }
+            raw += tokenCounterService.estimateTokens(result.getContent());
+            candidates.add(toCandidate(i, result, windowSize, config.perItemOverheadTokens()));
+        }
+
+        // 按 得分/Token 贪心，得分相同时优先高分
+        List<Candidate> order = new ArrayList<>(candidates);
+        order.sort(Comparator.comparingDouble(Candidate::density).reversed()
+                .thenComparing(Comparator.comparingDouble(Candidate::score).reversed()));
+
+        List<Candidate> selected = new ArrayList<>();
+        int remaining = tokenBudget;
+        int duplicates = 0;
+        int overBudget = 0;
+        for (Candidate candidate : order) {
+            Candidate covered = findCovered(candidate, selected, config);
+            if (covered == null) {
+                if (candidate.tokens() <= remaining) {
+                    selected.add(candidate);
+                    remaining -= candidate.tokens();
+                } else {
+                    overBudget++;
+                }
+                continue;
+            }
+            // 候选覆盖已选片段：得分不低且预算允许时替换，否则视为重复
+            if (candidate.covers(covered, config.duplicateThreshold())
+                    && candidate.score() >= covered.score()
+                    && candidate.tokens() <= remaining + covered.tokens()) {
+                selected.remove(covered);
+                selected.add(candidate);
+                remaining += covered.tokens() - candidate.tokens();
+            }
+            duplicates++;
+        }
+
+        if (selected.isEmpty() && !candidates.isEmpty()) {
+            Candidate best = candidates.stream().max(Comparator.comparingDouble(Candidate::score)).get();
+            selected.add(truncateToBudget(best, tokenBudget, config.perItemOverheadTokens()));
+        }
+
+        selected.sort(Comparator.comparingInt(Candidate::index));
+        List<PackedSegment> packed = selected.stream()
+                .map(c -> new PackedSegment(c.result(), c.content(), c.tokens(), c.trimmed()))
+                .toList();
+
+        int used = packed.stream().mapToInt(PackedSegment::tokens).sum();
+        recordPack(candidates.size(), packed, duplicates, overBudget, raw, used);
+        log.debug("上下文打包: 候选={}, 装入={}, 重复={}, 超预算={}, Token {}/{} (原始{})",
+                candidates.size(), packed.size(), duplicates, overBudget, used, tokenBudget, raw);
+        return packed;
+    }
+
+    /**
+     * 构建候选片段：超过窗口的内容按命中子块截取窗口，无命中时按句子截断
+     */
+    private Candidate toCandidate(int index, SearchResult result, int windowSize, int overhead) {
+        String content = result.getContent();
+        String matched = result.getMatchedContent();
+        int start = 0;
+        int end = content.length();
+        boolean trimmed = false;
+
+        if (content.length() > windowSize) {
+            int[] window = matched != null ? locateWindow(content, matched, windowSize) : null;
+            if (window != null) {
+                start = window[0];
+                end = window[1];
+            } else {
+                end = sentenceCut(content, windowSize);
+            }
+            trimmed = true;
+        }
+
+        String text = decorate(content, start, end);
+        Double finalScore = result.getFinalScore();
+        double score = finalScore != null ? Math.max(finalScore, 0.0) : 0.0;
+        int tokens = tokenCounterService.estimateTokens(text) + overhead;
+        return new Candidate(index, result, start, end, text,
+                Math.max(tokens, 1), score, trimmed, shingles(text));
+    }
+
+    /**
+     * 查找与候选重叠或近重复的已选片段
+     */
+    private Candidate findCovered(Candidate candidate, List<Candidate> selected, RagProperties.ContextBudgetConfig config) {
+        for (Candidate other : selected) {
+            if (candidate.overlapsSpan(other, config.spanOverlapThreshold())
+                    || candidate.containment(other) >= config.duplicateThreshold()) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 预算放不下任何片段时，按预算截断得分最高的片段
+     */
+    private Candidate truncateToBudget(Candidate candidate, int tokenBudget, int overhead) {
+        int available = Math.max(tokenBudget - overhead, 1);
+        String content = candidate.result().getContent().substring(candidate.start(), candidate.end());
+        int contentTokens = Math.max(tokenCounterService.estimateTokens(content), 1);
+        int keep = Math.max(1, (int) ((long) content.length() * available / contentTokens));
+        if (keep >= content.length()) {
+            return candidate;
+        }
+        int end = candidate.start() + sentenceCut(content, keep);
+        String text = decorate(candidate.result().getContent(), candidate.start(), end);
+        return new Candidate(candidate.index(), candidate.result(), candidate.start(), end, text,
+                tokenCounterService.estimateTokens(text) + overhead, candidate.score(), true, candidate.shingles());
+    }
+
+    // ==================== 上下文窗口 ====================
+
+    /**
+     * 提取上下文窗口
+     *
+     * @param parentContent 父块完整内容
+     * @param matchedChildContent 匹配的子块内容
+     * @param windowSize 窗口大小
+     * @return 提取的上下文窗口
+     */
+    public String extractContextWindow(String parentContent, String matchedChildContent, int windowSize) {
+        if (parentContent == null || matchedChildContent == null) {
+            return parentContent;
+        }
+
+        int[] window = locateWindow(parentContent, matchedChildContent, windowSize);
+        if (window == null) {
+            // 如果找不到精确匹配，返回前面部分
+            return parentContent.length() > windowSize
+                ? parentContent.substring(0, windowSize) + ELLIPSIS
+                : parentContent;
+        }
+        return decorate(parentContent, window[0], window[1]);
+    }
+
+    /**
+     * 计算命中子块在父块中的窗口 [start, end)，找不到子块时返回null
+     */
+    private int[] locateWindow(String parentContent, String matchedChildContent, int windowSize) {
+        // 查找匹配子块在父块中的位置
+        int matchPosition = parentContent.indexOf(matchedChildContent);
+        if (matchPosition == -1) {
+            return null;
+        }
+
+        // 计算上下文窗口的起始和结束位置
+        int overlapSize = ragProperties.chunking().contextOverlapSize();
+        int start = Math.max(0, matchPosition - overlapSize);
+        int end = Math.min(parentContent.length(),
+                          matchPosition + matchedChildContent.length() + overlapSize);
+
+        // 确保不超过窗口大小限制
+        if (end - start > windowSize) {
+            // 优先保留匹配的子块
+            int matchEnd = matchPosition + matchedChildContent.length();
+            start = Math.max(0, matchEnd - windowSize);
+            end = Math.min(parentContent.length(), start + windowSize);
+        }
+        return new int[]{start, end};
+    }
+
+    /**
+     * 在限制长度内按句末截断，句末过早时直接截断
+     */
+    private int sentenceCut(String content, int limit) {
+        if (content.length() <= limit) {
+            return content.length();
+        }
+        String sub = content.substring(0, limit);
+        int cutOff = Math.max(sub.lastIndexOf('。'), sub.lastIndexOf('.'));
+        return cutOff >= limit * SENTENCE_CUT_MIN_RATIO ? cutOff + 1 : limit;
+    }
+
+    /**
+     * 截取 [start, end) 并在两端补充省略号提示
+     */
+    private String decorate(String content, int start, int end) {
+        String extracted = content.substring(start, end);
+        if (start > 0) {
+            extracted = ELLIPSIS + extracted;
+        }
+        if (end < content.length()) {
+            extracted = extracted + ELLIPSIS;
+        }
+        return extracted;
+    }
+
+    // ==================== 重复判定 ====================
+
+    /**
+     * 字符三元组集合（忽略空白），用于近重复判定
+     */
+    private static Set<Integer> shingles(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                normalized.append(c);
+            }
+        }
+        Set<Integer> shingles = new HashSet<>();
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            shingles.add(normalized.charAt(i) * 31 * 31 + normalized.charAt(i + 1) * 31 + normalized.charAt(i + 2));
+        }
+        return shingles;
+    }
+
+    /**
+     * 候选片段
+     *
+     * @param index 在输入中的位置
+     * @param start 窗口在原内容中的起点（含）
+     * @param end 窗口在原内容中的终点（不含）
+     * @param content 截取后的内容
+     * @param tokens 内容与格式开销的Token数
+     */
+    private record Candidate(
+            int index,
+            SearchResult result,
+            int start,
+            int end,
+            String content,
+            int tokens,
+            double score,
+            boolean trimmed,
+            Set<Integer> shingles
+    ) {
+        double density() {
+            return score / tokens;
+        }
+
+        /**
+         * 同一块内窗口的重叠比例（相对较短窗口）是否达到阈值；子块与父块之间的重叠由包含度判定
+         */
+        boolean overlapsSpan(Candidate other, double threshold) {
+            if (!Objects.equals(result.getId(), other.result.getId())) {
+                return false;
+            }
+            int overlap = Math.min(end, other.end) - Math.max(start, other.start);
+            int shorter = Math.min(end - start, other.end - other.start);
+            return overlap > 0 && shorter > 0 && (double) overlap / shorter >= threshold;
+        }
+
+        /**
+         * 三元组包含度：交集 / 较小集合
+         */
+        double containment(Candidate other) {
+            Set<Integer> small = shingles.size() <= other.shingles.size() ? shingles : other.shingles;
+            Set<Integer> large = small == shingles ? other.shingles : shingles;
+            if (small.isEmpty()) {
+                return 0.0;
+            }
+            int shared = 0;
+            for (Integer shingle : small) {
+                if (large.contains(shingle)) {
+                    shared++;
+                }
+            }
+            return (double) shared / small.size();
+        }
+
+        /**
+         * 本片段是否覆盖另一片段（另一片段的三元组大部分出现在本片段中）
+         */
+        boolean covers(Candidate other, double threshold) {
+            if (other.shingles.isEmpty() || shingles.size() < other.shingles.size()) {
+                return false;
+            }
+            int shared = 0;
+            for (Integer shingle : other.shingles) {
+                if (shingles.contains(shingle)) {
+                    shared++;
+                }
+            }
+            return (double) shared / other.shingles.size() >= threshold;
+        }
+    }
+
+    /**
+     * 装入预算的片段
+     *
+     * @param result 原检索结果
+     * @param content 截取后的内容
+     * @param tokens 内容与格式开销的Token数
+     * @param trimmed 是否经过截取
+     */
+    public record PackedSegment(
+            SearchResult result,
+            String content,
+            int tokens,
+            boolean trimmed
+    ) {}
+
+    // ==================== 统计 ====================
+
+    private void recordPack(int candidates, List<PackedSegment> packed, int duplicates, int overBudget,
+                            long raw, int used) {
+        packCalls.incrementAndGet();
+        candidateCount.addAndGet(candidates);
+        selectedCount.addAndGet(packed.size());
+        duplicateDropped.addAndGet(duplicates);
+        budgetDropped.addAndGet(overBudget);
+        trimmedWindows.addAndGet(packed.stream().filter(PackedSegment::trimmed).count());
+        rawTokens.addAndGet(raw);
+        packedTokens.addAndGet(used);
+    }
+
+    /**
+     * 获取上下文打包统计
+     */
+    public Stats getStats() {
+        long calls = packCalls.get();
+        long raw = rawTokens.get();
+        long used = packedTokens.get();
+        return new Stats(
+                ragProperties.contextBudget().enabled(),
+                calls,
+                candidateCount.get(),
+                selectedCount.get(),
+                duplicateDropped.get(),
+                budgetDropped.get(),
+                trimmedWindows.get(),
+                calls > 0 ? (double) used / calls : 0.0,
+                raw > 0 ? 1.0 - (double) used / raw : 0.0
+        );
+    }
+
+    /**
+     * 上下文打包统计信息
+     *
+     * @param enabled 是否启用预算打包
+     * @param packCalls 打包次数
+     * @param candidates 候选片段总数
+     * @param selected 装入片段总数
+     * @param duplicatesDropped 因重叠或近重复丢弃的片段数
+     * @param overBudgetDropped 因超出预算丢弃的片段数
+     * @param trimmedSegments 经窗口截取的片段数
+     * @param avgPackedTokens 平均每次装入的Token数
+     * @param tokenSavingRatio 相对整段拼接全部候选节省的Token比例
+     */
+    public record Stats(
+            boolean enabled,
+            long packCalls,
+            long candidates,
+            long selected,
+            long duplicatesDropped,
+            long overBudgetDropped,
+            long trimmedSegments,
+            double avgPackedTokens,
+            double tokenSavingRatio
+    ) {}
+}
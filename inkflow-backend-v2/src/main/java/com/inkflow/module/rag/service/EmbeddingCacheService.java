@@ -4,7 +4,10 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
@@ -13,12 +16,18 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 向量嵌入缓存服务
- * 实现L1 Caffeine + L2 Redis两级缓存
+ * 实现L1 Caffeine + L2 Redis + L3 PostgreSQL(embedding_cache) 三级缓存
  *
  * @author zsg
  * @date 2025/12/17
@@ -29,6 +38,11 @@ public class EmbeddingCacheService {
 
     private final RedisTemplate<String, float[]> redisTemplate;
 
+    /**
+     * L3持久化缓存 (embedding_cache表)
+     */
+    private final PersistentEmbeddingStore persistentStore;
+
     /**
      * L1本地缓存 (Caffeine)
      * 最大10000条，24小时过期
@@ -38,8 +52,11 @@ public class EmbeddingCacheService {
     private static final String REDIS_KEY_PREFIX = "embedding:";
     private static final Duration REDIS_TTL = Duration.ofHours(24);
 
-    public EmbeddingCacheService(@Qualifier("embeddingRedisTemplate") RedisTemplate<String, float[]> redisTemplate) {
+    public EmbeddingCacheService(
+            @Qualifier("embeddingRedisTemplate") RedisTemplate<String, float[]> redisTemplate,
+            PersistentEmbeddingStore persistentStore) {
         this.redisTemplate = redisTemplate;
+        this.persistentStore = persistentStore;
         this.localCache = Caffeine.newBuilder()
                 .maximumSize(10000)
                 .expireAfterWrite(24, TimeUnit.HOURS)
@@ -49,7 +66,7 @@ public class EmbeddingCacheService {
 
     /**
      * 从缓存获取向量
-     * 先查L1，再查L2
+     * 先查L1，再查L2，最后查L3
      *
      * @param text 原始文本
      * @return 向量数组
@@ -67,13 +84,23 @@ public class EmbeddingCacheService {
         // L2: Redis缓存
         return Mono.fromCallable(() -> {
             String redisKey = REDIS_KEY_PREFIX + hash;
-            float[] redisResult = redisTemplate.opsForValue().get(redisKey);
+            float[] redisResult = toVector(redisTemplate.opsForValue().get(redisKey));
             if (redisResult != null) {
                 log.debug("L2缓存命中: {}", hash.substring(0, 8));
                 // 回填L1
                 localCache.put(hash, redisResult);
                 return redisResult;
             }
+
+            // L3: 持久化缓存
+            float[] storedResult = persistentStore.findAll(List.of(hash)).get(hash);
+            if (storedResult != null) {
+                log.debug("L3缓存命中: {}", hash.substring(0, 8));
+                // 回填L1、L2
+                localCache.put(hash, storedResult);
+                redisTemplate.opsForValue().set(redisKey, storedResult, REDIS_TTL);
+                return storedResult;
+            }
             return null;
         })
         .subscribeOn(Schedulers.boundedElastic())
@@ -83,7 +110,7 @@ public class EmbeddingCacheService {
 
     /**
      * 存入缓存
-     * 同时写入L1和L2
+     * 同时写入L1、L2，L3异步写入
      *
      * @param text 原始文本
      * @param embedding 向量数组
@@ -100,10 +127,114 @@ public class EmbeddingCacheService {
             String redisKey = REDIS_KEY_PREFIX + hash;
             redisTemplate.opsForValue().set(redisKey, embedding, REDIS_TTL);
 
+            // L3: 持久化缓存（异步写入，不阻塞向量生成）
+            persistentStore.saveAllAsync(Map.of(hash, embedding));
+
             log.debug("缓存写入: {}", hash.substring(0, 8));
         }).subscribeOn(Schedulers.boundedElastic()).then();
     }
 
+    /**
+     * 批量从缓存获取向量
+     * 先批量查L1，未命中的通过一次 MGET 查L2，仍未命中的一次查询L3，逐级回填
+     * L2不可用时直接查L3
+     *
+     * @param texts 原始文本（可重复）
+     * @return 命中的 文本 -> 向量，未命中的文本不在结果中
+     */
+    public Mono<Map<String, float[]>> getAll(Collection<String> texts) {
+        Map<String, String> hashToText = new LinkedHashMap<>();
+        for (String text : texts) {
+            hashToText.putIfAbsent(calculateHash(text), text);
+        }
+
+        // L1: 本地缓存
+        Map<String, float[]> hits = new HashMap<>(hashToText.size() * 2);
+        Map<String, float[]> localHits = localCache.getAllPresent(hashToText.keySet());
+        localHits.forEach((hash, vector) -> hits.put(hashToText.get(hash), vector));
+
+        List<String> missedHashes = new ArrayList<>(hashToText.size() - localHits.size());
+        for (String hash : hashToText.keySet()) {
+            if (!localHits.containsKey(hash)) {
+                missedHashes.add(hash);
+            }
+        }
+        if (missedHashes.isEmpty()) {
+            log.debug("批量L1缓存全部命中: {}", hits.size());
+            return Mono.just(hits);
+        }
+
+        return Mono.fromCallable(() -> {
+            // L2: Redis 一次 MGET
+            List<String> redisMissed = new ArrayList<>(missedHashes.size());
+            try {
+                List<String> redisKeys = missedHashes.stream().map(hash -> REDIS_KEY_PREFIX + hash).toList();
+                List<?> redisResults = redisTemplate.opsForValue().multiGet(redisKeys);
+                for (int i = 0; i < missedHashes.size(); i++) {
+                    String hash = missedHashes.get(i);
+                    float[] vector = redisResults == null ? null : toVector(redisResults.get(i));
+                    if (vector != null) {
+                        // 回填L1
+                        localCache.put(hash, vector);
+                        hits.put(hashToText.get(hash), vector);
+                    } else {
+                        redisMissed.add(hash);
+                    }
+                }
+            } catch (DataAccessException e) {
+                log.warn("批量L2缓存查询失败，跳过L2: {}", e.getMessage());
+                redisMissed.clear();
+                redisMissed.addAll(missedHashes);
+            }
+
+            // L3: 持久化缓存一次查询
+            Map<String, float[]> stored = persistentStore.findAll(redisMissed);
+            if (!stored.isEmpty()) {
+                localCache.putAll(stored);
+                stored.forEach((hash, vector) -> hits.put(hashToText.get(hash), vector));
+                try {
+                    writeRedis(stored);
+                } catch (DataAccessException e) {
+                    log.warn("L3命中回填L2失败: {}", e.getMessage());
+                }
+            }
+
+            log.debug("批量缓存查询: total={}, L1命中={}, L2命中={}, L3命中={}",
+                    hashToText.size(), localHits.size(),
+                    missedHashes.size() - redisMissed.size(), stored.size());
+            return hits;
+        })
+        .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 批量存入缓存
+     * L1直接写入，L2通过一次管道批量 SET（带TTL），L3提交到异步写入队列批量插入
+     *
+     * @param embeddings 文本 -> 向量
+     * @return 完成信号
+     */
+    public Mono<Void> putAll(Map<String, float[]> embeddings) {
+        if (embeddings.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<String, float[]> byHash = new HashMap<>(embeddings.size() * 2);
+        embeddings.forEach((text, vector) -> byHash.put(calculateHash(text), vector));
+
+        return Mono.fromRunnable(() -> {
+            // L1: 本地缓存
+            localCache.putAll(byHash);
+
+            // L2: Redis管道写入
+            writeRedis(byHash);
+
+            // L3: 持久化缓存（异步写入，不阻塞向量生成）
+            persistentStore.saveAllAsync(byHash);
+
+            log.debug("批量缓存写入: {}", byHash.size());
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
     /**
      * 清空所有缓存
      */
@@ -129,6 +260,40 @@ public class EmbeddingCacheService {
         );
     }
 
+    /**
+     * 通过一次管道批量写入Redis（带TTL）
+     */
+    private void writeRedis(Map<String, float[]> byHash) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, float[]> ops = (RedisOperations<String, float[]>) operations;
+                byHash.forEach((hash, vector) ->
+                        ops.opsForValue().set(REDIS_KEY_PREFIX + hash, vector, REDIS_TTL));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 转换Redis反序列化结果
+     * JSON序列化器未携带类型信息时数组会被还原为 List&lt;Number&gt;，这里统一转回 float[]
+     */
+    private static float[] toVector(Object value) {
+        if (value instanceof float[] vector) {
+            return vector;
+        }
+        if (value instanceof List<?> list) {
+            float[] vector = new float[list.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = ((Number) list.get(i)).floatValue();
+            }
+            return vector;
+        }
+        return null;
+    }
+
     /**
      * 计算文本的SHA-256哈希
      */
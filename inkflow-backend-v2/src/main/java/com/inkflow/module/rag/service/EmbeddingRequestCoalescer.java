@@ -0,0 +1,178 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.EmbeddingBatchStatistics;
+import com.inkflow.module.rag.index.LatencyRecorder;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Embedding单条请求合并器
+ *
+ * 把并发到达的单条文本请求在一个时间窗口内攒成一批，通过一次批量调用完成：
+ * - 窗口到期或达到单批上限时立即发送
+ * - 相同文本在请求未完成前共享同一个结果（single-flight）
+ * - 批量调用经过断路器，成功/失败按批记录
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+class EmbeddingRequestCoalescer {
+
+    private final Function<List<String>, Mono<List<float[]>>> batchCaller;
+    private final RagProperties.CoalescingConfig config;
+
+    /** 正在等待结果的文本，用于同文本去重 */
+    private final Map<String, Sinks.One<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+    private List<PendingRequest> pending = new ArrayList<>();
+    private Disposable scheduledFlush;
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong submittedRequests = new AtomicLong(0);
+    private final AtomicLong dedupedRequests = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
+    private final AtomicLong batchedTexts = new AtomicLong(0);
+    private final AtomicLong failedBatches = new AtomicLong(0);
+    private final AtomicLong maxBatchSize = new AtomicLong(0);
+    private final LatencyRecorder waitTime = new LatencyRecorder(2048);
+
+    private record PendingRequest(String text, Sinks.One<float[]> sink, long enqueuedNanos) {}
+
+    EmbeddingRequestCoalescer(
+            Function<List<String>, Mono<List<float[]>>> batchCaller,
+            RagProperties.CoalescingConfig config) {
+        this.batchCaller = batchCaller;
+        this.config = config;
+    }
+
+    /**
+     * 提交单条文本，返回合并批次中对应的向量
+     */
+    Mono<float[]> submit(String text) {
+        return Mono.defer(() -> {
+            submittedRequests.incrementAndGet();
+            Sinks.One<float[]> sink = Sinks.one();
+            Sinks.One<float[]> existing = inFlight.putIfAbsent(text, sink);
+            if (existing != null) {
+                dedupedRequests.incrementAndGet();
+                return existing.asMono();
+            }
+            enqueue(new PendingRequest(text, sink, System.nanoTime()));
+            return sink.asMono();
+        });
+    }
+
+    /**
+     * 获取合并统计
+     */
+    EmbeddingBatchStatistics getStatistics() {
+        long batchCount = batches.get();
+        return EmbeddingBatchStatistics.builder()
+                .enabled(config.enabled())
+                .windowMs(config.windowMs())
+                .maxBatchSizeLimit(config.maxBatchSize())
+                .submittedRequests(submittedRequests.get())
+                .dedupedRequests(dedupedRequests.get())
+                .batches(batchCount)
+                .failedBatches(failedBatches.get())
+                .averageBatchSize(batchCount > 0 ? (double) batchedTexts.get() / batchCount : 0.0)
+                .maxBatchSize(maxBatchSize.get())
+                .waitP50Micros(waitTime.percentileMicros(50))
+                .waitP99Micros(waitTime.percentileMicros(99))
+                .build();
+    }
+
+    // ==================== 内部方法 ====================
+
+    private void enqueue(PendingRequest request) {
+        List<PendingRequest> ready = null;
+        synchronized (lock) {
+            pending.add(request);
+            if (pending.size() >= config.maxBatchSize()) {
+                ready = drainLocked();
+            } else if (pending.size() == 1) {
+                scheduledFlush = Schedulers.parallel()
+                        .schedule(this::flushWindow, config.windowMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (ready != null) {
+            dispatch(ready);
+        }
+    }
+
+    private void flushWindow() {
+        List<PendingRequest> ready;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            ready = drainLocked();
+        }
+        dispatch(ready);
+    }
+
+    private List<PendingRequest> drainLocked() {
+        List<PendingRequest> ready = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.dispose();
+            scheduledFlush = null;
+        }
+        return ready;
+    }
+
+    private void dispatch(List<PendingRequest> batch) {
+        long now = System.nanoTime();
+        for (PendingRequest request : batch) {
+            waitTime.record(now - request.enqueuedNanos());
+        }
+        batches.incrementAndGet();
+        batchedTexts.addAndGet(batch.size());
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+
+        List<String> texts = batch.stream().map(PendingRequest::text).toList();
+        log.debug("合并Embedding请求: batchSize={}", texts.size());
+
+        batchCaller.apply(texts)
+                .switchIfEmpty(Mono.error(new IllegalStateException("批量Embedding返回为空")))
+                .subscribe(
+                        embeddings -> complete(batch, embeddings),
+                        error -> fail(batch, error));
+    }
+
+    private void complete(List<PendingRequest> batch, List<float[]> embeddings) {
+        if (embeddings.size() != batch.size()) {
+            fail(batch, new IllegalStateException(
+                    "批量Embedding返回数量不匹配: expected=" + batch.size() + ", actual=" + embeddings.size()));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            PendingRequest request = batch.get(i);
+            inFlight.remove(request.text(), request.sink());
+            request.sink().tryEmitValue(embeddings.get(i));
+        }
+    }
+
+    private void fail(List<PendingRequest> batch, Throwable error) {
+        failedBatches.incrementAndGet();
+        for (PendingRequest request : batch) {
+            inFlight.remove(request.text(), request.sink());
+            request.sink().tryEmitError(error);
+        }
+    }
+}
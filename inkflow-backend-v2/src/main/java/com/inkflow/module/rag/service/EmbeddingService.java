@@ -2,8 +2,11 @@ package com.inkflow.module.rag.service;
 
 import com.inkflow.module.rag.config.RagProperties;
 import com.inkflow.module.rag.dto.CircuitBreakerState;
+import com.inkflow.module.rag.dto.EmbeddingBatchStatistics;
 import com.inkflow.module.rag.dto.SearchResult;
 import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.event.KnowledgeChunkChangedEvent;
+import com.inkflow.module.rag.index.VectorHit;
 import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
 import com.inkflow.module.rag.repository.SimilarityProjection;
 import jakarta.annotation.PostConstruct;
@@ -13,6 +16,7 @@ import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Mono;
@@ -40,6 +44,11 @@ public class EmbeddingService {
     private final KnowledgeChunkRepository knowledgeChunkRepository;
     private final EmbeddingCacheService embeddingCacheService;
     private final RagProperties ragProperties;
+    private final InMemoryVectorIndexService vectorIndexService;
+    private final QuantizedVectorSearchService quantizedSearchService;
+    private final HnswSearchTuner hnswSearchTuner;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EmbeddingRequestCoalescer requestCoalescer;
 
     private static final int DEFAULT_SEARCH_LIMIT = 10;
 
@@ -63,11 +72,22 @@ public class EmbeddingService {
             EmbeddingModel embeddingModel,
             KnowledgeChunkRepository knowledgeChunkRepository,
             EmbeddingCacheService embeddingCacheService,
-            RagProperties ragProperties) {
+            RagProperties ragProperties,
+            InMemoryVectorIndexService vectorIndexService,
+            QuantizedVectorSearchService quantizedSearchService,
+            HnswSearchTuner hnswSearchTuner,
+            ApplicationEventPublisher eventPublisher) {
         this.embeddingModel = embeddingModel;
         this.knowledgeChunkRepository = knowledgeChunkRepository;
         this.embeddingCacheService = embeddingCacheService;
         this.ragProperties = ragProperties;
+        this.vectorIndexService = vectorIndexService;
+        this.quantizedSearchService = quantizedSearchService;
+        this.hnswSearchTuner = hnswSearchTuner;
+        this.eventPublisher = eventPublisher;
+        this.requestCoalescer = new EmbeddingRequestCoalescer(
+                this::callEmbeddingApiBatchWithCircuitBreaker,
+                ragProperties.embedding().coalescing());
     }
     
     /**
@@ -119,7 +139,7 @@ public class EmbeddingService {
         return embeddingCacheService.get(text)
                 .switchIfEmpty(Mono.defer(() -> {
                     log.debug("缓存未命中，调用Embedding API: {}", truncateForLog(text));
-                    return callEmbeddingApiWithCircuitBreaker(text)
+                    return callEmbeddingApiCoalesced(text)
                             .flatMap(embedding -> 
                                 embeddingCacheService.put(text, embedding)
                                     .thenReturn(embedding)
@@ -130,20 +150,100 @@ public class EmbeddingService {
 
     /**
      * 批量生成向量嵌入（带断路器保护）
+     * 先批量查缓存（L1 + 一次L2 MGET），仅对未命中且去重后的文本调用API，结果批量回写缓存
      *
      * @param texts 文本列表
-     * @return 向量列表
+     * @return 向量列表（与输入顺序一一对应）
      */
     public Mono<List<float[]>> generateEmbeddingsBatch(List<String> texts) {
         if (texts == null || texts.isEmpty()) {
             return Mono.just(Collections.emptyList());
         }
 
-        return callEmbeddingApiBatchWithCircuitBreaker(texts);
+        return embeddingCacheService.getAll(texts)
+                .flatMap(cached -> {
+                    List<String> missing = texts.stream()
+                            .filter(text -> !cached.containsKey(text))
+                            .distinct()
+                            .toList();
+                    if (missing.isEmpty()) {
+                        log.debug("批量Embedding全部命中缓存: {}", texts.size());
+                        return Mono.just(alignToInput(texts, cached));
+                    }
+
+                    log.debug("批量Embedding缓存未命中: {}/{}", missing.size(), texts.size());
+                    return callEmbeddingApiBatchWithCircuitBreaker(missing)
+                            .flatMap(embeddings -> {
+                                if (embeddings.size() != missing.size()) {
+                                    return Mono.error(new IllegalStateException(
+                                            "批量Embedding返回数量不匹配: expected=" + missing.size()
+                                                    + ", actual=" + embeddings.size()));
+                                }
+                                Map<String, float[]> generated = new HashMap<>(missing.size() * 2);
+                                for (int i = 0; i < missing.size(); i++) {
+                                    generated.put(missing.get(i), embeddings.get(i));
+                                }
+                                cached.putAll(generated);
+                                return embeddingCacheService.putAll(generated)
+                                        .onErrorResume(e -> {
+                                            log.warn("批量Embedding缓存回写失败: {}", e.getMessage());
+                                            return Mono.empty();
+                                        })
+                                        .thenReturn(alignToInput(texts, cached));
+                            });
+                });
+    }
+
+    /**
+     * 跳过缓存读取批量生成向量，结果覆盖写回缓存
+     * 用于切换Embedding模型后的全量重建：进程内和Redis缓存键不含模型，读取可能拿到旧模型的向量
+     */
+    public Mono<List<float[]>> refreshEmbeddingsBatch(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+
+        List<String> distinct = texts.stream().distinct().toList();
+        return callEmbeddingApiBatchWithCircuitBreaker(distinct)
+                .flatMap(embeddings -> {
+                    if (embeddings.size() != distinct.size()) {
+                        return Mono.error(new IllegalStateException(
+                                "批量Embedding返回数量不匹配: expected=" + distinct.size()
+                                        + ", actual=" + embeddings.size()));
+                    }
+                    Map<String, float[]> generated = new HashMap<>(distinct.size() * 2);
+                    for (int i = 0; i < distinct.size(); i++) {
+                        generated.put(distinct.get(i), embeddings.get(i));
+                    }
+                    return embeddingCacheService.putAll(generated)
+                            .onErrorResume(e -> {
+                                log.warn("批量Embedding缓存回写失败: {}", e.getMessage());
+                                return Mono.empty();
+                            })
+                            .thenReturn(alignToInput(texts, generated));
+                });
+    }
+
+    /**
+     * 获取单条请求合并统计
+     */
+    public EmbeddingBatchStatistics getBatchStatistics() {
+        return requestCoalescer.getStatistics();
     }
 
     // ==================== 断路器核心逻辑 ====================
 
+    /**
+     * 单条向量生成入口
+     * 启用请求合并时进入合并窗口，与并发请求一起批量调用（断路器按批生效）
+     */
+    private Mono<float[]> callEmbeddingApiCoalesced(String text) {
+        if (!ragProperties.embedding().coalescing().enabled()) {
+            return callEmbeddingApiWithCircuitBreaker(text);
+        }
+        return requestCoalescer.submit(text);
+    }
+
     /**
      * 带断路器保护的单个向量生成
      */
@@ -331,6 +431,17 @@ public class EmbeddingService {
                 .doOnError(e -> log.error("Embedding生成失败: {}", e.getMessage()));
     }
 
+    /**
+     * 按输入顺序组装批量结果
+     */
+    private List<float[]> alignToInput(List<String> texts, Map<String, float[]> embeddings) {
+        List<float[]> result = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            result.add(embeddings.get(text));
+        }
+        return result;
+    }
+
     /**
      * 批量调用Embedding API
      */
@@ -353,6 +464,7 @@ public class EmbeddingService {
     @Transactional
     public void deleteBySourceId(UUID sourceId) {
         knowledgeChunkRepository.deleteBySourceId(sourceId);
+        eventPublisher.publishEvent(KnowledgeChunkChangedEvent.sourceDeleted(this, null, sourceId));
         log.info("删除来源的嵌入: {}", sourceId);
     }
 
@@ -362,6 +474,7 @@ public class EmbeddingService {
     @Transactional
     public void deleteByProjectId(UUID projectId) {
         knowledgeChunkRepository.deleteByProjectId(projectId);
+        eventPublisher.publishEvent(KnowledgeChunkChangedEvent.projectDeleted(this, projectId));
         log.info("删除项目的所有嵌入: {}", projectId);
     }
 
@@ -392,16 +505,9 @@ public class EmbeddingService {
 
         return generateEmbedding(query)
                 .map(queryEmbedding -> {
-                    String vectorString = toVectorString(queryEmbedding);
-
-                    List<KnowledgeChunk> results;
-                    if (sourceType != null && !sourceType.isBlank()) {
-                        results = knowledgeChunkRepository.findSimilarByProjectIdAndSourceType(
-                                projectId, sourceType, vectorString, searchLimit);
-                    } else {
-                        results = knowledgeChunkRepository.findSimilarByProjectId(
-                                projectId, vectorString, searchLimit);
-                    }
+                    String typeFilter = sourceType != null && !sourceType.isBlank() ? sourceType : null;
+                    List<KnowledgeChunk> results = findSimilarChunks(
+                            projectId, queryEmbedding, typeFilter, false, searchLimit);
 
                     return results.stream()
                             .map(this::toSearchResult)
@@ -424,10 +530,20 @@ public class EmbeddingService {
 
         return generateEmbedding(query)
                 .map(queryEmbedding -> {
-                    String vectorString = toVectorString(queryEmbedding);
+                    List<VectorHit> hits = searchVectorIndex(projectId, queryEmbedding, null, false, searchLimit);
+                    if (hits != null) {
+                        Map<UUID, VectorHit> hitsById = hits.stream()
+                                .collect(Collectors.toMap(VectorHit::chunkId, hit -> hit, (first, second) -> first));
+                        return loadChunksInHitOrder(projectId, hits).stream()
+                                .map(chunk -> toSearchResultWithScore(chunk, hitsById.get(chunk.getId())))
+                                .collect(Collectors.toList());
+                    }
 
-                    List<SimilarityProjection> results = knowledgeChunkRepository.findSimilarWithScore(
-                            projectId, vectorString, searchLimit);
+                    long start = System.nanoTime();
+                    List<SimilarityProjection> results = hnswSearchTuner.search(
+                            projectId, null, false, searchLimit, searchLimit,
+                            () -> knowledgeChunkRepository.findSimilarWithScore(projectId, queryEmbedding, searchLimit));
+                    vectorIndexService.recordPgvectorLatency(System.nanoTime() - start);
 
                     return results.stream()
                             .map(this::toSearchResultWithScore)
@@ -435,6 +551,169 @@ public class EmbeddingService {
                 });
     }
 
+    // ==================== 向量召回路由 ====================
+
+    /**
+     * 向量相似性召回
+     * 启用进程内向量索引时走内存检索（按采样与pgvector做影子对比），
+     * 否则或内存检索失败时走pgvector
+     *
+     * @param projectId 项目ID
+     * @param queryEmbedding 查询向量
+     * @param sourceType 来源类型过滤，null表示不过滤
+     * @param childOnly 是否只检索子块
+     * @param limit 最大结果数
+     * @return 按相似度降序排列的知识块
+     */
+    public List<KnowledgeChunk> findSimilarChunks(
+            UUID projectId,
+            float[] queryEmbedding,
+            String sourceType,
+            boolean childOnly,
+            int limit) {
+
+        List<VectorHit> hits = searchVectorIndex(projectId, queryEmbedding, sourceType, childOnly, limit);
+        if (hits != null) {
+            return loadChunksInHitOrder(projectId, hits);
+        }
+
+        long start = System.nanoTime();
+        List<KnowledgeChunk> results = findSimilarByPgvector(projectId, queryEmbedding, sourceType, childOnly, limit);
+        vectorIndexService.recordPgvectorLatency(System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * 进程内向量索引检索
+     *
+     * @return 命中列表；未启用或检索失败时返回null，由调用方回退pgvector
+     */
+    private List<VectorHit> searchVectorIndex(
+            UUID projectId,
+            float[] queryEmbedding,
+            String sourceType,
+            boolean childOnly,
+            int limit) {
+
+        if (!vectorIndexService.isEnabled()) {
+            return null;
+        }
+        try {
+            List<VectorHit> hits = vectorIndexService.search(projectId, queryEmbedding, limit, sourceType, childOnly);
+            if (vectorIndexService.shouldShadow()) {
+                shadowCompare(projectId, queryEmbedding, sourceType, childOnly, limit, hits);
+            }
+            return hits;
+        } catch (Exception e) {
+            vectorIndexService.recordFallback();
+            log.warn("进程内向量索引检索失败，回退pgvector: projectId={}, error={}", projectId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 异步执行pgvector影子查询，计算内存索引的recall@k
+     */
+    private void shadowCompare(
+            UUID projectId,
+            float[] queryEmbedding,
+            String sourceType,
+            boolean childOnly,
+            int limit,
+            List<VectorHit> hits) {
+
+        List<UUID> indexIds = hits.stream().map(VectorHit::chunkId).toList();
+        Mono.fromRunnable(() -> {
+                    long start = System.nanoTime();
+                    List<KnowledgeChunk> expected = findSimilarExact(
+                            projectId, queryEmbedding, sourceType, childOnly, limit);
+                    vectorIndexService.recordPgvectorLatency(System.nanoTime() - start);
+                    vectorIndexService.recordShadowComparison(
+                            indexIds, expected.stream().map(KnowledgeChunk::getId).toList());
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.debug("向量索引影子对比失败: {}", e.getMessage()));
+    }
+
+    /**
+     * pgvector相似性检索
+     * 启用量化检索时走二值粗排 + halfvec重排的两阶段路径，并按采样率与精确检索做影子对比
+     */
+    private List<KnowledgeChunk> findSimilarByPgvector(
+            UUID projectId,
+            float[] queryEmbedding,
+            String sourceType,
+            boolean childOnly,
+            int limit) {
+
+        if (!quantizedSearchService.isEnabled()) {
+            return findSimilarExact(projectId, queryEmbedding, sourceType, childOnly, limit);
+        }
+        List<KnowledgeChunk> results = quantizedSearchService.search(
+                projectId, queryEmbedding, sourceType, childOnly, limit);
+        if (quantizedSearchService.shouldShadow()) {
+            List<UUID> quantizedIds = results.stream().map(KnowledgeChunk::getId).toList();
+            Mono.fromRunnable(() -> {
+                        long start = System.nanoTime();
+                        List<KnowledgeChunk> expected = findSimilarExact(
+                                projectId, queryEmbedding, sourceType, childOnly, limit);
+                        quantizedSearchService.recordShadowComparison(quantizedIds,
+                                expected.stream().map(KnowledgeChunk::getId).toList(),
+                                System.nanoTime() - start);
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .subscribe(null, e -> log.debug("量化检索影子对比失败: {}", e.getMessage()));
+        }
+        return results;
+    }
+
+    /**
+     * pgvector精确相似性检索（halfvec HNSW索引），查询参数按limit和过滤选择度自适应
+     */
+    private List<KnowledgeChunk> findSimilarExact(
+            UUID projectId,
+            float[] queryEmbedding,
+            String sourceType,
+            boolean childOnly,
+            int limit) {
+
+        return hnswSearchTuner.search(projectId, sourceType, childOnly, limit, limit, () -> {
+            if (sourceType != null) {
+                // 子块过滤放在SQL内，LIMIT之后再过滤会返回不足limit条
+                return childOnly
+                        ? knowledgeChunkRepository.findSimilarChildChunksBySourceType(
+                                projectId, sourceType, queryEmbedding, limit)
+                        : knowledgeChunkRepository.findSimilarByProjectIdAndSourceType(
+                                projectId, sourceType, queryEmbedding, limit);
+            }
+            if (childOnly) {
+                return knowledgeChunkRepository.findSimilarChildChunks(projectId, queryEmbedding, limit);
+            }
+            return knowledgeChunkRepository.findSimilarByProjectId(projectId, queryEmbedding, limit);
+        });
+    }
+
+    /**
+     * 按命中顺序加载知识块，跳过已被删除的块
+     */
+    private List<KnowledgeChunk> loadChunksInHitOrder(UUID projectId, List<VectorHit> hits) {
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<UUID, KnowledgeChunk> chunkMap = knowledgeChunkRepository
+                .findByProjectIdAndIdIn(projectId, hits.stream().map(VectorHit::chunkId).toList())
+                .stream()
+                .collect(Collectors.toMap(KnowledgeChunk::getId, chunk -> chunk));
+        List<KnowledgeChunk> ordered = new ArrayList<>(hits.size());
+        for (VectorHit hit : hits) {
+            KnowledgeChunk chunk = chunkMap.get(hit.chunkId());
+            if (chunk != null && Boolean.TRUE.equals(chunk.getIsActive())) {
+                ordered.add(chunk);
+            }
+        }
+        return ordered;
+    }
+
 
     // ==================== 统计 API ====================
 
@@ -453,16 +732,6 @@ public class EmbeddingService {
 
     // ==================== 辅助方法 ====================
 
-    private String toVectorString(float[] vector) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < vector.length; i++) {
-            if (i > 0) sb.append(",");
-            sb.append(vector[i]);
-        }
-        sb.append("]");
-        return sb.toString();
-    }
-
     private String truncateContent(String content) {
         if (content.length() <= 10000) {
             return content;
@@ -503,6 +772,22 @@ public class EmbeddingService {
         return result;
     }
 
+    private SearchResult toSearchResultWithScore(KnowledgeChunk chunk, VectorHit hit) {
+        SearchResult result = SearchResult.builder()
+                .id(chunk.getId())
+                .sourceType(chunk.getSourceType())
+                .sourceId(chunk.getSourceId())
+                .content(chunk.getContent())
+                .chunkLevel(chunk.getChunkLevel())
+                .parentId(chunk.getParentId())
+                .blockOrder(chunk.getChunkOrder())
+                .build();
+        if (hit != null) {
+            result.setCosineDistanceAndCalculateSimilarity(1.0 - hit.similarity());
+        }
+        return result;
+    }
+
     // ==================== 异常类 ====================
 
     /**
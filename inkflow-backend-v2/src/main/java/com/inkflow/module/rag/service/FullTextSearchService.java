@@ -1,6 +1,9 @@
 package com.inkflow.module.rag.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.inkflow.module.rag.config.RagProperties;
 import com.inkflow.module.rag.dto.SearchResult;
@@ -13,6 +16,7 @@ import org.springframework.stereotype.Service;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -24,6 +28,7 @@ import java.util.regex.Pattern;
  * - 支持 zhparser 中文分词扩展
  * - 自动检测 zhparser 可用性并优雅降级
  * - 支持 plainto_tsquery, phraseto_tsquery, to_tsquery 多种查询模式
+ * - 查询计划缓存：相同查询文本复用预处理结果和查询类型，SQL模板按 语言+查询类型 复用
  * 
  * @author zsg
  * @date 2025/12/17
@@ -33,7 +38,6 @@ import java.util.regex.Pattern;
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class FullTextSearchService {
 
     private final JdbcTemplate jdbcTemplate;
@@ -47,6 +51,16 @@ public class FullTextSearchService {
      */
     private final ZhparserHealthChecker zhparserHealthChecker;
 
+    /**
+     * 查询计划缓存：去除首尾空白后的查询文本 → 预处理结果与查询类型，未启用时为null
+     */
+    private final Cache<String, QueryPlan> planCache;
+
+    /**
+     * SQL模板缓存：语言配置:查询类型 → SQL
+     */
+    private final Map<String, String> sqlTemplates = new ConcurrentHashMap<>();
+
     // 中文字符模式（CJK Unified Ideographs）
     private static final Pattern CHINESE_PATTERN = Pattern.compile("[\\u4e00-\\u9fa5]+");
     
@@ -60,11 +74,65 @@ public class FullTextSearchService {
     
     // 布尔查询关键词
     private static final Set<String> BOOLEAN_KEYWORDS = Set.of("AND", "OR", "NOT", "&", "|", "!");
+
+    // 多字符布尔关键词作为独立词出现
+    private static final Pattern BOOLEAN_WORD_PATTERN = Pattern.compile("\\b(?:AND|OR|NOT)\\b", Pattern.CASE_INSENSITIVE);
+
+    // 预处理使用的模式（预编译，避免每次查询重复编译正则）
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    private static final Pattern QUOTE_PATTERN = Pattern.compile("[\"'\\u201C\\u201D\\u2018\\u2019]");
+    private static final Pattern CHINESE_PUNCTUATION_PATTERN = Pattern.compile(
+        "[\\uff01\\uff1f\\u3002\\uff0c\\uff1b\\uff1a\\u3001\\u201c\\u201d\\u2018\\u2019\\u3010\\u3011\\u300a\\u300b\\uff08\\uff09]"
+    );
+    private static final Pattern CHINESE_THEN_ENGLISH = Pattern.compile("([\\u4e00-\\u9fa5])([a-zA-Z])");
+    private static final Pattern ENGLISH_THEN_CHINESE = Pattern.compile("([a-zA-Z])([\\u4e00-\\u9fa5])");
+    private static final Pattern CHINESE_THEN_DIGIT = Pattern.compile("([\\u4e00-\\u9fa5])([0-9])");
+    private static final Pattern DIGIT_THEN_CHINESE = Pattern.compile("([0-9])([\\u4e00-\\u9fa5])");
     
     // 支持的语言配置白名单（新增 chinese 支持 zhparser）
     // Requirements: 5.1
     private static final Set<String> SUPPORTED_LANGUAGES = Set.of("simple", "english", "chinese");
 
+    /**
+     * 百科标题/别名匹配SQL，名称至少2个字符，避免单字误匹配
+     */
+    private static final String WIKI_TITLE_MATCH_SQL = """
+        SELECT
+            kc.id, kc.source_type, kc.source_id, kc.content, kc.metadata, kc.chunk_level, kc.parent_id,
+            GREATEST(
+                CASE WHEN strpos(?, w.title) > 0 THEN length(w.title) ELSE 0 END,
+                COALESCE((SELECT max(length(alias)) FROM unnest(w.aliases) AS alias
+                          WHERE length(alias) > 1 AND strpos(?, alias) > 0), 0)
+            )::float8 AS fulltext_score
+        FROM wiki_entries w
+        JOIN knowledge_chunks kc ON kc.source_id = w.id AND kc.project_id = w.project_id
+        WHERE w.project_id = ?
+          AND w.deleted_at IS NULL
+          AND (
+            (length(w.title) > 1 AND strpos(?, w.title) > 0)
+            OR EXISTS (SELECT 1 FROM unnest(w.aliases) AS alias
+                       WHERE length(alias) > 1 AND strpos(?, alias) > 0)
+          )
+          AND kc.source_type = 'wiki_entry'
+          AND kc.chunk_level = 'parent'
+          AND kc.is_active = true
+          AND kc.is_dirty = false
+        ORDER BY fulltext_score DESC
+        LIMIT ?
+        """;
+
+    public FullTextSearchService(JdbcTemplate jdbcTemplate, RagProperties ragProperties,
+                                 ObjectMapper objectMapper, ZhparserHealthChecker zhparserHealthChecker) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ragProperties = ragProperties;
+        this.objectMapper = objectMapper;
+        this.zhparserHealthChecker = zhparserHealthChecker;
+        RagProperties.QueryCacheConfig cacheConfig = ragProperties.fullText().queryCache();
+        this.planCache = cacheConfig.enabled()
+                ? Caffeine.newBuilder().maximumSize(cacheConfig.planMaxSize()).recordStats().build()
+                : null;
+    }
+
     /**
      * 执行全文搜索
      * 错误处理策略：
@@ -95,31 +163,18 @@ public class FullTextSearchService {
         }
 
         try {
-            // 先检测查询类型（在预处理之前，以便正确识别混合语言）
-            String queryType = detectQueryType(query);
-            
-            // 根据查询类型选择预处理方法
-            // Requirements: 4.2
-            String processedQuery;
-            if ("mixed".equals(queryType)) {
-                processedQuery = preprocessMixedLanguageQuery(query);
-            } else {
-                processedQuery = preprocessQuery(query);
-            }
+            PreparedQuery prepared = prepareQuery(projectId, query, sourceType, limit);
             
             // 验证处理后的查询
-            if (processedQuery.isEmpty()) {
+            if (prepared == null) {
                 log.debug("Full-text search skipped: query empty after preprocessing");
                 return Collections.emptyList();
             }
             
-            // 预处理后重新检测查询类型（因为预处理可能改变查询特征）
-            String finalQueryType = detectQueryType(processedQuery);
-            
             log.debug("Full-text search: projectId={}, query='{}', originalType={}, finalType={}, limit={}", 
-                    projectId, processedQuery, queryType, finalQueryType, limit);
+                    projectId, prepared.processedQuery(), prepared.originalType(), prepared.queryType(), limit);
 
-            return executeSearchWithErrorHandling(projectId, processedQuery, sourceType, limit, finalQueryType);
+            return executeSearchWithErrorHandling(projectId, prepared);
         } catch (Exception e) {
             // 记录错误并返回空结果集
             logSearchError(projectId, query, e);
@@ -127,15 +182,119 @@ public class FullTextSearchService {
         }
     }
     
+    /**
+     * 百科标题/别名匹配检索
+     * 查询文本中出现的百科条目标题或别名，返回该条目的父块；按匹配名称长度降序（越长越具体）
+     *
+     * @param projectId 项目ID
+     * @param query 查询文本
+     * @param limit 结果数量限制
+     * @return 匹配结果，失败时返回空列表
+     */
+    public List<SearchResult> searchByWikiTitle(UUID projectId, String query, int limit) {
+        if (projectId == null || query == null || query.isBlank() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String text = query.strip();
+        try {
+            return jdbcTemplate.query(WIKI_TITLE_MATCH_SQL,
+                    new FullTextSearchResultRowMapper(objectMapper),
+                    text, text, projectId, text, text, limit);
+        } catch (Exception e) {
+            log.warn("Wiki title match failed: projectId={}, error={}", projectId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 预处理查询并构建SQL与参数，不访问数据库（包可见，供基准测试）
+     *
+     * @return 预处理后查询为空时返回null
+     */
+    PreparedQuery prepareQuery(UUID projectId, String query, String sourceType, int limit) {
+        QueryPlan plan = getQueryPlan(query);
+        if (plan.processedQuery().isEmpty()) {
+            return null;
+        }
+        return new PreparedQuery(plan.processedQuery(), plan.originalType(), plan.queryType(),
+                getSearchQuery(plan.queryType()),
+                buildQueryParams(plan, projectId, sourceType, limit));
+    }
+
+    /**
+     * 获取查询计划，查询计划只依赖查询文本，与项目、来源类型和语言配置无关
+     */
+    private QueryPlan getQueryPlan(String query) {
+        String key = query.strip();
+        if (planCache == null) {
+            return compileQueryPlan(key);
+        }
+        return planCache.get(key, this::compileQueryPlan);
+    }
+
+    /**
+     * 编译查询计划：检测查询类型并预处理
+     */
+    private QueryPlan compileQueryPlan(String query) {
+        // 先检测查询类型（在预处理之前，以便正确识别混合语言）
+        String queryType = detectQueryType(query);
+        
+        // 根据查询类型选择预处理方法
+        // Requirements: 4.2
+        String processedQuery;
+        if ("mixed".equals(queryType)) {
+            processedQuery = preprocessMixedLanguageQuery(query);
+        } else {
+            processedQuery = preprocessQuery(query);
+        }
+        
+        if (processedQuery.isEmpty()) {
+            return new QueryPlan("", queryType, queryType, null);
+        }
+        
+        // 预处理后重新检测查询类型（因为预处理可能改变查询特征）
+        String finalQueryType = detectQueryType(processedQuery);
+        String englishPart = "mixed".equals(finalQueryType) ? extractEnglishPart(processedQuery) : null;
+        return new QueryPlan(processedQuery, queryType, finalQueryType, englishPart);
+    }
+
+    /**
+     * 获取SQL模板，语言配置随 zhparser 可用性变化，因此按 语言+查询类型 缓存
+     */
+    private String getSearchQuery(String queryType) {
+        String lang = getEffectiveLanguage();
+        return sqlTemplates.computeIfAbsent(lang + ":" + queryType, key -> buildSearchQuery(lang, queryType));
+    }
+
+    /**
+     * 编译后的查询计划
+     *
+     * @param processedQuery 预处理后的查询文本，为空表示无需检索
+     * @param originalType 预处理前检测的查询类型
+     * @param queryType 最终查询类型
+     * @param englishPart 混合语言查询中用于 ILIKE 匹配的英文部分，其他类型为null
+     */
+    private record QueryPlan(String processedQuery, String originalType, String queryType, String englishPart) {}
+
+    /**
+     * 预处理后的全文查询
+     *
+     * @param processedQuery 预处理后的查询文本
+     * @param originalType 预处理前检测的查询类型
+     * @param queryType 最终查询类型
+     * @param sql 搜索SQL
+     * @param params SQL参数
+     */
+    record PreparedQuery(String processedQuery, String originalType, String queryType, String sql, Object[] params) {}
+
     /**
      * 带错误处理的搜索执行
      *
      */
-    private List<SearchResult> executeSearchWithErrorHandling(UUID projectId, String query, 
-                                                               String sourceType, int limit, 
-                                                               String queryType) {
+    private List<SearchResult> executeSearchWithErrorHandling(UUID projectId, PreparedQuery prepared) {
+        String query = prepared.processedQuery();
         try {
-            return executeSearch(projectId, query, sourceType, limit, queryType);
+            return executeSearch(prepared);
         } catch (org.springframework.dao.QueryTimeoutException e) {
             // 查询超时 (必须在DataAccessException之前捕获，因为它是子类)
             log.warn("Full-text search timeout: projectId={}, query='{}', timeout exceeded", 
@@ -191,8 +350,6 @@ public class FullTextSearchService {
             return "plain";
         }
 
-        String upperQuery = query.toUpperCase();
-        
         // 检查布尔关键词（排除混合语言中的普通英文单词）
         // 只有当布尔关键词作为独立词出现时才识别为布尔查询
         for (String keyword : BOOLEAN_KEYWORDS) {
@@ -200,13 +357,10 @@ public class FullTextSearchService {
             if (keyword.length() == 1 && query.contains(keyword)) {
                 return "boolean";
             }
-            // 对于多字符关键词，检查是否作为独立词出现
-            if (keyword.length() > 1) {
-                String pattern = "\\b" + keyword + "\\b";
-                if (Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher(query).find()) {
-                    return "boolean";
-                }
-            }
+        }
+        // 对于多字符关键词，检查是否作为独立词出现
+        if (BOOLEAN_WORD_PATTERN.matcher(query).find()) {
+            return "boolean";
         }
 
         // 引号包围的精确匹配
@@ -272,19 +426,15 @@ public class FullTextSearchService {
             return "";
         }
         
-        String processed = query.trim()
-                // 合并多个空白字符为单个空格
-                .replaceAll("\\s+", " ")
-                // 移除中英文引号
-                .replaceAll("[\"'\\u201C\\u201D\\u2018\\u2019]", "")
-                // 移除中文标点符号（保留英文标点以支持混合语言）
-                // 使用 Unicode 转义避免编码问题
-                .replaceAll("[\\uff01\\uff1f\\u3002\\uff0c\\uff1b\\uff1a\\u3001\\u201c\\u201d\\u2018\\u2019\\u3010\\u3011\\u300a\\u300b\\uff08\\uff09]", " ")
-                // 再次合并可能产生的多个空格
-                .replaceAll("\\s+", " ")
-                .trim();
-        
-        return processed;
+        // 合并多个空白字符为单个空格
+        String processed = WHITESPACE_PATTERN.matcher(query.trim()).replaceAll(" ");
+        // 移除中英文引号
+        processed = QUOTE_PATTERN.matcher(processed).replaceAll("");
+        // 移除中文标点符号（保留英文标点以支持混合语言）
+        // 使用 Unicode 转义避免编码问题
+        processed = CHINESE_PUNCTUATION_PATTERN.matcher(processed).replaceAll(" ");
+        // 再次合并可能产生的多个空格
+        return WHITESPACE_PATTERN.matcher(processed).replaceAll(" ").trim();
     }
     
     /**
@@ -310,31 +460,23 @@ public class FullTextSearchService {
         
         // 在中文和英文之间添加空格，以便分词器正确处理
         // 例如: "林动Harry" -> "林动 Harry"
-        processed = processed
-                // 在中文字符后面紧跟英文字符时添加空格
-                .replaceAll("([\\u4e00-\\u9fa5])([a-zA-Z])", "$1 $2")
-                // 在英文字符后面紧跟中文字符时添加空格
-                .replaceAll("([a-zA-Z])([\\u4e00-\\u9fa5])", "$1 $2")
-                // 在中文字符后面紧跟数字时添加空格
-                .replaceAll("([\\u4e00-\\u9fa5])([0-9])", "$1 $2")
-                // 在数字后面紧跟中文字符时添加空格
-                .replaceAll("([0-9])([\\u4e00-\\u9fa5])", "$1 $2")
-                // 合并多个空格
-                .replaceAll("\\s+", " ")
-                .trim();
-        
-        return processed;
+        // 在中文字符后面紧跟英文字符时添加空格
+        processed = CHINESE_THEN_ENGLISH.matcher(processed).replaceAll("$1 $2");
+        // 在英文字符后面紧跟中文字符时添加空格
+        processed = ENGLISH_THEN_CHINESE.matcher(processed).replaceAll("$1 $2");
+        // 在中文字符后面紧跟数字时添加空格
+        processed = CHINESE_THEN_DIGIT.matcher(processed).replaceAll("$1 $2");
+        // 在数字后面紧跟中文字符时添加空格
+        processed = DIGIT_THEN_CHINESE.matcher(processed).replaceAll("$1 $2");
+        // 合并多个空格
+        return WHITESPACE_PATTERN.matcher(processed).replaceAll(" ").trim();
     }
 
     /**
      * 执行搜索
      */
-    private List<SearchResult> executeSearch(UUID projectId, String query, String sourceType, 
-                                              int limit, String queryType) {
-        String sql = buildSearchQuery(queryType);
-        Object[] params = buildQueryParams(query, projectId, sourceType, limit, queryType);
-        
-        return jdbcTemplate.query(sql, params, new FullTextSearchResultRowMapper(objectMapper));
+    private List<SearchResult> executeSearch(PreparedQuery prepared) {
+        return jdbcTemplate.query(prepared.sql(), new FullTextSearchResultRowMapper(objectMapper), prepared.params());
     }
 
     /**
@@ -345,8 +487,7 @@ public class FullTextSearchService {
      * 
      * Requirements: 4.2, 5.1, 5.2
      */
-    private String buildSearchQuery(String queryType) {
-        String lang = getEffectiveLanguage();
+    private String buildSearchQuery(String lang, String queryType) {
         String titleWeight = getTitleWeight();
         String contentWeight = getContentWeight();
         
@@ -515,14 +656,13 @@ public class FullTextSearchService {
      * 
      * Requirements: 4.2
      */
-    private Object[] buildQueryParams(String query, UUID projectId, String sourceType, 
-                                       int limit, String queryType) {
-        return switch (queryType) {
+    private Object[] buildQueryParams(QueryPlan plan, UUID projectId, String sourceType, int limit) {
+        String query = plan.processedQuery();
+        return switch (plan.queryType()) {
             case "exact" -> new Object[]{query, projectId, sourceType, sourceType, query, query, query, limit};
             case "mixed" -> {
-                // 混合语言查询需要额外的参数用于 ILIKE 匹配
-                // 提取英文部分用于 ILIKE 匹配
-                String englishPart = extractEnglishPart(query);
+                // 混合语言查询需要额外的参数用于 ILIKE 匹配（英文部分在编译查询计划时提取）
+                String englishPart = plan.englishPart();
                 yield new Object[]{query, projectId, sourceType, sourceType, query, englishPart, englishPart, limit};
             }
             default -> new Object[]{query, projectId, sourceType, sourceType, query, limit};
@@ -624,6 +764,39 @@ public class FullTextSearchService {
         return "B";
     }
 
+    // ==================== 查询缓存统计 ====================
+
+    /**
+     * 获取查询计划缓存统计
+     */
+    public QueryCacheStats getQueryCacheStats() {
+        if (planCache == null) {
+            return new QueryCacheStats(false, 0, 0, 0, 0.0, sqlTemplates.size());
+        }
+        CacheStats stats = planCache.stats();
+        return new QueryCacheStats(true, planCache.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.hitRate(), sqlTemplates.size());
+    }
+
+    /**
+     * 查询计划缓存统计
+     *
+     * @param enabled 是否启用
+     * @param planSize 缓存的查询计划数
+     * @param planHits 命中次数
+     * @param planMisses 未命中（编译）次数
+     * @param planHitRate 命中率
+     * @param sqlTemplates 已构建的SQL模板数（语言 × 查询类型）
+     */
+    public record QueryCacheStats(
+            boolean enabled,
+            long planSize,
+            long planHits,
+            long planMisses,
+            double planHitRate,
+            int sqlTemplates
+    ) {}
+
     /**
      * 结果行映射器
      */
@@ -0,0 +1,349 @@
+package com.inkflow.module.rag.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.HnswTuningStatistics;
+import com.inkflow.module.rag.index.LatencyRecorder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * pgvector HNSW查询参数自适应
+ *
+ * HNSW索引扫描先取 ef_search 个近邻再应用 WHERE 过滤，项目在分区中占比越小，过滤后剩下的行越少，
+ * 默认参数下经常返回不足 limit 行。本类在只读事务内用 set_config(..., true) 为每次查询设置：
+ * - hnsw.ef_search：按索引扫描行数 × 倍数确定，无迭代扫描时再除以选择度
+ * - hnsw.iterative_scan / hnsw.max_scan_tuples（pgvector 0.8+）：选择性过滤时启用严格有序的迭代扫描
+ *
+ * 返回行数少于预期（min(limit, 可检索行数)）时按倍数放宽参数重试，
+ * 仍不足且项目规模较小时关闭索引扫描做一次精确检索。选择的参数和重试情况记录在统计中。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+public class HnswSearchTuner {
+
+    private static final String VERSION_SQL = "SELECT extversion FROM pg_extension WHERE extname = 'vector'";
+
+    private static final String SET_CONFIG_SQL = "SELECT set_config(?, ?, true)";
+
+    /**
+     * 过滤后的可检索行数，以及项目所在分区的估算行数
+     */
+    private static final String SELECTIVITY_SQL = """
+            SELECT (SELECT count(*) FROM knowledge_chunks
+                    WHERE project_id = ?
+                      AND is_active = true
+                      AND is_dirty = false
+                      AND embedding IS NOT NULL
+                      AND (CAST(? AS varchar) IS NULL OR source_type = ?)
+                      AND (? = false OR chunk_level = 'child')),
+                   COALESCE((SELECT GREATEST(c.reltuples, 0)::bigint FROM pg_class c
+                             WHERE c.oid = (SELECT tableoid FROM knowledge_chunks WHERE project_id = ? LIMIT 1)), 0)
+            """;
+
+    /** pgvector hnsw.max_scan_tuples 默认值 */
+    private static final int DEFAULT_MAX_SCAN_TUPLES = 20_000;
+
+    /** ef_search 分布统计的桶上界 */
+    private static final int[] EF_BUCKETS = {64, 128, 256, 512, Integer.MAX_VALUE};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RagProperties ragProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final Cache<FilterKey, Selectivity> selectivityCache;
+
+    /** pgvector版本，首次查询时检测 */
+    private volatile String pgvectorVersion;
+    private volatile Boolean iterativeScanAvailable;
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong queries = new AtomicLong(0);
+    private final AtomicLong efSearchSum = new AtomicLong(0);
+    private final AtomicInteger maxEfSearch = new AtomicInteger(0);
+    private final AtomicLongArray efSearchHistogram = new AtomicLongArray(EF_BUCKETS.length);
+    private final AtomicLong iterativeScanQueries = new AtomicLong(0);
+    private final AtomicLong retries = new AtomicLong(0);
+    private final AtomicLong exactFallbacks = new AtomicLong(0);
+    private final AtomicLong shortResults = new AtomicLong(0);
+    private final LatencyRecorder latency = new LatencyRecorder(2048);
+
+    private record FilterKey(UUID projectId, String sourceType, boolean childOnly) {}
+
+    /**
+     * 过滤选择度
+     *
+     * @param eligibleRows  满足过滤条件的可检索行数
+     * @param partitionRows 项目所在分区的估算行数，0表示未知
+     */
+    record Selectivity(long eligibleRows, long partitionRows) {
+
+        static final Selectivity UNKNOWN = new Selectivity(Long.MAX_VALUE, 0);
+
+        double ratio() {
+            if (partitionRows <= 0 || eligibleRows >= partitionRows) {
+                return 1.0;
+            }
+            return Math.max((double) eligibleRows / partitionRows, 1e-4);
+        }
+    }
+
+    /**
+     * 单次查询的参数
+     *
+     * @param efSearch      hnsw.ef_search
+     * @param iterative     是否启用迭代扫描
+     * @param maxScanTuples hnsw.max_scan_tuples（仅迭代扫描时生效）
+     * @param exact         是否关闭索引扫描做精确检索
+     */
+    record SearchParams(int efSearch, boolean iterative, int maxScanTuples, boolean exact) {
+
+        static final SearchParams EXACT = new SearchParams(0, false, 0, true);
+    }
+
+    public HnswSearchTuner(
+            JdbcTemplate jdbcTemplate,
+            RagProperties ragProperties,
+            PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ragProperties = ragProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.selectivityCache = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(ragProperties.search().hnsw().statsTtlMs(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 以自适应的HNSW参数执行向量查询
+     *
+     * @param projectId  项目ID
+     * @param sourceType 来源类型过滤，null表示不过滤
+     * @param childOnly  是否只检索子块
+     * @param limit      期望返回的行数
+     * @param indexLimit 索引扫描阶段的LIMIT（两阶段量化检索为候选数，其余等于limit）
+     * @param query      实际执行的仓储查询
+     * @return 查询结果
+     */
+    public <T> List<T> search(
+            UUID projectId,
+            String sourceType,
+            boolean childOnly,
+            int limit,
+            int indexLimit,
+            Supplier<List<T>> query) {
+
+        RagProperties.HnswTuningConfig config = ragProperties.search().hnsw();
+        if (!config.enabled()) {
+            return query.get();
+        }
+        long start = System.nanoTime();
+        Selectivity selectivity = selectivity(new FilterKey(projectId, sourceType, childOnly));
+        long expected = Math.min(limit, selectivity.eligibleRows());
+
+        SearchParams params = initialParams(config, selectivity.ratio(), indexLimit, isIterativeScanAvailable());
+        recordParams(params);
+        List<T> results = runWith(params, query);
+
+        for (int attempt = 0; results.size() < expected && attempt < config.maxRetries(); attempt++) {
+            SearchParams widened = widen(config, params, isIterativeScanAvailable());
+            if (widened.equals(params)) {
+                break;
+            }
+            params = widened;
+            retries.incrementAndGet();
+            recordParams(params);
+            results = runWith(params, query);
+        }
+
+        if (results.size() < expected
+                && config.exactFallbackMaxRows() > 0
+                && selectivity.eligibleRows() <= config.exactFallbackMaxRows()) {
+            exactFallbacks.incrementAndGet();
+            results = runWith(SearchParams.EXACT, query);
+        }
+        if (results.size() < expected) {
+            shortResults.incrementAndGet();
+            log.debug("向量检索返回行数不足: projectId={}, expected={}, actual={}, params={}",
+                    projectId, expected, results.size(), params);
+        }
+        queries.incrementAndGet();
+        latency.record(System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * 计算首次查询参数
+     *
+     * 可迭代扫描且过滤有选择性时，ef_search 只按索引扫描行数确定，过滤不足的部分由迭代扫描补足，
+     * 扫描上限按 行数 / 选择度 估算；否则 ef_search 需要覆盖过滤掉的部分，直接除以选择度
+     */
+    static SearchParams initialParams(
+            RagProperties.HnswTuningConfig config,
+            double selectivity,
+            int indexLimit,
+            boolean iterativeAvailable) {
+
+        double base = indexLimit * config.efMultiplier();
+        boolean iterative = iterativeAvailable && selectivity < config.selectiveThreshold();
+        if (iterative) {
+            long scanTuples = (long) Math.ceil(base / selectivity);
+            return new SearchParams(
+                    clampEf(config, base),
+                    true,
+                    (int) Math.min(Integer.MAX_VALUE, Math.max(DEFAULT_MAX_SCAN_TUPLES, scanTuples)),
+                    false);
+        }
+        return new SearchParams(clampEf(config, base / selectivity), false, 0, false);
+    }
+
+    /**
+     * 放宽参数：ef_search 和扫描上限按倍数放大，可用时启用迭代扫描
+     */
+    static SearchParams widen(RagProperties.HnswTuningConfig config, SearchParams params, boolean iterativeAvailable) {
+        int efSearch = clampEf(config, (double) params.efSearch() * config.retryGrowth());
+        if (!iterativeAvailable) {
+            return new SearchParams(efSearch, false, 0, false);
+        }
+        long scanTuples = (long) Math.max(DEFAULT_MAX_SCAN_TUPLES, params.maxScanTuples()) * config.retryGrowth();
+        return new SearchParams(efSearch, true, (int) Math.min(Integer.MAX_VALUE, scanTuples), false);
+    }
+
+    private static int clampEf(RagProperties.HnswTuningConfig config, double efSearch) {
+        return (int) Math.max(config.minEfSearch(), Math.min(config.maxEfSearch(), Math.ceil(efSearch)));
+    }
+
+    /**
+     * 在只读事务内设置会话参数后执行查询，参数随事务结束失效
+     */
+    private <T> List<T> runWith(SearchParams params, Supplier<List<T>> query) {
+        return transactionTemplate.execute(status -> {
+            if (params.exact()) {
+                setLocal("enable_indexscan", "off");
+            } else {
+                setLocal("hnsw.ef_search", Integer.toString(params.efSearch()));
+                if (params.iterative()) {
+                    setLocal("hnsw.iterative_scan", "strict_order");
+                    setLocal("hnsw.max_scan_tuples", Integer.toString(params.maxScanTuples()));
+                }
+            }
+            return query.get();
+        });
+    }
+
+    private void setLocal(String name, String value) {
+        jdbcTemplate.queryForObject(SET_CONFIG_SQL, String.class, name, value);
+    }
+
+    private Selectivity selectivity(FilterKey key) {
+        return selectivityCache.get(key, k -> {
+            try {
+                return jdbcTemplate.queryForObject(SELECTIVITY_SQL,
+                        (rs, rowNum) -> new Selectivity(rs.getLong(1), rs.getLong(2)),
+                        k.projectId(), k.sourceType(), k.sourceType(), k.childOnly(), k.projectId());
+            } catch (DataAccessException e) {
+                log.debug("查询向量检索选择度失败: projectId={}, error={}", k.projectId(), e.getMessage());
+                return Selectivity.UNKNOWN;
+            }
+        });
+    }
+
+    /**
+     * 检测pgvector是否支持迭代扫描（0.8.0+）
+     */
+    private boolean isIterativeScanAvailable() {
+        Boolean available = iterativeScanAvailable;
+        if (available == null) {
+            try {
+                String version = jdbcTemplate.queryForObject(VERSION_SQL, String.class);
+                available = supportsIterativeScan(version);
+                pgvectorVersion = version;
+                log.info("pgvector版本: {}, 迭代扫描{}", version, available ? "可用" : "不可用");
+            } catch (DataAccessException e) {
+                log.warn("检测pgvector版本失败，不使用迭代扫描: {}", e.getMessage());
+                available = false;
+            }
+            iterativeScanAvailable = available;
+        }
+        return available;
+    }
+
+    static boolean supportsIterativeScan(String version) {
+        if (version == null) {
+            return false;
+        }
+        String[] parts = version.split("\\.");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major > 0 || minor >= 8;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void recordParams(SearchParams params) {
+        efSearchSum.addAndGet(params.efSearch());
+        maxEfSearch.accumulateAndGet(params.efSearch(), Math::max);
+        for (int i = 0; i < EF_BUCKETS.length; i++) {
+            if (params.efSearch() <= EF_BUCKETS[i]) {
+                efSearchHistogram.incrementAndGet(i);
+                break;
+            }
+        }
+        if (params.iterative()) {
+            iterativeScanQueries.incrementAndGet();
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 获取HNSW参数自适应统计
+     */
+    public HnswTuningStatistics getStatistics() {
+        long attempts = 0;
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < EF_BUCKETS.length; i++) {
+            long count = efSearchHistogram.get(i);
+            attempts += count;
+            histogram.put(EF_BUCKETS[i] == Integer.MAX_VALUE ? ">" + EF_BUCKETS[i - 1] : "<=" + EF_BUCKETS[i], count);
+        }
+        return HnswTuningStatistics.builder()
+                .enabled(ragProperties.search().hnsw().enabled())
+                .pgvectorVersion(pgvectorVersion)
+                .iterativeScanAvailable(Boolean.TRUE.equals(iterativeScanAvailable))
+                .queries(queries.get())
+                .attempts(attempts)
+                .averageEfSearch(attempts > 0 ? (double) efSearchSum.get() / attempts : 0.0)
+                .maxEfSearch(maxEfSearch.get())
+                .efSearchHistogram(histogram)
+                .iterativeScanAttempts(iterativeScanQueries.get())
+                .retries(retries.get())
+                .exactFallbacks(exactFallbacks.get())
+                .shortResults(shortResults.get())
+                .p50Micros(latency.percentileMicros(50))
+                .p99Micros(latency.percentileMicros(99))
+                .cachedFilters(selectivityCache.estimatedSize())
+                .build();
+    }
+}
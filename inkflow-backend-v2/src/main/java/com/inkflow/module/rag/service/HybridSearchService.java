@@ -1,6 +1,7 @@
 package com.inkflow.module.rag.service;
 
 import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.RankFusionStatistics;
 import com.inkflow.module.rag.dto.RerankResult;
 import com.inkflow.module.rag.dto.SearchResult;
 import com.inkflow.module.rag.entity.KnowledgeChunk;
@@ -12,13 +13,16 @@ import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * 混合检索服务 - 使用RRF (Reciprocal Rank Fusion) 算法
- * 结合向量检索和全文检索，使用RRF算法融合结果。
+ * 结合向量、父子块、全文、百科标题等多路召回，使用加权RRF算法融合结果。
  * 支持并行检索、优雅降级和可选的重排序。
- * RRF公式: Score = 1.0 / (k + rank)，其中k=60
+ * 加权RRF公式: Score = Σ weight / (k + rank)，各路权重和k见 hybrid-search.fusion
+ * 完整（未降级）的检索结果按项目索引版本缓存，见 {@link SearchResultCache}。
  * 
  * @author zsg
  * @date 2025/12/17
@@ -34,18 +38,39 @@ public class HybridSearchService {
     private final RagProperties ragProperties;
     @Nullable
     private final ParentChildSearchService parentChildSearchService;
+    private final SearchResultCache searchResultCache;
+    private final ContextPackerService contextPacker;
 
     /**
-     * RRF常数k，默认60
-     * 公式: Score = 1.0 / (k + rank)
+     * Reactor上下文键，检索链路中任一环节降级时置位，降级结果不写入缓存
      */
-    private static final double DEFAULT_RRF_K = 60.0;
+    private static final String DEGRADED_CONTEXT_KEY = HybridSearchService.class.getName() + ".degraded";
+
+    /**
+     * 多路加权RRF融合引擎
+     */
+    private final WeightedRankFusion rankFusion = new WeightedRankFusion();
+
+    // 召回名称
+    private static final String RETRIEVER_VECTOR = "vector";
+    private static final String RETRIEVER_PARENT_CHILD = "parentChild";
+    private static final String RETRIEVER_FULL_TEXT = "fullText";
+    private static final String RETRIEVER_WIKI_TITLE = "wikiTitle";
+    private static final String RETRIEVER_RECENCY = "recency";
+
+    /**
+     * 生成上下文输出的来源类型
+     */
+    private static final Set<String> CONTEXT_SOURCE_TYPES = Set.of(
+            KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK,
+            KnowledgeChunk.SOURCE_TYPE_CHARACTER,
+            KnowledgeChunk.SOURCE_TYPE_WIKI_ENTRY);
 
     // ==================== 主要搜索API ====================
 
     /**
      * 执行混合检索
-     * 并行执行向量检索和全文检索，使用RRF算法融合结果。
+     * 并行执行各路召回（向量、父子块、全文、百科标题等），使用加权RRF算法融合结果。
      * 
      * @param projectId 项目ID
      * @param query 查询文本
@@ -59,33 +84,12 @@ public class HybridSearchService {
         log.debug("Hybrid search: projectId={}, query='{}', limit={}, recallLimit={}", 
                 projectId, truncateForLog(query), searchLimit, recallLimit);
 
-        // 并行执行向量检索和全文检索
-        return Mono.zip(
-                // 向量检索
-                executeVectorSearch(projectId, query, recallLimit),
-                // 全文检索（包装为Mono以支持并行）
-                executeFullTextSearch(projectId, query, recallLimit)
-        ).flatMap(tuple -> {
-            List<SearchResult> vectorResults = tuple.getT1();
-            List<SearchResult> fullTextResults = tuple.getT2();
-
-            log.debug("Retrieved {} vector results and {} full-text results", 
-                    vectorResults.size(), fullTextResults.size());
-
-            // 应用RRF融合算法
-            List<SearchResult> fusedResults = applyReciprocalRankFusion(
-                    vectorResults, fullTextResults, searchLimit);
-
-            // 可选：应用重排序
-            if (isRerankerEnabled() && !fusedResults.isEmpty()) {
-                return applyReranking(query, fusedResults, searchLimit);
-            }
-
-            return Mono.just(fusedResults);
-        }).onErrorResume(error -> {
-            log.error("Hybrid search failed: {}", error.getMessage());
-            return Mono.just(Collections.emptyList());
-        });
+        return withResultCache(projectId, query, searchLimit, null,
+                () -> retrieveAndFuse(projectId, null, query, searchLimit, recallLimit)
+                        .onErrorResume(error -> {
+                            log.error("Hybrid search failed: {}", error.getMessage());
+                            return degraded(Mono.just(Collections.emptyList()));
+                        }));
     }
 
     /**
@@ -100,22 +104,12 @@ public class HybridSearchService {
         int searchLimit = limit != null ? limit : getDefaultTopK();
         int recallLimit = searchLimit * getRecallMultiplier();
 
-        return Mono.zip(
-                executeVectorSearchBySourceType(projectId, sourceType, query, recallLimit),
-                executeFullTextSearchBySourceType(projectId, sourceType, query, recallLimit)
-        ).flatMap(tuple -> {
-            List<SearchResult> fusedResults = applyReciprocalRankFusion(
-                    tuple.getT1(), tuple.getT2(), searchLimit);
-
-            if (isRerankerEnabled() && !fusedResults.isEmpty()) {
-                return applyReranking(query, fusedResults, searchLimit);
-            }
-
-            return Mono.just(fusedResults);
-        }).onErrorResume(error -> {
-            log.error("Hybrid search by source type failed: {}", error.getMessage());
-            return Mono.just(Collections.emptyList());
-        });
+        return withResultCache(projectId, query, searchLimit, sourceType,
+                () -> retrieveAndFuse(projectId, sourceType, query, searchLimit, recallLimit)
+                        .onErrorResume(error -> {
+                            log.error("Hybrid search by source type failed: {}", error.getMessage());
+                            return degraded(Mono.just(Collections.emptyList()));
+                        }));
     }
 
     /**
@@ -127,14 +121,102 @@ public class HybridSearchService {
      * @return 格式化的上下文字符串
      */
     public Mono<String> buildContextForGeneration(UUID projectId, String query, int limit) {
+        return buildContextForGeneration(projectId, query, limit, null);
+    }
+
+    /**
+     * 为AI生成构建上下文，按工作流的Token预算打包
+     * 父块按命中子块截取窗口，去除重叠和近重复片段后按 得分/Token 装入预算（见 {@link ContextPackerService}）
+     *
+     * @param projectId 项目ID
+     * @param query 查询文本
+     * @param limit 最大候选结果数
+     * @param workflow 工作流标识（WorkflowType名称），null使用默认预算
+     * @return 格式化的上下文字符串
+     */
+    public Mono<String> buildContextForGeneration(UUID projectId, String query, int limit, String workflow) {
         return search(projectId, query, limit)
-                .map(this::formatResultsAsContext);
+                .map(results -> formatResultsAsContext(results, workflow));
     }
 
-    // ==================== RRF融合算法 ====================
+    // ==================== 多路召回融合 ====================
 
     /**
-     * 应用RRF (Reciprocal Rank Fusion) 算法
+     * 并行执行已启用的各路召回，加权RRF融合后可选重排序
+     *
+     * @param sourceType 来源类型，null表示不过滤
+     */
+    private Mono<List<SearchResult>> retrieveAndFuse(
+            UUID projectId, String sourceType, String query, int searchLimit, int recallLimit) {
+        RagProperties.FusionConfig fusion = ragProperties.hybridSearch().fusion();
+        List<String> names = new ArrayList<>();
+        List<RagProperties.RetrieverConfig> configs = new ArrayList<>();
+        List<Mono<List<SearchResult>>> retrievals = new ArrayList<>();
+
+        boolean parentChildActive = isParentChildSearchEnabled() && fusion.parentChild().enabled();
+        if (parentChildActive) {
+            names.add(RETRIEVER_PARENT_CHILD);
+            configs.add(fusion.parentChild());
+            retrievals.add(sourceType == null
+                    ? executeVectorSearch(projectId, query, recallLimit)
+                    : executeVectorSearchBySourceType(projectId, sourceType, query, recallLimit));
+        }
+        // 未使用父子块检索时，块级向量检索始终作为向量召回
+        if (!parentChildActive || fusion.vector().enabled()) {
+            names.add(RETRIEVER_VECTOR);
+            configs.add(fusion.vector());
+            retrievals.add(sourceType == null
+                    ? executeTraditionalVectorSearch(projectId, query, recallLimit)
+                    : executeTraditionalVectorSearchBySourceType(projectId, sourceType, query, recallLimit));
+        }
+        if (fusion.fullText().enabled()) {
+            names.add(RETRIEVER_FULL_TEXT);
+            configs.add(fusion.fullText());
+            retrievals.add(sourceType == null
+                    ? executeFullTextSearch(projectId, query, recallLimit)
+                    : executeFullTextSearchBySourceType(projectId, sourceType, query, recallLimit));
+        }
+        if (fusion.wikiTitle().enabled()
+                && (sourceType == null || KnowledgeChunk.SOURCE_TYPE_WIKI_ENTRY.equals(sourceType))) {
+            names.add(RETRIEVER_WIKI_TITLE);
+            configs.add(fusion.wikiTitle());
+            retrievals.add(executeWikiTitleSearch(projectId, query, recallLimit));
+        }
+
+        return Mono.zip(retrievals, results -> {
+            double defaultK = getRrfK();
+            List<WeightedRankFusion.RankedList> lists = new ArrayList<>(results.length + 1);
+            for (int i = 0; i < results.length; i++) {
+                @SuppressWarnings("unchecked")
+                List<SearchResult> ranked = (List<SearchResult>) results[i];
+                RagProperties.RetrieverConfig config = configs.get(i);
+                lists.add(new WeightedRankFusion.RankedList(
+                        names.get(i), config.weight(), config.effectiveK(defaultK), ranked));
+            }
+            if (fusion.recency().enabled()) {
+                lists.add(new WeightedRankFusion.RankedList(RETRIEVER_RECENCY, fusion.recency().weight(),
+                        fusion.recency().effectiveK(defaultK), rankByRecency(lists)));
+            }
+            return lists;
+        }).flatMap(lists -> {
+            if (log.isDebugEnabled()) {
+                log.debug("Retrieved {}", lists.stream()
+                        .map(list -> list.name() + "=" + list.results().size())
+                        .collect(Collectors.joining(", ")));
+            }
+
+            List<SearchResult> fusedResults = rankFusion.fuse(lists, searchLimit);
+
+            // 可选：应用重排序
+            if (isRerankerEnabled() && !fusedResults.isEmpty()) {
+                return applyReranking(query, fusedResults, searchLimit);
+            }
+            return Mono.just(fusedResults);
+        });
+    }
+
+    /**
+     * 应用RRF (Reciprocal Rank Fusion) 算法融合向量和全文两路结果
      * 
      * RRF公式: Score = 1.0 / (k + rank)
      * 对于同时出现在两个结果集中的文档，累加其RRF分数。
@@ -148,44 +230,38 @@ public class HybridSearchService {
             List<SearchResult> vectorResults,
             List<SearchResult> fullTextResults,
             int limit) {
-
         double rrfK = getRrfK();
-        
-        // 使用sourceId作为去重键的RRF分数映射
-        Map<UUID, Double> rrfScores = new LinkedHashMap<>();
-        // 保存每个sourceId对应的SearchResult
-        Map<UUID, SearchResult> resultMap = new LinkedHashMap<>();
-
-        // 处理向量检索结果 - rank从1开始
-        for (int rank = 0; rank < vectorResults.size(); rank++) {
-            SearchResult result = vectorResults.get(rank);
-            UUID key = result.getSourceId();
-            double rrfScore = 1.0 / (rrfK + rank + 1); // rank从1开始
-            
-            rrfScores.merge(key, rrfScore, Double::sum);
-            resultMap.putIfAbsent(key, result);
-        }
+        return rankFusion.fuse(List.of(
+                new WeightedRankFusion.RankedList(RETRIEVER_VECTOR, 1.0, rrfK, vectorResults),
+                new WeightedRankFusion.RankedList(RETRIEVER_FULL_TEXT, 1.0, rrfK, fullTextResults)
+        ), limit);
+    }
 
-        // 处理全文检索结果 - rank从1开始
-        for (int rank = 0; rank < fullTextResults.size(); rank++) {
-            SearchResult result = fullTextResults.get(rank);
-            UUID key = result.getSourceId();
-            double rrfScore = 1.0 / (rrfK + rank + 1); // rank从1开始
-            
-            rrfScores.merge(key, rrfScore, Double::sum);
-            resultMap.putIfAbsent(key, result);
-        }
+    /**
+     * 获取多路召回融合统计
+     */
+    public RankFusionStatistics getFusionStatistics() {
+        return rankFusion.getStatistics();
+    }
 
-        // 按RRF分数降序排序并设置分数
-        return rrfScores.entrySet().stream()
-                .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))
-                .limit(limit)
-                .map(entry -> {
-                    SearchResult result = resultMap.get(entry.getKey());
-                    result.setRrfScore(entry.getValue());
-                    return result;
-                })
-                .collect(Collectors.toList());
+    /**
+     * 新近度召回：按章节顺序从后往前排列已召回的结果
+     * 只对带章节顺序的结果排序，不引入新文档
+     */
+    private List<SearchResult> rankByRecency(List<WeightedRankFusion.RankedList> lists) {
+        Map<UUID, SearchResult> unique = new LinkedHashMap<>();
+        for (WeightedRankFusion.RankedList list : lists) {
+            for (SearchResult result : list.results()) {
+                if (result.getChapterOrder() != null) {
+                    unique.putIfAbsent(result.getSourceId(), result);
+                }
+            }
+        }
+        List<SearchResult> ordered = new ArrayList<>(unique.values());
+        ordered.sort(Comparator.comparing(SearchResult::getChapterOrder, Comparator.reverseOrder())
+                .thenComparing(result -> result.getBlockOrder() != null ? result.getBlockOrder() : 0,
+                        Comparator.reverseOrder()));
+        return ordered;
     }
 
     // ==================== 向量检索 ====================
@@ -208,7 +284,7 @@ public class HybridSearchService {
                     .onErrorResume(error -> {
                         log.warn("Parent-child search failed, falling back to traditional vector search: {}", 
                                 error.getMessage());
-                        return executeTraditionalVectorSearch(projectId, query, limit);
+                        return degraded(executeTraditionalVectorSearch(projectId, query, limit));
                     });
         }
         
@@ -223,7 +299,7 @@ public class HybridSearchService {
                 .doOnNext(results -> log.debug("Traditional vector search returned {} results", results.size()))
                 .onErrorResume(error -> {
                     log.warn("Vector search failed, continuing with empty results: {}", error.getMessage());
-                    return Mono.just(Collections.emptyList());
+                    return degraded(Mono.just(Collections.emptyList()));
                 });
     }
 
@@ -242,7 +318,7 @@ public class HybridSearchService {
                     .onErrorResume(error -> {
                         log.warn("Parent-child search by type failed, falling back to traditional: {}", 
                                 error.getMessage());
-                        return executeTraditionalVectorSearchBySourceType(projectId, sourceType, query, limit);
+                        return degraded(executeTraditionalVectorSearchBySourceType(projectId, sourceType, query, limit));
                     });
         }
         
@@ -258,7 +334,7 @@ public class HybridSearchService {
                 .doOnNext(results -> log.debug("Traditional vector search by type returned {} results", results.size()))
                 .onErrorResume(error -> {
                     log.warn("Vector search by type failed: {}", error.getMessage());
-                    return Mono.just(Collections.emptyList());
+                    return degraded(Mono.just(Collections.emptyList()));
                 });
     }
 
@@ -274,7 +350,7 @@ public class HybridSearchService {
                 .doOnNext(results -> log.debug("Full-text search returned {} results", results.size()))
                 .onErrorResume(error -> {
                     log.warn("Full-text search failed, continuing with empty results: {}", error.getMessage());
-                    return Mono.just(Collections.emptyList());
+                    return degraded(Mono.just(Collections.emptyList()));
                 });
     }
 
@@ -288,7 +364,20 @@ public class HybridSearchService {
                 .doOnNext(results -> log.debug("Full-text search by type returned {} results", results.size()))
                 .onErrorResume(error -> {
                     log.warn("Full-text search by type failed: {}", error.getMessage());
-                    return Mono.just(Collections.emptyList());
+                    return degraded(Mono.just(Collections.emptyList()));
+                });
+    }
+
+    /**
+     * 执行百科标题/别名匹配（带优雅降级）
+     */
+    private Mono<List<SearchResult>> executeWikiTitleSearch(UUID projectId, String query, int limit) {
+        return Mono.fromCallable(() -> fullTextSearchService.searchByWikiTitle(projectId, query, limit))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(results -> log.debug("Wiki title match returned {} results", results.size()))
+                .onErrorResume(error -> {
+                    log.warn("Wiki title match failed: {}", error.getMessage());
+                    return degraded(Mono.just(Collections.emptyList()));
                 });
     }
 
@@ -328,23 +417,77 @@ public class HybridSearchService {
                 })
                 .onErrorResume(error -> {
                     log.warn("Reranking failed, returning original results: {}", error.getMessage());
-                    return Mono.just(results.stream().limit(limit).collect(Collectors.toList()));
+                    return degraded(Mono.just(results.stream().limit(limit).collect(Collectors.toList())));
                 });
     }
 
+    // ==================== 结果缓存 ====================
+
+    /**
+     * 先查检索结果缓存，未命中时执行检索并在结果完整时写入缓存
+     * 索引版本在检索开始前记录，检索期间发生的写入会使本次结果不被缓存
+     */
+    private Mono<List<SearchResult>> withResultCache(
+            UUID projectId, String query, int limit, String sourceType,
+            Supplier<Mono<List<SearchResult>>> loader) {
+        if (!searchResultCache.isEnabled()) {
+            return loader.get();
+        }
+        return Mono.defer(() -> {
+            SearchResultCache.SearchKey key = searchResultCache.key(projectId, query, limit, sourceType);
+            Optional<List<SearchResult>> cached = searchResultCache.get(key);
+            if (cached.isPresent()) {
+                log.debug("Search result cache hit: projectId={}, query='{}'", projectId, truncateForLog(query));
+                return Mono.just(cached.get());
+            }
+
+            SearchResultCache.IndexVersion version = searchResultCache.currentVersion(projectId);
+            AtomicBoolean degraded = new AtomicBoolean(false);
+            return loader.get()
+                    .doOnNext(results -> {
+                        if (!degraded.get()) {
+                            searchResultCache.put(key, version, results);
+                        }
+                    })
+                    .contextWrite(ctx -> ctx.put(DEGRADED_CONTEXT_KEY, degraded));
+        });
+    }
+
+    /**
+     * 标记当前检索已降级，返回降级结果
+     */
+    private <T> Mono<T> degraded(Mono<T> fallback) {
+        return Mono.deferContextual(ctx -> {
+            ctx.<AtomicBoolean>getOrEmpty(DEGRADED_CONTEXT_KEY).ifPresent(flag -> flag.set(true));
+            return fallback;
+        });
+    }
+
     // ==================== 上下文构建 ====================
 
     /**
      * 将搜索结果格式化为AI上下文
      */
-    private String formatResultsAsContext(List<SearchResult> results) {
+    private String formatResultsAsContext(List<SearchResult> results, String workflow) {
         if (results.isEmpty()) {
             return "";
         }
 
+        // 只保留会输出的来源类型，避免未输出的结果占用预算
+        List<SearchResult> contextResults = results.stream()
+                .filter(r -> CONTEXT_SOURCE_TYPES.contains(r.getSourceType()))
+                .toList();
+
+        // 截取窗口并按Token预算装入；未启用时整段截断拼接
+        List<ContextPackerService.PackedSegment> segments = ragProperties.contextBudget().enabled()
+                ? contextPacker.pack(contextResults, workflow)
+                : contextResults.stream()
+                        .map(r -> new ContextPackerService.PackedSegment(r, truncateForContext(r.getContent()), 0, false))
+                        .toList();
+
         // 按来源类型分组
-        Map<String, List<SearchResult>> grouped = results.stream()
-                .collect(Collectors.groupingBy(SearchResult::getSourceType));
+        Map<String, List<ContextPackerService.PackedSegment>> grouped = segments.stream()
+                .collect(Collectors.groupingBy(segment -> segment.result().getSourceType()));
 
         StringBuilder context = new StringBuilder();
 
@@ -363,11 +506,13 @@ public class HybridSearchService {
     /**
      * 追加分组结果到上下文
      */
-    private void appendGroupedResults(StringBuilder context, List<SearchResult> results, String title) {
-        if (results == null || results.isEmpty()) return;
+    private void appendGroupedResults(
+            StringBuilder context, List<ContextPackerService.PackedSegment> segments, String title) {
+        if (segments == null || segments.isEmpty()) return;
 
         context.append("【").append(title).append("】\n");
-        for (SearchResult result : results) {
+        for (ContextPackerService.PackedSegment segment : segments) {
+            SearchResult result = segment.result();
             String name = "";
             if (result.getMetadata() != null) {
                 name = result.getMetadata().getOrDefault("name",
@@ -378,7 +523,7 @@ public class HybridSearchService {
             } else {
                 context.append("- ");
             }
-            context.append(truncateForContext(result.getContent())).append("\n");
+            context.append(segment.content()).append("\n");
         }
         context.append("\n");
     }
@@ -0,0 +1,309 @@
+package com.inkflow.module.rag.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.VectorIndexStatistics;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.event.KnowledgeChunkChangedEvent;
+import com.inkflow.module.rag.index.LatencyRecorder;
+import com.inkflow.module.rag.index.ProjectVectorShard;
+import com.inkflow.module.rag.index.VectorHit;
+import com.inkflow.module.rag.index.VectorKernels;
+import com.inkflow.module.rag.repository.ChunkVectorProjection;
+import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * 进程内向量索引服务
+ *
+ * 按项目维护常驻内存的向量分片（半精度存储 + HNSW图 / 暴力扫描），
+ * 让向量召回不再经过数据库往返。分片在首次查询时从 knowledge_chunks 懒加载，
+ * 之后通过 {@link KnowledgeChunkChangedEvent} 增量同步，超过上限时按LRU淘汰。
+ *
+ * 同时记录内存路径与pgvector路径的延迟分位数，以及影子查询得到的recall@k，
+ * 用于在开启前后对比召回质量。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+public class InMemoryVectorIndexService {
+
+    private static final int LATENCY_WINDOW = 2048;
+
+    private final KnowledgeChunkRepository knowledgeChunkRepository;
+    private final RagProperties ragProperties;
+    private final Cache<UUID, ProjectVectorShard> shards;
+
+    /**
+     * 各项目最近一次写入事件的时间，用于识别加载期间发生的并发写入
+     */
+    private final Map<UUID, Long> lastChangeNanos = new ConcurrentHashMap<>();
+
+    // ==================== 监控指标 ====================
+
+    private final LatencyRecorder indexLatency = new LatencyRecorder(LATENCY_WINDOW);
+    private final LatencyRecorder pgvectorLatency = new LatencyRecorder(LATENCY_WINDOW);
+    private final AtomicLong shardLoads = new AtomicLong(0);
+    private final AtomicLong shardEvictions = new AtomicLong(0);
+    private final AtomicLong fallbacks = new AtomicLong(0);
+    private final AtomicLong shadowQueries = new AtomicLong(0);
+    private final DoubleAdder recallSum = new DoubleAdder();
+
+    public InMemoryVectorIndexService(
+            KnowledgeChunkRepository knowledgeChunkRepository,
+            RagProperties ragProperties) {
+        this.knowledgeChunkRepository = knowledgeChunkRepository;
+        this.ragProperties = ragProperties;
+        this.shards = Caffeine.newBuilder()
+                .maximumSize(ragProperties.vectorIndex().maxShards())
+                .removalListener((UUID projectId, ProjectVectorShard shard, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        shardEvictions.incrementAndGet();
+                        log.debug("向量索引分片被淘汰: projectId={}", projectId);
+                    }
+                })
+                .build();
+        if (ragProperties.vectorIndex().enabled()) {
+            log.info("进程内向量索引已启用: mode={}, SIMD={}",
+                    ragProperties.vectorIndex().mode(), VectorKernels.isSimdAvailable());
+        }
+    }
+
+    /**
+     * 是否启用进程内向量索引
+     */
+    public boolean isEnabled() {
+        return ragProperties.vectorIndex().enabled();
+    }
+
+    // ==================== 检索 ====================
+
+    /**
+     * 在项目分片中执行K近邻检索，分片未加载时同步加载
+     *
+     * @param projectId      项目ID
+     * @param queryEmbedding 查询向量
+     * @param limit          返回数量
+     * @param sourceType     来源类型过滤，null表示不过滤
+     * @param childOnly      是否只检索子块
+     * @return 按相似度降序排列的命中
+     */
+    public List<VectorHit> search(UUID projectId, float[] queryEmbedding, int limit,
+                                  String sourceType, boolean childOnly) {
+        ProjectVectorShard shard = shards.get(projectId, this::loadShard);
+        long start = System.nanoTime();
+        List<VectorHit> hits = shard.search(queryEmbedding, limit, sourceType, childOnly);
+        indexLatency.record(System.nanoTime() - start);
+        return hits;
+    }
+
+    /**
+     * 记录一次pgvector查询耗时
+     */
+    public void recordPgvectorLatency(long nanos) {
+        pgvectorLatency.record(nanos);
+    }
+
+    /**
+     * 记录内存检索失败后回退到pgvector
+     */
+    public void recordFallback() {
+        fallbacks.incrementAndGet();
+    }
+
+    /**
+     * 是否对本次查询做影子对比
+     */
+    public boolean shouldShadow() {
+        double rate = ragProperties.vectorIndex().shadowSampleRate();
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * 记录影子对比结果：以pgvector结果为基准计算recall@k
+     *
+     * @param indexIds    内存索引返回的块ID
+     * @param pgvectorIds pgvector返回的块ID
+     */
+    public void recordShadowComparison(List<UUID> indexIds, List<UUID> pgvectorIds) {
+        if (pgvectorIds.isEmpty()) {
+            return;
+        }
+        Set<UUID> expected = new HashSet<>(pgvectorIds);
+        long overlap = indexIds.stream().filter(expected::contains).count();
+        double recall = (double) overlap / expected.size();
+        shadowQueries.incrementAndGet();
+        recallSum.add(recall);
+        if (recall < 0.8) {
+            log.debug("向量索引影子对比召回率偏低: recall={}, expected={}", recall, expected.size());
+        }
+    }
+
+    // ==================== 同步 ====================
+
+    /**
+     * 监听知识块变更，增量同步已加载的分片
+     * 未加载的分片无需处理，下次查询时会读取最新数据
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onKnowledgeChunkChanged(KnowledgeChunkChangedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        UUID projectId = event.getProjectId();
+        if (projectId != null) {
+            lastChangeNanos.put(projectId, System.nanoTime());
+        }
+
+        switch (event.getOperation()) {
+            case DELETE_PROJECT -> shards.invalidate(projectId);
+            case DELETE_SOURCE -> {
+                if (projectId != null) {
+                    ProjectVectorShard shard = shards.getIfPresent(projectId);
+                    if (shard != null) {
+                        shard.removeSource(event.getSourceId());
+                    }
+                } else {
+                    // 删除方不知道项目ID时逐个分片处理
+                    shards.asMap().values().forEach(shard -> shard.removeSource(event.getSourceId()));
+                }
+            }
+            case UPSERT -> {
+                ProjectVectorShard shard = projectId != null ? shards.getIfPresent(projectId) : null;
+                if (shard != null) {
+                    applyUpsert(shard, event.getChunks());
+                }
+            }
+        }
+    }
+
+    /**
+     * 手动淘汰项目分片
+     */
+    public void evict(UUID projectId) {
+        shards.invalidate(projectId);
+    }
+
+    /**
+     * 清空所有分片
+     */
+    public void clear() {
+        shards.invalidateAll();
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 获取索引统计信息
+     */
+    public VectorIndexStatistics getStatistics() {
+        long residentChunks = 0;
+        long memoryBytes = 0;
+        for (ProjectVectorShard shard : shards.asMap().values()) {
+            residentChunks += shard.liveCount();
+            memoryBytes += shard.memoryBytes();
+        }
+        long shadowCount = shadowQueries.get();
+        return VectorIndexStatistics.builder()
+                .enabled(isEnabled())
+                .mode(ragProperties.vectorIndex().mode())
+                .simdEnabled(VectorKernels.isSimdAvailable())
+                .residentShards(shards.estimatedSize())
+                .maxShards(ragProperties.vectorIndex().maxShards())
+                .residentChunks(residentChunks)
+                .memoryBytes(memoryBytes)
+                .shardLoads(shardLoads.get())
+                .shardEvictions(shardEvictions.get())
+                .fallbacks(fallbacks.get())
+                .indexQueries(indexLatency.getTotal())
+                .indexP50Micros(indexLatency.percentileMicros(50))
+                .indexP99Micros(indexLatency.percentileMicros(99))
+                .pgvectorQueries(pgvectorLatency.getTotal())
+                .pgvectorP50Micros(pgvectorLatency.percentileMicros(50))
+                .pgvectorP99Micros(pgvectorLatency.percentileMicros(99))
+                .shadowQueries(shadowCount)
+                .averageRecall(shadowCount > 0 ? recallSum.sum() / shadowCount : 0.0)
+                .build();
+    }
+
+    // ==================== 内部方法 ====================
+
+    private ProjectVectorShard loadShard(UUID projectId) {
+        long start = System.nanoTime();
+        RagProperties.VectorIndexConfig config = ragProperties.vectorIndex();
+        ProjectVectorShard shard = new ProjectVectorShard(projectId, new ProjectVectorShard.Settings(
+                config.m(),
+                config.efConstruction(),
+                config.efSearch(),
+                config.isBruteForce(),
+                config.bruteForceThreshold()));
+
+        List<ChunkVectorProjection> rows = knowledgeChunkRepository.findIndexableVectorsByProjectId(projectId);
+        List<ProjectVectorShard.Entry> entries = new ArrayList<>(rows.size());
+        for (ChunkVectorProjection row : rows) {
+            entries.add(new ProjectVectorShard.Entry(
+                    row.getId(),
+                    row.getSourceId(),
+                    row.getSourceType(),
+                    KnowledgeChunk.CHUNK_LEVEL_CHILD.equals(row.getChunkLevel()),
+                    row.getEmbedding()));
+        }
+        shard.addAll(entries);
+        shardLoads.incrementAndGet();
+
+        // 加载期间有写入提交时，结果可能缺失这些写入；本次照常使用，下次查询重新加载
+        Long changedAt = lastChangeNanos.get(projectId);
+        if (changedAt != null && changedAt > start) {
+            log.debug("向量索引分片加载期间发生写入，标记重新加载: projectId={}", projectId);
+            CompletableFuture.runAsync(() -> shards.invalidate(projectId));
+        }
+
+        log.info("向量索引分片加载完成: projectId={}, chunks={}, 耗时={}ms",
+                projectId, entries.size(), (System.nanoTime() - start) / 1_000_000);
+        return shard;
+    }
+
+    private void applyUpsert(ProjectVectorShard shard, List<KnowledgeChunk> chunks) {
+        List<ProjectVectorShard.Entry> entries = new ArrayList<>(chunks.size());
+        for (KnowledgeChunk chunk : chunks) {
+            if (chunk.getId() == null) {
+                continue;
+            }
+            boolean indexable = chunk.getEmbedding() != null
+                    && Boolean.TRUE.equals(chunk.getIsActive())
+                    && !Boolean.TRUE.equals(chunk.getIsDirty());
+            if (!indexable) {
+                shard.removeChunk(chunk.getId());
+                continue;
+            }
+            entries.add(new ProjectVectorShard.Entry(
+                    chunk.getId(),
+                    chunk.getSourceId(),
+                    chunk.getSourceType(),
+                    chunk.isChildChunk(),
+                    chunk.getEmbedding()));
+        }
+        if (!entries.isEmpty()) {
+            shard.addAll(entries);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.CircuitBreakerState;
+import com.inkflow.module.rag.dto.IndexingQueueStatistics;
+import com.inkflow.module.rag.entity.IndexingJob;
+import com.inkflow.module.rag.event.KnowledgeChunkChangedEvent;
+import com.inkflow.module.rag.index.LatencyRecorder;
+import com.inkflow.module.rag.repository.DirtySourceProjection;
+import com.inkflow.module.rag.repository.IndexingJobRepository;
+import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * RAG索引任务队列服务
+ *
+ * 以 indexing_jobs 表作为发件箱，替代写入后直接触发的异步索引：
+ * - 入队与业务写入同事务提交，重启不丢任务
+ * - 同一来源只保留一条任务，去抖窗口内的多次写入只索引最后一次
+ * - 有界并发执行，Embedding断路器打开时只放行单个探测任务
+ * - 失败按指数退避重试，重试耗尽后标记为 FAILED
+ * - 入队不改动现有索引，旧块在重建完成前继续参与检索，由增量重建原子切换版本
+ * - 定时把遗留的脏块来源补入队列，重试耗尽（FAILED）的来源重置后重新执行
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+public class IndexingQueueService {
+
+    private final IndexingJobRepository jobRepository;
+    private final KnowledgeChunkRepository knowledgeChunkRepository;
+    private final ParentChildSearchService parentChildSearchService;
+    private final EmbeddingService embeddingService;
+    private final RagProperties ragProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Executor executor;
+    private final Map<String, IndexingSourceLoader> loaders;
+    private final Semaphore permits;
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong enqueuedJobs = new AtomicLong(0);
+    private final AtomicLong completedJobs = new AtomicLong(0);
+    private final AtomicLong failedAttempts = new AtomicLong(0);
+    private final LatencyRecorder processingTime = new LatencyRecorder(1024);
+    private final LatencyRecorder lag = new LatencyRecorder(1024);
+
+    public IndexingQueueService(
+            IndexingJobRepository jobRepository,
+            KnowledgeChunkRepository knowledgeChunkRepository,
+            ParentChildSearchService parentChildSearchService,
+            EmbeddingService embeddingService,
+            RagProperties ragProperties,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventPublisher,
+            @Qualifier("embeddingExecutor") Executor executor,
+            List<IndexingSourceLoader> loaders) {
+        this.jobRepository = jobRepository;
+        this.knowledgeChunkRepository = knowledgeChunkRepository;
+        this.parentChildSearchService = parentChildSearchService;
+        this.embeddingService = embeddingService;
+        this.ragProperties = ragProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.executor = executor;
+        this.loaders = loaders.stream()
+                .collect(Collectors.toMap(IndexingSourceLoader::sourceType, Function.identity()));
+        this.permits = new Semaphore(ragProperties.indexingQueue().workers());
+    }
+
+    /**
+     * 是否启用索引队列
+     */
+    public boolean isEnabled() {
+        return ragProperties.indexingQueue().enabled();
+    }
+
+    // ==================== 入队 ====================
+
+    /**
+     * 入队重建索引任务
+     * 在调用方事务内执行；旧索引保持可检索，直到重建完成后原子切换
+     *
+     * @param projectId 项目ID
+     * @param sourceType 来源类型
+     * @param sourceId 来源ID
+     */
+    @Transactional
+    public void enqueueIndex(UUID projectId, String sourceType, UUID sourceId) {
+        enqueue(projectId, sourceType, sourceId, IndexingJob.Operation.INDEX);
+    }
+
+    /**
+     * 入队删除索引任务，覆盖同一来源尚未执行的重建任务
+     *
+     * @param projectId 项目ID
+     * @param sourceType 来源类型
+     * @param sourceId 来源ID
+     */
+    @Transactional
+    public void enqueueDelete(UUID projectId, String sourceType, UUID sourceId) {
+        enqueue(projectId, sourceType, sourceId, IndexingJob.Operation.DELETE);
+    }
+
+    private void enqueue(UUID projectId, String sourceType, UUID sourceId, IndexingJob.Operation operation) {
+        Instant availableAt = Instant.now().plusMillis(ragProperties.indexingQueue().debounceMs());
+        jobRepository.upsert(projectId, sourceType, sourceId, operation.name(), availableAt);
+        enqueuedJobs.incrementAndGet();
+        log.debug("索引任务入队: sourceId={}, operation={}", sourceId, operation);
+    }
+
+    // ==================== 调度执行 ====================
+
+    /**
+     * 领取到期任务并提交执行
+     * 仅领取空闲并发数以内的任务，积压留在表中由后续轮询处理
+     */
+    @Scheduled(fixedDelay = 500)
+    public void dispatchDueJobs() {
+        if (!isEnabled()) {
+            return;
+        }
+        int free = permits.availablePermits();
+        if (free == 0) {
+            return;
+        }
+        // 断路器打开时只放行一个任务作为探测，避免积压任务集中失败
+        if (embeddingService.getCircuitBreakerState() == CircuitBreakerState.OPEN) {
+            free = 1;
+        }
+
+        int limit = free;
+        List<IndexingJob> claimed = transactionTemplate.execute(status -> claim(limit));
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+
+        for (IndexingJob job : claimed) {
+            permits.acquireUninterruptibly();
+            try {
+                executor.execute(() -> {
+                    try {
+                        run(job);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                log.error("索引任务提交失败: jobId={}", job.getId(), e);
+                fail(job, e);
+            }
+        }
+    }
+
+    /**
+     * 回收租约超时的任务，并把遗留的脏块来源补入队列
+     * 已重试耗尽（FAILED）的来源同样重新入队，upsert 会重置状态与重试次数
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 60000)
+    public void recover() {
+        if (!isEnabled()) {
+            return;
+        }
+        RagProperties.IndexingQueueConfig config = ragProperties.indexingQueue();
+        Instant cutoff = Instant.now().minusMillis(config.leaseTimeoutMs());
+        Integer released = transactionTemplate.execute(status -> jobRepository.releaseExpired(cutoff));
+        if (released != null && released > 0) {
+            log.warn("回收租约超时的索引任务: {}", released);
+        }
+
+        int requeued = 0;
+        for (DirtySourceProjection source : knowledgeChunkRepository.findDirtySources()) {
+            if (loaders.containsKey(source.getSourceType()) && !jobRepository.existsBySourceIdAndStatusNot(
+                    source.getSourceId(), IndexingJob.Status.FAILED)) {
+                transactionTemplate.executeWithoutResult(status ->
+                        enqueue(source.getProjectId(), source.getSourceType(), source.getSourceId(),
+                                IndexingJob.Operation.INDEX));
+                requeued++;
+            }
+        }
+        if (requeued > 0) {
+            log.info("脏块来源补入索引队列: {}", requeued);
+        }
+    }
+
+    private List<IndexingJob> claim(int limit) {
+        Instant now = Instant.now();
+        List<IndexingJob> jobs = jobRepository.lockDueJobs(now, limit);
+        if (jobs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (IndexingJob job : jobs) {
+            job.setStatus(IndexingJob.Status.RUNNING);
+            job.setLockedAt(now);
+            job.setUpdatedAt(now);
+        }
+        return jobRepository.saveAll(jobs);
+    }
+
+    private void run(IndexingJob job) {
+        long start = System.nanoTime();
+        try {
+            switch (job.getOperation()) {
+                case INDEX -> index(job);
+                case DELETE -> delete(job.getProjectId(), job.getSourceId());
+            }
+            complete(job);
+            processingTime.record(System.nanoTime() - start);
+            lag.record(Duration.between(job.getEnqueuedAt(), Instant.now()).toNanos());
+        } catch (Exception e) {
+            fail(job, e);
+        }
+    }
+
+    /**
+     * 按来源的最新内容重建索引，来源已删除或内容为空时删除索引
+     */
+    private void index(IndexingJob job) {
+        IndexingSourceLoader loader = loaders.get(job.getSourceType());
+        if (loader == null) {
+            throw new IllegalStateException("未注册的索引来源类型: " + job.getSourceType());
+        }
+        Optional<IndexingSourceLoader.IndexingSource> source = loader.load(job.getSourceId())
+                .filter(s -> s.content() != null && !s.content().isBlank());
+        if (source.isEmpty()) {
+            delete(job.getProjectId(), job.getSourceId());
+            return;
+        }
+        parentChildSearchService.createParentChildIndex(
+                source.get().projectId(),
+                job.getSourceType(),
+                job.getSourceId(),
+                source.get().content(),
+                source.get().metadata()
+        ).block(Duration.ofMillis(ragProperties.indexingQueue().jobTimeoutMs()));
+    }
+
+    private void delete(UUID projectId, UUID sourceId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            int deletedCount = knowledgeChunkRepository.deleteBySourceId(sourceId);
+            eventPublisher.publishEvent(KnowledgeChunkChangedEvent.sourceDeleted(this, projectId, sourceId));
+            log.debug("删除来源索引: sourceId={}, deletedCount={}", sourceId, deletedCount);
+        });
+    }
+
+    private void complete(IndexingJob job) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (jobRepository.deleteCompleted(job.getId(), job.getGeneration()) == 0) {
+                // 执行期间来源再次写入，任务保留并重新进入去抖窗口
+                jobRepository.release(job.getId());
+            }
+        });
+        completedJobs.incrementAndGet();
+    }
+
+    private void fail(IndexingJob job, Exception error) {
+        failedAttempts.incrementAndGet();
+        RagProperties.IndexingQueueConfig config = ragProperties.indexingQueue();
+        EmbeddingService.CircuitBreakerOpenException circuitOpen = findCircuitOpen(error);
+
+        transactionTemplate.executeWithoutResult(status -> jobRepository.findById(job.getId()).ifPresent(current -> {
+            current.setLockedAt(null);
+            current.setUpdatedAt(Instant.now());
+            if (!current.getGeneration().equals(job.getGeneration())) {
+                // 执行期间已被重新入队，按新任务处理
+                current.setStatus(IndexingJob.Status.PENDING);
+            } else if (circuitOpen != null) {
+                // 断路器打开不计入重试次数，等待恢复后再执行
+                current.setStatus(IndexingJob.Status.PENDING);
+                current.setAvailableAt(Instant.now().plusMillis(
+                        Math.max(circuitOpen.getRemainingRecoveryTimeMs(), config.backoffBaseMs())));
+            } else {
+                int attempts = current.getAttempts() + 1;
+                current.setAttempts(attempts);
+                current.setLastError(truncate(error.getMessage()));
+                if (attempts >= config.maxAttempts()) {
+                    current.setStatus(IndexingJob.Status.FAILED);
+                    log.error("索引任务重试耗尽: sourceId={}, attempts={}", current.getSourceId(), attempts, error);
+                } else {
+                    current.setStatus(IndexingJob.Status.PENDING);
+                    current.setAvailableAt(Instant.now().plusMillis(config.backoffMs(attempts)));
+                    log.warn("索引任务失败，稍后重试: sourceId={}, attempts={}, error={}",
+                            current.getSourceId(), attempts, error.getMessage());
+                }
+            }
+            jobRepository.save(current);
+        }));
+    }
+
+    private static EmbeddingService.CircuitBreakerOpenException findCircuitOpen(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof EmbeddingService.CircuitBreakerOpenException circuitOpen) {
+                return circuitOpen;
+            }
+        }
+        return null;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 获取索引队列统计
+     */
+    public IndexingQueueStatistics getStatistics() {
+        RagProperties.IndexingQueueConfig config = ragProperties.indexingQueue();
+        long oldestLagMs = jobRepository.findOldestEnqueuedAt()
+                .map(enqueuedAt -> Math.max(0, Duration.between(enqueuedAt, Instant.now()).toMillis()))
+                .orElse(0L);
+        return IndexingQueueStatistics.builder()
+                .enabled(config.enabled())
+                .workers(config.workers())
+                .activeWorkers(config.workers() - permits.availablePermits())
+                .pendingJobs(jobRepository.countByStatus(IndexingJob.Status.PENDING))
+                .runningJobs(jobRepository.countByStatus(IndexingJob.Status.RUNNING))
+                .failedJobs(jobRepository.countByStatus(IndexingJob.Status.FAILED))
+                .oldestLagMs(oldestLagMs)
+                .enqueuedJobs(enqueuedJobs.get())
+                .completedJobs(completedJobs.get())
+                .failedAttempts(failedAttempts.get())
+                .processingP50Ms(processingTime.percentileMicros(50) / 1000)
+                .processingP99Ms(processingTime.percentileMicros(99) / 1000)
+                .lagP50Ms(lag.percentileMicros(50) / 1000)
+                .lagP99Ms(lag.percentileMicros(99) / 1000)
+                .build();
+    }
+}
@@ -0,0 +1,78 @@
+package com.inkflow.module.rag.service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 索引来源加载器
+ * 索引任务只记录来源引用，执行时由对应来源类型的加载器读取最新内容，保证最后一次写入生效
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+public interface IndexingSourceLoader {
+
+    /**
+     * 键集分页的起始游标，小于任何来源ID
+     */
+    UUID FIRST_CURSOR = new UUID(0L, 0L);
+
+    /**
+     * 支持的来源类型，对应 KnowledgeChunk.SOURCE_TYPE_*
+     */
+    String sourceType();
+
+    /**
+     * 读取来源的当前内容
+     *
+     * @param sourceId 来源ID
+     * @return 来源内容，来源已删除时返回空
+     */
+    Optional<IndexingSource> load(UUID sourceId);
+
+    /**
+     * 按来源ID升序列出项目下的来源（键集分页），用于项目全量重建索引
+     *
+     * @param projectId 项目ID
+     * @param afterId 上一页最后一个来源ID，首页传 {@link #FIRST_CURSOR}
+     * @param limit 每页数量
+     * @return 来源ID列表，按ID升序
+     */
+    List<UUID> listSourceIds(UUID projectId, UUID afterId, int limit);
+
+    /**
+     * 统计项目下的来源数，用于重建进度
+     *
+     * @param projectId 项目ID
+     * @return 来源数
+     */
+    long countSources(UUID projectId);
+
+    /**
+     * 批量读取来源的当前内容，已删除的来源不在结果中
+     * 默认逐个读取，实现可覆盖为单次查询
+     *
+     * @param sourceIds 来源ID
+     * @return 来源ID到内容的映射，保持入参顺序
+     */
+    default Map<UUID, IndexingSource> loadAll(Collection<UUID> sourceIds) {
+        Map<UUID, IndexingSource> sources = new LinkedHashMap<>();
+        for (UUID sourceId : sourceIds) {
+            load(sourceId).ifPresent(source -> sources.put(sourceId, source));
+        }
+        return sources;
+    }
+
+    /**
+     * 待索引的来源内容
+     *
+     * @param projectId 项目ID
+     * @param content 完整内容
+     * @param metadata 元数据
+     */
+    record IndexingSource(UUID projectId, String content, Map<String, Object> metadata) {}
+}
@@ -0,0 +1,341 @@
+package com.inkflow.module.rag.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.inkflow.common.util.PgVectorCodec;
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识块批量写入器（PostgreSQL COPY）
+ *
+ * JPA saveAll 每行一条 INSERT，向量和 JSONB 元数据逐行绑定；大批量写入改用 COPY 二进制格式流式写入：
+ * - 新块（id 为空）直接 COPY 到 knowledge_chunks，ID 在客户端生成
+ * - 已有块先 COPY 到会话级临时表，再以 INSERT ... ON CONFLICT (id, project_id) DO UPDATE 合并
+ * - halfvec 按 halfvec_recv 二进制格式编码，每个1024维向量2KB，无需文本格式化
+ * - embedding_bin、text_search 为生成列，由数据库在写入时计算
+ *
+ * 行数低于 minRows 或连接不是 PostgreSQL（如测试用H2）时回退到 JPA saveAll。
+ * 必须在调用方事务内执行；COPY 绕过持久化上下文，引用的父块需先 flush。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KnowledgeChunkBulkWriter {
+
+    /** COPY 的列，顺序与二进制行编码一致 */
+    private static final String COLUMNS = "id, project_id, source_type, source_id, parent_id, content, embedding, "
+            + "chunk_level, chunk_order, version, is_active, is_dirty, metadata";
+
+    private static final short FIELD_COUNT = 13;
+
+    private static final String COPY_SQL =
+            "COPY knowledge_chunks (" + COLUMNS + ") FROM STDIN (FORMAT binary)";
+
+    private static final String CREATE_STAGING_SQL = """
+            CREATE TEMP TABLE IF NOT EXISTS knowledge_chunks_staging (
+                id UUID NOT NULL,
+                project_id UUID NOT NULL,
+                source_type VARCHAR(50) NOT NULL,
+                source_id UUID NOT NULL,
+                parent_id UUID,
+                content TEXT NOT NULL,
+                embedding halfvec,
+                chunk_level VARCHAR(20),
+                chunk_order INTEGER,
+                version INTEGER,
+                is_active BOOLEAN,
+                is_dirty BOOLEAN,
+                metadata JSONB
+            ) ON COMMIT DELETE ROWS
+            """;
+
+    private static final String COPY_STAGING_SQL =
+            "COPY knowledge_chunks_staging (" + COLUMNS + ") FROM STDIN (FORMAT binary)";
+
+    private static final String MERGE_SQL = "INSERT INTO knowledge_chunks (" + COLUMNS + ") "
+            + "SELECT " + COLUMNS + " FROM knowledge_chunks_staging "
+            + "ON CONFLICT (id, project_id) DO UPDATE SET "
+            + "source_type = EXCLUDED.source_type, source_id = EXCLUDED.source_id, "
+            + "parent_id = EXCLUDED.parent_id, content = EXCLUDED.content, embedding = EXCLUDED.embedding, "
+            + "chunk_level = EXCLUDED.chunk_level, chunk_order = EXCLUDED.chunk_order, "
+            + "version = EXCLUDED.version, is_active = EXCLUDED.is_active, is_dirty = EXCLUDED.is_dirty, "
+            + "metadata = EXCLUDED.metadata";
+
+    /** PGCOPY 二进制格式文件头签名 */
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    /** COPY 输出缓冲区大小，约32个1024维向量 */
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final KnowledgeChunkRepository knowledgeChunkRepository;
+    private final ObjectMapper objectMapper;
+    private final RagProperties ragProperties;
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong copiedRows = new AtomicLong(0);
+    private final AtomicLong mergedRows = new AtomicLong(0);
+    private final AtomicLong fallbackRows = new AtomicLong(0);
+    private final AtomicLong copyNanos = new AtomicLong(0);
+
+    /**
+     * 批量保存知识块，替代 KnowledgeChunkRepository.saveAll
+     * id 为空的块作为新块插入，其余按 (id, project_id) 合并；返回列表与入参顺序一致
+     *
+     * @param chunks 知识块
+     * @return 保存后的知识块
+     */
+    public List<KnowledgeChunk> saveAll(List<KnowledgeChunk> chunks) {
+        RagProperties.BulkWriteConfig config = ragProperties.bulkWrite();
+        if (!config.enabled() || chunks.size() < config.minRows()) {
+            fallbackRows.addAndGet(chunks.size());
+            return knowledgeChunkRepository.saveAll(chunks);
+        }
+
+        List<KnowledgeChunk> created = new ArrayList<>();
+        List<KnowledgeChunk> existing = new ArrayList<>();
+        Instant now = Instant.now();
+        for (KnowledgeChunk chunk : chunks) {
+            if (chunk.getId() == null) {
+                chunk.setId(UUID.randomUUID());
+                chunk.setCreatedAt(now);
+                created.add(chunk);
+            } else {
+                existing.add(chunk);
+            }
+            chunk.setUpdatedAt(now);
+        }
+
+        Boolean copied = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                return false;
+            }
+            long start = System.nanoTime();
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            if (!created.isEmpty()) {
+                copy(pgConnection, COPY_SQL, created);
+            }
+            if (!existing.isEmpty()) {
+                merge(connection, pgConnection, existing);
+            }
+            copyNanos.addAndGet(System.nanoTime() - start);
+            return true;
+        });
+
+        if (!Boolean.TRUE.equals(copied)) {
+            // 非 PostgreSQL 连接：撤销客户端生成的ID，交给JPA按新实体持久化
+            created.forEach(chunk -> {
+                chunk.setId(null);
+                chunk.setCreatedAt(null);
+            });
+            fallbackRows.addAndGet(chunks.size());
+            return knowledgeChunkRepository.saveAll(chunks);
+        }
+
+        copiedRows.addAndGet(created.size());
+        mergedRows.addAndGet(existing.size());
+        log.debug("COPY批量写入知识块: 新增={}, 合并={}", created.size(), existing.size());
+        return chunks;
+    }
+
+    /**
+     * 已有块经临时表合并：COPY 到会话级临时表后一条 INSERT ... ON CONFLICT 写回
+     * 临时表在连接内复用，事务提交时自动清空
+     */
+    private void merge(Connection connection, PGConnection pgConnection, List<KnowledgeChunk> chunks)
+            throws SQLException {
+        if (connection.getAutoCommit()) {
+            throw new IllegalStateException("知识块合并写入必须在事务内执行");
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_STAGING_SQL);
+            statement.execute("TRUNCATE knowledge_chunks_staging");
+        }
+        copy(pgConnection, COPY_STAGING_SQL, chunks);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(MERGE_SQL);
+        }
+    }
+
+    /**
+     * 以 PGCOPY 二进制格式流式写入
+     */
+    private void copy(PGConnection connection, String sql, List<KnowledgeChunk> chunks) throws SQLException {
+        PGCopyOutputStream copyOut = new PGCopyOutputStream(connection, sql, COPY_BUFFER_BYTES);
+        try {
+            DataOutputStream out = new DataOutputStream(copyOut);
+            out.write(COPY_SIGNATURE);
+            out.writeInt(0);
+            out.writeInt(0);
+            for (KnowledgeChunk chunk : chunks) {
+                writeRow(out, chunk);
+            }
+            out.writeShort(-1);
+            out.flush();
+            copyOut.endCopy();
+        } catch (IOException | RuntimeException e) {
+            // 取消COPY使连接回到可用状态，事务由调用方回滚
+            if (copyOut.isActive()) {
+                copyOut.cancelCopy();
+            }
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("COPY写入知识块失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写入一行 COPY 二进制数据：字段数 + 每个字段的 长度(-1 表示 NULL) + 值（包可见，供单元测试）
+     */
+    void writeRow(DataOutputStream out, KnowledgeChunk chunk) throws IOException {
+        out.writeShort(FIELD_COUNT);
+        writeUuid(out, chunk.getId());
+        writeUuid(out, chunk.getProjectId());
+        writeText(out, chunk.getSourceType());
+        writeUuid(out, chunk.getSourceId());
+        writeUuid(out, chunk.getParentId());
+        writeText(out, chunk.getContent());
+        writeHalfvec(out, chunk.getEmbedding());
+        writeText(out, chunk.getChunkLevel());
+        writeInt(out, chunk.getChunkOrder());
+        writeInt(out, chunk.getVersion());
+        writeBoolean(out, chunk.getIsActive());
+        writeBoolean(out, chunk.getIsDirty());
+        writeJsonb(out, chunk.getMetadata());
+    }
+
+    // ==================== 二进制字段编码 ====================
+
+    private static void writeNull(DataOutputStream out) throws IOException {
+        out.writeInt(-1);
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID value) throws IOException {
+        if (value == null) {
+            writeNull(out);
+            return;
+        }
+        out.writeInt(16);
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeNull(out);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        if (value == null) {
+            writeNull(out);
+            return;
+        }
+        out.writeInt(4);
+        out.writeInt(value);
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        if (value == null) {
+            writeNull(out);
+            return;
+        }
+        out.writeInt(1);
+        out.writeBoolean(value);
+    }
+
+    private static void writeHalfvec(DataOutputStream out, float[] value) throws IOException {
+        if (value == null) {
+            writeNull(out);
+            return;
+        }
+        byte[] bytes = PgVectorCodec.encodeHalfvec(value);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * jsonb 二进制格式：1字节版本号(1) + JSON文本
+     */
+    private void writeJsonb(DataOutputStream out, Map<String, Object> value) throws IOException {
+        if (value == null) {
+            writeNull(out);
+            return;
+        }
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("知识块元数据序列化失败", e);
+        }
+        out.writeInt(json.length + 1);
+        out.writeByte(1);
+        out.write(json);
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 获取批量写入统计
+     */
+    public Stats getStats() {
+        long rows = copiedRows.get() + mergedRows.get();
+        long nanos = copyNanos.get();
+        return new Stats(
+                ragProperties.bulkWrite().enabled(),
+                copiedRows.get(),
+                mergedRows.get(),
+                fallbackRows.get(),
+                nanos > 0 ? rows * 1_000_000_000.0 / nanos : 0.0
+        );
+    }
+
+    /**
+     * 批量写入统计信息
+     *
+     * @param enabled 是否启用COPY写入
+     * @param copiedRows COPY直接插入的行数
+     * @param mergedRows 经临时表合并的行数
+     * @param fallbackRows 回退到JPA写入的行数
+     * @param rowsPerSecond COPY路径的平均写入速度（行/秒）
+     */
+    public record Stats(
+            boolean enabled,
+            long copiedRows,
+            long mergedRows,
+            long fallbackRows,
+            double rowsPerSecond
+    ) {}
+}
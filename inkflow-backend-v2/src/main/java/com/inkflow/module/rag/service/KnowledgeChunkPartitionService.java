@@ -0,0 +1,198 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.ChunkPartitionStatistics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * knowledge_chunks 分区管理服务
+ *
+ * knowledge_chunks 按 project_id 做 LIST 分区：大项目独享一个分区（独立的HNSW图），
+ * 其余项目落在按哈希划分的 DEFAULT 共享分区。向量查询都带 project_id，经分区裁剪后只遍历一张图。
+ *
+ * 每天凌晨将知识块数超过阈值的项目迁移到独享分区（knowledge_chunks_promote_project），
+ * 并删除项目删除后留下的空独享分区。迁移在一个事务内完成：复制数据和建索引期间共享分区阻塞写入、可以读取，
+ * 最后挂载分区时短暂持有共享分区的排他锁（阻塞读写），时长取决于共享分区的扫描耗时。
+ * 删除空分区需要父表的排他锁，等锁设置超时，拿不到锁时放弃，留到下次整理。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KnowledgeChunkPartitionService {
+
+    private static final String DEDICATED_PREFIX = "knowledge_chunks_p_";
+
+    /** 独享分区名仅由前缀和去掉连字符的项目ID组成，拼接DDL前校验 */
+    private static final Pattern DEDICATED_NAME = Pattern.compile("knowledge_chunks_p_[0-9a-f]{32}");
+
+    /**
+     * 删除空分区时等待父表排他锁的上限，避免排在长查询之后阻塞所有租户的后续查询
+     */
+    private static final String DROP_LOCK_TIMEOUT = "3s";
+
+    private static final String PROMOTE_SQL = "SELECT knowledge_chunks_promote_project(?)";
+
+    private static final String CANDIDATES_SQL = """
+            SELECT project_id FROM knowledge_chunks_shared
+            GROUP BY project_id
+            HAVING count(*) >= ?
+            ORDER BY count(*) DESC
+            LIMIT ?
+            """;
+
+    private static final String PARTITIONS_SQL = """
+            SELECT c.relname, GREATEST(c.reltuples, 0)::bigint, pg_total_relation_size(c.oid)
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent IN ('knowledge_chunks'::regclass, 'knowledge_chunks_shared'::regclass)
+              AND c.relkind = 'r'
+            ORDER BY c.relname
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RagProperties ragProperties;
+    private final TransactionTemplate transactionTemplate;
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong promotions = new AtomicLong(0);
+    private final AtomicLong promotionFailures = new AtomicLong(0);
+    private final AtomicLong droppedPartitions = new AtomicLong(0);
+    private final AtomicReference<Instant> lastRebalanceAt = new AtomicReference<>();
+
+    /**
+     * 每天凌晨4点半整理分区
+     * 先删除空的独享分区，再迁移超过阈值的项目
+     */
+    @Scheduled(cron = "0 30 4 * * ?")
+    public void rebalance() {
+        if (!ragProperties.partition().autoPromote()) {
+            return;
+        }
+        dropEmptyDedicatedPartitions();
+
+        RagProperties.PartitionConfig config = ragProperties.partition();
+        List<UUID> candidates;
+        try {
+            candidates = jdbcTemplate.queryForList(CANDIDATES_SQL, UUID.class,
+                    config.dedicatedThreshold(), config.maxPromotionsPerRun());
+        } catch (DataAccessException e) {
+            log.warn("查询待迁移项目失败: {}", e.getMessage());
+            return;
+        }
+        for (UUID projectId : candidates) {
+            promote(projectId);
+        }
+        lastRebalanceAt.set(Instant.now());
+    }
+
+    /**
+     * 将项目迁移到独享分区
+     *
+     * @param projectId 项目ID
+     * @return 独享分区表名；迁移失败时返回null
+     */
+    public String promote(UUID projectId) {
+        long start = System.currentTimeMillis();
+        try {
+            String partition = jdbcTemplate.queryForObject(PROMOTE_SQL, String.class, projectId);
+            promotions.incrementAndGet();
+            log.info("项目知识块已迁移到独享分区: projectId={}, partition={}, 耗时={}ms",
+                    projectId, partition, System.currentTimeMillis() - start);
+            return partition;
+        } catch (DataAccessException e) {
+            promotionFailures.incrementAndGet();
+            log.warn("项目知识块迁移独享分区失败: projectId={}, error={}", projectId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 删除空的独享分区（项目删除后其知识块随之清空）
+     *
+     * 父表有 DEFAULT 分区，不能使用 DETACH PARTITION CONCURRENTLY。
+     * 每个分区在单独的事务内先以超时等待父表排他锁，持锁后再检查是否为空，然后卸载并删除：
+     * 检查与删除之间不会有新写入，持锁时间只有几条DDL，拿不到锁时放弃而不是排队阻塞其他查询。
+     */
+    void dropEmptyDedicatedPartitions() {
+        for (ChunkPartitionStatistics.PartitionInfo partition : listPartitions()) {
+            String name = partition.getName();
+            if (!partition.isDedicated() || !DEDICATED_NAME.matcher(name).matches()) {
+                continue;
+            }
+            try {
+                Boolean dropped = transactionTemplate.execute(status -> dropIfEmpty(name));
+                if (Boolean.TRUE.equals(dropped)) {
+                    droppedPartitions.incrementAndGet();
+                    log.info("已删除空的独享分区: {}", name);
+                }
+            } catch (DataAccessException e) {
+                log.warn("删除空的独享分区失败: partition={}, error={}", name, e.getMessage());
+            }
+        }
+    }
+
+    private boolean dropIfEmpty(String name) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = '" + DROP_LOCK_TIMEOUT + "'");
+        jdbcTemplate.execute("LOCK TABLE ONLY knowledge_chunks IN ACCESS EXCLUSIVE MODE");
+        Boolean hasRows = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + name + ")", Boolean.class);
+        if (!Boolean.FALSE.equals(hasRows)) {
+            return false;
+        }
+        jdbcTemplate.execute("ALTER TABLE knowledge_chunks DETACH PARTITION " + name);
+        jdbcTemplate.execute("DROP TABLE " + name);
+        return true;
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 获取分区统计信息
+     */
+    public ChunkPartitionStatistics getStatistics() {
+        List<ChunkPartitionStatistics.PartitionInfo> partitions = listPartitions();
+        long dedicated = partitions.stream().filter(ChunkPartitionStatistics.PartitionInfo::isDedicated).count();
+        return ChunkPartitionStatistics.builder()
+                .autoPromote(ragProperties.partition().autoPromote())
+                .dedicatedThreshold(ragProperties.partition().dedicatedThreshold())
+                .sharedPartitions(partitions.size() - dedicated)
+                .dedicatedPartitions(dedicated)
+                .promotions(promotions.get())
+                .promotionFailures(promotionFailures.get())
+                .droppedPartitions(droppedPartitions.get())
+                .lastRebalanceAt(lastRebalanceAt.get())
+                .partitions(partitions)
+                .build();
+    }
+
+    private List<ChunkPartitionStatistics.PartitionInfo> listPartitions() {
+        try {
+            return jdbcTemplate.query(PARTITIONS_SQL, (rs, rowNum) -> ChunkPartitionStatistics.PartitionInfo.builder()
+                    .name(rs.getString(1))
+                    .dedicated(rs.getString(1).startsWith(DEDICATED_PREFIX))
+                    .estimatedRows(rs.getLong(2))
+                    .totalBytes(rs.getLong(3))
+                    .build());
+        } catch (DataAccessException e) {
+            log.warn("查询知识块分区失败: {}", e.getMessage());
+            return List.of();
+        }
+    }
+}
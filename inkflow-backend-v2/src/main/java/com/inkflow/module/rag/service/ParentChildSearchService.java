@@ -5,13 +5,17 @@ import com.inkflow.module.content.entity.StoryBlock;
 import com.inkflow.module.content.repository.ChapterRepository;
 import com.inkflow.module.content.repository.StoryBlockRepository;
 import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.ChildChunk;
 import com.inkflow.module.rag.dto.SearchResult;
 import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.event.KnowledgeChunkChangedEvent;
 import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
@@ -43,6 +47,10 @@ public class ParentChildSearchService {
     private final StoryBlockRepository storyBlockRepository;
     private final ChapterRepository chapterRepository;
     private final RagProperties ragProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final KnowledgeChunkBulkWriter bulkWriter;
+    private final ContextPackerService contextPacker;
 
     private static final int DEFAULT_CHILD_LIMIT = 20;
     private static final int DEFAULT_PARENT_LIMIT = 5;
@@ -52,6 +60,9 @@ public class ParentChildSearchService {
     /**
      * 为内容创建父子块索引
      *
+     * 增量重建：按内容匹配已有子块，内容未变的子块复用原记录和向量，只为变化的子块生成embedding。
+     * 新索引以新版本号在一个事务内写入并停用旧版本，读取方始终看到完整的旧索引或新索引。
+     *
      * @param projectId 项目ID
      * @param sourceType 来源类型
      * @param sourceId 来源ID
@@ -59,7 +70,6 @@ public class ParentChildSearchService {
      * @param metadata 元数据
      * @return 创建的父块
      */
-    @Transactional
     public Mono<KnowledgeChunk> createParentChildIndex(
             UUID projectId,
             String sourceType,
@@ -70,67 +80,381 @@ public class ParentChildSearchService {
         if (content == null || content.isBlank()) {
             return Mono.empty();
         }
+        Map<String, Object> parentMetadata = metadata != null ? metadata : new HashMap<>();
+
+        // 1. 读取当前活跃索引
+        return Mono.fromCallable(() -> knowledgeChunkRepository.findAllActiveBySourceId(projectId, sourceId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(previous -> {
+                    KnowledgeChunk previousParent = previous.stream()
+                            .filter(KnowledgeChunk::isParentChunk)
+                            .findFirst()
+                            .orElse(null);
+
+                    // 内容和元数据均未变化且没有脏块，无需重建
+                    boolean hasDirty = previous.stream().anyMatch(chunk -> Boolean.TRUE.equals(chunk.getIsDirty()));
+                    if (previousParent != null
+                            && !hasDirty
+                            && content.equals(previousParent.getContent())
+                            && parentMetadata.equals(previousParent.getMetadata())) {
+                        log.debug("内容未变化，跳过索引: sourceId={}", sourceId);
+                        return Mono.just(previousParent);
+                    }
+
+                    // 2. 语义分块，并只为变化且分块时未生成向量的子块生成embedding
+                    return semanticChunkingService.splitIntoChildChunks(content)
+                            .flatMap(childChunks -> {
+                                List<String> chunks = childChunks.stream().map(ChildChunk::getContent).toList();
+                                IndexPlan plan = planIncrementalIndex(previous, chunks, true);
+                                Map<String, float[]> embeddingByText = reusableEmbeddings(childChunks, plan);
+                                List<String> missing = plan.textsToEmbed().stream()
+                                        .filter(text -> !embeddingByText.containsKey(text))
+                                        .toList();
+                                Mono<Map<String, float[]>> embeddings = missing.isEmpty()
+                                        ? Mono.just(embeddingByText)
+                                        : embeddingService.generateEmbeddingsBatch(missing).map(vectors -> {
+                                            for (int i = 0; i < missing.size(); i++) {
+                                                embeddingByText.put(missing.get(i), vectors.get(i));
+                                            }
+                                            return embeddingByText;
+                                        });
+                                return embeddings
+                                        .publishOn(Schedulers.boundedElastic())
+                                        // 3. 单事务内写入新版本并停用旧版本
+                                        .map(vectors -> transactionTemplate.execute(status -> switchToNewVersion(
+                                                projectId, sourceType, sourceId, content, parentMetadata,
+                                                previousParent, plan, vectors)));
+                            });
+                });
+    }
+
+    /**
+     * 批量重建多个来源的父子块索引（项目全量重建使用）
+     *
+     * 与逐个调用 createParentChildIndex 相比：一次查询读取整批来源的旧索引，批内并发分块，
+     * 整批待向量化文本去重后按 embeddingBatchSize 切片调用模型，最后在单个事务内写入整批新版本。
+     *
+     * @param projectId 项目ID
+     * @param sourceType 来源类型
+     * @param sources 来源ID到当前内容的映射
+     * @param forceReembed 是否不复用旧向量、跳过缓存重新生成全部子块向量（切换Embedding模型时使用）
+     * @return 批量重建结果
+     */
+    public Mono<BulkIndexResult> bulkIndex(
+            UUID projectId,
+            String sourceType,
+            Map<UUID, IndexingSourceLoader.IndexingSource> sources,
+            boolean forceReembed) {
 
-        // 1. 删除旧的索引（确保更新时替换旧块）
-        int deletedCount = knowledgeChunkRepository.deleteBySourceId(sourceId);
-        if (deletedCount > 0) {
-            log.debug("删除旧索引: sourceId={}, deletedCount={}", sourceId, deletedCount);
+        if (sources.isEmpty()) {
+            return Mono.just(new BulkIndexResult(0, 0, 0, 0));
         }
+        RagProperties.ReindexConfig config = ragProperties.reindex();
+
+        // 1. 一次查询读取整批来源的活跃索引
+        return Mono.fromCallable(() -> knowledgeChunkRepository.findAllActiveBySourceIdIn(projectId, sources.keySet())
+                        .stream()
+                        .collect(Collectors.groupingBy(KnowledgeChunk::getSourceId)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(previousBySource -> {
+                    int[] skipped = {0};
+                    List<Map.Entry<UUID, IndexingSourceLoader.IndexingSource>> pending = new ArrayList<>();
+                    for (Map.Entry<UUID, IndexingSourceLoader.IndexingSource> entry : sources.entrySet()) {
+                        IndexingSourceLoader.IndexingSource source = entry.getValue();
+                        List<KnowledgeChunk> previous = previousBySource.getOrDefault(entry.getKey(), List.of());
+                        if (source.content() == null || source.content().isBlank()
+                                || (!forceReembed && isUpToDate(previous, source))) {
+                            skipped[0]++;
+                        } else {
+                            pending.add(entry);
+                        }
+                    }
 
-        // 2. 创建父块 (存储完整内容，不生成embedding)
-        KnowledgeChunk parentChunk = KnowledgeChunk.builder()
-                .projectId(projectId)
-                .sourceType(sourceType)
-                .sourceId(sourceId)
-                .content(content)
-                .chunkLevel(KnowledgeChunk.CHUNK_LEVEL_PARENT)
-                .metadata(metadata != null ? metadata : new HashMap<>())
-                .build();
+                    // 2. 批内并发语义分块并规划增量索引
+                    return Flux.fromIterable(pending)
+                            .flatMapSequential(entry -> semanticChunkingService.splitIntoChildChunks(entry.getValue().content())
+                                    .map(childChunks -> {
+                                        List<KnowledgeChunk> previous = previousBySource.getOrDefault(entry.getKey(), List.of());
+                                        List<String> chunks = childChunks.stream().map(ChildChunk::getContent).toList();
+                                        IndexPlan plan = planIncrementalIndex(previous, chunks, !forceReembed);
+                                        return new PendingSource(entry.getKey(), entry.getValue(), previous, childChunks, plan);
+                                    }), config.chunkingConcurrency())
+                            .collectList()
+                            .flatMap(planned -> embedPlanned(planned, forceReembed, config.embeddingBatchSize())
+                                    .publishOn(Schedulers.boundedElastic())
+                                    // 3. 单事务内写入整批新版本
+                                    .map(embeddingByText -> transactionTemplate.execute(status -> {
+                                        int chunksWritten = 0;
+                                        int indexed = 0;
+                                        int superseded = 0;
+                                        // 按来源ID顺序加锁，并发的批次之间不会互相死锁
+                                        List<PendingSource> ordered = new ArrayList<>(planned);
+                                        ordered.sort(Comparator.comparing(PendingSource::sourceId));
+                                        for (PendingSource source : ordered) {
+                                            if (!lockUnchanged(projectId, source)) {
+                                                // 读取之后已被索引队列或监听器重建（使用的内容不旧于本批），不再覆盖
+                                                superseded++;
+                                                continue;
+                                            }
+                                            KnowledgeChunk previousParent = source.previous().stream()
+                                                    .filter(KnowledgeChunk::isParentChunk)
+                                                    .findFirst()
+                                                    .orElse(null);
+                                            switchToNewVersion(projectId, sourceType, source.sourceId(),
+                                                    source.source().content(), metadataOf(source.source()),
+                                                    previousParent, source.plan(), embeddingByText);
+                                            chunksWritten += source.plan().chunks().size();
+                                            indexed++;
+                                        }
+                                        if (superseded > 0) {
+                                            log.debug("批量重建跳过期间已被重建的来源: {}", superseded);
+                                        }
+                                        return new BulkIndexResult(indexed, skipped[0] + superseded, chunksWritten,
+                                                embeddingByText.size());
+                                    })));
+                });
+    }
+
+    /**
+     * 持有来源的咨询锁，并确认活跃索引仍是批次开始时读取的版本
+     * 全量重建不暂停索引队列，两者通过同一把锁串行化；批次读取之后被重建过的来源由本批跳过
+     */
+    private boolean lockUnchanged(UUID projectId, PendingSource source) {
+        knowledgeChunkRepository.lockSourceForIndexing(source.sourceId());
+        int expected = source.previous().stream()
+                .mapToInt(chunk -> chunk.getVersion() != null ? chunk.getVersion() : 0)
+                .max()
+                .orElse(0);
+        int current = knowledgeChunkRepository.findActiveVersionBySourceId(projectId, source.sourceId()).orElse(0);
+        return current == expected;
+    }
+
+    /**
+     * 为整批来源生成缺失的子块向量，去重后按批大小切片顺序调用模型
+     * 非强制模式下先复用分块阶段已生成的向量
+     */
+    private Mono<Map<String, float[]>> embedPlanned(List<PendingSource> planned, boolean forceReembed, int batchSize) {
+        Map<String, float[]> embeddingByText = new HashMap<>();
+        Set<String> textsToEmbed = new LinkedHashSet<>();
+        for (PendingSource source : planned) {
+            if (!forceReembed) {
+                embeddingByText.putAll(reusableEmbeddings(source.childChunks(), source.plan()));
+            }
+            textsToEmbed.addAll(source.plan().textsToEmbed());
+        }
+        List<String> missing = textsToEmbed.stream()
+                .filter(text -> !embeddingByText.containsKey(text))
+                .toList();
+        if (missing.isEmpty()) {
+            return Mono.just(embeddingByText);
+        }
 
-        KnowledgeChunk savedParent = knowledgeChunkRepository.save(parentChunk);
-        log.debug("创建父块: id={}, sourceId={}", savedParent.getId(), sourceId);
+        List<List<String>> slices = new ArrayList<>((missing.size() + batchSize - 1) / batchSize);
+        for (int i = 0; i < missing.size(); i += batchSize) {
+            slices.add(missing.subList(i, Math.min(i + batchSize, missing.size())));
+        }
+        return Flux.fromIterable(slices)
+                .concatMap(slice -> (forceReembed
+                        ? embeddingService.refreshEmbeddingsBatch(slice)
+                        : embeddingService.generateEmbeddingsBatch(slice))
+                        .doOnNext(vectors -> {
+                            for (int i = 0; i < slice.size(); i++) {
+                                embeddingByText.put(slice.get(i), vectors.get(i));
+                            }
+                        }))
+                .then(Mono.just(embeddingByText));
+    }
 
-        // 3. 语义分块并创建子块
-        return semanticChunkingService.chunkText(content)
-                .flatMap(chunks -> createChildChunks(savedParent, chunks))
-                .thenReturn(savedParent);
+    /**
+     * 活跃索引是否与来源当前内容一致（内容和元数据均未变化且没有脏块）
+     */
+    private boolean isUpToDate(List<KnowledgeChunk> previous, IndexingSourceLoader.IndexingSource source) {
+        KnowledgeChunk previousParent = previous.stream()
+                .filter(KnowledgeChunk::isParentChunk)
+                .findFirst()
+                .orElse(null);
+        return previousParent != null
+                && previous.stream().noneMatch(chunk -> Boolean.TRUE.equals(chunk.getIsDirty()))
+                && source.content().equals(previousParent.getContent())
+                && metadataOf(source).equals(previousParent.getMetadata());
     }
 
+    private static Map<String, Object> metadataOf(IndexingSourceLoader.IndexingSource source) {
+        return source.metadata() != null ? source.metadata() : new HashMap<>();
+    }
 
     /**
-     * 创建子块
+     * 规划增量索引：按内容匹配已有子块，确定可复用的子块和需要生成embedding的文本
+     * reuse 为 false 时不复用任何旧子块，全部旧子块视为不再使用
      */
-    private Mono<Void> createChildChunks(KnowledgeChunk parent, List<String> chunks) {
-        if (chunks.isEmpty()) {
-            return Mono.empty();
+    private IndexPlan planIncrementalIndex(List<KnowledgeChunk> previous, List<String> chunks, boolean reuse) {
+        Map<String, Deque<KnowledgeChunk>> reusableByContent = new HashMap<>();
+        for (KnowledgeChunk chunk : previous) {
+            if (reuse && chunk.isChildChunk() && chunk.getEmbedding() != null) {
+                reusableByContent.computeIfAbsent(chunk.getContent(), key -> new ArrayDeque<>()).add(chunk);
+            }
         }
 
-        // 批量生成embedding
-        return embeddingService.generateEmbeddingsBatch(chunks)
-                .flatMap(embeddings -> {
-                    List<KnowledgeChunk> childChunks = new ArrayList<>();
-
-                    for (int i = 0; i < chunks.size(); i++) {
-                        KnowledgeChunk child = KnowledgeChunk.builder()
-                                .projectId(parent.getProjectId())
-                                .sourceType(parent.getSourceType())
-                                .sourceId(parent.getSourceId())
-                                .parentId(parent.getId())
-                                .content(chunks.get(i))
-                                .embedding(embeddings.get(i))
-                                .chunkLevel(KnowledgeChunk.CHUNK_LEVEL_CHILD)
-                                .chunkOrder(i + 1)
-                                .metadata(parent.getMetadata())
-                                .build();
-                        childChunks.add(child);
-                    }
+        List<KnowledgeChunk> reused = new ArrayList<>(chunks.size());
+        Set<String> textsToEmbed = new LinkedHashSet<>();
+        for (String chunk : chunks) {
+            Deque<KnowledgeChunk> candidates = reusableByContent.get(chunk);
+            KnowledgeChunk match = candidates != null ? candidates.poll() : null;
+            reused.add(match);
+            if (match == null) {
+                textsToEmbed.add(chunk);
+            }
+        }
 
-                    knowledgeChunkRepository.saveAll(childChunks);
-                    log.debug("创建 {} 个子块，父块ID: {}", childChunks.size(), parent.getId());
-                    return Mono.empty();
-                });
+        Set<UUID> reusedIds = reused.stream()
+                .filter(Objects::nonNull)
+                .map(KnowledgeChunk::getId)
+                .collect(Collectors.toSet());
+        List<KnowledgeChunk> stale = previous.stream()
+                .filter(chunk -> chunk.isChildChunk() && !reusedIds.contains(chunk.getId()))
+                .collect(Collectors.toList());
+
+        return new IndexPlan(chunks, reused, new ArrayList<>(textsToEmbed), stale);
+    }
+
+    /**
+     * 收集分块时已生成、且属于待向量化文本的子块向量
+     */
+    private Map<String, float[]> reusableEmbeddings(List<ChildChunk> childChunks, IndexPlan plan) {
+        Set<String> textsToEmbed = new HashSet<>(plan.textsToEmbed());
+        Map<String, float[]> embeddingByText = new HashMap<>();
+        for (ChildChunk chunk : childChunks) {
+            if (chunk.getEmbedding() != null && textsToEmbed.contains(chunk.getContent())) {
+                embeddingByText.put(chunk.getContent(), chunk.getEmbedding());
+            }
+        }
+        return embeddingByText;
     }
 
+    /**
+     * 以新版本号写入父块和子块，并停用、清理旧版本
+     * 复用的子块沿用原记录（ID和向量不变），仅更新版本号和顺序
+     * 须在事务内调用：先持有来源的咨询锁再读取最新版本号，同一来源的并发重建依次提交，
+     * 后提交的一方以更高的版本号停用先提交的一方，不会留下两组活跃子块
+     */
+    private KnowledgeChunk switchToNewVersion(
+            UUID projectId,
+            String sourceType,
+            UUID sourceId,
+            String content,
+            Map<String, Object> metadata,
+            KnowledgeChunk previousParent,
+            IndexPlan plan,
+            Map<String, float[]> embeddingByText) {
+
+        knowledgeChunkRepository.lockSourceForIndexing(sourceId);
+        int newVersion = knowledgeChunkRepository.findMaxVersionBySourceId(projectId, sourceId).orElse(0) + 1;
+
+        // 父块 (存储完整内容，不生成embedding)，已存在时沿用原记录
+        KnowledgeChunk parent = previousParent != null ? previousParent : KnowledgeChunk.builder()
+                .projectId(projectId)
+                .sourceType(sourceType)
+                .sourceId(sourceId)
+                .chunkLevel(KnowledgeChunk.CHUNK_LEVEL_PARENT)
+                .build();
+        parent.setContent(content);
+        parent.setMetadata(metadata);
+        parent.setVersion(newVersion);
+        parent.activate();
+        parent.clearDirty();
+        // 子块以COPY写入并引用父块（外键），父块需先落库
+        KnowledgeChunk savedParent = knowledgeChunkRepository.saveAndFlush(parent);
+
+        List<KnowledgeChunk> children = new ArrayList<>(plan.chunks().size());
+        boolean[] reindexed = new boolean[plan.chunks().size()];
+        for (int i = 0; i < plan.chunks().size(); i++) {
+            KnowledgeChunk child = plan.reused().get(i);
+            // 新建的子块，以及复用前被标记为脏（已从进程内索引移除）的子块需要重新加入索引
+            reindexed[i] = child == null || Boolean.TRUE.equals(child.getIsDirty());
+            if (child == null) {
+                child = KnowledgeChunk.builder()
+                        .projectId(projectId)
+                        .sourceType(sourceType)
+                        .sourceId(sourceId)
+                        .content(plan.chunks().get(i))
+                        .embedding(embeddingByText.get(plan.chunks().get(i)))
+                        .chunkLevel(KnowledgeChunk.CHUNK_LEVEL_CHILD)
+                        .build();
+            }
+            child.setParentId(savedParent.getId());
+            child.setChunkOrder(i + 1);
+            child.setVersion(newVersion);
+            child.setMetadata(metadata);
+            child.activate();
+            child.clearDirty();
+            children.add(child);
+        }
+        List<KnowledgeChunk> savedChildren = bulkWriter.saveAll(children);
+
+        // 停用并清理旧版本（含未被复用的旧子块），事务提交后读取方一次性切换到新版本
+        int deactivated = knowledgeChunkRepository.deactivateOldVersions(projectId, sourceId, newVersion);
+        knowledgeChunkRepository.deleteBySourceIdAndVersionLessThanAndIsActiveFalse(projectId, sourceId, newVersion);
+
+        // 进程内索引只需移除旧子块、加入新子块，复用的子块向量未变
+        List<KnowledgeChunk> changed = new ArrayList<>(plan.textsToEmbed().size() + plan.stale().size());
+        int createdCount = 0;
+        for (int i = 0; i < savedChildren.size(); i++) {
+            if (reindexed[i]) {
+                changed.add(savedChildren.get(i));
+            }
+            if (plan.reused().get(i) == null) {
+                createdCount++;
+            }
+        }
+        plan.stale().forEach(KnowledgeChunk::deactivate);
+        changed.addAll(plan.stale());
+        // 子块无变化时也发布事件（父块内容可能已更新），用于使检索结果缓存失效
+        eventPublisher.publishEvent(KnowledgeChunkChangedEvent.upserted(this, projectId, sourceId, changed));
+
+        log.debug("增量索引完成: sourceId={}, version={}, 子块总数={}, 复用={}, 新增={}, 停用={}",
+                sourceId, newVersion, savedChildren.size(), savedChildren.size() - createdCount,
+                createdCount, deactivated);
+        return savedParent;
+    }
+
+    /**
+     * 增量索引计划
+     *
+     * @param chunks 新的子块文本（按顺序）
+     * @param reused 与 chunks 一一对应的可复用旧子块，null 表示需要新建
+     * @param textsToEmbed 需要生成embedding的文本（去重）
+     * @param stale 不再使用的旧子块
+     */
+    private record IndexPlan(
+            List<String> chunks,
+            List<KnowledgeChunk> reused,
+            List<String> textsToEmbed,
+            List<KnowledgeChunk> stale) {}
+
+    /**
+     * 批量重建中已完成分块规划的来源
+     */
+    private record PendingSource(
+            UUID sourceId,
+            IndexingSourceLoader.IndexingSource source,
+            List<KnowledgeChunk> previous,
+            List<ChildChunk> childChunks,
+            IndexPlan plan) {}
+
+    /**
+     * 批量重建结果
+     *
+     * @param indexedSources 重建的来源数
+     * @param skippedSources 内容未变化、为空，或批次期间已被其他路径重建而跳过的来源数
+     * @param chunksWritten 写入的子块数
+     * @param embeddedTexts 本批使用的子块向量数（含分块阶段生成的）
+     */
+    public record BulkIndexResult(
+            int indexedSources,
+            int skippedSources,
+            int chunksWritten,
+            int embeddedTexts) {}
+
     // ==================== 检索服务 ====================
 
     /**
@@ -153,11 +477,9 @@ public class ParentChildSearchService {
         return embeddingService.generateEmbedding(query)
                 .publishOn(Schedulers.boundedElastic())
                 .map(queryEmbedding -> {
-                    String vectorString = toVectorString(queryEmbedding);
-
                     // 1. 在子块中搜索 (Requirements 6.1)
-                    List<KnowledgeChunk> childResults = knowledgeChunkRepository
-                            .findSimilarChildChunks(projectId, vectorString, childLimit);
+                    List<KnowledgeChunk> childResults = embeddingService
+                            .findSimilarChunks(projectId, queryEmbedding, null, true, childLimit);
 
                     if (childResults.isEmpty()) {
                         log.debug("No child chunks found for query in project {}", projectId);
@@ -172,7 +494,7 @@ public class ParentChildSearchService {
                     }
 
                     // 3. 获取父块内容
-                    List<KnowledgeChunk> parents = knowledgeChunkRepository.findAllById(bestChildByParent.keySet());
+                    List<KnowledgeChunk> parents = knowledgeChunkRepository.findByProjectIdAndIdIn(projectId, bestChildByParent.keySet());
                     Map<UUID, KnowledgeChunk> parentMap = parents.stream()
                             .collect(Collectors.toMap(KnowledgeChunk::getId, p -> p));
 
@@ -194,6 +516,7 @@ public class ParentChildSearchService {
                                         .metadata(parent.getMetadata())
                                         .chunkLevel(parent.getChunkLevel())
                                         .parentId(parent.getParentId())
+                                        .matchedContent(childInfo.chunk().getContent())
                                         .build();
                             })
                             .collect(Collectors.toList());
@@ -259,11 +582,9 @@ public class ParentChildSearchService {
         return embeddingService.generateEmbedding(query)
                 .publishOn(Schedulers.boundedElastic())
                 .map(queryEmbedding -> {
-                    String vectorString = toVectorString(queryEmbedding);
-
                     // 在指定类型的子块中搜索
-                    List<KnowledgeChunk> childResults = knowledgeChunkRepository
-                            .findSimilarByProjectIdAndSourceType(projectId, sourceType, vectorString, childLimit);
+                    List<KnowledgeChunk> childResults = embeddingService
+                            .findSimilarChunks(projectId, queryEmbedding, sourceType, false, childLimit);
 
                     // 过滤出子块
                     List<KnowledgeChunk> children = childResults.stream()
@@ -282,7 +603,7 @@ public class ParentChildSearchService {
                     // 按父块去重并获取结果
                     Map<UUID, ChildChunkWithScore> bestChildByParent = deduplicateByParent(children, queryEmbedding);
                     
-                    List<KnowledgeChunk> parents = knowledgeChunkRepository.findAllById(bestChildByParent.keySet());
+                    List<KnowledgeChunk> parents = knowledgeChunkRepository.findByProjectIdAndIdIn(projectId, bestChildByParent.keySet());
                     Map<UUID, KnowledgeChunk> parentMap = parents.stream()
                             .collect(Collectors.toMap(KnowledgeChunk::getId, p -> p));
                     
@@ -300,6 +621,7 @@ public class ParentChildSearchService {
                                         .similarity(entry.getValue().score())
                                         .metadata(parent.getMetadata())
                                         .chunkLevel(parent.getChunkLevel())
+                                        .matchedContent(entry.getValue().chunk().getContent())
                                         .build();
                             })
                             .collect(Collectors.toList());
@@ -320,17 +642,29 @@ public class ParentChildSearchService {
      * @return 格式化的上下文字符串
      */
     public Mono<String> buildContextForGeneration(UUID projectId, String query, int limit) {
+        return buildContextForGeneration(projectId, query, limit, null);
+    }
+
+    /**
+     * 构建AI生成上下文，按工作流的Token预算打包
+     * 父块按命中子块截取窗口，去除重叠和近重复片段后按 得分/Token 装入预算（见 {@link ContextPackerService}）
+     *
+     * @param projectId 项目ID
+     * @param query 查询文本
+     * @param limit 最大候选父块数
+     * @param workflow 工作流标识（WorkflowType名称），null使用默认预算
+     * @return 格式化的上下文字符串
+     */
+    public Mono<String> buildContextForGeneration(UUID projectId, String query, int limit, String workflow) {
         int parentLimit = limit > 0 ? limit : DEFAULT_PARENT_LIMIT;
         int childLimit = parentLimit * ragProperties.hybridSearch().recallMultiplier();
         
         return embeddingService.generateEmbedding(query)
                 .publishOn(Schedulers.boundedElastic())
                 .map(queryEmbedding -> {
-                    String vectorString = toVectorString(queryEmbedding);
-
                     // 1. 在子块中搜索
-                    List<KnowledgeChunk> childResults = knowledgeChunkRepository
-                            .findSimilarChildChunks(projectId, vectorString, childLimit);
+                    List<KnowledgeChunk> childResults = embeddingService
+                            .findSimilarChunks(projectId, queryEmbedding, null, true, childLimit);
 
                     if (childResults.isEmpty()) {
                         return "";
@@ -344,7 +678,7 @@ public class ParentChildSearchService {
                     }
 
                     // 3. 获取父块内容
-                    List<KnowledgeChunk> parents = knowledgeChunkRepository.findAllById(bestChildByParent.keySet());
+                    List<KnowledgeChunk> parents = knowledgeChunkRepository.findByProjectIdAndIdIn(projectId, bestChildByParent.keySet());
                     Map<UUID, KnowledgeChunk> parentMap = parents.stream()
                             .collect(Collectors.toMap(KnowledgeChunk::getId, p -> p));
 
@@ -352,11 +686,16 @@ public class ParentChildSearchService {
                     List<SearchResult> results = buildResultsWithSortInfo(
                             bestChildByParent, parentMap, parentLimit, queryEmbedding);
 
-                    // 5. 按章节顺序和块顺序排序 (Requirements 6.5)
-                    results = sortByChapterAndBlockOrder(results);
+                    // 5. 截取窗口，按Token预算装入
+                    List<ContextPackerService.PackedSegment> segments = ragProperties.contextBudget().enabled()
+                            ? contextPacker.pack(results, workflow)
+                            : toWindowedSegments(results);
 
-                    // 6. 格式化上下文，按来源类型分组
-                    return formatContextWithSourceTypeGrouping(results, bestChildByParent);
+                    // 6. 按章节顺序和块顺序排序 (Requirements 6.5)
+                    segments = sortByChapterAndBlockOrder(segments);
+
+                    // 7. 格式化上下文，按来源类型分组
+                    return formatContextWithSourceTypeGrouping(segments);
                 });
     }
 
@@ -433,6 +772,7 @@ public class ParentChildSearchService {
                             .parentId(parent.getParentId())
                             .chapterOrder(chapterOrder)
                             .blockOrder(blockOrder)
+                            .matchedContent(childInfo.chunk().getContent())
                             .build();
                 })
                 .collect(Collectors.toList());
@@ -441,43 +781,62 @@ public class ParentChildSearchService {
     /**
      * 按章节顺序和块顺序排序
      */
-    private List<SearchResult> sortByChapterAndBlockOrder(List<SearchResult> results) {
-        return results.stream()
+    private List<ContextPackerService.PackedSegment> sortByChapterAndBlockOrder(
+            List<ContextPackerService.PackedSegment> segments) {
+        return segments.stream()
                 .sorted(Comparator
-                        .comparing(SearchResult::getChapterOrder, Comparator.nullsLast(Integer::compareTo))
-                        .thenComparing(SearchResult::getBlockOrder, Comparator.nullsLast(Integer::compareTo)))
+                        .comparing((ContextPackerService.PackedSegment s) -> s.result().getChapterOrder(),
+                                Comparator.nullsLast(Integer::compareTo))
+                        .thenComparing(s -> s.result().getBlockOrder(), Comparator.nullsLast(Integer::compareTo)))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 未启用Token预算时，按上下文窗口截取全部父块
+     */
+    private List<ContextPackerService.PackedSegment> toWindowedSegments(List<SearchResult> results) {
+        int contextWindowSize = ragProperties.chunking().contextWindowSize();
+        List<ContextPackerService.PackedSegment> segments = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            String content = result.getContent();
+            boolean trimmed = content != null && content.length() > contextWindowSize;
+            if (trimmed) {
+                content = result.getMatchedContent() != null
+                        ? extractContextWindow(content, result.getMatchedContent(), contextWindowSize)
+                        : content.substring(0, contextWindowSize) + "...";
+            }
+            segments.add(new ContextPackerService.PackedSegment(result, content, 0, trimmed));
+        }
+        return segments;
+    }
+
     /**
      * 按来源类型分组格式化上下文
      */
-    private String formatContextWithSourceTypeGrouping(
-            List<SearchResult> results,
-            Map<UUID, ChildChunkWithScore> bestChildByParent) {
+    private String formatContextWithSourceTypeGrouping(List<ContextPackerService.PackedSegment> segments) {
         
-        if (results.isEmpty()) {
+        if (segments.isEmpty()) {
             return "";
         }
         
         // 按来源类型分组
-        Map<String, List<SearchResult>> groupedBySourceType = results.stream()
+        Map<String, List<ContextPackerService.PackedSegment>> groupedBySourceType = segments.stream()
                 .collect(Collectors.groupingBy(
-                        r -> r.getSourceType() != null ? r.getSourceType() : "unknown",
+                        s -> s.result().getSourceType() != null ? s.result().getSourceType() : "unknown",
                         LinkedHashMap::new,
                         Collectors.toList()));
         
         StringBuilder context = new StringBuilder();
-        int contextWindowSize = ragProperties.chunking().contextWindowSize();
         
-        for (Map.Entry<String, List<SearchResult>> group : groupedBySourceType.entrySet()) {
+        for (Map.Entry<String, List<ContextPackerService.PackedSegment>> group : groupedBySourceType.entrySet()) {
             String sourceType = group.getKey();
-            List<SearchResult> groupResults = group.getValue();
+            List<ContextPackerService.PackedSegment> groupSegments = group.getValue();
             
             // 添加来源类型标题
             context.append("=== ").append(getSourceTypeDisplayName(sourceType)).append(" ===\n\n");
             
-            for (SearchResult result : groupResults) {
+            for (ContextPackerService.PackedSegment segment : groupSegments) {
+                SearchResult result = segment.result();
                 String title = result.getMetadata() != null
                         ? result.getMetadata().getOrDefault("title", "").toString()
                         : "";
@@ -490,19 +849,12 @@ public class ParentChildSearchService {
                     context.append("\n");
                 }
                 
-                // 提取上下文窗口
-                String content = result.getContent();
-                if (content != null && content.length() > contextWindowSize) {
-                    ChildChunkWithScore childInfo = bestChildByParent.get(result.getId());
-                    if (childInfo != null && childInfo.chunk().getContent() != null) {
-                        content = extractContextWindow(content, childInfo.chunk().getContent(), contextWindowSize);
-                        context.append("[相关片段] ");
-                    } else {
-                        content = content.substring(0, contextWindowSize) + "...";
-                    }
+                // 按命中子块截取的窗口
+                if (segment.trimmed() && result.getMatchedContent() != null) {
+                    context.append("[相关片段] ");
                 }
                 
-                context.append(content).append("\n\n");
+                context.append(segment.content()).append("\n\n");
             }
         }
 
@@ -518,44 +870,7 @@ public class ParentChildSearchService {
      * @return 提取的上下文窗口
      */
     public String extractContextWindow(String parentContent, String matchedChildContent, int windowSize) {
-        if (parentContent == null || matchedChildContent == null) {
-            return parentContent;
-        }
-        
-        // 查找匹配子块在父块中的位置
-        int matchPosition = parentContent.indexOf(matchedChildContent);
-        if (matchPosition == -1) {
-            // 如果找不到精确匹配，返回前面部分
-            return parentContent.length() > windowSize 
-                ? parentContent.substring(0, windowSize) + "..."
-                : parentContent;
-        }
-        
-        // 计算上下文窗口的起始和结束位置
-        int overlapSize = ragProperties.chunking().contextOverlapSize();
-        int start = Math.max(0, matchPosition - overlapSize);
-        int end = Math.min(parentContent.length(), 
-                          matchPosition + matchedChildContent.length() + overlapSize);
-        
-        // 确保不超过窗口大小限制
-        if (end - start > windowSize) {
-            // 优先保留匹配的子块
-            int matchEnd = matchPosition + matchedChildContent.length();
-            start = Math.max(0, matchEnd - windowSize);
-            end = Math.min(parentContent.length(), start + windowSize);
-        }
-        
-        String extracted = parentContent.substring(start, end);
-        
-        // 添加省略号提示
-        if (start > 0) {
-            extracted = "..." + extracted;
-        }
-        if (end < parentContent.length()) {
-            extracted = extracted + "...";
-        }
-        
-        return extracted;
+        return contextPacker.extractContextWindow(parentContent, matchedChildContent, windowSize);
     }
 
     /**
@@ -573,17 +888,10 @@ public class ParentChildSearchService {
 
     // ==================== 辅助方法 ====================
 
-    private String toVectorString(float[] vector) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < vector.length; i++) {
-            if (i > 0) sb.append(",");
-            sb.append(vector[i]);
-        }
-        sb.append("]");
-        return sb.toString();
-    }
-
-    private double calculateSimilarity(float[] a, float[] b) {
+    /**
+     * 计算余弦相似度（包可见，供基准测试）
+     */
+    static double calculateSimilarity(float[] a, float[] b) {
         if (a == null || b == null || a.length != b.length) {
             return 0.0;
         }
@@ -0,0 +1,305 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.common.util.PgHalfVec;
+import com.inkflow.common.util.PgVectorCodec;
+import com.inkflow.module.rag.config.RagProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * L3持久化Embedding缓存（embedding_cache表）
+ *
+ * 作为 Redis 之后的持久层，按 (model, content_hash) 存储向量，Redis清空或过期后仍可避免重新向量化：
+ * - 读取按批次一次查询（content_hash = ANY(?)）
+ * - 写入由单线程有界队列异步执行（write-behind），不占用向量生成的调用路径，队列满时丢弃
+ * - 命中次数和访问时间先在内存累积，定时批量回写，不阻塞读路径
+ * - 每日按最近访问时间淘汰，保持表规模有界
+ *
+ * L3为尽力而为的缓存，数据库异常只记录日志，不影响向量生成。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+public class PersistentEmbeddingStore {
+
+    /** embedding_cache.embedding 列的维度，与 knowledge_chunks 保持一致 */
+    private static final int COLUMN_DIMENSION = 1024;
+
+    private static final String SELECT_SQL =
+            "SELECT content_hash, embedding FROM embedding_cache WHERE model = ? AND content_hash = ANY(?)";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO embedding_cache (content_hash, embedding, model) VALUES (?, ?, ?) " +
+            "ON CONFLICT (model, content_hash) DO NOTHING";
+
+    private static final String TOUCH_SQL =
+            "UPDATE embedding_cache SET hit_count = hit_count + ?, last_accessed_at = CURRENT_TIMESTAMP " +
+            "WHERE model = ? AND content_hash = ?";
+
+    private static final String PURGE_IDLE_SQL =
+            "DELETE FROM embedding_cache WHERE last_accessed_at < ?";
+
+    private static final String PURGE_LRU_SQL =
+            "DELETE FROM embedding_cache WHERE id IN " +
+            "(SELECT id FROM embedding_cache ORDER BY last_accessed_at ASC LIMIT ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RagProperties ragProperties;
+
+    /** 异步写入执行器：单线程 + 有界队列，队列满时拒绝（丢弃） */
+    private final ThreadPoolExecutor writeExecutor;
+
+    /** 待回写的访问记录，计数为近似值 */
+    private final Map<AccessKey, AtomicInteger> pendingAccess = new ConcurrentHashMap<>();
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong lookups = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong writes = new AtomicLong(0);
+    private final AtomicLong droppedWrites = new AtomicLong(0);
+    private final AtomicLong failedWrites = new AtomicLong(0);
+    private final AtomicLong purged = new AtomicLong(0);
+
+    private record AccessKey(String model, String contentHash) {}
+
+    public PersistentEmbeddingStore(JdbcTemplate jdbcTemplate, RagProperties ragProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ragProperties = ragProperties;
+        this.writeExecutor = new ThreadPoolExecutor(
+                1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ragProperties.embedding().persistentCache().writeQueueCapacity()),
+                Thread.ofPlatform().name("embedding-l3-writer").daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 批量读取向量
+     *
+     * @param contentHashes 文本哈希
+     * @return 命中的 哈希 -> 向量
+     */
+    public Map<String, float[]> findAll(Collection<String> contentHashes) {
+        if (!isEnabled() || contentHashes.isEmpty()) {
+            return Map.of();
+        }
+        String model = currentModel();
+        Map<String, float[]> result = new HashMap<>(contentHashes.size() * 2);
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(SELECT_SQL);
+                ps.setString(1, model);
+                ps.setArray(2, connection.createArrayOf("varchar", contentHashes.toArray()));
+                return ps;
+            }, (RowCallbackHandler) rs -> result.put(
+                    rs.getString(1), PgVectorCodec.decodeHalfvecOrText(rs.getBytes(2))));
+        } catch (DataAccessException e) {
+            log.warn("L3缓存查询失败: {}", e.getMessage());
+            return Map.of();
+        }
+
+        lookups.addAndGet(contentHashes.size());
+        hits.addAndGet(result.size());
+        for (String hash : result.keySet()) {
+            pendingAccess.computeIfAbsent(new AccessKey(model, hash), key -> new AtomicInteger())
+                    .incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * 异步批量写入（write-behind）
+     * 提交到有界写入队列后立即返回；队列已满时丢弃本批（L3只是缓存，下次未命中时会重新写入）
+     *
+     * @param embeddings 哈希 -> 向量
+     */
+    public void saveAllAsync(Map<String, float[]> embeddings) {
+        if (!isEnabled() || embeddings.isEmpty()) {
+            return;
+        }
+        try {
+            writeExecutor.execute(() -> {
+                try {
+                    saveAll(embeddings);
+                } catch (RuntimeException e) {
+                    failedWrites.incrementAndGet();
+                    log.warn("L3缓存异步写入失败: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            droppedWrites.addAndGet(embeddings.size());
+            log.debug("L3缓存写入队列已满，丢弃 {} 条", embeddings.size());
+        }
+    }
+
+    /**
+     * 批量写入向量，已存在的条目保持不变
+     *
+     * @param embeddings 哈希 -> 向量
+     */
+    public void saveAll(Map<String, float[]> embeddings) {
+        if (!isEnabled() || embeddings.isEmpty()) {
+            return;
+        }
+        String model = currentModel();
+        List<Object[]> rows = new ArrayList<>(embeddings.size());
+        embeddings.forEach((hash, vector) -> {
+            if (vector != null && vector.length == COLUMN_DIMENSION) {
+                rows.add(new Object[]{hash, new PgHalfVec(vector), model});
+            }
+        });
+        if (rows.isEmpty()) {
+            log.debug("向量维度与embedding_cache列不一致，跳过L3写入");
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            writes.addAndGet(rows.size());
+        } catch (DataAccessException e) {
+            failedWrites.incrementAndGet();
+            log.warn("L3缓存写入失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定时回写命中次数和访问时间
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void flushAccessUpdates() {
+        if (pendingAccess.isEmpty()) {
+            return;
+        }
+        List<Object[]> updates = new ArrayList<>(pendingAccess.size());
+        for (AccessKey key : pendingAccess.keySet()) {
+            AtomicInteger count = pendingAccess.remove(key);
+            if (count != null) {
+                updates.add(new Object[]{count.get(), key.model(), key.contentHash()});
+            }
+        }
+        try {
+            jdbcTemplate.batchUpdate(TOUCH_SQL, updates);
+            log.debug("L3缓存访问记录回写: {}", updates.size());
+        } catch (DataAccessException e) {
+            log.warn("L3缓存访问记录回写失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 每天凌晨4点淘汰L3缓存
+     *
+     * 淘汰规则：
+     * - 超过 maxIdleDays 未访问的条目
+     * - 总数超过 maxEntries 时，按最近访问时间从旧到新删除
+     */
+    @Scheduled(cron = "0 0 4 * * ?")
+    public void purge() {
+        if (!isEnabled()) {
+            return;
+        }
+        flushAccessUpdates();
+        RagProperties.PersistentCacheConfig config = ragProperties.embedding().persistentCache();
+        try {
+            Instant idleCutoff = Instant.now().minus(config.maxIdleDays(), ChronoUnit.DAYS);
+            long deleted = jdbcTemplate.update(PURGE_IDLE_SQL, Timestamp.from(idleCutoff));
+
+            Long total = jdbcTemplate.queryForObject("SELECT count(*) FROM embedding_cache", Long.class);
+            long excess = (total == null ? 0 : total) - config.maxEntries();
+            while (excess > 0) {
+                int removed = jdbcTemplate.update(PURGE_LRU_SQL, (int) Math.min(excess, config.purgeBatchSize()));
+                if (removed == 0) {
+                    break;
+                }
+                deleted += removed;
+                excess -= removed;
+            }
+
+            if (deleted > 0) {
+                purged.addAndGet(deleted);
+                log.info("L3缓存淘汰完成，删除数量: {}", deleted);
+            }
+        } catch (DataAccessException e) {
+            log.warn("L3缓存淘汰失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeExecutor.shutdown();
+        try {
+            if (!writeExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("L3缓存写入队列未在关闭前写完，丢弃剩余 {} 批", writeExecutor.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            writeExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        flushAccessUpdates();
+    }
+
+    /**
+     * 获取L3缓存统计
+     */
+    public Stats getStats() {
+        long lookupCount = lookups.get();
+        return new Stats(
+                isEnabled(),
+                lookupCount,
+                hits.get(),
+                lookupCount > 0 ? (double) hits.get() / lookupCount : 0.0,
+                writes.get(),
+                writeExecutor.getQueue().size(),
+                droppedWrites.get(),
+                failedWrites.get(),
+                purged.get(),
+                pendingAccess.size()
+        );
+    }
+
+    private boolean isEnabled() {
+        return ragProperties.embedding().persistentCache().enabled();
+    }
+
+    private String currentModel() {
+        return ragProperties.embedding().model();
+    }
+
+    /**
+     * L3缓存统计信息
+     */
+    public record Stats(
+            boolean enabled,
+            long lookups,
+            long hits,
+            double hitRate,
+            long writes,
+            int pendingWrites,
+            long droppedWrites,
+            long failedWrites,
+            long purged,
+            int pendingAccessUpdates
+    ) {}
+}
@@ -0,0 +1,523 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.ReindexJobProgress;
+import com.inkflow.module.rag.dto.ReindexStatistics;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.entity.ReindexJob;
+import com.inkflow.module.rag.index.LatencyRecorder;
+import com.inkflow.module.rag.repository.ReindexJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 项目全量重建索引服务
+ *
+ * 用于切换Embedding模型、批量导入和灾备恢复，按来源类型依次流式遍历项目的全部剧情块、知识条目和角色：
+ * - 按来源ID键集分页，每批一次查询读取内容，内存占用与项目规模无关
+ * - 批内并发分块、整批大批量生成embedding、单事务写入（见 ParentChildSearchService#bulkIndex）
+ * - 每批提交后持久化游标和计数，批内每次生成前续约，实例崩溃后租约超时由任意实例从游标续跑
+ * - 整批失败时降级为逐个重建，单个来源失败不阻塞整个项目
+ * - 不暂停索引队列：写入时与队列、监听器持有同一把来源咨询锁，期间已被重建的来源跳过，不会用旧内容覆盖
+ * - 统计子块吞吐并与目标比较
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+public class ProjectReindexService {
+
+    /**
+     * 来源类型遍历顺序，游标按此顺序推进
+     */
+    private static final List<String> SOURCE_TYPE_ORDER = List.of(
+            KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK,
+            KnowledgeChunk.SOURCE_TYPE_WIKI_ENTRY,
+            KnowledgeChunk.SOURCE_TYPE_CHARACTER);
+
+    private final ReindexJobRepository jobRepository;
+    private final ParentChildSearchService parentChildSearchService;
+    private final RagProperties ragProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor executor;
+    private final Map<String, IndexingSourceLoader> loaders;
+    private final Semaphore permits;
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong completedBatches = new AtomicLong(0);
+    private final AtomicLong degradedBatches = new AtomicLong(0);
+    private final AtomicLong belowTargetBatches = new AtomicLong(0);
+    private final AtomicLong processedSources = new AtomicLong(0);
+    private final AtomicLong chunksWritten = new AtomicLong(0);
+    private final AtomicLong batchNanos = new AtomicLong(0);
+    private final LatencyRecorder batchTime = new LatencyRecorder(1024);
+
+    public ProjectReindexService(
+            ReindexJobRepository jobRepository,
+            ParentChildSearchService parentChildSearchService,
+            RagProperties ragProperties,
+            TransactionTemplate transactionTemplate,
+            @Qualifier("embeddingExecutor") Executor executor,
+            List<IndexingSourceLoader> loaders) {
+        this.jobRepository = jobRepository;
+        this.parentChildSearchService = parentChildSearchService;
+        this.ragProperties = ragProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.executor = executor;
+        this.loaders = new LinkedHashMap<>();
+        loaders.stream()
+                .sorted(Comparator.comparingInt((IndexingSourceLoader loader) -> sourceTypeRank(loader.sourceType()))
+                        .thenComparing(IndexingSourceLoader::sourceType))
+                .forEach(loader -> this.loaders.put(loader.sourceType(), loader));
+        this.permits = new Semaphore(ragProperties.reindex().maxConcurrentJobs());
+    }
+
+    private static int sourceTypeRank(String sourceType) {
+        int rank = SOURCE_TYPE_ORDER.indexOf(sourceType);
+        return rank >= 0 ? rank : SOURCE_TYPE_ORDER.size();
+    }
+
+    // ==================== 任务管理 ====================
+
+    /**
+     * 提交项目全量重建任务，项目已有未结束的任务时直接返回该任务
+     *
+     * @param projectId 项目ID
+     * @param forceReembed 是否重新生成全部向量（切换Embedding模型时使用）
+     * @return 任务进度
+     */
+    public ReindexJobProgress start(UUID projectId, boolean forceReembed) {
+        ReindexJob job;
+        try {
+            job = transactionTemplate.execute(status -> jobRepository.findActiveByProjectId(projectId)
+                    .orElseGet(() -> {
+                        Instant now = Instant.now();
+                        return jobRepository.save(ReindexJob.builder()
+                                .projectId(projectId)
+                                .forceReembed(forceReembed)
+                                .createdAt(now)
+                                .updatedAt(now)
+                                .build());
+                    }));
+        } catch (DataIntegrityViolationException e) {
+            // 并发提交，唯一索引保证每个项目只有一个未结束的任务
+            job = jobRepository.findActiveByProjectId(projectId).orElseThrow(() -> e);
+        }
+        log.info("提交项目重建索引任务: projectId={}, jobId={}, forceReembed={}",
+                projectId, job.getId(), job.getForceReembed());
+        return toProgress(job);
+    }
+
+    /**
+     * 续跑项目最近一次失败或取消的任务，从已持久化的游标继续
+     *
+     * @param projectId 项目ID
+     * @return 任务进度，项目没有任务时返回空
+     */
+    public Optional<ReindexJobProgress> resume(UUID projectId) {
+        ReindexJob job;
+        try {
+            job = transactionTemplate.execute(status -> jobRepository.findActiveByProjectId(projectId)
+                    .or(() -> jobRepository.findFirstByProjectIdOrderByCreatedAtDesc(projectId)
+                            .map(latest -> {
+                                if (latest.getStatus() == ReindexJob.Status.FAILED
+                                        || latest.getStatus() == ReindexJob.Status.CANCELLED) {
+                                    latest.setStatus(ReindexJob.Status.PENDING);
+                                    latest.setLastError(null);
+                                    latest.setFinishedAt(null);
+                                    latest.setUpdatedAt(Instant.now());
+                                    log.info("续跑项目重建索引任务: projectId={}, jobId={}, cursor={}/{}",
+                                            projectId, latest.getId(), latest.getCursorSourceType(),
+                                            latest.getCursorSourceId());
+                                    return jobRepository.save(latest);
+                                }
+                                return latest;
+                            }))
+                    .orElse(null));
+        } catch (DataIntegrityViolationException e) {
+            job = jobRepository.findActiveByProjectId(projectId).orElseThrow(() -> e);
+        }
+        return Optional.ofNullable(job).map(this::toProgress);
+    }
+
+    /**
+     * 取消项目未结束的任务，执行中的任务在当前批次提交时停止
+     *
+     * @param projectId 项目ID
+     * @return 是否有任务被取消
+     */
+    public boolean cancel(UUID projectId) {
+        Integer cancelled = transactionTemplate.execute(status -> jobRepository.cancelActive(projectId));
+        boolean result = cancelled != null && cancelled > 0;
+        if (result) {
+            log.info("取消项目重建索引任务: projectId={}", projectId);
+        }
+        return result;
+    }
+
+    /**
+     * 查询项目最近一次任务的进度
+     *
+     * @param projectId 项目ID
+     * @return 任务进度，项目没有任务时返回空
+     */
+    public Optional<ReindexJobProgress> getProgress(UUID projectId) {
+        return jobRepository.findFirstByProjectIdOrderByCreatedAtDesc(projectId).map(this::toProgress);
+    }
+
+    // ==================== 调度执行 ====================
+
+    /**
+     * 领取待执行任务并提交执行
+     */
+    @Scheduled(fixedDelay = 2000)
+    public void dispatchPendingJobs() {
+        int free = permits.availablePermits();
+        if (free == 0) {
+            return;
+        }
+        List<ReindexJob> claimed = transactionTemplate.execute(status -> claim(free));
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+
+        for (ReindexJob job : claimed) {
+            permits.acquireUninterruptibly();
+            try {
+                executor.execute(() -> {
+                    try {
+                        run(job);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                log.error("重建索引任务提交失败: jobId={}", job.getId(), e);
+                release(job, ReindexJob.Status.PENDING, null);
+            }
+        }
+    }
+
+    /**
+     * 回收租约超时的任务（实例崩溃或重启），由下一次调度从游标续跑
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 30000)
+    public void recoverExpiredJobs() {
+        Instant cutoff = Instant.now().minusMillis(ragProperties.reindex().leaseTimeoutMs());
+        Integer released = transactionTemplate.execute(status -> jobRepository.releaseExpired(cutoff));
+        if (released != null && released > 0) {
+            log.warn("回收租约超时的重建索引任务: {}", released);
+        }
+    }
+
+    private List<ReindexJob> claim(int limit) {
+        List<ReindexJob> jobs = jobRepository.lockPendingJobs(limit);
+        if (jobs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Instant now = Instant.now();
+        for (ReindexJob job : jobs) {
+            job.setStatus(ReindexJob.Status.RUNNING);
+            job.setLeaseToken(UUID.randomUUID());
+            job.setLockedAt(now);
+            job.setUpdatedAt(now);
+            if (job.getStartedAt() == null) {
+                job.setStartedAt(now);
+            }
+        }
+        return jobRepository.saveAll(jobs);
+    }
+
+    private void run(ReindexJob job) {
+        UUID projectId = job.getProjectId();
+        log.info("开始项目重建索引: projectId={}, jobId={}, cursor={}/{}",
+                projectId, job.getId(), job.getCursorSourceType(), job.getCursorSourceId());
+        try {
+            if (job.getTotalSources() == null) {
+                long total = loaders.values().stream().mapToLong(loader -> loader.countSources(projectId)).sum();
+                transactionTemplate.executeWithoutResult(status ->
+                        jobRepository.updateTotalSources(job.getId(), job.getLeaseToken(), total));
+            }
+
+            int cursorRank = job.getCursorSourceType() != null ? sourceTypeRank(job.getCursorSourceType()) : -1;
+            for (IndexingSourceLoader loader : loaders.values()) {
+                int rank = sourceTypeRank(loader.sourceType());
+                if (rank < cursorRank) {
+                    continue;
+                }
+                UUID afterId = loader.sourceType().equals(job.getCursorSourceType()) && job.getCursorSourceId() != null
+                        ? job.getCursorSourceId()
+                        : IndexingSourceLoader.FIRST_CURSOR;
+                if (!reindexSourceType(job, loader, afterId)) {
+                    log.info("重建索引任务已取消或被接管，停止执行: jobId={}", job.getId());
+                    return;
+                }
+            }
+
+            release(job, ReindexJob.Status.COMPLETED, null);
+            log.info("项目重建索引完成: projectId={}, jobId={}", projectId, job.getId());
+        } catch (Exception e) {
+            if (findCircuitOpen(e) != null) {
+                // 断路器打开不算失败，放回待执行，恢复后从游标续跑
+                log.warn("Embedding断路器打开，暂停项目重建索引: jobId={}", job.getId());
+                release(job, ReindexJob.Status.PENDING, null);
+            } else {
+                log.error("项目重建索引失败: projectId={}, jobId={}", projectId, job.getId(), e);
+                release(job, ReindexJob.Status.FAILED, truncate(e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * 按来源ID游标分批重建一种来源类型，每批提交后推进游标
+     *
+     * @return 任务被取消或被其他实例接管时返回 false
+     */
+    private boolean reindexSourceType(ReindexJob job, IndexingSourceLoader loader, UUID afterId) {
+        int batchSize = ragProperties.reindex().sourceBatchSize();
+        while (true) {
+            List<UUID> sourceIds = loader.listSourceIds(job.getProjectId(), afterId, batchSize);
+            if (sourceIds.isEmpty()) {
+                return true;
+            }
+            // 读取来源和计数可能较慢，开始生成前先续约
+            if (!renewLease(job)) {
+                return false;
+            }
+
+            BatchOutcome outcome = reindexBatch(job, loader.sourceType(), loader.loadAll(sourceIds), sourceIds.size());
+            UUID lastId = sourceIds.get(sourceIds.size() - 1);
+            Integer advanced = transactionTemplate.execute(status -> jobRepository.advance(
+                    job.getId(), job.getLeaseToken(), loader.sourceType(), lastId,
+                    outcome.processed(), outcome.skipped(), outcome.failed(), outcome.chunks(),
+                    outcome.elapsedMillis(), Instant.now()));
+            if (advanced == null || advanced == 0) {
+                return false;
+            }
+            if (sourceIds.size() < batchSize) {
+                return true;
+            }
+            afterId = lastId;
+        }
+    }
+
+    /**
+     * 重建一批来源，整批失败时降级为逐个重建
+     */
+    private BatchOutcome reindexBatch(
+            ReindexJob job,
+            String sourceType,
+            Map<UUID, IndexingSourceLoader.IndexingSource> loaded,
+            int listed) {
+
+        long start = System.nanoTime();
+        Duration timeout = Duration.ofMillis(ragProperties.reindex().batchTimeoutMs());
+        boolean force = Boolean.TRUE.equals(job.getForceReembed());
+
+        Map<UUID, IndexingSourceLoader.IndexingSource> sources = new LinkedHashMap<>();
+        loaded.forEach((sourceId, source) -> {
+            if (job.getProjectId().equals(source.projectId())) {
+                sources.put(sourceId, source);
+            }
+        });
+        // 列出后被删除的来源计为跳过
+        long skipped = listed - sources.size();
+        long processed = 0;
+        long failed = 0;
+        long chunks = 0;
+
+        try {
+            ParentChildSearchService.BulkIndexResult result = parentChildSearchService
+                    .bulkIndex(job.getProjectId(), sourceType, sources, force)
+                    .block(timeout);
+            if (result != null) {
+                processed = result.indexedSources();
+                skipped += result.skippedSources();
+                chunks = result.chunksWritten();
+            }
+        } catch (RuntimeException e) {
+            if (findCircuitOpen(e) != null) {
+                throw e;
+            }
+            degradedBatches.incrementAndGet();
+            log.warn("重建索引批次失败，降级为逐个重建: jobId={}, sourceType={}, size={}, error={}",
+                    job.getId(), sourceType, sources.size(), e.getMessage());
+            for (Map.Entry<UUID, IndexingSourceLoader.IndexingSource> entry : sources.entrySet()) {
+                // 逐个重建可能持续多个单批超时，每个来源前续约
+                if (!renewLease(job)) {
+                    // 已被取消或接管，剩余来源不再处理，随后的游标提交会失败并停止任务
+                    break;
+                }
+                try {
+                    ParentChildSearchService.BulkIndexResult result = parentChildSearchService
+                            .bulkIndex(job.getProjectId(), sourceType, Map.of(entry.getKey(), entry.getValue()), force)
+                            .block(timeout);
+                    if (result != null) {
+                        processed += result.indexedSources();
+                        skipped += result.skippedSources();
+                        chunks += result.chunksWritten();
+                    }
+                } catch (RuntimeException single) {
+                    if (findCircuitOpen(single) != null) {
+                        throw single;
+                    }
+                    failed++;
+                    log.warn("来源重建索引失败: sourceId={}, error={}", entry.getKey(), single.getMessage());
+                }
+            }
+            if (!sources.isEmpty() && failed == sources.size()) {
+                // 整批全部失败通常是系统性问题（模型不可用、数据库异常），停止任务以便排查后续跑
+                throw new IllegalStateException("重建索引批次内来源全部失败: " + e.getMessage(), e);
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        recordBatch(job, sourceType, processed, chunks, elapsedNanos);
+        return new BatchOutcome(processed, skipped, failed, chunks, elapsedNanos / 1_000_000);
+    }
+
+    private void recordBatch(ReindexJob job, String sourceType, long processed, long chunks, long elapsedNanos) {
+        completedBatches.incrementAndGet();
+        processedSources.addAndGet(processed);
+        chunksWritten.addAndGet(chunks);
+        batchNanos.addAndGet(elapsedNanos);
+        batchTime.record(elapsedNanos);
+
+        if (chunks == 0) {
+            return;
+        }
+        double target = ragProperties.reindex().targetChunksPerSecond();
+        double throughput = chunks * 1_000_000_000.0 / Math.max(1, elapsedNanos);
+        if (throughput < target) {
+            belowTargetBatches.incrementAndGet();
+            log.warn("重建索引吞吐低于目标: jobId={}, sourceType={}, {} 子块/秒 < {} 子块/秒",
+                    job.getId(), sourceType, Math.round(throughput), Math.round(target));
+        } else {
+            log.debug("重建索引批次完成: jobId={}, sourceType={}, 来源={}, 子块={}, {} 子块/秒",
+                    job.getId(), sourceType, processed, chunks, Math.round(throughput));
+        }
+    }
+
+    /**
+     * 续约任务租约
+     *
+     * @return 任务已被取消或被其他实例接管时返回 false
+     */
+    private boolean renewLease(ReindexJob job) {
+        Integer renewed = transactionTemplate.execute(status ->
+                jobRepository.heartbeat(job.getId(), job.getLeaseToken(), Instant.now()));
+        return renewed != null && renewed > 0;
+    }
+
+    private void release(ReindexJob job, ReindexJob.Status status, String error) {
+        Instant finishedAt = status == ReindexJob.Status.PENDING ? null : Instant.now();
+        transactionTemplate.executeWithoutResult(tx ->
+                jobRepository.release(job.getId(), job.getLeaseToken(), status, error, finishedAt));
+    }
+
+    private static EmbeddingService.CircuitBreakerOpenException findCircuitOpen(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof EmbeddingService.CircuitBreakerOpenException circuitOpen) {
+                return circuitOpen;
+            }
+        }
+        return null;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    /**
+     * 单批重建结果
+     */
+    private record BatchOutcome(long processed, long skipped, long failed, long chunks, long elapsedMillis) {}
+
+    // ==================== 统计 ====================
+
+    private ReindexJobProgress toProgress(ReindexJob job) {
+        long completed = job.getProcessedSources() + job.getSkippedSources() + job.getFailedSources();
+        Long total = job.getTotalSources();
+        Double progress = null;
+        if (job.getStatus() == ReindexJob.Status.COMPLETED) {
+            progress = 1.0;
+        } else if (total != null && total > 0) {
+            progress = Math.min(1.0, (double) completed / total);
+        }
+
+        long activeMillis = job.getActiveMillis();
+        double chunksPerSecond = activeMillis > 0 ? job.getChunksWritten() * 1000.0 / activeMillis : 0.0;
+        Long remainingSeconds = null;
+        if (!job.isFinished() && total != null && completed > 0 && activeMillis > 0) {
+            long remaining = Math.max(0, total - completed);
+            remainingSeconds = remaining * activeMillis / completed / 1000;
+        }
+
+        return ReindexJobProgress.builder()
+                .jobId(job.getId())
+                .projectId(job.getProjectId())
+                .status(job.getStatus().name())
+                .forceReembed(Boolean.TRUE.equals(job.getForceReembed()))
+                .currentSourceType(job.getCursorSourceType())
+                .totalSources(total)
+                .completedSources(completed)
+                .processedSources(job.getProcessedSources())
+                .skippedSources(job.getSkippedSources())
+                .failedSources(job.getFailedSources())
+                .progress(progress)
+                .chunksWritten(job.getChunksWritten())
+                .chunksPerSecond(chunksPerSecond)
+                .targetChunksPerSecond(ragProperties.reindex().targetChunksPerSecond())
+                .estimatedRemainingSeconds(remainingSeconds)
+                .lastError(job.getLastError())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    /**
+     * 获取重建索引统计
+     */
+    public ReindexStatistics getStatistics() {
+        RagProperties.ReindexConfig config = ragProperties.reindex();
+        long nanos = batchNanos.get();
+        return ReindexStatistics.builder()
+                .pendingJobs(jobRepository.countByStatus(ReindexJob.Status.PENDING))
+                .runningJobs(jobRepository.countByStatus(ReindexJob.Status.RUNNING))
+                .activeJobs(config.maxConcurrentJobs() - permits.availablePermits())
+                .completedBatches(completedBatches.get())
+                .degradedBatches(degradedBatches.get())
+                .processedSources(processedSources.get())
+                .chunksWritten(chunksWritten.get())
+                .chunksPerSecond(nanos > 0 ? chunksWritten.get() * 1_000_000_000.0 / nanos : 0.0)
+                .targetChunksPerSecond(config.targetChunksPerSecond())
+                .belowTargetBatches(belowTargetBatches.get())
+                .batchP50Ms(batchTime.percentileMicros(50) / 1000)
+                .batchP99Ms(batchTime.percentileMicros(99) / 1000)
+                .build();
+    }
+}
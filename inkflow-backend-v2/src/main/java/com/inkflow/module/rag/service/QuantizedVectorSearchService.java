@@ -0,0 +1,154 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.QuantizedSearchStatistics;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.index.LatencyRecorder;
+import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * 两阶段量化向量检索服务
+ *
+ * 第一阶段在二值量化列 embedding_bin 上按汉明距离取 limit × oversampling 个候选，
+ * 第二阶段仅对候选用 halfvec 列计算精确余弦距离并重排。二值索引体积约为halfvec索引的1/16，
+ * 粗排可以常驻内存，精确计算只发生在少量候选上。
+ *
+ * 通过影子查询与精确检索对比，统计recall@k和两条路径的延迟分位数，用于调节过采样倍数。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuantizedVectorSearchService {
+
+    private static final int LATENCY_WINDOW = 2048;
+
+    private final KnowledgeChunkRepository knowledgeChunkRepository;
+    private final RagProperties ragProperties;
+    private final HnswSearchTuner hnswSearchTuner;
+
+    // ==================== 监控指标 ====================
+
+    private final LatencyRecorder quantizedLatency = new LatencyRecorder(LATENCY_WINDOW);
+    private final LatencyRecorder exactLatency = new LatencyRecorder(LATENCY_WINDOW);
+    private final AtomicLong candidatesRequested = new AtomicLong(0);
+    private final AtomicLong shadowQueries = new AtomicLong(0);
+    private final DoubleAdder recallSum = new DoubleAdder();
+
+    /**
+     * 是否启用两阶段量化检索
+     */
+    public boolean isEnabled() {
+        return ragProperties.search().quantized().enabled();
+    }
+
+    /**
+     * 两阶段量化检索
+     *
+     * @param projectId 项目ID
+     * @param queryEmbedding 查询向量
+     * @param sourceType 来源类型过滤，null表示不过滤
+     * @param childOnly 是否只检索子块
+     * @param limit 最大结果数
+     * @return 按精确余弦距离排序的知识块
+     */
+    public List<KnowledgeChunk> search(
+            UUID projectId,
+            float[] queryEmbedding,
+            String sourceType,
+            boolean childOnly,
+            int limit) {
+
+        int candidateLimit = ragProperties.search().quantized().candidateLimit(limit);
+        long start = System.nanoTime();
+        // 索引扫描发生在粗排阶段，ef_search 按候选数确定
+        List<KnowledgeChunk> results = hnswSearchTuner.search(
+                projectId, sourceType, childOnly, limit, candidateLimit, () -> {
+                    if (sourceType != null) {
+                        return childOnly
+                                ? knowledgeChunkRepository.findSimilarQuantizedChildChunksBySourceType(
+                                        projectId, sourceType, queryEmbedding, candidateLimit, limit)
+                                : knowledgeChunkRepository.findSimilarQuantizedByProjectIdAndSourceType(
+                                        projectId, sourceType, queryEmbedding, candidateLimit, limit);
+                    }
+                    if (childOnly) {
+                        return knowledgeChunkRepository.findSimilarQuantizedChildChunks(
+                                projectId, queryEmbedding, candidateLimit, limit);
+                    }
+                    return knowledgeChunkRepository.findSimilarQuantizedByProjectId(
+                            projectId, queryEmbedding, candidateLimit, limit);
+                });
+        quantizedLatency.record(System.nanoTime() - start);
+        candidatesRequested.addAndGet(candidateLimit);
+        return results;
+    }
+
+    /**
+     * 是否对本次查询做影子对比
+     */
+    public boolean shouldShadow() {
+        double rate = ragProperties.search().quantized().shadowSampleRate();
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * 记录影子对比结果：以精确检索结果为基准计算recall@k
+     *
+     * @param quantizedIds 量化检索返回的块ID
+     * @param exactIds     精确检索返回的块ID
+     * @param exactNanos   精确检索耗时
+     */
+    public void recordShadowComparison(List<UUID> quantizedIds, List<UUID> exactIds, long exactNanos) {
+        exactLatency.record(exactNanos);
+        if (exactIds.isEmpty()) {
+            return;
+        }
+        Set<UUID> expected = new HashSet<>(exactIds);
+        long overlap = quantizedIds.stream().filter(expected::contains).count();
+        double recall = (double) overlap / expected.size();
+        shadowQueries.incrementAndGet();
+        recallSum.add(recall);
+        if (recall < 0.8) {
+            log.debug("量化检索影子对比召回率偏低: recall={}, expected={}", recall, expected.size());
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 获取量化检索统计信息
+     */
+    public QuantizedSearchStatistics getStatistics() {
+        RagProperties.QuantizedSearchConfig config = ragProperties.search().quantized();
+        long queries = quantizedLatency.getTotal();
+        long shadowCount = shadowQueries.get();
+        return QuantizedSearchStatistics.builder()
+                .enabled(config.enabled())
+                .oversampling(config.oversampling())
+                .minCandidates(config.minCandidates())
+                .maxCandidates(config.maxCandidates())
+                .queries(queries)
+                .averageCandidates(queries > 0 ? (double) candidatesRequested.get() / queries : 0.0)
+                .quantizedP50Micros(quantizedLatency.percentileMicros(50))
+                .quantizedP99Micros(quantizedLatency.percentileMicros(99))
+                .exactQueries(exactLatency.getTotal())
+                .exactP50Micros(exactLatency.percentileMicros(50))
+                .exactP99Micros(exactLatency.percentileMicros(99))
+                .shadowQueries(shadowCount)
+                .averageRecall(shadowCount > 0 ? recallSum.sum() / shadowCount : 0.0)
+                .build();
+    }
+}
@@ -1,17 +1,22 @@
 package com.inkflow.module.rag.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.inkflow.module.rag.config.RagProperties;
 import com.inkflow.module.rag.dto.CircuitBreakerState;
 import com.inkflow.module.rag.dto.RerankerCacheStatistics;
 import com.inkflow.module.rag.dto.RerankResult;
+import com.inkflow.module.rag.offline.Bm25RerankModel;
 import jakarta.annotation.PostConstruct;
 import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.retry.Retry;
 
 import java.nio.charset.StandardCharsets;
@@ -19,7 +24,6 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -30,8 +34,9 @@ import java.util.stream.Collectors;
  * 功能特性:
  * 1. 本地 bge-reranker-v2-m3 模型调用
  * 2. 断路器模式（失败阈值3，恢复超时20秒）
- * 3. 内存缓存（5分钟过期）
+ * 3. 得分对缓存：按 (查询, 文档) 缓存得分（Caffeine W-TinyLFU，5分钟过期），只把未缓存的文档发送给模型
  * 4. 降级到基于得分的排序
+ * 5. offline profile 下改由本地 BM25 替身打分，不访问端点
  * 
  * @author zsg
  * @date 2025/12/17
@@ -42,17 +47,22 @@ public class RerankerService {
 
     private final WebClient webClient;
     private final RagProperties.RerankerConfig config;
+    // offline profile 下的本地替身，存在时替代 HTTP 调用
+    @Nullable
+    private final Bm25RerankModel localModel;
     
     // 断路器状态
     private volatile CircuitBreakerState circuitBreakerState = CircuitBreakerState.CLOSED;
     private volatile long lastFailureTime = 0;
     private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
     
-    // 缓存
-    private final ConcurrentHashMap<String, CacheEntry<?>> memoryCache = new ConcurrentHashMap<>();
-    private final AtomicLong cacheHits = new AtomicLong(0);
-    private final AtomicLong cacheMisses = new AtomicLong(0);
+    // 得分对缓存，cross-encoder 对单个 (查询, 文档) 的打分与同批其他候选无关
+    private final Cache<PairKey, Double> pairScoreCache;
+    private final AtomicLong pairHits = new AtomicLong(0);
+    private final AtomicLong pairMisses = new AtomicLong(0);
     private final AtomicLong totalRequests = new AtomicLong(0);
+    private final AtomicLong fullyCachedRequests = new AtomicLong(0);
+    private final AtomicLong pairsSentToModel = new AtomicLong(0);
     
     // 服务可用性状态 - 启动验证后设置
     @Getter
@@ -60,11 +70,18 @@ public class RerankerService {
     @Getter
     private volatile String disabledReason = null;
 
-    public RerankerService(WebClient.Builder webClientBuilder, RagProperties ragProperties) {
+    public RerankerService(WebClient.Builder webClientBuilder, RagProperties ragProperties,
+                           @Nullable Bm25RerankModel localModel) {
         this.config = ragProperties.reranker();
+        this.localModel = localModel;
         this.webClient = webClientBuilder
             .baseUrl(config.endpoint())
             .build();
+        this.pairScoreCache = Caffeine.newBuilder()
+            .maximumSize(config.cacheMaxSize())
+            .expireAfterWrite(Duration.ofMillis(config.cacheExpirationMs()))
+            .recordStats()
+            .build();
     }
     
     /**
@@ -101,6 +118,9 @@ public class RerankerService {
      * 执行健康检查
      */
     private Mono<Boolean> performHealthCheck() {
+        if (localModel != null) {
+            return Mono.just(true);
+        }
         // 尝试调用 rerank API 进行简单测试
         return webClient.get()
             .uri("/health")
@@ -200,24 +220,90 @@ public class RerankerService {
         
         totalRequests.incrementAndGet();
         
-        // 检查缓存
-        if (config.enableCache()) {
-            String cacheKey = generateRerankCacheKey(query, validCandidates, topK);
-            CacheEntry<?> cachedEntry = memoryCache.get(cacheKey);
-            if (cachedEntry != null && !cachedEntry.isExpired() && cachedEntry.getValue() instanceof List) {
-                cacheHits.incrementAndGet();
-                log.debug("Reranker cache hit for query: {} chars, {} candidates", query.length(), validCandidates.size());
-                @SuppressWarnings("unchecked")
-                List<RerankResult> results = (List<RerankResult>) cachedEntry.getValue();
-                return Mono.just(results);
-            }
-            cacheMisses.incrementAndGet();
-        }
-        
         log.debug("Reranking {} candidates for query: {}", validCandidates.size(), 
             query.length() > 50 ? query.substring(0, 50) + "..." : query);
         
-        return rerankWithResilience(query, validCandidates, topK);
+        if (!config.enableCache()) {
+            return rerankWithResilience(query, validCandidates, topK);
+        }
+        return rerankWithPairCache(query, validCandidates, topK);
+    }
+
+    /**
+     * 基于得分对缓存的重排序
+     * 已缓存的 (查询, 文档) 直接取分，仅把未缓存的去重文档发送给模型，合并后统一排序截断
+     */
+    private Mono<List<RerankResult>> rerankWithPairCache(String query, List<String> candidates, Integer topK) {
+        String queryHash = calculateHash(query);
+        List<PairKey> keys = new ArrayList<>(candidates.size());
+        for (String candidate : candidates) {
+            keys.add(PairKey.rerank(queryHash, calculateHash(candidate)));
+        }
+
+        Map<PairKey, Double> cached = pairScoreCache.getAllPresent(keys);
+        Map<PairKey, String> missing = new LinkedHashMap<>();
+        int missedPairs = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (!cached.containsKey(keys.get(i))) {
+                missedPairs++;
+                missing.putIfAbsent(keys.get(i), candidates.get(i));
+            }
+        }
+        pairHits.addAndGet(keys.size() - missedPairs);
+        pairMisses.addAndGet(missedPairs);
+
+        if (missing.isEmpty()) {
+            fullyCachedRequests.incrementAndGet();
+            log.debug("Reranker pair cache fully hit: {} candidates", candidates.size());
+            return Mono.just(mergeScores(candidates, keys, cached, topK));
+        }
+
+        // 断路器打开时整体降级，避免模型得分与降级得分混合排序
+        if (isCircuitBreakerOpen()) {
+            log.warn("Circuit breaker is open, falling back to score-based ranking immediately");
+            return fallbackToScoreBasedRanking(query, candidates, topK);
+        }
+
+        List<PairKey> missingKeys = new ArrayList<>(missing.keySet());
+        List<String> missingDocs = new ArrayList<>(missing.values());
+        pairsSentToModel.addAndGet(missingDocs.size());
+        log.debug("Reranker pair cache: {} cached, {} sent to model", cached.size(), missingDocs.size());
+
+        return callRerankAPI(query, missingDocs, missingDocs.size())
+            .map(modelResults -> {
+                recordSuccess();
+                Map<PairKey, Double> scores = new HashMap<>(cached);
+                Map<PairKey, Double> fresh = new HashMap<>(modelResults.size() * 2);
+                for (RerankResult result : modelResults) {
+                    int index = result.getIndex();
+                    if (index >= 0 && index < missingKeys.size()) {
+                        fresh.put(missingKeys.get(index), result.getScore());
+                    }
+                }
+                pairScoreCache.putAll(fresh);
+                scores.putAll(fresh);
+                return mergeScores(candidates, keys, scores, topK);
+            })
+            .doOnError(error -> recordFailure())
+            .onErrorResume(error -> {
+                log.warn("Reranker API failed: {}, attempting fallback", error.getMessage());
+                return fallbackToScoreBasedRanking(query, candidates, topK);
+            });
+    }
+
+    /**
+     * 按得分合并结果，缺失得分的候选排在最后
+     */
+    private List<RerankResult> mergeScores(List<String> candidates, List<PairKey> keys,
+                                           Map<PairKey, Double> scores, Integer topK) {
+        List<RerankResult> results = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Double score = scores.get(keys.get(i));
+            results.add(RerankResult.of(i, score != null ? score : Double.NEGATIVE_INFINITY, candidates.get(i)));
+        }
+        results.sort(RerankResult::compareByScore);
+        int limit = topK != null ? Math.min(topK, results.size()) : results.size();
+        return results.subList(0, limit);
     }
 
 
@@ -251,14 +337,14 @@ public class RerankerService {
         
         // 检查缓存
         if (config.enableCache()) {
-            String cacheKey = generateSimilarityCacheKey(text1, text2);
-            CacheEntry<?> cachedEntry = memoryCache.get(cacheKey);
-            if (cachedEntry != null && !cachedEntry.isExpired() && cachedEntry.getValue() instanceof Double) {
-                cacheHits.incrementAndGet();
+            Double cachedSimilarity = pairScoreCache.getIfPresent(similarityKey(text1, text2));
+            if (cachedSimilarity != null) {
+                pairHits.incrementAndGet();
+                fullyCachedRequests.incrementAndGet();
                 log.debug("Similarity cache hit for texts: {} chars, {} chars", text1.length(), text2.length());
-                return Mono.just((Double) cachedEntry.getValue());
+                return Mono.just(cachedSimilarity);
             }
-            cacheMisses.incrementAndGet();
+            pairMisses.incrementAndGet();
         }
         
         return calculateSimilarityWithResilience(text1, text2);
@@ -342,14 +428,7 @@ public class RerankerService {
         }
         
         return callRerankAPI(query, candidates, topK)
-            .doOnNext(results -> {
-                recordSuccess();
-                // 缓存结果
-                if (config.enableCache()) {
-                    String cacheKey = generateRerankCacheKey(query, candidates, topK);
-                    cacheResult(cacheKey, results);
-                }
-            })
+            .doOnNext(results -> recordSuccess())
             .doOnError(error -> recordFailure())
             .onErrorResume(error -> {
                 log.warn("Reranker API failed: {}, attempting fallback", error.getMessage());
@@ -367,13 +446,13 @@ public class RerankerService {
             return fallbackToSimpleSimilarity(text1, text2);
         }
         
+        pairsSentToModel.incrementAndGet();
         return callSimilarityAPI(text1, text2)
             .doOnNext(similarity -> {
                 recordSuccess();
                 // 缓存结果
                 if (config.enableCache()) {
-                    String cacheKey = generateSimilarityCacheKey(text1, text2);
-                    cacheResult(cacheKey, similarity);
+                    pairScoreCache.put(similarityKey(text1, text2), similarity);
                 }
             })
             .doOnError(error -> recordFailure())
@@ -441,6 +520,15 @@ public class RerankerService {
      * 调用 Reranker API
      */
     private Mono<List<RerankResult>> callRerankAPI(String query, List<String> candidates, Integer topK) {
+        if (localModel != null) {
+            int k = topK != null ? topK : candidates.size();
+            return Mono.fromCallable(() -> localModel.rerank(query, candidates, k))
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(Duration.ofMillis(config.timeoutMs()))
+                .retryWhen(createRetrySpec())
+                .onErrorMap(WebClientResponseException.class, this::mapWebClientException);
+        }
+
         Map<String, Object> requestBody = Map.of(
             "query", query,
             "texts", candidates,
@@ -468,6 +556,14 @@ public class RerankerService {
      * 调用 Similarity API
      */
     private Mono<Double> callSimilarityAPI(String text1, String text2) {
+        if (localModel != null) {
+            return Mono.fromCallable(() -> localModel.similarity(text1.trim(), text2.trim()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(Duration.ofMillis(config.timeoutMs()))
+                .retryWhen(createRetrySpec())
+                .onErrorMap(WebClientResponseException.class, this::mapWebClientException);
+        }
+
         String similarityPath = buildSimilarityApiPath();
         
         Map<String, String> requestBody = Map.of(
@@ -657,59 +753,15 @@ public class RerankerService {
 
     // ==================== 缓存相关方法 ====================
 
-    /**
-     * 缓存结果
-     */
-    private <T> void cacheResult(String cacheKey, T value) {
-        CacheEntry<T> entry = new CacheEntry<>(value, 
-            System.currentTimeMillis() + config.cacheExpirationMs());
-        memoryCache.put(cacheKey, entry);
-        
-        // 检查缓存大小限制
-        if (memoryCache.size() > config.cacheMaxSize()) {
-            evictOldestEntries();
-        }
-        
-        log.debug("Cached result for key: {}", cacheKey.substring(0, Math.min(16, cacheKey.length())));
-    }
-
-    /**
-     * 清理最旧的缓存条目
-     */
-    private void evictOldestEntries() {
-        int targetSize = (int) (config.cacheMaxSize() * 0.8);
-        int toEvict = memoryCache.size() - targetSize;
-        
-        if (toEvict <= 0) {
-            return;
-        }
-        
-        memoryCache.entrySet().stream()
-            .sorted((e1, e2) -> Long.compare(e1.getValue().getExpirationTime(), e2.getValue().getExpirationTime()))
-            .limit(toEvict)
-            .forEach(entry -> memoryCache.remove(entry.getKey()));
-        
-        log.debug("Evicted {} oldest cache entries, cache size now: {}", toEvict, memoryCache.size());
-    }
-
-    /**
-     * 生成重排序缓存键
-     */
-    private String generateRerankCacheKey(String query, List<String> candidates, Integer topK) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("rerank_").append(query.hashCode()).append("_");
-        sb.append(candidates.hashCode()).append("_").append(topK);
-        return calculateHash(sb.toString());
-    }
-
     /**
      * 生成相似度缓存键（确保顺序无关）
      */
-    private String generateSimilarityCacheKey(String text1, String text2) {
-        String key = text1.compareTo(text2) < 0 ? 
-            "sim_" + text1.hashCode() + "_" + text2.hashCode() :
-            "sim_" + text2.hashCode() + "_" + text1.hashCode();
-        return calculateHash(key);
+    private PairKey similarityKey(String text1, String text2) {
+        String hash1 = calculateHash(text1);
+        String hash2 = calculateHash(text2);
+        return hash1.compareTo(hash2) < 0
+            ? new PairKey(PairType.SIMILARITY, hash1, hash2)
+            : new PairKey(PairType.SIMILARITY, hash2, hash1);
     }
 
     /**
@@ -737,10 +789,12 @@ public class RerankerService {
      * 清除所有缓存
      */
     public void clearCache() {
-        memoryCache.clear();
-        cacheHits.set(0);
-        cacheMisses.set(0);
+        pairScoreCache.invalidateAll();
+        pairHits.set(0);
+        pairMisses.set(0);
         totalRequests.set(0);
+        fullyCachedRequests.set(0);
+        pairsSentToModel.set(0);
         log.info("All reranker caches cleared");
     }
 
@@ -749,10 +803,14 @@ public class RerankerService {
      */
     public RerankerCacheStatistics getCacheStatistics() {
         return RerankerCacheStatistics.create(
-            cacheHits.get(),
-            cacheMisses.get(),
-            memoryCache.size(),
-            config.cacheMaxSize()
+            pairHits.get(),
+            pairMisses.get(),
+            totalRequests.get(),
+            fullyCachedRequests.get(),
+            pairsSentToModel.get(),
+            pairScoreCache.estimatedSize(),
+            config.cacheMaxSize(),
+            pairScoreCache.stats().evictionCount()
         );
     }
 
@@ -828,27 +886,21 @@ public class RerankerService {
     // ==================== 内部类 ====================
 
     /**
-     * 缓存条目
+     * 得分对类型
      */
-    private static class CacheEntry<T> {
-        private final T value;
-        private final long expirationTime;
-        
-        public CacheEntry(T value, long expirationTime) {
-            this.value = value;
-            this.expirationTime = expirationTime;
-        }
-        
-        public T getValue() {
-            return value;
-        }
-        
-        public long getExpirationTime() {
-            return expirationTime;
-        }
-        
-        public boolean isExpired() {
-            return System.currentTimeMillis() > expirationTime;
+    private enum PairType {
+        /** 查询-文档重排序得分 */
+        RERANK,
+        /** 文本相似度（顺序无关） */
+        SIMILARITY
+    }
+
+    /**
+     * 得分对缓存键，文本以哈希表示
+     */
+    private record PairKey(PairType type, String left, String right) {
+        static PairKey rerank(String queryHash, String documentHash) {
+            return new PairKey(PairType.RERANK, queryHash, documentHash);
         }
     }
 
@@ -0,0 +1,190 @@
+package com.inkflow.module.rag.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.SearchResult;
+import com.inkflow.module.rag.dto.SearchResultCacheStatistics;
+import com.inkflow.module.rag.event.KnowledgeChunkChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 检索结果缓存
+ *
+ * 按 (项目, 规范化查询, 数量, 来源类型) 缓存混合检索结果。每个项目维护一个索引版本号，
+ * knowledge_chunks 写入事务提交后递增；检索开始时记录版本，只有写入时版本仍为当前版本的条目才会命中，
+ * 因此检索期间发生的写入也不会产生陈旧结果。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+@Slf4j
+@Service
+public class SearchResultCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final RagProperties ragProperties;
+    private final Cache<SearchKey, CachedResults> cache;
+
+    /** 项目索引版本 */
+    private final Map<UUID, AtomicLong> projectVersions = new ConcurrentHashMap<>();
+    /** 全局版本，未知项目的写入（只有来源ID）时递增 */
+    private final AtomicLong globalVersion = new AtomicLong(0);
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong staleEvictions = new AtomicLong(0);
+    private final AtomicLong versionBumps = new AtomicLong(0);
+
+    /**
+     * 缓存键
+     *
+     * @param projectId 项目ID
+     * @param query 规范化后的查询
+     * @param limit 结果数量
+     * @param sourceType 来源类型，null表示不过滤
+     */
+    public record SearchKey(UUID projectId, String query, int limit, String sourceType) {}
+
+    /**
+     * 索引版本快照
+     */
+    public record IndexVersion(long project, long global) {}
+
+    private record CachedResults(IndexVersion version, List<SearchResult> results) {}
+
+    public SearchResultCache(RagProperties ragProperties) {
+        this.ragProperties = ragProperties;
+        RagProperties.ResultCacheConfig config = ragProperties.search().resultCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.maxSize())
+                .expireAfterWrite(Duration.ofMillis(config.ttlMs()))
+                .build();
+    }
+
+    /**
+     * 是否启用检索结果缓存
+     */
+    public boolean isEnabled() {
+        return ragProperties.search().resultCache().enabled();
+    }
+
+    /**
+     * 构建缓存键，查询文本去除首尾空白、合并连续空白并转小写
+     */
+    public SearchKey key(UUID projectId, String query, int limit, String sourceType) {
+        String normalized = query == null ? "" : WHITESPACE.matcher(query.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+        return new SearchKey(projectId, normalized, limit, sourceType);
+    }
+
+    /**
+     * 获取项目当前索引版本，检索开始前调用
+     */
+    public IndexVersion currentVersion(UUID projectId) {
+        AtomicLong version = projectVersions.get(projectId);
+        return new IndexVersion(version != null ? version.get() : 0L, globalVersion.get());
+    }
+
+    /**
+     * 读取缓存，版本过期的条目直接淘汰
+     *
+     * @return 结果副本，调用方可自由修改
+     */
+    public Optional<List<SearchResult>> get(SearchKey key) {
+        CachedResults cached = cache.getIfPresent(key);
+        if (cached == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        if (!cached.version().equals(currentVersion(key.projectId()))) {
+            cache.asMap().remove(key, cached);
+            staleEvictions.incrementAndGet();
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(copyOf(cached.results()));
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param version 检索开始时的索引版本；检索期间版本已变化时不写入
+     */
+    public void put(SearchKey key, IndexVersion version, List<SearchResult> results) {
+        if (!version.equals(currentVersion(key.projectId()))) {
+            return;
+        }
+        cache.put(key, new CachedResults(version, copyOf(results)));
+    }
+
+    /**
+     * 知识块写入提交后递增项目索引版本
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onKnowledgeChunkChanged(KnowledgeChunkChangedEvent event) {
+        versionBumps.incrementAndGet();
+        if (event.getProjectId() == null) {
+            globalVersion.incrementAndGet();
+            return;
+        }
+        projectVersions.computeIfAbsent(event.getProjectId(), id -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 获取检索结果缓存统计
+     */
+    public SearchResultCacheStatistics getStatistics() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return SearchResultCacheStatistics.builder()
+                .enabled(isEnabled())
+                .size(cache.estimatedSize())
+                .maxSize(ragProperties.search().resultCache().maxSize())
+                .hits(hitCount)
+                .misses(misses.get())
+                .hitRate(total > 0 ? (double) hitCount / total : 0.0)
+                .staleEvictions(staleEvictions.get())
+                .versionBumps(versionBumps.get())
+                .trackedProjects(projectVersions.size())
+                .build();
+    }
+
+    /**
+     * 复制结果列表，列表、结果对象和元数据均为新实例，读写双方互不影响
+     */
+    private static List<SearchResult> copyOf(List<SearchResult> results) {
+        List<SearchResult> copy = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            copy.add(result.toBuilder()
+                    .metadata(result.getMetadata() != null ? new HashMap<>(result.getMetadata()) : null)
+                    .build());
+        }
+        return copy;
+    }
+}
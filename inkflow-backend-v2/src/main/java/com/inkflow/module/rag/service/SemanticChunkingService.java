@@ -4,6 +4,7 @@ import com.inkflow.module.rag.config.RagProperties;
 import com.inkflow.module.rag.dto.ChildChunk;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.*;
@@ -16,8 +17,9 @@ import java.util.stream.Collectors;
  * 实现基于语义断崖检测的智能分块，保持语义边界完整性。
  * 核心功能：
  * 1. 句子拆分（保护引号内容）
- * 2. 语义断崖检测（基于相邻句子相似度）
- * 3. 智能合并（尊重断崖位置）
+ * 2. 语义断崖检测（基于相邻句子相似度）：滑动窗口内先用本地词面相似度预筛选，
+ *    只对词面相似度最低的一部分边界调用Reranker/Embedding打分，长章节无需为每个句子生成向量
+ * 3. 智能合并（尊重断崖位置），打分时生成的句子向量可直接作为单句子块的向量复用
 
  *
  * @author zsg
@@ -48,6 +50,28 @@ public class SemanticChunkingService {
         "([\u3002\uff01\uff1f.!?]+)(?![^\u201c\u300c\u300e\"]*[\u201d\u300d\u300f\"])"
     );
 
+    // 词面相似度忽略的高频虚字
+    private static final String LEXICAL_STOP_CHARS = "的了是在和与也就都而及着又把被这那之其";
+
+    // Reranker逐对打分的并发数
+    private static final int RERANKER_CONCURRENCY = 8;
+
+    /**
+     * 断崖检测结果
+     *
+     * @param cliffs 断崖位置（在第i个句子后断开）
+     * @param sentenceEmbeddings 打分过程中生成的句子向量
+     */
+    private record CliffDetection(List<Integer> cliffs, Map<String, float[]> sentenceEmbeddings) {}
+
+    /**
+     * 候选边界的语义打分
+     *
+     * @param scores 各边界的相似度，非候选边界为 NaN
+     * @param sentenceEmbeddings 打分过程中生成的句子向量
+     */
+    private record SemanticScores(double[] scores, Map<String, float[]> sentenceEmbeddings) {}
+
     public SemanticChunkingService(
             RerankerService rerankerService,
             EmbeddingService embeddingService,
@@ -81,13 +105,13 @@ public class SemanticChunkingService {
             return Mono.just(List.of(createChildChunk(content.trim(), 0, 0, content.length())));
         }
 
-        // 2. 计算相邻句子相似度
-        return calculateAdjacentSimilarities(sentences)
-                .map(similarities -> {
-                    // 3. 检测语义断崖
-                    List<Integer> cliffPositions = detectSemanticCliffs(similarities);
-                    // 4. 合并句子为子块
-                    return mergeSentencesIntoChunks(sentences, cliffPositions, content);
+        // 2. 窗口化检测语义断崖（词面预筛选 + 候选边界语义打分）
+        return detectSemanticCliffs(sentences)
+                .map(detection -> {
+                    // 3. 合并句子为子块，复用已生成的句子向量
+                    List<ChildChunk> chunks = mergeSentencesIntoChunks(sentences, detection.cliffs(), content);
+                    attachSentenceEmbeddings(chunks, detection.sentenceEmbeddings());
+                    return chunks;
                 })
                 .onErrorResume(e -> {
                     log.warn("Semantic split failed, fallback to simple chunking: {}", e.getMessage());
@@ -258,49 +282,146 @@ public class SemanticChunkingService {
     // ==================== 相似度计算 ====================
 
     /**
-     * 计算相邻句子的相似度
+     * 计算相邻句子的词面相似度
+     * 基于字符一元和二元组的Dice系数，忽略标点和高频虚字，纯本地计算
      *
      * @param sentences 句子列表
-     * @return 相似度列表（长度 = sentences.size() - 1）
+     * @return 相似度数组（长度 = sentences.size() - 1）
      */
-    private Mono<List<Double>> calculateAdjacentSimilarities(List<String> sentences) {
-        if (sentences == null || sentences.size() < 2) {
-            return Mono.just(Collections.emptyList());
+    private double[] calculateLexicalSimilarities(List<String> sentences) {
+        double[] similarities = new double[sentences.size() - 1];
+        long[] previous = lexicalGrams(sentences.get(0));
+        for (int i = 0; i < similarities.length; i++) {
+            long[] next = lexicalGrams(sentences.get(i + 1));
+            similarities[i] = diceCoefficient(previous, next);
+            previous = next;
         }
+        return similarities;
+    }
 
-        // 优先使用Reranker计算相似度（如果配置启用）
+    /**
+     * 提取句子的字符一元、二元组，编码为排序去重的long数组
+     * 二元组编码为 (c1 << 16 | c2)，一元组编码为负数，互不冲突
+     */
+    private long[] lexicalGrams(String sentence) {
+        long[] grams = new long[sentence.length() * 2];
+        int count = 0;
+        char previous = 0;
+        for (int i = 0; i < sentence.length(); i++) {
+            char c = Character.toLowerCase(sentence.charAt(i));
+            if (!Character.isLetterOrDigit(c) || LEXICAL_STOP_CHARS.indexOf(c) >= 0) {
+                previous = 0;
+                continue;
+            }
+            grams[count++] = -1L - c;
+            if (previous != 0) {
+                grams[count++] = ((long) previous << 16) | c;
+            }
+            previous = c;
+        }
+        long[] sorted = Arrays.copyOf(grams, count);
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+
+    /**
+     * 两个排序去重数组的Dice系数
+     */
+    private double diceCoefficient(long[] a, long[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return 0.0;
+        }
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return 2.0 * common / (a.length + b.length);
+    }
+
+    /**
+     * 为候选边界计算语义相似度
+     * 优先使用Reranker（如果配置启用），否则对候选边界两侧的句子批量生成Embedding。
+     * 任一边界的Reranker打分失败或无结果时整批改用Embedding打分：
+     * Reranker分数与余弦相似度不可比，不能逐个边界混用，也不能以最低分代替（会被误判为断崖）
+     */
+    private Mono<SemanticScores> scoreCandidateBoundaries(List<String> sentences, List<Integer> candidates) {
         if (config.useReranker() && rerankerService.isServiceAvailable()) {
-            return rerankerService.calculateAdjacentSimilarities(sentences)
+            double[] scores = newScores(sentences);
+            return Flux.fromIterable(candidates)
+                    .flatMapSequential(boundary -> rerankerService
+                            .calculateSimilarity(sentences.get(boundary), sentences.get(boundary + 1))
+                            .switchIfEmpty(Mono.error(() -> new IllegalStateException(
+                                    "Reranker returned no score for boundary " + boundary))),
+                            RERANKER_CONCURRENCY)
+                    .collectList()
+                    .map(similarities -> {
+                        for (int i = 0; i < candidates.size(); i++) {
+                            scores[candidates.get(i)] = similarities.get(i);
+                        }
+                        return new SemanticScores(scores, Map.of());
+                    })
                     .onErrorResume(e -> {
-                        log.warn("Reranker similarity failed, falling back to embedding: {}", e.getMessage());
-                        return calculateSimilaritiesWithEmbedding(sentences);
+                        log.warn("Reranker boundary scoring failed, using embeddings: {}", e.getMessage());
+                        return scoreWithEmbeddings(sentences, candidates);
                     });
         }
-
-        // 使用Embedding计算相似度
-        return calculateSimilaritiesWithEmbedding(sentences);
+        return scoreWithEmbeddings(sentences, candidates);
     }
 
     /**
-     * 使用Embedding计算相邻句子相似度
+     * 只为候选边界两侧的句子批量生成向量，以余弦相似度打分
      */
-    private Mono<List<Double>> calculateSimilaritiesWithEmbedding(List<String> sentences) {
-        return embeddingService.generateEmbeddingsBatch(sentences)
+    private Mono<SemanticScores> scoreWithEmbeddings(List<String> sentences, List<Integer> candidates) {
+        Set<String> texts = new LinkedHashSet<>();
+        for (int boundary : candidates) {
+            texts.add(sentences.get(boundary));
+            texts.add(sentences.get(boundary + 1));
+        }
+        List<String> textList = new ArrayList<>(texts);
+        return embeddingService.generateEmbeddingsBatch(textList)
                 .map(embeddings -> {
-                    List<Double> similarities = new ArrayList<>();
-                    for (int i = 0; i < embeddings.size() - 1; i++) {
-                        double similarity = cosineSimilarity(embeddings.get(i), embeddings.get(i + 1));
-                        similarities.add(similarity);
+                    double[] scores = newScores(sentences);
+                    Map<String, float[]> byText = new HashMap<>(textList.size() * 2);
+                    for (int i = 0; i < textList.size() && i < embeddings.size(); i++) {
+                        byText.put(textList.get(i), embeddings.get(i));
                     }
-                    return similarities;
-                })
-                .onErrorReturn(Collections.emptyList());
+                    for (int boundary : candidates) {
+                        scores[boundary] = cosineSimilarity(
+                                byText.get(sentences.get(boundary)), byText.get(sentences.get(boundary + 1)));
+                    }
+                    return new SemanticScores(scores, byText);
+                });
+    }
+
+    /**
+     * 边界分数数组，未打分的边界为NaN
+     */
+    private static double[] newScores(List<String> sentences) {
+        double[] scores = new double[sentences.size() - 1];
+        Arrays.fill(scores, Double.NaN);
+        return scores;
     }
 
     /**
-     * 计算余弦相似度
+     * 计算余弦相似度（包可见，供基准测试）
      */
-    private double cosineSimilarity(float[] v1, float[] v2) {
+    static double cosineSimilarity(float[] v1, float[] v2) {
         if (v1 == null || v2 == null || v1.length == 0 || v2.length == 0 || v1.length != v2.length) {
             return 0.0;
         }
@@ -323,49 +444,82 @@ public class SemanticChunkingService {
 
     /**
      * 检测语义断崖位置
-     * 阈值：相似度低于第20百分位的位置标记为断崖
      *
-     * @param similarities 相邻句子相似度列表
-     * @return 断崖位置列表（索引从1开始，表示在第i个句子后断开）
+     * 1. 计算所有相邻句子的词面相似度（本地，无外部调用）
+     * 2. 以每个边界为中心取 windowSentences 个边界的滑动窗口，
+     *    词面相似度排在窗口最低 lexicalCandidateRatio 的边界作为候选
+     * 3. 仅对候选边界做语义打分（一次批量Embedding或并发Reranker）
+     * 4. 候选边界的语义相似度在窗口内排在最低 cliffThreshold 比例时标记为断崖
+     *
+     * 语义打分失败时使用词面相似度代替。
+     *
+     * @param sentences 句子列表
+     * @return 断崖位置（索引从1开始，表示在第i个句子后断开）和已生成的句子向量
      */
-    private List<Integer> detectSemanticCliffs(List<Double> similarities) {
-        List<Integer> cliffs = new ArrayList<>();
-        
-        if (similarities == null || similarities.isEmpty()) {
-            return cliffs;
-        }
-
-        // 计算动态阈值：基于第20百分位
-        double threshold = calculatePercentileThreshold(similarities, config.cliffThreshold());
-
-        for (int i = 0; i < similarities.size(); i++) {
-            if (similarities.get(i) <= threshold) {
-                // 断崖位置 = i + 1（表示在第i个句子后断开）
-                cliffs.add(i + 1);
+    private Mono<CliffDetection> detectSemanticCliffs(List<String> sentences) {
+        double[] lexical = calculateLexicalSimilarities(sentences);
+        double candidateRatio = Math.max(config.lexicalCandidateRatio(), config.cliffThreshold());
+        boolean[] candidate = selectWindowLowest(lexical, null, candidateRatio);
+
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < candidate.length; i++) {
+            if (candidate[i]) {
+                candidates.add(i);
             }
         }
 
-        log.debug("Detected {} semantic cliffs with threshold {}", cliffs.size(), threshold);
-        return cliffs;
+        return scoreCandidateBoundaries(sentences, candidates)
+                .onErrorResume(e -> {
+                    log.warn("Semantic boundary scoring failed, using lexical similarity: {}", e.getMessage());
+                    return Mono.just(new SemanticScores(lexical, Map.of()));
+                })
+                .map(semantic -> {
+                    boolean[] cliff = selectWindowLowest(semantic.scores(), candidate, config.cliffThreshold());
+                    List<Integer> cliffs = new ArrayList<>();
+                    for (int i = 0; i < cliff.length; i++) {
+                        if (cliff[i]) {
+                            // 断崖位置 = i + 1（表示在第i个句子后断开）
+                            cliffs.add(i + 1);
+                        }
+                    }
+                    log.debug("Detected {} semantic cliffs: sentences={}, scoredBoundaries={}, embeddedSentences={}",
+                            cliffs.size(), sentences.size(), candidates.size(), semantic.sentenceEmbeddings().size());
+                    return new CliffDetection(cliffs, semantic.sentenceEmbeddings());
+                });
     }
 
     /**
-     * 计算百分位阈值
-     * 
-     * @param values 值列表
-     * @param percentile 百分位（0-1）
-     * @return 阈值
+     * 选出在各自滑动窗口内分数最低的边界
+     * 窗口以边界为中心、包含 windowSentences 个边界；同分时位置靠前者优先
+     *
+     * @param scores 边界分数
+     * @param eligible 参与比较的边界，null表示全部
+     * @param ratio 每个窗口选出的比例（至少1个）
+     * @return 入选标记
      */
-    private double calculatePercentileThreshold(List<Double> values, double percentile) {
-        if (values.isEmpty()) {
-            return 0.0;
+    private boolean[] selectWindowLowest(double[] scores, boolean[] eligible, double ratio) {
+        int size = scores.length;
+        int window = Math.min(config.windowSentences(), size);
+        boolean[] selected = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            if (eligible != null && !eligible[i]) {
+                continue;
+            }
+            int lo = Math.max(0, Math.min(i - window / 2, size - window));
+            int hi = lo + window;
+            int quota = Math.max(1, (int) (window * ratio));
+            int rank = 0;
+            for (int j = lo; j < hi && rank < quota; j++) {
+                if (j == i || (eligible != null && !eligible[j])) {
+                    continue;
+                }
+                if (scores[j] < scores[i] || (scores[j] == scores[i] && j < i)) {
+                    rank++;
+                }
+            }
+            selected[i] = rank < quota;
         }
-        
-        List<Double> sorted = new ArrayList<>(values);
-        Collections.sort(sorted);
-        
-        int index = Math.max(0, (int) (sorted.size() * percentile) - 1);
-        return sorted.get(index);
+        return selected;
     }
 
 
@@ -510,6 +664,18 @@ public class SemanticChunkingService {
         return chunks;
     }
 
+    /**
+     * 单句子块的内容与句子相同，直接复用断崖检测时生成的向量
+     */
+    private void attachSentenceEmbeddings(List<ChildChunk> chunks, Map<String, float[]> sentenceEmbeddings) {
+        if (sentenceEmbeddings.isEmpty()) {
+            return;
+        }
+        for (ChildChunk chunk : chunks) {
+            chunk.setEmbedding(sentenceEmbeddings.get(chunk.getContent()));
+        }
+    }
+
     /**
      * 查找内容在原文中的结束位置
      */
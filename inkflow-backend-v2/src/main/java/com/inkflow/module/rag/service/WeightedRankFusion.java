@@ -0,0 +1,309 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.dto.RankFusionStatistics;
+import com.inkflow.module.rag.dto.SearchResult;
+import com.inkflow.module.rag.index.LatencyRecorder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多路加权RRF融合引擎
+ *
+ * 融合分数 = Σ weight_i / (k_i + rank_i)，以 sourceId 为文档键，每一路只计文档的最佳排名。
+ * - 按排名逐轮扫描所有召回列表，分数累加在原始数组中
+ * - 每轮计算剩余列表能贡献的分数上界，当 top-k 之外的最高分加上界仍低于第 k 名时，
+ *   top-k 集合已确定：后续只为 top-k 成员累加分数，不再登记新文档
+ * - 最终用有界小顶堆选出 top-k
+ *
+ * 同时统计各路召回的重叠率和对最终结果的贡献。
+ *
+ * @author zsg
+ * @date 2025/12/17
+ */
+class WeightedRankFusion {
+
+    /** 召回路数上限（按位记录文档出现在哪些列表中） */
+    private static final int MAX_LISTS = Long.SIZE;
+
+    // ==================== 监控指标 ====================
+
+    private final AtomicLong fusions = new AtomicLong(0);
+    private final AtomicLong earlyCutoffs = new AtomicLong(0);
+    private final AtomicLong candidates = new AtomicLong(0);
+    private final AtomicLong overlappingCandidates = new AtomicLong(0);
+    private final AtomicLong skippedEntries = new AtomicLong(0);
+    private final Map<String, RetrieverCounters> retrieverCounters = new ConcurrentHashMap<>();
+    private final LatencyRecorder fusionTime = new LatencyRecorder(2048);
+
+    /**
+     * 一路召回的排序结果
+     *
+     * @param name 召回名称
+     * @param weight 融合权重
+     * @param k RRF常数
+     * @param results 按相关性降序排列的结果
+     */
+    record RankedList(String name, double weight, double k, List<SearchResult> results) {}
+
+    private static final class RetrieverCounters {
+        final AtomicLong participations = new AtomicLong(0);
+        final AtomicLong results = new AtomicLong(0);
+        final AtomicLong topHits = new AtomicLong(0);
+        final AtomicLong exclusiveTopHits = new AtomicLong(0);
+    }
+
+    /**
+     * 融合多路召回结果
+     *
+     * @param lists 各路召回结果
+     * @param limit 返回数量
+     * @return 按融合分数降序的结果，rrfScore 已设置
+     */
+    List<SearchResult> fuse(List<RankedList> lists, int limit) {
+        if (lists.size() > MAX_LISTS) {
+            throw new IllegalArgumentException("召回路数超过上限: " + lists.size());
+        }
+        long startNanos = System.nanoTime();
+
+        int listCount = lists.size();
+        int total = 0;
+        int maxLength = 0;
+        double[] weights = new double[listCount];
+        double[] ks = new double[listCount];
+        int[] lengths = new int[listCount];
+        for (int i = 0; i < listCount; i++) {
+            RankedList list = lists.get(i);
+            weights[i] = list.weight();
+            ks[i] = list.k();
+            lengths[i] = list.weight() > 0 ? list.results().size() : 0;
+            total += lengths[i];
+            maxLength = Math.max(maxLength, lengths[i]);
+        }
+        if (total == 0 || limit <= 0) {
+            record(lists, new long[0], false, startNanos);
+            return new ArrayList<>();
+        }
+
+        // 文档槽位：分数、出现过的列表位图、首次出现的结果
+        Map<UUID, Integer> slotOf = new HashMap<>(total * 2);
+        double[] scores = new double[total];
+        long[] seenIn = new long[total];
+        SearchResult[] firstSeen = new SearchResult[total];
+        int slots = 0;
+
+        boolean[] inTop = null;
+        int skipped = 0;
+
+        for (int rank = 0; rank < maxLength; rank++) {
+            for (int i = 0; i < listCount; i++) {
+                if (rank >= lengths[i]) {
+                    continue;
+                }
+                SearchResult result = lists.get(i).results().get(rank);
+                Integer slot = slotOf.get(result.getSourceId());
+                if (slot == null) {
+                    if (inTop != null) {
+                        skipped++;
+                        continue;
+                    }
+                    slot = slots++;
+                    slotOf.put(result.getSourceId(), slot);
+                    firstSeen[slot] = result;
+                } else if ((seenIn[slot] & (1L << i)) != 0 || (inTop != null && !inTop[slot])) {
+                    // 同一列表只计最佳排名；top-k 确定后不再为集合外文档累加
+                    continue;
+                }
+                scores[slot] += weights[i] / (ks[i] + rank + 1);
+                seenIn[slot] |= 1L << i;
+            }
+
+            if (inTop == null && slots > limit && rank + 1 < maxLength) {
+                inTop = settledTop(scores, slots, limit, remainingBound(weights, ks, lengths, rank + 1));
+            }
+        }
+
+        int[] top = selectTop(scores, slots, limit);
+        List<SearchResult> fused = new ArrayList<>(top.length);
+        long[] topSeenIn = new long[top.length];
+        for (int j = 0; j < top.length; j++) {
+            SearchResult result = firstSeen[top[j]];
+            result.setRrfScore(scores[top[j]]);
+            fused.add(result);
+            topSeenIn[j] = seenIn[top[j]];
+        }
+
+        int overlapping = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (Long.bitCount(seenIn[slot]) > 1) {
+                overlapping++;
+            }
+        }
+        candidates.addAndGet(slots);
+        overlappingCandidates.addAndGet(overlapping);
+        skippedEntries.addAndGet(skipped);
+        record(lists, topSeenIn, inTop != null, startNanos);
+        return fused;
+    }
+
+    /**
+     * 获取融合统计
+     */
+    RankFusionStatistics getStatistics() {
+        long fusionCount = fusions.get();
+        long candidateCount = candidates.get();
+        Map<String, RankFusionStatistics.RetrieverStats> retrievers = new LinkedHashMap<>();
+        retrieverCounters.forEach((name, counters) -> {
+            long topHits = counters.topHits.get();
+            retrievers.put(name, RankFusionStatistics.RetrieverStats.builder()
+                    .participations(counters.participations.get())
+                    .results(counters.results.get())
+                    .topHits(topHits)
+                    .exclusiveTopHits(counters.exclusiveTopHits.get())
+                    .exclusiveTopRate(topHits > 0 ? (double) counters.exclusiveTopHits.get() / topHits : 0.0)
+                    .build());
+        });
+        return RankFusionStatistics.builder()
+                .fusions(fusionCount)
+                .earlyCutoffs(earlyCutoffs.get())
+                .earlyCutoffRate(fusionCount > 0 ? (double) earlyCutoffs.get() / fusionCount : 0.0)
+                .averageCandidates(fusionCount > 0 ? (double) candidateCount / fusionCount : 0.0)
+                .overlapRate(candidateCount > 0 ? (double) overlappingCandidates.get() / candidateCount : 0.0)
+                .skippedEntries(skippedEntries.get())
+                .fusionP50Micros(fusionTime.percentileMicros(50))
+                .fusionP99Micros(fusionTime.percentileMicros(99))
+                .retrievers(retrievers)
+                .build();
+    }
+
+    // ==================== 内部方法 ====================
+
+    /**
+     * 从 fromRank 开始，单个文档还能从剩余列表获得的最大分数
+     */
+    private static double remainingBound(double[] weights, double[] ks, int[] lengths, int fromRank) {
+        double bound = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (fromRank < lengths[i]) {
+                bound += weights[i] / (ks[i] + fromRank + 1);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * top-k 集合已确定时返回成员标记，否则返回 null
+     * 集合外最高分加剩余上界仍低于第 k 名即可确定（未出现的文档分数不超过上界本身）
+     */
+    private static boolean[] settledTop(double[] scores, int slots, int limit, double bound) {
+        int[] top = selectTop(scores, slots, limit);
+        boolean[] inTop = new boolean[slots];
+        for (int slot : top) {
+            inTop[slot] = true;
+        }
+        double kth = scores[top[top.length - 1]];
+        double bestOutside = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (!inTop[slot]) {
+                bestOutside = Math.max(bestOutside, scores[slot]);
+            }
+        }
+        return bestOutside + bound < kth ? inTop : null;
+    }
+
+    /**
+     * 用有界小顶堆选出分数最高的 limit 个槽位，按分数降序返回；同分时先出现的在前
+     */
+    private static int[] selectTop(double[] scores, int slots, int limit) {
+        int capacity = Math.min(limit, slots);
+        int[] heap = new int[capacity];
+        int size = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (size < capacity) {
+                heap[size] = slot;
+                siftUp(heap, size++, scores);
+            } else if (worse(heap[0], slot, scores)) {
+                heap[0] = slot;
+                siftDown(heap, size, scores);
+            }
+        }
+        int[] ordered = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            ordered[i] = heap[0];
+            heap[0] = heap[i];
+            siftDown(heap, i, scores);
+        }
+        return ordered;
+    }
+
+    /**
+     * a 是否排在 b 之后（分数更低，或同分但出现更晚）
+     */
+    private static boolean worse(int a, int b, double[] scores) {
+        return scores[a] < scores[b] || (scores[a] == scores[b] && a > b);
+    }
+
+    private static void siftUp(int[] heap, int index, double[] scores) {
+        int node = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!worse(node, heap[parent], scores)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = node;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int node = heap[0];
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if (right < size && worse(heap[right], heap[child], scores)) {
+                child = right;
+            }
+            if (!worse(heap[child], node, scores)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = node;
+    }
+
+    private void record(List<RankedList> lists, long[] topSeenIn, boolean earlyCutoff, long startNanos) {
+        fusions.incrementAndGet();
+        if (earlyCutoff) {
+            earlyCutoffs.incrementAndGet();
+        }
+        for (int i = 0; i < lists.size(); i++) {
+            RankedList list = lists.get(i);
+            RetrieverCounters counters = retrieverCounters.computeIfAbsent(list.name(), name -> new RetrieverCounters());
+            counters.participations.incrementAndGet();
+            counters.results.addAndGet(list.results().size());
+            long bit = 1L << i;
+            for (long mask : topSeenIn) {
+                if ((mask & bit) != 0) {
+                    counters.topHits.incrementAndGet();
+                    if (mask == bit) {
+                        counters.exclusiveTopHits.incrementAndGet();
+                    }
+                }
+            }
+        }
+        fusionTime.record(System.nanoTime() - startNanos);
+    }
+}
@@ -1,13 +1,17 @@
 package com.inkflow.module.rag.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.inkflow.module.rag.config.RagProperties;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * zhparser 词典服务
@@ -20,6 +24,9 @@ import java.util.List;
  * - loadCustomDictionary(): 加载自定义词典（预留接口）
  * - validateDictionaryEntry(): 验证词典条目是否有效
  * 
+ * 分词和 tsquery 结果按 (语言配置, 词典版本, 文本) 缓存在本地，避免重复访问数据库；
+ * loadCustomDictionary() 加载成功后词典版本递增，旧结果不再命中。
+ * 
  * @author zsg
  * @date 2025/12/18
  * @see RagProperties.ZhparserConfig
@@ -28,13 +35,50 @@ import java.util.List;
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ZhparserDictionaryService {
 
     private final JdbcTemplate jdbcTemplate;
     private final RagProperties ragProperties;
     private final ZhparserHealthChecker healthChecker;
 
+    /**
+     * 词典版本，自定义词典变更时递增
+     */
+    private final AtomicLong dictionaryVersion = new AtomicLong(0);
+
+    /**
+     * 分词结果缓存，未启用时为null
+     */
+    private final Cache<SegmentationKey, List<String>> segmentationCache;
+
+    /**
+     * tsquery 结果缓存，未启用时为null
+     */
+    private final Cache<SegmentationKey, String> tsqueryCache;
+
+    public ZhparserDictionaryService(JdbcTemplate jdbcTemplate, RagProperties ragProperties,
+                                     ZhparserHealthChecker healthChecker) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ragProperties = ragProperties;
+        this.healthChecker = healthChecker;
+        RagProperties.QueryCacheConfig cacheConfig = ragProperties.fullText().queryCache();
+        if (cacheConfig.enabled()) {
+            this.segmentationCache = Caffeine.newBuilder()
+                    .maximumSize(cacheConfig.segmentationMaxSize())
+                    .expireAfterWrite(Duration.ofMillis(cacheConfig.segmentationTtlMs()))
+                    .recordStats()
+                    .build();
+            this.tsqueryCache = Caffeine.newBuilder()
+                    .maximumSize(cacheConfig.segmentationMaxSize())
+                    .expireAfterWrite(Duration.ofMillis(cacheConfig.segmentationTtlMs()))
+                    .recordStats()
+                    .build();
+        } else {
+            this.segmentationCache = null;
+            this.tsqueryCache = null;
+        }
+    }
+
     /**
      * 测试分词效果
      * 
@@ -53,14 +97,10 @@ public class ZhparserDictionaryService {
         String effectiveLanguage = healthChecker.getEffectiveLanguage();
         
         try {
-            // 使用 ts_debug 获取详细的分词信息
-            // alias 不为空表示该词素被词典识别
-            String sql = """
-                SELECT token FROM ts_debug(?, ?)
-                WHERE alias IS NOT NULL
-                """;
-            
-            List<String> tokens = jdbcTemplate.queryForList(sql, String.class, effectiveLanguage, text);
+            List<String> tokens = segmentationCache == null
+                    ? querySegmentation(effectiveLanguage, text)
+                    : segmentationCache.get(segmentationKey(effectiveLanguage, text),
+                            key -> querySegmentation(key.language(), key.text()));
             
             log.debug("Segmentation test for '{}' using '{}' config: {} tokens found", 
                     truncateForLog(text), effectiveLanguage, tokens.size());
@@ -75,6 +115,19 @@ public class ZhparserDictionaryService {
     }
 
 
+    /**
+     * 查询分词结果
+     */
+    private List<String> querySegmentation(String language, String text) {
+        // 使用 ts_debug 获取详细的分词信息
+        // alias 不为空表示该词素被词典识别
+        String sql = """
+            SELECT token FROM ts_debug(?, ?)
+            WHERE alias IS NOT NULL
+            """;
+        return List.copyOf(jdbcTemplate.queryForList(sql, String.class, language, text));
+    }
+
     /**
      * 测试分词效果（带详细信息）
      * 
@@ -171,6 +224,10 @@ public class ZhparserDictionaryService {
         log.info("Custom dictionary loading completed: {}/{} entries validated", 
                 successCount, entries.size());
         
+        if (successCount > 0) {
+            invalidateSegmentationCache();
+        }
+        
         return successCount;
     }
 
@@ -250,8 +307,10 @@ public class ZhparserDictionaryService {
         String effectiveLanguage = healthChecker.getEffectiveLanguage();
         
         try {
-            String sql = "SELECT plainto_tsquery(?, ?)::text";
-            String result = jdbcTemplate.queryForObject(sql, String.class, effectiveLanguage, query);
+            String result = tsqueryCache == null
+                    ? queryTsquery(effectiveLanguage, query)
+                    : tsqueryCache.get(segmentationKey(effectiveLanguage, query),
+                            key -> queryTsquery(key.language(), key.text()));
             
             log.debug("tsquery for '{}' using '{}': {}", 
                     truncateForLog(query), effectiveLanguage, result);
@@ -265,6 +324,15 @@ public class ZhparserDictionaryService {
         }
     }
 
+    /**
+     * 查询 tsquery 文本，结果为NULL时返回空字符串（缓存不接受null值）
+     */
+    private String queryTsquery(String language, String query) {
+        String sql = "SELECT plainto_tsquery(?, ?)::text";
+        String result = jdbcTemplate.queryForObject(sql, String.class, language, query);
+        return result != null ? result : "";
+    }
+
     /**
      * 检查文本是否匹配查询
      * 
@@ -312,6 +380,46 @@ public class ZhparserDictionaryService {
         );
     }
 
+    // ==================== 分词缓存 ====================
+
+    /**
+     * 使分词和 tsquery 缓存失效
+     * 自定义词典变更后调用，词典版本递增使进行中的旧查询结果也不会再被命中
+     */
+    public void invalidateSegmentationCache() {
+        long version = dictionaryVersion.incrementAndGet();
+        if (segmentationCache != null) {
+            segmentationCache.invalidateAll();
+            tsqueryCache.invalidateAll();
+        }
+        log.info("Segmentation cache invalidated, dictionary version={}", version);
+    }
+
+    /**
+     * 获取分词缓存统计
+     */
+    public SegmentationCacheStats getSegmentationCacheStats() {
+        if (segmentationCache == null) {
+            return new SegmentationCacheStats(false, dictionaryVersion.get(), 0, 0, 0, 0.0);
+        }
+        CacheStats segmentation = segmentationCache.stats();
+        CacheStats tsquery = tsqueryCache.stats();
+        long hits = segmentation.hitCount() + tsquery.hitCount();
+        long misses = segmentation.missCount() + tsquery.missCount();
+        return new SegmentationCacheStats(true, dictionaryVersion.get(),
+                segmentationCache.estimatedSize() + tsqueryCache.estimatedSize(),
+                hits, misses, hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+    }
+
+    private SegmentationKey segmentationKey(String language, String text) {
+        return new SegmentationKey(language, dictionaryVersion.get(), text);
+    }
+
+    /**
+     * 分词缓存键
+     */
+    private record SegmentationKey(String language, long dictionaryVersion, String text) {}
+
     /**
      * 截断文本用于日志输出
      */
@@ -364,6 +472,25 @@ public class ZhparserDictionaryService {
         String lexemes
     ) {}
 
+    /**
+     * 分词缓存统计
+     *
+     * @param enabled 是否启用
+     * @param dictionaryVersion 当前词典版本
+     * @param size 缓存条目数（分词 + tsquery）
+     * @param hits 命中次数
+     * @param misses 未命中（访问数据库）次数
+     * @param hitRate 命中率
+     */
+    public record SegmentationCacheStats(
+        boolean enabled,
+        long dictionaryVersion,
+        long size,
+        long hits,
+        long misses,
+        double hitRate
+    ) {}
+
     /**
      * zhparser 状态信息记录
      */
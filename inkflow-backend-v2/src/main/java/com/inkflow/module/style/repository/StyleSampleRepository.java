@@ -29,10 +29,10 @@ public interface StyleSampleRepository extends JpaRepository<StyleSample, UUID>
     @Query(value = """
         SELECT * FROM style_samples 
         WHERE project_id = :projectId 
-        ORDER BY vector <=> :queryVector::vector 
+        ORDER BY vector <=> cast(:queryVector as halfvec)
         LIMIT :limit
         """, nativeQuery = true)
-    List<StyleSample> findSimilarByProjectId(UUID projectId, String queryVector, int limit);
+    List<StyleSample> findSimilarByProjectId(UUID projectId, float[] queryVector, int limit);
 
     void deleteByProjectId(UUID projectId);
 }
@@ -121,7 +121,7 @@ public class StyleService {
         return embeddingService.generateEmbedding(context)
             .publishOn(Schedulers.boundedElastic())
             .map(queryVector -> styleSampleRepository.findSimilarByProjectId(
-                projectId, Arrays.toString(queryVector), limit))
+                projectId, queryVector, limit))
             .doOnSuccess(samples -> log.debug("检索到 {} 个相似风格样本", samples.size()))
             .doOnError(e -> log.error("检索风格样本失败: projectId={}, error={}", projectId, e.getMessage()));
     }
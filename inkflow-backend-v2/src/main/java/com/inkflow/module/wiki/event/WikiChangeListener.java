@@ -3,21 +3,23 @@ package com.inkflow.module.wiki.event;
 import com.inkflow.module.consistency.service.ProactiveConsistencyService;
 import com.inkflow.module.evolution.entity.EntityType;
 import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.event.KnowledgeChunkChangedEvent;
 import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
 import com.inkflow.module.rag.service.EmbeddingService;
 import com.inkflow.module.rag.service.ParentChildSearchService;
 import com.inkflow.module.wiki.entity.WikiEntry;
 import com.inkflow.module.wiki.repository.WikiEntryRepository;
+import com.inkflow.module.wiki.service.WikiEntryIndexingSourceLoader;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.lang.Nullable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -41,6 +43,7 @@ public class WikiChangeListener {
     private final ParentChildSearchService parentChildSearchService;
     private final KnowledgeChunkRepository knowledgeChunkRepository;
     private final WikiEntryRepository wikiEntryRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * 处理Wiki条目变更事件
@@ -84,18 +87,7 @@ public class WikiChangeListener {
                 }
                 
                 // 构建元数据
-                Map<String, Object> metadata = new HashMap<>();
-                metadata.put("title", entry.getTitle());
-                metadata.put("type", entry.getType());
-                if (entry.getAliases() != null && entry.getAliases().length > 0) {
-                    metadata.put("aliases", entry.getAliases());
-                }
-                if (entry.getTags() != null && entry.getTags().length > 0) {
-                    metadata.put("tags", entry.getTags());
-                }
-                if (entry.getTimeVersion() != null) {
-                    metadata.put("timeVersion", entry.getTimeVersion());
-                }
+                Map<String, Object> metadata = WikiEntryIndexingSourceLoader.indexMetadata(entry);
                 
                 // 创建父子块索引
                 parentChildSearchService.createParentChildIndex(
@@ -145,6 +137,8 @@ public class WikiChangeListener {
         try {
             // 使用 knowledgeChunkRepository.deleteBySourceId 清理所有相关块（父块和子块）
             int deletedCount = knowledgeChunkRepository.deleteBySourceId(event.getEntryId());
+            eventPublisher.publishEvent(KnowledgeChunkChangedEvent.sourceDeleted(
+                    this, event.getProjectId(), event.getEntryId()));
             log.debug("Deleted {} knowledge chunks for WikiEntry: {}", deletedCount, event.getEntryId());
         } catch (Exception e) {
             log.error("知识块清理失败: entryId={}", event.getEntryId(), e);
@@ -1,6 +1,7 @@
 package com.inkflow.module.wiki.repository;
 
 import com.inkflow.module.wiki.entity.WikiEntry;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -89,4 +90,12 @@ public interface WikiEntryRepository extends JpaRepository<WikiEntry, UUID> {
      */
     @Query("SELECT DISTINCT w.timeVersion FROM WikiEntry w WHERE w.projectId = :projectId AND w.timeVersion IS NOT NULL")
     List<String> findDistinctTimeVersionsByProjectId(@Param("projectId") UUID projectId);
+
+    /**
+     * 按ID升序分页列出项目下的条目ID（键集分页，用于全量重建索引）
+     */
+    @Query("SELECT w.id FROM WikiEntry w WHERE w.projectId = :projectId AND w.id > :afterId ORDER BY w.id")
+    List<UUID> findIdsByProjectIdAfter(@Param("projectId") UUID projectId,
+                                       @Param("afterId") UUID afterId,
+                                       Pageable pageable);
 }
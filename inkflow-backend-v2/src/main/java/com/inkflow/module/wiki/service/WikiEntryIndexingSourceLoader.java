@@ -0,0 +1,87 @@
+package com.inkflow.module.wiki.service;
+
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.service.IndexingSourceLoader;
+import com.inkflow.module.wiki.entity.WikiEntry;
+import com.inkflow.module.wiki.repository.WikiEntryRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 知识条目索引来源加载器
+ * 读取条目的最新正文和标题、别名、标签等元数据
+ */
+@Component
+public class WikiEntryIndexingSourceLoader implements IndexingSourceLoader {
+
+    private final WikiEntryRepository wikiEntryRepository;
+
+    public WikiEntryIndexingSourceLoader(WikiEntryRepository wikiEntryRepository) {
+        this.wikiEntryRepository = wikiEntryRepository;
+    }
+
+    @Override
+    public String sourceType() {
+        return KnowledgeChunk.SOURCE_TYPE_WIKI_ENTRY;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<IndexingSource> load(UUID sourceId) {
+        return wikiEntryRepository.findById(sourceId).map(WikiEntryIndexingSourceLoader::toSource);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UUID> listSourceIds(UUID projectId, UUID afterId, int limit) {
+        return wikiEntryRepository.findIdsByProjectIdAfter(projectId, afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countSources(UUID projectId) {
+        return wikiEntryRepository.countByProjectId(projectId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<UUID, IndexingSource> loadAll(Collection<UUID> sourceIds) {
+        Map<UUID, IndexingSource> sources = new LinkedHashMap<>();
+        for (WikiEntry entry : wikiEntryRepository.findAllById(sourceIds)) {
+            sources.put(entry.getId(), toSource(entry));
+        }
+        return sources;
+    }
+
+    private static IndexingSource toSource(WikiEntry entry) {
+        return new IndexingSource(entry.getProjectId(), entry.getContent(), indexMetadata(entry));
+    }
+
+    /**
+     * 构建知识条目索引元数据
+     */
+    public static Map<String, Object> indexMetadata(WikiEntry entry) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("title", entry.getTitle());
+        metadata.put("type", entry.getType());
+        if (entry.getAliases() != null && entry.getAliases().length > 0) {
+            metadata.put("aliases", entry.getAliases());
+        }
+        if (entry.getTags() != null && entry.getTags().length > 0) {
+            metadata.put("tags", entry.getTags());
+        }
+        if (entry.getTimeVersion() != null) {
+            metadata.put("timeVersion", entry.getTimeVersion());
+        }
+        return metadata;
+    }
+}
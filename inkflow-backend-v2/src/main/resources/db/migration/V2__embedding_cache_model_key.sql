@@ -0,0 +1,8 @@
+-- 嵌入缓存按 (model, content_hash) 唯一：同一文本在不同模型下的向量互不覆盖
+ALTER TABLE embedding_cache DROP CONSTRAINT IF EXISTS embedding_cache_content_hash_key;
+DROP INDEX IF EXISTS idx_embedding_cache_hash;
+
+CREATE UNIQUE INDEX uk_embedding_cache_model_hash ON embedding_cache(model, content_hash);
+
+COMMENT ON COLUMN embedding_cache.content_hash IS '文本SHA-256哈希，与model组成唯一键';
+COMMENT ON COLUMN embedding_cache.last_accessed_at IS '最近访问时间，用于LRU淘汰';
@@ -0,0 +1,26 @@
+-- 索引任务发件箱表：与业务写入同事务入队，按来源去抖，由后台工作线程消费
+CREATE TABLE indexing_jobs (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    project_id UUID NOT NULL,
+    source_type VARCHAR(50) NOT NULL,
+    source_id UUID NOT NULL,
+    operation VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    generation BIGINT NOT NULL DEFAULT 1,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    available_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    enqueued_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    locked_at TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE UNIQUE INDEX uk_indexing_jobs_source ON indexing_jobs(source_id);
+CREATE INDEX idx_indexing_jobs_due ON indexing_jobs(status, available_at);
+
+COMMENT ON TABLE indexing_jobs IS 'RAG索引任务队列(发件箱)，每个来源最多一条任务，后写覆盖先写';
+COMMENT ON COLUMN indexing_jobs.operation IS '操作: INDEX 重建索引, DELETE 删除索引';
+COMMENT ON COLUMN indexing_jobs.status IS '状态: PENDING 待执行, RUNNING 执行中, FAILED 重试耗尽';
+COMMENT ON COLUMN indexing_jobs.generation IS '入队代数，每次重新入队递增；执行完成时仅删除同代任务，避免覆盖执行期间的新写入';
+COMMENT ON COLUMN indexing_jobs.available_at IS '最早可执行时间（去抖窗口/退避重试）';
+COMMENT ON COLUMN indexing_jobs.enqueued_at IS '首次入队时间，用于统计索引滞后';
@@ -0,0 +1,12 @@
+-- 二值量化向量：由 embedding 自动生成（每维取符号位），写入知识块时无需应用层额外处理
+-- 两阶段检索先在该列上按汉明距离粗排取候选，再用 halfvec 列精确重排
+ALTER TABLE knowledge_chunks
+    ADD COLUMN embedding_bin bit(1024)
+    GENERATED ALWAYS AS (binary_quantize(embedding)::bit(1024)) STORED;
+
+-- 二值向量HNSW索引（汉明距离），体积约为halfvec索引的1/16
+CREATE INDEX idx_knowledge_chunks_embedding_bin ON knowledge_chunks
+USING hnsw (embedding_bin bit_hamming_ops)
+WITH (m = 16, ef_construction = 128);
+
+COMMENT ON COLUMN knowledge_chunks.embedding_bin IS '1024位二值量化向量(binary_quantize(embedding))，用于两阶段检索的汉明距离粗排';
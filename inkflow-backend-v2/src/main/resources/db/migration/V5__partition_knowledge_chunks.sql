@@ -0,0 +1,162 @@
+-- knowledge_chunks 按项目分区：每个分区有独立的HNSW索引，向量检索经分区裁剪后只遍历本项目所在分区的图
+--
+-- 分区结构：
+--   knowledge_chunks                 LIST (project_id)
+--   ├── knowledge_chunks_p_<项目ID>  大项目的独享分区（由 knowledge_chunks_promote_project 创建）
+--   └── knowledge_chunks_shared      DEFAULT 分区，再按 HASH (project_id) 分为16个子分区
+--
+-- 分区表的主键必须包含分区键，因此主键改为 (id, project_id)，父块外键随之改为 (parent_id, project_id)
+
+ALTER TABLE knowledge_chunks RENAME TO knowledge_chunks_legacy;
+ALTER TABLE knowledge_chunks_legacy RENAME CONSTRAINT knowledge_chunks_pkey TO knowledge_chunks_legacy_pkey;
+DROP TRIGGER IF EXISTS trigger_knowledge_chunks_updated_at ON knowledge_chunks_legacy;
+DROP INDEX IF EXISTS idx_knowledge_chunks_project;
+DROP INDEX IF EXISTS idx_knowledge_chunks_source;
+DROP INDEX IF EXISTS idx_knowledge_chunks_parent;
+DROP INDEX IF EXISTS idx_knowledge_chunks_dirty;
+DROP INDEX IF EXISTS idx_knowledge_chunks_version;
+DROP INDEX IF EXISTS idx_knowledge_chunks_embedding;
+DROP INDEX IF EXISTS idx_knowledge_chunks_embedding_bin;
+DROP INDEX IF EXISTS idx_knowledge_chunks_text_search;
+
+CREATE TABLE knowledge_chunks (
+    id UUID NOT NULL DEFAULT gen_random_uuid(),
+    project_id UUID NOT NULL REFERENCES projects(id) ON DELETE CASCADE,
+    source_type VARCHAR(50) NOT NULL,
+    source_id UUID NOT NULL,
+    parent_id UUID,
+    content TEXT NOT NULL,
+    embedding halfvec(1024),
+    embedding_bin bit(1024) GENERATED ALWAYS AS (binary_quantize(embedding)::bit(1024)) STORED,
+    -- 使用 zhparser chinese 配置进行中文分词，提高中文搜索质量
+    text_search tsvector GENERATED ALWAYS AS (to_tsvector('chinese', COALESCE(content, ''))) STORED,
+    chunk_level VARCHAR(20) DEFAULT 'parent',
+    chunk_order INTEGER DEFAULT 0,
+    version INTEGER DEFAULT 1,
+    is_active BOOLEAN DEFAULT true,
+    is_dirty BOOLEAN DEFAULT false,
+    metadata JSONB DEFAULT '{}',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, project_id),
+    FOREIGN KEY (parent_id, project_id) REFERENCES knowledge_chunks(id, project_id)
+) PARTITION BY LIST (project_id);
+
+CREATE TABLE knowledge_chunks_shared PARTITION OF knowledge_chunks DEFAULT
+    PARTITION BY HASH (project_id);
+
+DO $$
+BEGIN
+    FOR i IN 0..15 LOOP
+        EXECUTE format(
+            'CREATE TABLE knowledge_chunks_shared_%s PARTITION OF knowledge_chunks_shared '
+            'FOR VALUES WITH (MODULUS 16, REMAINDER %s)', i, i);
+    END LOOP;
+END $$;
+
+-- 分区索引：在父表上创建，自动下推到每个分区（含之后挂载的独享分区）
+CREATE INDEX idx_knowledge_chunks_project ON knowledge_chunks(project_id) WHERE is_active = true;
+CREATE INDEX idx_knowledge_chunks_source ON knowledge_chunks(source_type, source_id) WHERE is_active = true;
+CREATE INDEX idx_knowledge_chunks_parent ON knowledge_chunks(parent_id) WHERE parent_id IS NOT NULL;
+CREATE INDEX idx_knowledge_chunks_dirty ON knowledge_chunks(is_dirty) WHERE is_dirty = true;
+CREATE INDEX idx_knowledge_chunks_version ON knowledge_chunks(source_id, version DESC);
+
+-- 每个分区一张HNSW图 (BGE-M3 1024维, halfvec半精度)
+CREATE INDEX idx_knowledge_chunks_embedding ON knowledge_chunks
+USING hnsw (embedding halfvec_cosine_ops)
+WITH (m = 16, ef_construction = 128);
+
+-- 二值量化向量HNSW索引（汉明距离）
+CREATE INDEX idx_knowledge_chunks_embedding_bin ON knowledge_chunks
+USING hnsw (embedding_bin bit_hamming_ops)
+WITH (m = 16, ef_construction = 128);
+
+-- 全文搜索GIN索引
+CREATE INDEX idx_knowledge_chunks_text_search ON knowledge_chunks USING GIN (text_search);
+
+INSERT INTO knowledge_chunks (id, project_id, source_type, source_id, parent_id, content, embedding,
+                              chunk_level, chunk_order, version, is_active, is_dirty, metadata,
+                              created_at, updated_at)
+SELECT id, project_id, source_type, source_id, parent_id, content, embedding,
+       chunk_level, chunk_order, version, is_active, is_dirty, metadata,
+       created_at, updated_at
+FROM knowledge_chunks_legacy;
+
+DROP TABLE knowledge_chunks_legacy;
+
+CREATE TRIGGER trigger_knowledge_chunks_updated_at
+BEFORE UPDATE ON knowledge_chunks
+FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
+
+-- 将项目从共享分区迁移到独享分区，返回独享分区表名；项目已有独享分区时直接返回
+--
+-- 在一个事务内完成，分三个阶段：
+-- 1. 以 SHARE ROW EXCLUSIVE 锁住共享分区（阻塞写入，读取不受影响），把项目的行复制到独立的暂存表并从共享分区删除
+-- 2. 在暂存表上建好与父表一致的主键和全部分区索引（含HNSW图），并添加与分区边界等价的CHECK约束；
+--    暂存表尚未挂载，建索引期间共享分区仍可读
+-- 3. 最后挂载：ATTACH 复用已有索引、借助CHECK约束跳过新分区的校验扫描，
+--    但仍需持有 DEFAULT 共享分区的 ACCESS EXCLUSIVE 锁并扫描共享分区确认没有本项目的行，
+--    这一步会阻塞所有共享分区项目的读写，耗时与共享分区大小成正比，直到事务提交
+CREATE OR REPLACE FUNCTION knowledge_chunks_promote_project(p_project_id UUID)
+RETURNS TEXT AS $$
+DECLARE
+    v_partition TEXT := 'knowledge_chunks_p_' || replace(p_project_id::text, '-', '');
+BEGIN
+    IF to_regclass(v_partition) IS NOT NULL THEN
+        RETURN v_partition;
+    END IF;
+
+    LOCK TABLE knowledge_chunks_shared IN SHARE ROW EXCLUSIVE MODE;
+
+    EXECUTE format('CREATE TABLE %I (LIKE knowledge_chunks INCLUDING DEFAULTS INCLUDING GENERATED)', v_partition);
+    EXECUTE format(
+        'INSERT INTO %I (id, project_id, source_type, source_id, parent_id, content, embedding, '
+        '                chunk_level, chunk_order, version, is_active, is_dirty, metadata, created_at, updated_at) '
+        'SELECT id, project_id, source_type, source_id, parent_id, content, embedding, '
+        '       chunk_level, chunk_order, version, is_active, is_dirty, metadata, created_at, updated_at '
+        'FROM knowledge_chunks_shared WHERE project_id = $1', v_partition)
+    USING p_project_id;
+
+    -- 索引定义与父表的分区索引一致，挂载时直接挂接而不是在排他锁内重建
+    EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I PRIMARY KEY (id, project_id)',
+                   v_partition, v_partition || '_pkey');
+    EXECUTE format('CREATE INDEX %I ON %I (project_id) WHERE is_active = true',
+                   v_partition || '_project', v_partition);
+    EXECUTE format('CREATE INDEX %I ON %I (source_type, source_id) WHERE is_active = true',
+                   v_partition || '_source', v_partition);
+    EXECUTE format('CREATE INDEX %I ON %I (parent_id) WHERE parent_id IS NOT NULL',
+                   v_partition || '_parent', v_partition);
+    EXECUTE format('CREATE INDEX %I ON %I (is_dirty) WHERE is_dirty = true',
+                   v_partition || '_dirty', v_partition);
+    EXECUTE format('CREATE INDEX %I ON %I (source_id, version DESC)',
+                   v_partition || '_version', v_partition);
+    EXECUTE format('CREATE INDEX %I ON %I USING hnsw (embedding halfvec_cosine_ops) '
+                   'WITH (m = 16, ef_construction = 128)',
+                   v_partition || '_emb', v_partition);
+    EXECUTE format('CREATE INDEX %I ON %I USING hnsw (embedding_bin bit_hamming_ops) '
+                   'WITH (m = 16, ef_construction = 128)',
+                   v_partition || '_emb_bin', v_partition);
+    EXECUTE format('CREATE INDEX %I ON %I USING GIN (text_search)',
+                   v_partition || '_tsv', v_partition);
+
+    -- 与分区边界等价的约束，挂载时据此跳过对新分区的全表校验
+    EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I CHECK (project_id = %L)',
+                   v_partition, v_partition || '_bound', p_project_id);
+
+    DELETE FROM knowledge_chunks_shared WHERE project_id = p_project_id;
+
+    -- 挂载时挂接上面的索引和主键，补建外键和触发器
+    EXECUTE format('ALTER TABLE knowledge_chunks ATTACH PARTITION %I FOR VALUES IN (%L)',
+                   v_partition, p_project_id);
+    -- 分区约束已生效，CHECK约束不再需要
+    EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', v_partition, v_partition || '_bound');
+    RETURN v_partition;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMENT ON TABLE knowledge_chunks IS 'RAG知识块表，按项目分区（大项目独享分区，其余哈希分区），支持向量检索和版本控制';
+COMMENT ON TABLE knowledge_chunks_shared IS '知识块共享分区（DEFAULT），按项目哈希分为16个子分区';
+COMMENT ON COLUMN knowledge_chunks.embedding IS '1024维半精度向量嵌入(BGE-M3)，每个分区独立的HNSW索引加速余弦相似度搜索';
+COMMENT ON COLUMN knowledge_chunks.embedding_bin IS '1024位二值量化向量(binary_quantize(embedding))，用于两阶段检索的汉明距离粗排';
+COMMENT ON COLUMN knowledge_chunks.text_search IS 'Full-text search vector using zhparser chinese configuration for high-quality Chinese segmentation';
+COMMENT ON FUNCTION knowledge_chunks_promote_project(UUID) IS '将项目的知识块从共享分区迁移到独享分区，返回分区表名';
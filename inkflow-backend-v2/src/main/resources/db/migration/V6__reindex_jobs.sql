@@ -0,0 +1,36 @@
+-- 项目全量重建索引任务表：按来源类型和来源ID持久化游标，实例崩溃后由其他实例接管续跑
+CREATE TABLE reindex_jobs (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    project_id UUID NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    force_reembed BOOLEAN NOT NULL DEFAULT FALSE,
+    cursor_source_type VARCHAR(50),
+    cursor_source_id UUID,
+    processed_sources BIGINT NOT NULL DEFAULT 0,
+    skipped_sources BIGINT NOT NULL DEFAULT 0,
+    failed_sources BIGINT NOT NULL DEFAULT 0,
+    chunks_written BIGINT NOT NULL DEFAULT 0,
+    total_sources BIGINT,
+    active_millis BIGINT NOT NULL DEFAULT 0,
+    last_error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP,
+    lease_token UUID,
+    locked_at TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 每个项目同时最多一个未结束的重建任务
+CREATE UNIQUE INDEX uk_reindex_jobs_active_project ON reindex_jobs(project_id)
+    WHERE status IN ('PENDING', 'RUNNING');
+CREATE INDEX idx_reindex_jobs_project ON reindex_jobs(project_id, created_at DESC);
+
+COMMENT ON TABLE reindex_jobs IS '项目全量重建索引任务（模型切换、导入、灾备恢复）';
+COMMENT ON COLUMN reindex_jobs.status IS '状态: PENDING 待执行, RUNNING 执行中, COMPLETED 已完成, FAILED 失败, CANCELLED 已取消';
+COMMENT ON COLUMN reindex_jobs.force_reembed IS '是否跳过向量复用和缓存，重新生成全部子块向量';
+COMMENT ON COLUMN reindex_jobs.cursor_source_type IS '游标：当前处理的来源类型，NULL 表示尚未开始';
+COMMENT ON COLUMN reindex_jobs.cursor_source_id IS '游标：当前来源类型下最后一个已提交批次的来源ID';
+COMMENT ON COLUMN reindex_jobs.active_millis IS '累计执行耗时（毫秒），不含排队和崩溃中断时间，用于计算吞吐';
+COMMENT ON COLUMN reindex_jobs.lease_token IS '租约令牌，每次领取时重新生成；进度写入校验令牌，被接管或取消后旧执行者自动停止';
+COMMENT ON COLUMN reindex_jobs.locked_at IS '租约时间，执行中每批续约，超时视为实例崩溃';
@@ -0,0 +1,120 @@
+package com.inkflow.common.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * halfvec 编解码基准测试
+ *
+ * 对比原文本格式（StringBuilder 格式化 + String.split/Float.parseFloat 解析）
+ * 与 pgvector 二进制格式的单行CPU耗时和内存分配。
+ *
+ * 运行方式（在IDE中直接运行 main，或）:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.inkflow.common.util.HalfVecCodecBenchmark
+ * 结果中 gc.alloc.rate.norm 即每行分配的字节数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class HalfVecCodecBenchmark {
+
+    @Param({"1024"})
+    private int dimension;
+
+    private float[] vector;
+    private String text;
+    private byte[] textBytes;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            // 先转半精度再还原，保证与数据库读出的值一致
+            vector[i] = Float.float16ToFloat(Float.floatToFloat16((float) random.nextGaussian() * 0.05f));
+        }
+        text = legacyFormat(vector);
+        textBytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        binary = PgVectorCodec.encodeHalfvec(vector);
+    }
+
+    // ==================== 写入（参数绑定） ====================
+
+    @Benchmark
+    public String encodeLegacyText() {
+        return legacyFormat(vector);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return PgVectorCodec.encodeHalfvec(vector);
+    }
+
+    // ==================== 读取（结果集映射） ====================
+
+    @Benchmark
+    public float[] decodeLegacyText() {
+        return legacyParse(text);
+    }
+
+    @Benchmark
+    public float[] decodeTextFallback() {
+        return PgVectorCodec.decodeHalfvecOrText(textBytes);
+    }
+
+    @Benchmark
+    public float[] decodeBinary() {
+        return PgVectorCodec.decodeHalfvecOrText(binary);
+    }
+
+    // ==================== 原实现（基线） ====================
+
+    private static String legacyFormat(float[] value) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < value.length; i++) {
+            if (i > 0) sb.append(",");
+            sb.append(value[i]);
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private static float[] legacyParse(String value) {
+        String content = value.substring(1, value.length() - 1);
+        String[] parts = content.split(",");
+        float[] result = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Float.parseFloat(parts[i].trim());
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HalfVecCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,97 @@
+package com.inkflow.common.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * pgvector 编解码单元测试
+ */
+@DisplayName("pgvector编解码测试")
+class PgVectorCodecTest {
+
+    @Test
+    @DisplayName("halfvec二进制编码应符合pgvector收发格式")
+    void encodeHalfvec_shouldMatchWireFormat() {
+        // Given
+        float[] vector = {1.0f, -2.0f, 0.5f};
+
+        // When
+        byte[] bytes = PgVectorCodec.encodeHalfvec(vector);
+
+        // Then - 维度3、保留位0、随后为大端float16
+        assertThat(bytes).containsExactly(
+                0x00, 0x03, 0x00, 0x00,
+                0x3C, 0x00,
+                0xC0 - 256, 0x00,
+                0x38, 0x00);
+    }
+
+    @Test
+    @DisplayName("halfvec二进制往返应保持半精度值不变")
+    void halfvecRoundTrip_shouldPreserveHalfPrecisionValues() {
+        // Given
+        float[] vector = new float[1024];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = Float.float16ToFloat(Float.floatToFloat16((i - 512) / 1000f));
+        }
+
+        // When
+        float[] decoded = PgVectorCodec.decodeHalfvecOrText(PgVectorCodec.encodeHalfvec(vector));
+
+        // Then
+        assertThat(decoded).containsExactly(vector);
+    }
+
+    @Test
+    @DisplayName("vector二进制往返应保持float32值不变")
+    void vectorRoundTrip_shouldPreserveValues() {
+        // Given
+        float[] vector = {0.123456f, -7.5f, 1e-6f};
+
+        // When
+        float[] decoded = PgVectorCodec.decodeVector(PgVectorCodec.encodeVector(vector), 0);
+
+        // Then
+        assertThat(decoded).containsExactly(vector);
+    }
+
+    @Test
+    @DisplayName("文本格式应被自动识别并解析")
+    void decodeHalfvecOrText_shouldParseTextFormat() {
+        // Given
+        byte[] text = "[0.5, -1,2.25]".getBytes(StandardCharsets.US_ASCII);
+
+        // When
+        float[] decoded = PgVectorCodec.decodeHalfvecOrText(text);
+
+        // Then
+        assertThat(decoded).containsExactly(0.5f, -1f, 2.25f);
+        assertThat(PgVectorCodec.decodeHalfvecOrText("[]".getBytes(StandardCharsets.US_ASCII))).isEmpty();
+        assertThat(PgVectorCodec.decodeHalfvecOrText(null)).isNull();
+    }
+
+    @Test
+    @DisplayName("文本格式化结果应能被解析回原值")
+    void formatText_shouldRoundTrip() {
+        // Given
+        float[] vector = {0.1f, 0.2f, -0.3f};
+
+        // When
+        float[] parsed = PgVectorCodec.parseText(PgVectorCodec.formatText(vector));
+
+        // Then
+        assertThat(parsed).containsExactly(vector);
+    }
+
+    @Test
+    @DisplayName("超出pgvector上限的维度应被拒绝")
+    void encode_shouldRejectOversizedVector() {
+        assertThatThrownBy(() -> PgVectorCodec.encodeHalfvec(new float[16001]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,114 @@
+package com.inkflow.module.agent.event;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 流式内容片段合并单元测试
+ */
+@DisplayName("流式内容片段合并测试")
+class ContentChunkCoalescerTest {
+
+    @Test
+    @DisplayName("首个片段直接发送，其余片段在上游结束时合并发送")
+    void coalesce_shouldEmitFirstChunkAndFlushOnComplete() {
+        // When
+        List<String> result = ContentChunkCoalescer.coalesce(Flux.just("林", "动", "", "道"), 10_000, 1024)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        // Then
+        assertThat(result).containsExactly("林", "动道");
+    }
+
+    @Test
+    @DisplayName("缓冲区达到字节上限时立即发送")
+    void coalesce_shouldFlushWhenMaxBytesReached() {
+        // When
+        List<String> result = ContentChunkCoalescer.coalesce(Flux.just("a", "bb", "cc", "d"), 10_000, 4)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        // Then
+        assertThat(result).containsExactly("a", "bbcc", "d");
+    }
+
+    @Test
+    @DisplayName("窗口到期时发送缓冲区，片段顺序不变")
+    void coalesce_shouldFlushWhenWindowExpires() {
+        // Given
+        Flux<String> chunks = Flux.just("a", "b")
+                .concatWith(Mono.delay(Duration.ofMillis(300)).thenReturn("c"));
+
+        // When
+        List<String> result = ContentChunkCoalescer.coalesce(chunks, 20, 1024)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        // Then
+        assertThat(result).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    @DisplayName("上游出错时先发送缓冲区剩余内容再传递错误")
+    void coalesce_shouldFlushBufferBeforeError() {
+        // Given
+        List<String> received = new CopyOnWriteArrayList<>();
+        Flux<String> chunks = Flux.just("a", "b", "c")
+                .concatWith(Flux.error(new IllegalStateException("模型中断")));
+
+        // When / Then
+        assertThatThrownBy(() -> ContentChunkCoalescer.coalesce(chunks, 10_000, 1024)
+                .doOnNext(received::add)
+                .blockLast(Duration.ofSeconds(5)))
+                .hasMessageContaining("模型中断");
+        assertThat(received).containsExactly("a", "bc");
+    }
+
+    @Test
+    @DisplayName("下游取消时应取消上游订阅")
+    void coalesce_shouldCancelUpstreamWhenDownstreamCancels() {
+        // Given
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<String> chunks = Flux.just("a", "b")
+                .concatWith(Flux.never())
+                .doOnCancel(() -> cancelled.set(true));
+
+        // When
+        List<String> result = ContentChunkCoalescer.coalesce(chunks, 10_000, 1024)
+                .take(1)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        // Then
+        assertThat(result).containsExactly("a");
+        assertThat(cancelled).isTrue();
+    }
+
+    @Test
+    @DisplayName("上游应能读取下游写入的 Reactor Context")
+    void coalesce_shouldPropagateDownstreamContext() {
+        // Given
+        Flux<String> chunks = Flux.deferContextual(context -> Flux.just(context.<String>get("requestId"), "-", "1"));
+
+        // When
+        List<String> result = ContentChunkCoalescer.coalesce(chunks, 10_000, 1024)
+                .contextWrite(Context.of("requestId", "req"))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        // Then
+        assertThat(result).containsExactly("req", "-1");
+    }
+}
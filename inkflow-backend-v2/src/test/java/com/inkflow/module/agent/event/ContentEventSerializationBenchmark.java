@@ -0,0 +1,106 @@
+package com.inkflow.module.agent.event;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式内容事件序列化基准测试
+ *
+ * 以一次 800 token 的回复为单位，对比：
+ * - perTokenObjectMapper：原实现，每个 token 一个 SSEEvent.content(...).toServerSentEvent()
+ * - perTokenPreSerialized：每个 token 一个 SSEEventBuilder.contentChunk(...)
+ * - coalesced：按 tokensPerEvent 个 token 合并后再 contentChunk（对应 ContentChunkCoalescer 的窗口合并）
+ * 单位为每次回复的耗时；事件数 = 800 / tokensPerEvent。
+ *
+ * 运行方式（在IDE中直接运行 main，或）:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.inkflow.module.agent.event.ContentEventSerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class ContentEventSerializationBenchmark {
+
+    private static final int TOKENS = 800;
+
+    /** 典型中文回复的 token 片段（1-3 个字，夹杂标点和换行） */
+    private static final String[] SAMPLE_TOKENS = {
+            "夜", "色", "渐深，", "林", "舟", "推开", "窗", "，", "远处", "传来",
+            "\"", "钟声", "\"", "。\n", "他", "想起", "师父", "的话", "：", "不要回头。"
+    };
+
+    @Param({"8", "16"})
+    private int tokensPerEvent;
+
+    private List<String> tokens;
+    private List<String> coalescedChunks;
+
+    @Setup
+    public void setUp() {
+        tokens = new ArrayList<>(TOKENS);
+        for (int i = 0; i < TOKENS; i++) {
+            tokens.add(SAMPLE_TOKENS[i % SAMPLE_TOKENS.length]);
+        }
+        coalescedChunks = new ArrayList<>();
+        StringBuilder chunk = new StringBuilder();
+        for (int i = 0; i < TOKENS; i++) {
+            chunk.append(tokens.get(i));
+            if ((i + 1) % tokensPerEvent == 0) {
+                coalescedChunks.add(chunk.toString());
+                chunk.setLength(0);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            coalescedChunks.add(chunk.toString());
+        }
+    }
+
+    @Benchmark
+    public void perTokenObjectMapper(Blackhole blackhole) {
+        for (String token : tokens) {
+            blackhole.consume(SSEEvent.content(token).toServerSentEvent());
+        }
+    }
+
+    @Benchmark
+    public void perTokenPreSerialized(Blackhole blackhole) {
+        for (String token : tokens) {
+            blackhole.consume(SSEEventBuilder.contentChunk(token));
+        }
+    }
+
+    @Benchmark
+    public void coalesced(Blackhole blackhole) {
+        for (String chunk : coalescedChunks) {
+            blackhole.consume(SSEEventBuilder.contentChunk(chunk));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ContentEventSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
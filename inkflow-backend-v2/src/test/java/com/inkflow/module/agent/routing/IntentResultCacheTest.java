@@ -0,0 +1,158 @@
+package com.inkflow.module.agent.routing;
+
+import com.inkflow.module.agent.config.AgentProperties;
+import com.inkflow.module.agent.core.Intent;
+import com.inkflow.module.agent.core.IntentResult;
+import com.inkflow.module.project.entity.CreationPhase;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * LLM 意图分析结果缓存单元测试
+ * 覆盖归一化、精确命中、近似重复命中的阈值边界、短消息只精确匹配、阶段隔离，
+ * 以及只差一个动词的消息不会复用错误意图
+ */
+@DisplayName("意图分析结果缓存测试")
+class IntentResultCacheTest {
+
+    private static final String MESSAGE = "请帮我续写第三章主角和反派在山顶的打斗场景";
+    private static final String NEAR_DUPLICATE = "请帮我续写一下第三章主角和反派在山顶的打斗场景吧";
+
+    private static final IntentResult WRITE = IntentResult.fromLLM(Intent.WRITE_CONTENT, 0.92, List.of());
+
+    // ==================== 归一化 ====================
+
+    @Test
+    @DisplayName("归一化只保留字母数字并统一小写")
+    void normalize_shouldKeepLettersAndDigitsInLowerCase() {
+        assertThat(IntentResultCache.normalize("  帮我，续写 第3章！ Bug?\n")).isEqualTo("帮我续写第3章bug");
+        assertThat(IntentResultCache.normalize("，。！ ")).isEmpty();
+        assertThat(IntentResultCache.normalize(null)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("空消息和超长消息不缓存")
+    void prepare_shouldSkipEmptyAndOverlongMessages() {
+        // Given
+        IntentResultCache cache = new IntentResultCache(config(0.8, 10));
+
+        // When / Then
+        assertThat(cache.prepare("？！", CreationPhase.WRITING)).isNull();
+        assertThat(cache.prepare("一二三四五六七八九十十一", CreationPhase.WRITING)).isNull();
+        assertThat(cache.prepare("一二三四五六七八九十", CreationPhase.WRITING)).isNotNull();
+    }
+
+    // ==================== 精确命中 ====================
+
+    @Test
+    @DisplayName("只差空白、标点和大小写的消息精确命中")
+    void get_shouldHitExactlyAfterNormalization() {
+        // Given
+        IntentResultCache cache = new IntentResultCache(AgentProperties.IntentCacheConfig.defaults());
+        cache.put(cache.prepare("帮我检查一下这个 Bug！", CreationPhase.REVISION), WRITE);
+
+        // When
+        IntentResultCache.Hit hit = cache.get(cache.prepare("帮我检查一下，这个bug", CreationPhase.REVISION));
+
+        // Then
+        assertThat(hit).isNotNull();
+        assertThat(hit.result()).isEqualTo(WRITE);
+        assertThat(hit.nearDuplicate()).isFalse();
+        assertThat(hit.similarity()).isEqualTo(1.0);
+        assertThat(cache.stats().exactHits()).isEqualTo(1);
+    }
+
+    // ==================== 近似重复命中 ====================
+
+    @Test
+    @DisplayName("估计相似度等于阈值时近似命中，低于阈值时不命中")
+    void get_shouldHitNearDuplicateAtThresholdAndMissBelow() {
+        // Given
+        double similarity = IntentResultCache.similarity(
+                IntentResultCache.signature(IntentResultCache.normalize(MESSAGE)),
+                IntentResultCache.signature(IntentResultCache.normalize(NEAR_DUPLICATE)));
+        assertThat(similarity).isBetween(0.5, 1.0).isLessThan(1.0);
+
+        IntentResultCache atThreshold = new IntentResultCache(config(similarity, 500));
+        atThreshold.put(atThreshold.prepare(MESSAGE, CreationPhase.WRITING), WRITE);
+        double aboveSimilarity = similarity + 1.0 / 64;
+        IntentResultCache aboveThreshold = new IntentResultCache(config(aboveSimilarity, 500));
+        aboveThreshold.put(aboveThreshold.prepare(MESSAGE, CreationPhase.WRITING), WRITE);
+
+        // When
+        IntentResultCache.Hit hit = atThreshold.get(atThreshold.prepare(NEAR_DUPLICATE, CreationPhase.WRITING));
+        IntentResultCache.Hit miss = aboveThreshold.get(aboveThreshold.prepare(NEAR_DUPLICATE, CreationPhase.WRITING));
+
+        // Then
+        assertThat(hit).isNotNull();
+        assertThat(hit.result()).isEqualTo(WRITE);
+        assertThat(hit.nearDuplicate()).isTrue();
+        assertThat(hit.similarity()).isEqualTo(similarity);
+        assertThat(atThreshold.stats().nearHits()).isEqualTo(1);
+        assertThat(miss).isNull();
+        assertThat(aboveThreshold.stats().misses()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("短消息只做精确匹配，即使阈值极低也不近似命中")
+    void get_shouldOnlyMatchShortMessagesExactly() {
+        // Given
+        IntentResultCache cache = new IntentResultCache(config(0.01, 500));
+        IntentResultCache.Probe shortProbe = cache.prepare("续写第三章", CreationPhase.WRITING);
+        cache.put(shortProbe, WRITE);
+
+        // When
+        IntentResultCache.Hit miss = cache.get(cache.prepare("续写第三章吧", CreationPhase.WRITING));
+        IntentResultCache.Hit exact = cache.get(cache.prepare("续写，第三章", CreationPhase.WRITING));
+
+        // Then
+        assertThat(shortProbe.signature()).isNull();
+        assertThat(miss).isNull();
+        assertThat(exact).isNotNull();
+        assertThat(exact.nearDuplicate()).isFalse();
+    }
+
+    // ==================== 阶段隔离 ====================
+
+    @Test
+    @DisplayName("不同创作阶段之间既不精确命中也不近似命中")
+    void get_shouldIsolatePhases() {
+        // Given
+        IntentResultCache cache = new IntentResultCache(config(0.01, 500));
+        cache.put(cache.prepare(MESSAGE, CreationPhase.WRITING), WRITE);
+
+        // When / Then
+        assertThat(cache.get(cache.prepare(MESSAGE, CreationPhase.OUTLINE))).isNull();
+        assertThat(cache.get(cache.prepare(NEAR_DUPLICATE, CreationPhase.OUTLINE))).isNull();
+        assertThat(cache.get(cache.prepare(MESSAGE, null))).isNull();
+        assertThat(cache.get(cache.prepare(MESSAGE, CreationPhase.WRITING))).isNotNull();
+    }
+
+    // ==================== 语义相反的近似消息 ====================
+
+    @Test
+    @DisplayName("默认阈值下，只差一个动词的续写/删除消息不复用缓存的意图")
+    void get_shouldNotReuseIntentForNegatedMessageWithDefaultThreshold() {
+        // Given
+        IntentResultCache cache = new IntentResultCache(AgentProperties.IntentCacheConfig.defaults());
+        cache.put(cache.prepare("帮我续写第三章的打斗场景", CreationPhase.WRITING), WRITE);
+
+        // When
+        IntentResultCache.Hit hit = cache.get(cache.prepare("帮我删除第三章的打斗场景", CreationPhase.WRITING));
+
+        // Then
+        assertThat(hit).isNull();
+        assertThat(IntentResultCache.similarity(
+                IntentResultCache.signature(IntentResultCache.normalize("帮我续写第三章的打斗场景")),
+                IntentResultCache.signature(IntentResultCache.normalize("帮我删除第三章的打斗场景"))))
+                .isLessThan(AgentProperties.IntentCacheConfig.defaults().nearDuplicateThreshold());
+    }
+
+    private static AgentProperties.IntentCacheConfig config(double nearDuplicateThreshold, int maxMessageLength) {
+        return new AgentProperties.IntentCacheConfig(true, 100, 60_000, nearDuplicateThreshold, maxMessageLength);
+    }
+}
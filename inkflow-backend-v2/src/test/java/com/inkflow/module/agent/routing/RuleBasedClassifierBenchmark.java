@@ -0,0 +1,106 @@
+package com.inkflow.module.agent.routing;
+
+import com.inkflow.module.agent.core.Intent;
+import com.inkflow.module.project.entity.CreationPhase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 规则意图分类基准测试
+ *
+ * 对比关键词自动机一次扫描（RuleBasedClassifier.classify）与原实现
+ * （整条消息 toLowerCase 后按 意图 × 关键词 逐个 String.contains）的单次耗时和内存分配。
+ *
+ * 运行方式（在IDE中直接运行 main，或）:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.inkflow.module.agent.routing.RuleBasedClassifierBenchmark
+ * 结果中 gc.alloc.rate.norm 即每次分类分配的字节数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class RuleBasedClassifierBenchmark {
+
+    private static final String SHORT_MESSAGE = "帮我写一段主角出场的戏";
+
+    /** 作者在修订阶段的长消息，命中多个意图的关键词 */
+    private static final String LONG_MESSAGE = ("请帮我检查一下第十二章里主角和反派之间的冲突是否和前文的设定有矛盾，"
+            + "另外感觉这一章节奏有点拖沓，想看看能不能调整一下结构，顺便把配角的出场安排得更自然一些。").repeat(2);
+
+    /** 不含任何关键词的长消息 */
+    private static final String NO_KEYWORD_MESSAGE = "今天天气不错，我们出去走走吧，顺便买点东西回来做晚饭，你觉得怎么样呢？".repeat(4);
+
+    @Param({"short", "long", "noKeyword"})
+    private String messageType;
+
+    private RuleBasedClassifier classifier;
+    private String message;
+
+    @Setup
+    public void setUp() {
+        classifier = new RuleBasedClassifier();
+        message = switch (messageType) {
+            case "short" -> SHORT_MESSAGE;
+            case "long" -> LONG_MESSAGE;
+            default -> NO_KEYWORD_MESSAGE;
+        };
+    }
+
+    @Benchmark
+    public RuleBasedClassifier.ClassificationResult classify() {
+        return classifier.classify(message, CreationPhase.REVISION);
+    }
+
+    @Benchmark
+    public double legacyKeywordScan() {
+        return legacyKeywordScores(message);
+    }
+
+    // ==================== 原实现（基线） ====================
+
+    /**
+     * 原实现的关键词打分部分（不含结果组装）
+     */
+    private static double legacyKeywordScores(String message) {
+        String normalizedMessage = message.toLowerCase().trim();
+        double total = 0;
+        for (Intent intent : Intent.values()) {
+            for (String keyword : intent.getKeywords()) {
+                String lowerKeyword = keyword.toLowerCase();
+                if (normalizedMessage.contains(lowerKeyword)) {
+                    double keywordScore = 1.0 + keyword.length() * 0.1;
+                    if (normalizedMessage.startsWith(lowerKeyword)) {
+                        keywordScore *= 1.5;
+                    }
+                    total += keywordScore;
+                }
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RuleBasedClassifierBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,167 @@
+package com.inkflow.module.agent.routing;
+
+import com.inkflow.module.agent.core.Intent;
+import com.inkflow.module.project.entity.CreationPhase;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 规则意图分类单元测试
+ * 以原实现（整条消息 toLowerCase 后按 意图 × 关键词 逐个 String.contains）为参照，
+ * 验证关键词自动机的分类结果与之一致
+ */
+@DisplayName("规则意图分类测试")
+class RuleBasedClassifierTest {
+
+    /**
+     * 固定消息集：重叠关键词、大小写、首尾空白、开头关键词加成、重复关键词、无关键词
+     */
+    private static final List<String> MESSAGES = List.of(
+            // 同一意图内的重叠关键词：关系网 ⊃ 关系，语言风格 ⊃ 风格，帮我写 / 写一段 / 写
+            "帮我梳理一下主角的关系网",
+            "这一章的语言风格太平了",
+            "帮我写一段打斗",
+            // 跨意图的重叠关键词：大纲扩写 ⊃ 大纲、扩写；角色出场 ⊃ 角色
+            "把第三章的大纲扩写成正文",
+            "安排反派角色出场",
+            "从大纲写第五章，注意章节节奏",
+            // 逐字符小写
+            "BUG太多了，检查一下",
+            "这里有个Bug，和前文矛盾",
+            "  Bug  ",
+            // 开头关键词加成（含首尾空白），以及只在后文出现的同一关键词
+            "续写第三章",
+            "请帮我续写第三章",
+            "   设定里还有一处设定要改   ",
+            "灵感枯竭了，给点灵感",
+            // 同一关键词重复出现只计一次
+            "角色角色角色",
+            // 命中多个意图
+            "请帮我检查一下第十二章里主角和反派之间的冲突是否和前文的设定有矛盾，另外感觉节奏有点拖沓",
+            "帮我起名，再总结一下人物关系和世界观设定",
+            // 无关键词
+            "今天天气不错，我们出去走走吧"
+    );
+
+    private final RuleBasedClassifier classifier = new RuleBasedClassifier();
+
+    @Test
+    @DisplayName("固定消息集在各阶段下的分类结果与逐个 contains 的原实现一致")
+    void classify_shouldMatchLegacyContainsClassifier() {
+        List<CreationPhase> phases = new ArrayList<>();
+        phases.add(null);
+        phases.addAll(List.of(CreationPhase.values()));
+
+        for (String message : MESSAGES) {
+            for (CreationPhase phase : phases) {
+                // When
+                RuleBasedClassifier.ClassificationResult actual = classifier.classify(message, phase);
+                RuleBasedClassifier.ClassificationResult expected = legacyClassify(message, phase);
+
+                // Then
+                assertThat(actual)
+                        .as("message=%s, phase=%s", message, phase)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("复用缓冲区时前一次分类的分数不影响后一次")
+    void classify_shouldNotLeakScoresBetweenCalls() {
+        // Given
+        classifier.classify("请帮我检查一下主角和反派的冲突是否矛盾", CreationPhase.REVISION);
+
+        // When
+        RuleBasedClassifier.ClassificationResult result = classifier.classify("起名", null);
+
+        // Then
+        assertThat(result.intent()).isEqualTo(Intent.GENERATE_NAME);
+        assertThat(result.alternatives()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("空消息和无关键词消息返回低置信度通用对话")
+    void classify_shouldReturnGeneralChatWithoutKeywords() {
+        assertThat(classifier.classify("  ", null))
+                .isEqualTo(RuleBasedClassifier.ClassificationResult.lowConfidence(Intent.GENERAL_CHAT, 0.3));
+        assertThat(classifier.classify("今天天气不错", CreationPhase.WRITING))
+                .isEqualTo(RuleBasedClassifier.ClassificationResult.lowConfidence(Intent.GENERAL_CHAT, 0.4));
+    }
+
+    // ==================== 原实现（参照） ====================
+
+    /**
+     * 原实现的分类逻辑；原实现同分时取 HashMap 迭代顺序，这里固定为枚举顺序，与现实现的约定一致
+     */
+    private static RuleBasedClassifier.ClassificationResult legacyClassify(String message, CreationPhase phase) {
+        String normalizedMessage = message.toLowerCase().trim();
+
+        Map<Intent, Double> scores = new EnumMap<>(Intent.class);
+        for (Intent intent : Intent.values()) {
+            double score = 0.0;
+            for (String keyword : intent.getKeywords()) {
+                String lowerKeyword = keyword.toLowerCase();
+                if (normalizedMessage.contains(lowerKeyword)) {
+                    double keywordScore = 1.0 + keyword.length() * 0.1;
+                    if (normalizedMessage.startsWith(lowerKeyword)) {
+                        keywordScore *= 1.5;
+                    }
+                    score += keywordScore;
+                }
+            }
+            if (score > 0) {
+                scores.put(intent, score);
+            }
+        }
+
+        if (phase != null) {
+            for (Intent intent : priorityIntents(phase)) {
+                scores.computeIfPresent(intent, (key, score) -> score * 1.2);
+            }
+        }
+
+        if (scores.isEmpty()) {
+            return RuleBasedClassifier.ClassificationResult.lowConfidence(Intent.GENERAL_CHAT, 0.4);
+        }
+
+        List<Intent> ranked = scores.keySet().stream()
+                .sorted(Comparator.comparing(scores::get, Comparator.reverseOrder()))
+                .toList();
+        Intent bestIntent = ranked.get(0);
+        double confidence = legacyConfidence(scores.get(bestIntent), scores.size());
+        List<Intent> alternatives = ranked.subList(1, Math.min(4, ranked.size()));
+
+        return new RuleBasedClassifier.ClassificationResult(bestIntent, confidence, List.copyOf(alternatives));
+    }
+
+    private static List<Intent> priorityIntents(CreationPhase phase) {
+        return switch (phase) {
+            case IDEA -> List.of(Intent.BRAINSTORM_IDEA, Intent.PLAN_WORLD);
+            case WORLDBUILDING -> List.of(Intent.PLAN_WORLD, Intent.BRAINSTORM_IDEA);
+            case CHARACTER -> List.of(Intent.PLAN_CHARACTER, Intent.DESIGN_RELATIONSHIP, Intent.MATCH_ARCHETYPE);
+            case OUTLINE -> List.of(Intent.PLAN_OUTLINE, Intent.MANAGE_PLOTLOOP, Intent.ANALYZE_PACING);
+            case WRITING -> List.of(Intent.WRITE_CONTENT);
+            case REVISION -> List.of(Intent.CHECK_CONSISTENCY, Intent.ANALYZE_STYLE);
+            default -> List.of();
+        };
+    }
+
+    private static double legacyConfidence(double bestScore, int matchCount) {
+        double baseConfidence = Math.min(bestScore / 3.0, 1.0);
+        if (matchCount == 1) {
+            baseConfidence = Math.min(baseConfidence * 1.2, 1.0);
+        } else if (matchCount > 3) {
+            baseConfidence *= 0.9;
+        }
+        return Math.round(baseConfidence * 100) / 100.0;
+    }
+}
@@ -0,0 +1,310 @@
+package com.inkflow.module.ai_bridge.chat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 对冲请求单元测试
+ * 覆盖竞速状态、延迟窗口和对冲预算的并发行为，以及落败请求的取消
+ */
+@DisplayName("对冲请求测试")
+class HedgedChatModelTest {
+
+    private static final HedgedChatModel.Settings FAST_HEDGE = new HedgedChatModel.Settings(50, 10, 1000, 1000);
+
+    // ==================== Race ====================
+
+    @Test
+    @DisplayName("主模型失败后登记的对冲请求成功时，应以对冲结果完成")
+    void race_shouldCompleteWithHedgeAfterPrimaryFailure() throws Exception {
+        // Given
+        HedgedChatModel.Race race = new HedgedChatModel.Race();
+        ChatResponse hedgeResponse = mock(ChatResponse.class);
+
+        // When
+        assertThat(race.addAttempt()).isTrue();
+        race.run(false, () -> {
+            throw new IllegalStateException("主模型超时");
+        });
+        race.run(true, () -> hedgeResponse);
+
+        // Then
+        HedgedChatModel.Outcome outcome = race.winner.get(1, TimeUnit.SECONDS);
+        assertThat(outcome.hedge()).isTrue();
+        assertThat(outcome.response()).isSameAs(hedgeResponse);
+    }
+
+    @Test
+    @DisplayName("双方都失败时应以最先失败的异常完成，后续异常作为 suppressed")
+    void race_shouldFailWithFirstErrorWhenAllAttemptsFail() {
+        // Given
+        HedgedChatModel.Race race = new HedgedChatModel.Race();
+        race.addAttempt();
+
+        // When
+        race.run(false, () -> {
+            throw new IllegalStateException("主模型失败");
+        });
+        race.run(true, () -> {
+            throw new IllegalStateException("备用模型失败");
+        });
+
+        // Then
+        assertThatThrownBy(() -> race.winner.get(1, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .cause()
+                .hasMessage("主模型失败")
+                .satisfies(e -> assertThat(e.getSuppressed()).extracting(Throwable::getMessage)
+                        .containsExactly("备用模型失败"));
+    }
+
+    @Test
+    @DisplayName("主模型已完成后不应再登记对冲请求")
+    void race_shouldRejectAttemptAfterCompletion() {
+        // Given
+        HedgedChatModel.Race race = new HedgedChatModel.Race();
+        race.run(false, () -> mock(ChatResponse.class));
+
+        // When / Then
+        assertThat(race.addAttempt()).isFalse();
+    }
+
+    @Test
+    @DisplayName("主模型失败与对冲登记并发时，竞速总能完成")
+    void race_shouldAlwaysCompleteUnderConcurrentFailureAndHedge() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 500; i++) {
+                // Given
+                HedgedChatModel.Race race = new HedgedChatModel.Race();
+                ChatResponse hedgeResponse = mock(ChatResponse.class);
+                CountDownLatch start = new CountDownLatch(1);
+
+                // When
+                Future<?> primary = executor.submit(() -> {
+                    start.await();
+                    race.run(false, () -> {
+                        throw new IllegalStateException("主模型失败");
+                    });
+                    return null;
+                });
+                Future<?> hedge = executor.submit(() -> {
+                    start.await();
+                    if (race.addAttempt()) {
+                        race.run(true, () -> hedgeResponse);
+                    }
+                    return null;
+                });
+                start.countDown();
+                primary.get(1, TimeUnit.SECONDS);
+                hedge.get(1, TimeUnit.SECONDS);
+
+                // Then
+                assertThat(race.winner).isDone();
+                if (!race.winner.isCompletedExceptionally()) {
+                    assertThat(race.winner.get().response()).isSameAs(hedgeResponse);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // ==================== LatencyWindow ====================
+
+    @Test
+    @DisplayName("样本不足时使用初始延迟，足够后使用 p95 并限制在上下限之间")
+    void latencyWindow_shouldUseInitialDelayThenClampedP95() {
+        // Given
+        HedgedChatModel.LatencyWindow window = new HedgedChatModel.LatencyWindow();
+        HedgedChatModel.Settings settings = new HedgedChatModel.Settings(2000, 300, 5000, 20);
+        for (int i = 0; i < 19; i++) {
+            window.record(100);
+        }
+
+        // When / Then
+        assertThat(window.hedgeDelayMs(settings)).isEqualTo(2000);
+        window.record(100);
+        assertThat(window.hedgeDelayMs(settings)).isEqualTo(300);
+        for (int i = 0; i < 20; i++) {
+            window.record(60_000);
+        }
+        assertThat(window.hedgeDelayMs(settings)).isEqualTo(5000);
+    }
+
+    @Test
+    @DisplayName("并发记录延迟时窗口计数和 p95 保持一致")
+    void latencyWindow_shouldStayConsistentUnderConcurrentRecords() throws Exception {
+        // Given
+        HedgedChatModel.LatencyWindow window = new HedgedChatModel.LatencyWindow();
+        HedgedChatModel.Settings settings = new HedgedChatModel.Settings(2000, 0, 10_000, 128);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        window.record(750);
+                        window.hedgeDelayMs(settings);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        assertThat(window.hedgeDelayMs(settings)).isEqualTo(750);
+    }
+
+    // ==================== HedgeBudget ====================
+
+    @Test
+    @DisplayName("并发扣减时每个用户最多成功容量次，退回后可再次对冲")
+    void budget_shouldLimitConcurrentAcquiresAndAcceptRelease() throws Exception {
+        // Given
+        HedgeBudget budget = new HedgeBudget(10);
+        UUID userId = UUID.randomUUID();
+        AtomicInteger acquired = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        // When
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(() -> {
+                    if (budget.tryAcquire(userId)) {
+                        acquired.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        assertThat(acquired).hasValue(10);
+        assertThat(budget.tryAcquire(userId)).isFalse();
+        assertThat(budget.tryAcquire(UUID.randomUUID())).isTrue();
+        budget.release(userId);
+        assertThat(budget.tryAcquire(userId)).isTrue();
+    }
+
+    @Test
+    @DisplayName("预算为 0 时从不对冲")
+    void budget_shouldDenyWhenDisabled() {
+        HedgeBudget budget = new HedgeBudget(0);
+        budget.release(null);
+        assertThat(budget.tryAcquire(null)).isFalse();
+    }
+
+    // ==================== HedgedChatModel ====================
+
+    @Test
+    @DisplayName("对冲胜出时应中断仍在执行的主模型请求")
+    void call_shouldInterruptPrimaryWhenHedgeWins() throws Exception {
+        // Given
+        CountDownLatch primaryInterrupted = new CountDownLatch(1);
+        ChatModel primary = mock(ChatModel.class);
+        when(primary.call(any(Prompt.class))).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                primaryInterrupted.countDown();
+                throw new IllegalStateException("主模型请求被取消", e);
+            }
+            return mock(ChatResponse.class);
+        });
+        ChatResponse hedgeResponse = mock(ChatResponse.class);
+        ChatModel secondary = mock(ChatModel.class);
+        when(secondary.call(any(Prompt.class))).thenReturn(hedgeResponse);
+        HedgedChatModel model = new HedgedChatModel(primary, secondary, FAST_HEDGE, new HedgeBudget(10));
+
+        // When
+        ChatResponse response = model.call(new Prompt("为主角起一个名字"));
+
+        // Then
+        assertThat(response).isSameAs(hedgeResponse);
+        assertThat(primaryInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        HedgedChatModel.HedgeStats stats = model.getStats();
+        assertThat(stats.hedgeCount()).isEqualTo(1);
+        assertThat(stats.hedgeWinCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("预算用尽时只等待主模型")
+    void call_shouldWaitForPrimaryWhenBudgetExhausted() {
+        // Given
+        ChatResponse primaryResponse = mock(ChatResponse.class);
+        ChatModel primary = mock(ChatModel.class);
+        when(primary.call(any(Prompt.class))).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return primaryResponse;
+        });
+        ChatModel secondary = mock(ChatModel.class);
+        HedgedChatModel model = new HedgedChatModel(primary, secondary, FAST_HEDGE, new HedgeBudget(0));
+
+        // When
+        ChatResponse response = model.call(new Prompt("总结本章"));
+
+        // Then
+        assertThat(response).isSameAs(primaryResponse);
+        verify(secondary, never()).call(any(Prompt.class));
+        assertThat(model.getStats().budgetDeniedCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("对冲请求应使用备用模型名，只保留可移植参数")
+    void secondaryPrompt_shouldUseSecondaryModelAndKeepPortableOptions() {
+        // Given
+        ChatModel primary = mock(ChatModel.class);
+        ChatModel secondary = mock(ChatModel.class);
+        when(secondary.getDefaultOptions()).thenReturn(ChatOptions.builder().model("deepseek-chat").build());
+        HedgedChatModel model = new HedgedChatModel(primary, secondary, FAST_HEDGE, new HedgeBudget(10));
+        Prompt prompt = new Prompt("分析意图", ChatOptions.builder()
+                .model("gpt-4o")
+                .temperature(0.2)
+                .maxTokens(256)
+                .build());
+
+        // When
+        Prompt hedgePrompt = model.secondaryPrompt(prompt);
+
+        // Then
+        assertThat(hedgePrompt.getInstructions()).isEqualTo(prompt.getInstructions());
+        assertThat(hedgePrompt.getOptions().getModel()).isEqualTo("deepseek-chat");
+        assertThat(hedgePrompt.getOptions().getTemperature()).isEqualTo(0.2);
+        assertThat(hedgePrompt.getOptions().getMaxTokens()).isEqualTo(256);
+    }
+}
@@ -0,0 +1,153 @@
+package com.inkflow.module.rag.index;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 进程内向量索引分片单元测试
+ */
+@DisplayName("向量索引分片测试")
+class ProjectVectorShardTest {
+
+    private static final int DIMENSION = 64;
+    private static final String STORY_BLOCK = "story_block";
+    private static final String CHARACTER = "character";
+
+    @Test
+    @DisplayName("HNSW检索与暴力扫描相比recall@10应不低于0.9")
+    void hnswSearch_shouldMatchBruteForceRecall() {
+        // Given
+        Random random = new Random(42);
+        List<ProjectVectorShard.Entry> entries = randomEntries(random, 3000);
+        ProjectVectorShard hnsw = newShard(false, 0);
+        ProjectVectorShard exact = newShard(true, 0);
+        hnsw.addAll(entries);
+        exact.addAll(entries);
+
+        // When
+        double recallSum = 0;
+        int queries = 50;
+        for (int i = 0; i < queries; i++) {
+            float[] query = randomVector(random);
+            Set<UUID> expected = ids(exact.search(query, 10, null, false));
+            Set<UUID> actual = ids(hnsw.search(query, 10, null, false));
+            actual.retainAll(expected);
+            recallSum += (double) actual.size() / expected.size();
+        }
+
+        // Then
+        assertThat(recallSum / queries).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    @DisplayName("检索结果应按相似度降序且遵守来源类型和子块过滤")
+    void search_shouldRespectFiltersAndOrdering() {
+        // Given
+        Random random = new Random(7);
+        List<ProjectVectorShard.Entry> entries = randomEntries(random, 500);
+        ProjectVectorShard shard = newShard(false, 0);
+        shard.addAll(entries);
+        Set<UUID> characterChildIds = new HashSet<>();
+        for (ProjectVectorShard.Entry entry : entries) {
+            if (CHARACTER.equals(entry.sourceType()) && entry.child()) {
+                characterChildIds.add(entry.chunkId());
+            }
+        }
+
+        // When
+        List<VectorHit> hits = shard.search(randomVector(random), 20, CHARACTER, true);
+
+        // Then
+        assertThat(hits).hasSize(20);
+        assertThat(hits).allMatch(hit -> characterChildIds.contains(hit.chunkId()));
+        for (int i = 1; i < hits.size(); i++) {
+            assertThat(hits.get(i - 1).similarity()).isGreaterThanOrEqualTo(hits.get(i).similarity());
+        }
+    }
+
+    @Test
+    @DisplayName("删除来源后其块不应再被检索到，重建后仍可正常检索")
+    void removeSource_shouldHideChunksAndSurviveCompaction() {
+        // Given
+        Random random = new Random(11);
+        List<ProjectVectorShard.Entry> entries = randomEntries(random, 400);
+        ProjectVectorShard shard = newShard(false, 0);
+        shard.addAll(entries);
+        ProjectVectorShard.Entry target = entries.get(0);
+
+        // When - 删除足够多的来源以触发重建
+        Set<UUID> removedSources = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            removedSources.add(entries.get(i).sourceId());
+            shard.removeSource(entries.get(i).sourceId());
+        }
+        List<VectorHit> hits = shard.search(target.embedding(), 50, null, false);
+
+        // Then
+        assertThat(shard.liveCount()).isEqualTo(200);
+        assertThat(hits).hasSize(50);
+        assertThat(hits).noneMatch(hit -> removedSources.contains(hit.sourceId()));
+    }
+
+    @Test
+    @DisplayName("相同块ID重复写入应替换旧向量")
+    void addAll_shouldReplaceExistingChunk() {
+        // Given
+        Random random = new Random(3);
+        ProjectVectorShard shard = newShard(true, 0);
+        UUID chunkId = UUID.randomUUID();
+        float[] first = randomVector(random);
+        float[] second = randomVector(random);
+        shard.addAll(List.of(new ProjectVectorShard.Entry(chunkId, UUID.randomUUID(), STORY_BLOCK, true, first)));
+
+        // When
+        shard.addAll(List.of(new ProjectVectorShard.Entry(chunkId, UUID.randomUUID(), STORY_BLOCK, true, second)));
+        List<VectorHit> hits = shard.search(second, 5, null, false);
+
+        // Then
+        assertThat(shard.liveCount()).isEqualTo(1);
+        assertThat(hits).hasSize(1);
+        assertThat(hits.get(0).similarity()).isGreaterThan(0.99);
+    }
+
+    private ProjectVectorShard newShard(boolean bruteForce, int bruteForceThreshold) {
+        return new ProjectVectorShard(UUID.randomUUID(),
+                new ProjectVectorShard.Settings(16, 128, 64, bruteForce, bruteForceThreshold));
+    }
+
+    private List<ProjectVectorShard.Entry> randomEntries(Random random, int count) {
+        List<ProjectVectorShard.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new ProjectVectorShard.Entry(
+                    UUID.randomUUID(),
+                    UUID.randomUUID(),
+                    i % 3 == 0 ? CHARACTER : STORY_BLOCK,
+                    i % 2 == 0,
+                    randomVector(random)));
+        }
+        return entries;
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private Set<UUID> ids(List<VectorHit> hits) {
+        Set<UUID> ids = new HashSet<>();
+        hits.forEach(hit -> ids.add(hit.chunkId()));
+        return ids;
+    }
+}
@@ -0,0 +1,89 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.EmbeddingBatchStatistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Embedding请求合并器单元测试
+ */
+@DisplayName("Embedding请求合并测试")
+class EmbeddingRequestCoalescerTest {
+
+    private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+
+    @Test
+    @DisplayName("窗口内的并发请求应合并为一次批量调用，相同文本只发送一次")
+    void submit_shouldCoalesceConcurrentRequests() {
+        // Given
+        EmbeddingRequestCoalescer coalescer = new EmbeddingRequestCoalescer(
+                this::fakeBatch, new RagProperties.CoalescingConfig(true, 50, 32));
+
+        // When
+        List<float[]> results = Flux.just("林动", "岩城", "林动", "武学")
+                .flatMap(coalescer::submit)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        // Then
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0)).containsExactly("林动", "岩城", "武学");
+        assertThat(results).hasSize(4);
+        EmbeddingBatchStatistics stats = coalescer.getStatistics();
+        assertThat(stats.getBatches()).isEqualTo(1);
+        assertThat(stats.getDedupedRequests()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("达到单批上限时应立即发送并拆分为多批")
+    void submit_shouldSplitWhenBatchIsFull() {
+        // Given
+        EmbeddingRequestCoalescer coalescer = new EmbeddingRequestCoalescer(
+                this::fakeBatch, new RagProperties.CoalescingConfig(true, 1000, 2));
+
+        // When
+        List<float[]> results = Flux.just("a", "bb", "ccc", "dddd")
+                .flatMap(coalescer::submit)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        // Then
+        assertThat(calls).hasSize(2);
+        assertThat(results).extracting(vector -> (int) vector[0]).containsExactlyInAnyOrder(1, 2, 3, 4);
+        assertThat(coalescer.getStatistics().getMaxBatchSize()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("批量调用失败时同批所有请求都应收到错误")
+    void submit_shouldPropagateBatchFailure() {
+        // Given
+        EmbeddingRequestCoalescer coalescer = new EmbeddingRequestCoalescer(
+                texts -> Mono.error(new IllegalStateException("TEI不可用")),
+                new RagProperties.CoalescingConfig(true, 10, 32));
+
+        // When / Then
+        assertThatThrownBy(() -> Flux.just("a", "b")
+                .flatMap(coalescer::submit)
+                .collectList()
+                .block(Duration.ofSeconds(5)))
+                .hasMessageContaining("TEI不可用");
+        assertThat(coalescer.getStatistics().getFailedBatches()).isEqualTo(1);
+    }
+
+    private Mono<List<float[]>> fakeBatch(List<String> texts) {
+        calls.add(texts);
+        return Mono.just(texts.stream()
+                .map(text -> new float[]{text.length()})
+                .toList());
+    }
+}
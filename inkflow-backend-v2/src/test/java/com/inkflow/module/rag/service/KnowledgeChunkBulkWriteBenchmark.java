@@ -0,0 +1,190 @@
+package com.inkflow.module.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.inkflow.common.util.PgHalfVec;
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 知识块批量写入基准测试
+ *
+ * 在真实的 knowledge_chunks 表（含分区、HNSW/GIN索引和生成列）上对比三种写入路径：
+ * - jdbcBatchInsert：与 JPA saveAll 相同的逐行 INSERT，按 hibernate.jdbc.batch_size=50 分批执行，
+ *   是 JPA 路径的上限（不含实体状态管理开销）
+ * - copyInsert：KnowledgeChunkBulkWriter 的 COPY 二进制插入
+ * - copyMerge：KnowledgeChunkBulkWriter 的临时表 + INSERT ... ON CONFLICT 合并（已有块更新）
+ *
+ * 每次调用在事务内写入后回滚，不留下数据。写入速度（行/秒）= rows / JMH输出的单次耗时。
+ *
+ * 需要已执行迁移的 PostgreSQL（pgvector、zhparser）和至少一个项目，运行方式:
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.inkflow.module.rag.service.KnowledgeChunkBulkWriteBenchmark \
+ *   -Dbench.jdbc.url=jdbc:postgresql://localhost:5432/novel_db -Dbench.jdbc.user=postgres -Dbench.jdbc.password=postgres
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+public class KnowledgeChunkBulkWriteBenchmark {
+
+    private static final int DIMENSION = 1024;
+    private static final int JDBC_BATCH_SIZE = 50;
+
+    private static final String INSERT_SQL = "INSERT INTO knowledge_chunks (id, project_id, source_type, source_id, "
+            + "parent_id, content, embedding, chunk_level, chunk_order, version, is_active, is_dirty, metadata) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Param({"64", "512", "4096"})
+    private int rows;
+
+    private Connection connection;
+    private KnowledgeChunkBulkWriter writer;
+    private ObjectMapper objectMapper;
+    private UUID projectId;
+    private List<KnowledgeChunk> chunks;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/novel_db"),
+                System.getProperty("bench.jdbc.user", "postgres"),
+                System.getProperty("bench.jdbc.password", "postgres"));
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT id FROM projects LIMIT 1")) {
+            if (!rs.next()) {
+                throw new IllegalStateException("基准测试需要数据库中至少存在一个项目");
+            }
+            projectId = rs.getObject(1, UUID.class);
+        }
+        connection.rollback();
+
+        objectMapper = new ObjectMapper();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+        writer = new KnowledgeChunkBulkWriter(jdbcTemplate, null, objectMapper, RagProperties.defaults());
+
+        Random random = new Random(42);
+        UUID sourceId = UUID.randomUUID();
+        chunks = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            float[] embedding = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                embedding[d] = (float) random.nextGaussian() * 0.03f;
+            }
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("chapterId", UUID.randomUUID().toString());
+            metadata.put("blockType", "NARRATIVE");
+            chunks.add(KnowledgeChunk.builder()
+                    .projectId(projectId)
+                    .sourceType(KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK)
+                    .sourceId(sourceId)
+                    .content("夜色渐深，城楼上的灯火一盏盏熄灭，只剩风声穿过空荡的街巷。第" + i + "段。")
+                    .embedding(embedding)
+                    .chunkLevel(KnowledgeChunk.CHUNK_LEVEL_CHILD)
+                    .chunkOrder(i + 1)
+                    .metadata(metadata)
+                    .build());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetIds() {
+        chunks.forEach(chunk -> chunk.setId(null));
+    }
+
+    @TearDown(Level.Invocation)
+    public void rollback() throws SQLException {
+        connection.rollback();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int jdbcBatchInsert() throws Exception {
+        int written = 0;
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+            for (KnowledgeChunk chunk : chunks) {
+                ps.setObject(1, UUID.randomUUID());
+                ps.setObject(2, chunk.getProjectId());
+                ps.setString(3, chunk.getSourceType());
+                ps.setObject(4, chunk.getSourceId());
+                ps.setNull(5, Types.OTHER);
+                ps.setString(6, chunk.getContent());
+                ps.setObject(7, new PgHalfVec(chunk.getEmbedding()));
+                ps.setString(8, chunk.getChunkLevel());
+                ps.setInt(9, chunk.getChunkOrder());
+                ps.setInt(10, chunk.getVersion());
+                ps.setBoolean(11, chunk.getIsActive());
+                ps.setBoolean(12, chunk.getIsDirty());
+                ps.setObject(13, objectMapper.writeValueAsString(chunk.getMetadata()), Types.OTHER);
+                ps.addBatch();
+                if (++written % JDBC_BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        return written;
+    }
+
+    @Benchmark
+    public int copyInsert() {
+        return writer.saveAll(chunks).size();
+    }
+
+    @Benchmark
+    public int copyMerge() {
+        // 先插入再以已有ID合并，计时包含两次写入；合并部分的耗时 = copyMerge - copyInsert
+        writer.saveAll(chunks);
+        return writer.saveAll(chunks).size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(KnowledgeChunkBulkWriteBenchmark.class.getSimpleName())
+                .jvmArgsAppend(
+                        "-Dbench.jdbc.url=" + System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/novel_db"),
+                        "-Dbench.jdbc.user=" + System.getProperty("bench.jdbc.user", "postgres"),
+                        "-Dbench.jdbc.password=" + System.getProperty("bench.jdbc.password", "postgres"))
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,166 @@
+package com.inkflow.module.rag.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.repository.KnowledgeChunkRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 知识块 COPY 二进制行编码单元测试
+ * 按 PGCOPY 二进制格式逐字段解码，校验各类型的线上字节
+ */
+@DisplayName("知识块COPY行编码测试")
+class KnowledgeChunkBulkWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final KnowledgeChunkBulkWriter writer = new KnowledgeChunkBulkWriter(
+            mock(JdbcTemplate.class), mock(KnowledgeChunkRepository.class), objectMapper, mock(RagProperties.class));
+
+    @Test
+    @DisplayName("完整的行应按列顺序编码 uuid、text、halfvec、int4、bool 和 jsonb")
+    void writeRow_shouldEncodeAllFieldTypes() throws IOException {
+        // Given
+        UUID id = UUID.fromString("01234567-89ab-cdef-0123-456789abcdef");
+        UUID projectId = UUID.randomUUID();
+        UUID sourceId = UUID.randomUUID();
+        UUID parentId = UUID.randomUUID();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("chapter", 3);
+        metadata.put("title", "山顶对决");
+        KnowledgeChunk chunk = KnowledgeChunk.builder()
+                .id(id)
+                .projectId(projectId)
+                .sourceType(KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK)
+                .sourceId(sourceId)
+                .parentId(parentId)
+                .content("林动拔剑")
+                .embedding(new float[]{1.0f, -2.0f, 0.5f})
+                .chunkLevel(KnowledgeChunk.CHUNK_LEVEL_CHILD)
+                .chunkOrder(7)
+                .version(2)
+                .isActive(true)
+                .isDirty(false)
+                .metadata(metadata)
+                .build();
+
+        // When
+        DataInputStream in = encode(chunk);
+
+        // Then
+        assertThat(in.readShort()).isEqualTo((short) 13);
+        // uuid：长度16，高64位在前，大端
+        assertThat(in.readInt()).isEqualTo(16);
+        assertThat(in.readNBytes(16)).containsExactly(
+                0x01, 0x23, 0x45, 0x67, 0x89 - 256, 0xAB - 256, 0xCD - 256, 0xEF - 256,
+                0x01, 0x23, 0x45, 0x67, 0x89 - 256, 0xAB - 256, 0xCD - 256, 0xEF - 256);
+        assertThat(readUuid(in)).isEqualTo(projectId);
+        assertThat(readText(in)).isEqualTo(KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK);
+        assertThat(readUuid(in)).isEqualTo(sourceId);
+        assertThat(readUuid(in)).isEqualTo(parentId);
+        // text：UTF-8 字节长度，而非字符数
+        assertThat(in.readInt()).isEqualTo(12);
+        assertThat(new String(in.readNBytes(12), StandardCharsets.UTF_8)).isEqualTo("林动拔剑");
+        // halfvec：维度3、保留位0、随后为大端float16
+        assertThat(in.readInt()).isEqualTo(10);
+        assertThat(in.readNBytes(10)).containsExactly(
+                0x00, 0x03, 0x00, 0x00,
+                0x3C, 0x00,
+                0xC0 - 256, 0x00,
+                0x38, 0x00);
+        assertThat(readText(in)).isEqualTo(KnowledgeChunk.CHUNK_LEVEL_CHILD);
+        // int4：长度4
+        assertThat(in.readInt()).isEqualTo(4);
+        assertThat(in.readInt()).isEqualTo(7);
+        assertThat(in.readInt()).isEqualTo(4);
+        assertThat(in.readInt()).isEqualTo(2);
+        // bool：长度1，值0/1
+        assertThat(in.readInt()).isEqualTo(1);
+        assertThat(in.readByte()).isEqualTo((byte) 1);
+        assertThat(in.readInt()).isEqualTo(1);
+        assertThat(in.readByte()).isEqualTo((byte) 0);
+        // jsonb：长度包含1字节版本号，版本号为1，随后为JSON文本
+        int jsonbLength = in.readInt();
+        assertThat(in.readByte()).isEqualTo((byte) 1);
+        byte[] json = in.readNBytes(jsonbLength - 1);
+        assertThat(json).hasSize(jsonbLength - 1);
+        assertThat(objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {}))
+                .isEqualTo(metadata);
+        assertThat(in.available()).isZero();
+    }
+
+    @Test
+    @DisplayName("可空字段为 null 时应编码为长度 -1 且不写值")
+    void writeRow_shouldEncodeNullFields() throws IOException {
+        // Given
+        UUID id = UUID.randomUUID();
+        UUID projectId = UUID.randomUUID();
+        UUID sourceId = UUID.randomUUID();
+        KnowledgeChunk chunk = KnowledgeChunk.builder()
+                .id(id)
+                .projectId(projectId)
+                .sourceType(KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK)
+                .sourceId(sourceId)
+                .content("")
+                .build();
+        chunk.setChunkLevel(null);
+        chunk.setChunkOrder(null);
+        chunk.setVersion(null);
+        chunk.setIsActive(null);
+        chunk.setIsDirty(null);
+        chunk.setMetadata(null);
+
+        // When
+        DataInputStream in = encode(chunk);
+
+        // Then
+        assertThat(in.readShort()).isEqualTo((short) 13);
+        assertThat(readUuid(in)).isEqualTo(id);
+        assertThat(readUuid(in)).isEqualTo(projectId);
+        assertThat(readText(in)).isEqualTo(KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK);
+        assertThat(readUuid(in)).isEqualTo(sourceId);
+        // parent_id
+        assertThat(in.readInt()).isEqualTo(-1);
+        // 空字符串不是 NULL
+        assertThat(in.readInt()).isZero();
+        // embedding, chunk_level, chunk_order, version, is_active, is_dirty, metadata
+        for (int i = 0; i < 7; i++) {
+            assertThat(in.readInt()).as("第%d个可空字段", i + 1).isEqualTo(-1);
+        }
+        assertThat(in.available()).isZero();
+    }
+
+    private DataInputStream encode(KnowledgeChunk chunk) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writer.writeRow(out, chunk);
+        out.flush();
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        assertThat(in.readInt()).isEqualTo(16);
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,288 @@
+package com.inkflow.module.rag.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两阶段量化检索基准测试
+ *
+ * 在合成语料（高斯聚类 + 半精度舍入，近似BGE-M3向量分布）上复现 knowledge_chunks 的两阶段检索：
+ * 按符号位二值量化（与 binary_quantize 一致），汉明距离取 limit × oversampling 个候选，
+ * 再用余弦距离精确重排。与全量精确扫描对比单次查询耗时，并在Setup中输出各过采样倍数的recall@k，
+ * 两者合起来即召回率-延迟曲线，用于选择 inkflow.rag.search.quantized.oversampling。
+ *
+ * 运行方式（在IDE中直接运行 main，或）:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.inkflow.module.rag.service.QuantizedSearchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class QuantizedSearchBenchmark {
+
+    private static final int DIMENSION = 1024;
+    private static final int WORDS = DIMENSION / Long.SIZE;
+    private static final int CLUSTERS = 200;
+    private static final int QUERIES = 200;
+
+    @Param({"20000"})
+    private int corpusSize;
+
+    @Param({"1", "2", "4", "8", "16"})
+    private int oversampling;
+
+    @Param({"10"})
+    private int limit;
+
+    private float[][] corpus;
+    private long[][] corpusBits;
+    private float[][] queries;
+    private long[][] queryBits;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centroids[c] = gaussian(random);
+        }
+        corpus = new float[corpusSize][];
+        corpusBits = new long[corpusSize][];
+        for (int i = 0; i < corpusSize; i++) {
+            corpus[i] = perturb(random, centroids[random.nextInt(CLUSTERS)], 0.8f);
+            corpusBits[i] = quantize(corpus[i]);
+        }
+        queries = new float[QUERIES][];
+        queryBits = new long[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = perturb(random, corpus[random.nextInt(corpusSize)], 0.5f);
+            queryBits[q] = quantize(queries[q]);
+        }
+        reportRecall();
+    }
+
+    // ==================== 检索 ====================
+
+    @Benchmark
+    public int[] exactSearch() {
+        int q = nextQuery();
+        return exact(queries[q], limit);
+    }
+
+    @Benchmark
+    public int[] quantizedSearch() {
+        int q = nextQuery();
+        return twoStage(queries[q], queryBits[q], limit, limit * oversampling);
+    }
+
+    // ==================== 召回率报告 ====================
+
+    private void reportRecall() {
+        double recallSum = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            int[] expected = exact(queries[q], limit);
+            int[] actual = twoStage(queries[q], queryBits[q], limit, limit * oversampling);
+            recallSum += overlap(expected, actual) / (double) expected.length;
+        }
+        System.out.printf("%n[recall] corpus=%d, limit=%d, oversampling=%d, candidates=%d, recall@%d=%.4f%n",
+                corpusSize, limit, oversampling, limit * oversampling, limit, recallSum / QUERIES);
+    }
+
+    private int nextQuery() {
+        int q = cursor;
+        cursor = q + 1 == QUERIES ? 0 : q + 1;
+        return q;
+    }
+
+    // ==================== 两阶段检索实现 ====================
+
+    private int[] exact(float[] query, int k) {
+        int[] all = new int[corpusSize];
+        for (int i = 0; i < corpusSize; i++) {
+            all[i] = i;
+        }
+        return rescore(query, all, k);
+    }
+
+    private int[] twoStage(float[] query, long[] bits, int k, int candidateLimit) {
+        int n = Math.min(candidateLimit, corpusSize);
+        // 按汉明距离保留最近的n个候选（大顶堆，堆顶为当前最远的候选）
+        int[] heapIds = new int[n];
+        int[] heapDist = new int[n];
+        int size = 0;
+        for (int i = 0; i < corpusSize; i++) {
+            int distance = hamming(bits, corpusBits[i]);
+            if (size < n) {
+                heapIds[size] = i;
+                heapDist[size] = distance;
+                siftUp(heapIds, heapDist, size++);
+            } else if (distance < heapDist[0]) {
+                heapIds[0] = i;
+                heapDist[0] = distance;
+                siftDown(heapIds, heapDist, size);
+            }
+        }
+        return rescore(query, Arrays.copyOf(heapIds, size), k);
+    }
+
+    /**
+     * 精确重排：按余弦相似度保留前k个（插入排序，k很小）
+     */
+    private int[] rescore(float[] query, int[] candidates, int k) {
+        int[] topIds = new int[Math.min(k, candidates.length)];
+        double[] topScores = new double[topIds.length];
+        int size = 0;
+        for (int id : candidates) {
+            double score = cosine(query, corpus[id]);
+            if (size == topIds.length && score <= topScores[size - 1]) {
+                continue;
+            }
+            int pos = size < topIds.length ? size++ : size - 1;
+            while (pos > 0 && topScores[pos - 1] < score) {
+                topScores[pos] = topScores[pos - 1];
+                topIds[pos] = topIds[pos - 1];
+                pos--;
+            }
+            topScores[pos] = score;
+            topIds[pos] = id;
+        }
+        return topIds;
+    }
+
+    private static void siftUp(int[] ids, int[] dist, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (dist[parent] >= dist[index]) {
+                return;
+            }
+            swap(ids, dist, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] ids, int[] dist, int size) {
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int largest = left + 1 < size && dist[left + 1] > dist[left] ? left + 1 : left;
+            if (dist[index] >= dist[largest]) {
+                return;
+            }
+            swap(ids, dist, index, largest);
+            index = largest;
+        }
+    }
+
+    private static void swap(int[] ids, int[] dist, int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        int d = dist[a];
+        dist[a] = dist[b];
+        dist[b] = d;
+    }
+
+    // ==================== 向量工具 ====================
+
+    /**
+     * 与 pgvector binary_quantize 一致：分量大于0记为1
+     */
+    private static long[] quantize(float[] vector) {
+        long[] bits = new long[WORDS];
+        for (int i = 0; i < DIMENSION; i++) {
+            if (vector[i] > 0) {
+                bits[i >>> 6] |= 1L << (i & 63);
+            }
+        }
+        return bits;
+    }
+
+    private static int hamming(long[] a, long[] b) {
+        int distance = 0;
+        for (int i = 0; i < WORDS; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+        return distance;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    private static int overlap(int[] expected, int[] actual) {
+        int count = 0;
+        for (int id : actual) {
+            for (int e : expected) {
+                if (e == id) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static float[] gaussian(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * 在基准向量上叠加相对噪声（noise为噪声与基准向量的范数比），
+     * 归一化后按半精度舍入（与halfvec列读出的值一致）
+     */
+    private static float[] perturb(Random random, float[] base, float noise) {
+        double baseNorm = 0;
+        for (float value : base) {
+            baseNorm += value * value;
+        }
+        float scale = (float) (noise * Math.sqrt(baseNorm / DIMENSION));
+        float[] vector = new float[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = base[i] + (float) random.nextGaussian() * scale;
+            norm += vector[i] * vector[i];
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = Float.float16ToFloat(Float.floatToFloat16(vector[i] * inv));
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QuantizedSearchBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,162 @@
+package com.inkflow.module.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.dto.SearchResult;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.index.VectorKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RAG检索热点微基准测试
+ *
+ * 覆盖检索链路中纯CPU的环节，调整 RagProperties 前后各跑一次对比：
+ * - applyReciprocalRankFusion：向量+全文两路RRF融合（召回量 = topK × recallMultiplier）
+ * - cosineSimilarity：语义分块断点打分（SemanticChunkingService）与父块去重打分（ParentChildSearchService）
+ *   的标量实现，以 VectorKernels 的点积（已归一化向量）作参照；SIMD 内核需以 -Psimd 构建，否则为标量循环
+ * - prepareQuery：全文检索的查询计划获取（命中查询计划缓存）和SQL参数绑定（不访问数据库）
+ *
+ * halfvec 编解码（HalfVecType 读写路径）见 {@link com.inkflow.common.util.HalfVecCodecBenchmark}。
+ *
+ * 运行方式（在IDE中直接运行 main，或）:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.inkflow.module.rag.service.RagMicroBenchmark
+ * 对比SIMD内核时加 -Psimd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--add-modules", "jdk.incubator.vector"})
+public class RagMicroBenchmark {
+
+    private static final int DIMENSION = 1024;
+
+    /** 全文查询样例：plain / phrase / mixed / boolean / exact */
+    private static final String[] QUERIES = {
+            "沈青衣 修炼",
+            "沈青衣在落霞山的石洞中突破了筑基境",
+            "沈青衣Harry在青云城的第三次交锋",
+            "沈青衣 AND 苏晚",
+            "“天机阁密卷”"
+    };
+
+    /** 每路召回数量 */
+    @Param({"20", "100"})
+    private int recallSize;
+
+    private HybridSearchService hybridSearchService;
+    private FullTextSearchService fullTextSearchService;
+    private List<SearchResult> vectorResults;
+    private List<SearchResult> fullTextResults;
+    private float[] a;
+    private float[] b;
+    private float[] normalizedA;
+    private float[] normalizedB;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        RagProperties properties = RagProperties.defaults();
+        hybridSearchService = new HybridSearchService(null, null, null, properties, null, null, null);
+        ZhparserHealthChecker zhparser = new ZhparserHealthChecker(null, properties) {
+            @Override
+            public boolean isZhparserAvailable() {
+                return true;
+            }
+
+            @Override
+            public boolean isChineseConfigAvailable() {
+                return true;
+            }
+        };
+        fullTextSearchService = new FullTextSearchService(null, properties, new ObjectMapper(), zhparser);
+
+        // 两路结果各有一半重叠，与实际混合检索的重合度接近
+        Random random = new Random(42);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < recallSize * 3 / 2; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        vectorResults = new ArrayList<>(recallSize);
+        fullTextResults = new ArrayList<>(recallSize);
+        for (int i = 0; i < recallSize; i++) {
+            vectorResults.add(result(ids.get(i), 1.0 - i * 0.001));
+            fullTextResults.add(result(ids.get(ids.size() - 1 - i), random.nextDouble()));
+        }
+
+        a = gaussian(random);
+        b = gaussian(random);
+        normalizedA = VectorKernels.normalize(a);
+        normalizedB = VectorKernels.normalize(b);
+    }
+
+    @Benchmark
+    public List<SearchResult> reciprocalRankFusion() {
+        return hybridSearchService.applyReciprocalRankFusion(vectorResults, fullTextResults, recallSize / 2);
+    }
+
+    @Benchmark
+    public double semanticChunkingCosine() {
+        return SemanticChunkingService.cosineSimilarity(a, b);
+    }
+
+    @Benchmark
+    public double parentChildCosine() {
+        return ParentChildSearchService.calculateSimilarity(a, b);
+    }
+
+    @Benchmark
+    public float simdDotNormalized() {
+        return VectorKernels.dot(normalizedA, normalizedB, DIMENSION);
+    }
+
+    @Benchmark
+    public Object fullTextQueryBuilding() {
+        String query = QUERIES[cursor++ % QUERIES.length];
+        return fullTextSearchService.prepareQuery(null, query, KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK, 10);
+    }
+
+    private static SearchResult result(UUID id, double similarity) {
+        return SearchResult.builder()
+                .id(id)
+                .sourceType(KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK)
+                .content("")
+                .similarity(similarity)
+                .build();
+    }
+
+    private static float[] gaussian(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RagMicroBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
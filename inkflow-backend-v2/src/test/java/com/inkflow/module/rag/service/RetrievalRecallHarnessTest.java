@@ -0,0 +1,274 @@
+package com.inkflow.module.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.inkflow.common.util.PgHalfVec;
+import com.inkflow.module.rag.config.RagProperties;
+import com.inkflow.module.rag.entity.KnowledgeChunk;
+import com.inkflow.module.rag.index.LatencyRecorder;
+import com.inkflow.module.rag.index.ProjectVectorShard;
+import com.inkflow.module.rag.index.VectorHit;
+import com.inkflow.module.rag.offline.HashingEmbeddingModel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 检索召回率离线评测
+ *
+ * 用合成中文小说语料（{@link SyntheticNovelCorpus}）和确定性嵌入替身（{@link HashingEmbeddingModel}）
+ * 复现子块检索，统计端到端延迟（查询嵌入 + 近邻检索）和 recall@k（以精确检索为基准），
+ * recall 低于阈值时测试失败，调整 RagProperties 的索引参数后可在CI中发现召回退化：
+ * - 进程内HNSW分片：始终运行，参数取 inkflow.rag.vector-index 默认值，基准为同一分片的暴力扫描
+ * - pgvector HNSW：配置 -Dbench.jdbc.url 时运行（本地已执行迁移的PostgreSQL，至少一个项目），
+ *   语料在事务内写入后回滚；ef_search 按 inkflow.rag.search.hnsw 默认值设置，基准为关闭索引扫描的精确排序
+ *
+ * 可调参数：bench.corpus.chapters（默认60章，每章8段）、bench.queries（默认200）、bench.recall.min（默认0.9）
+ */
+@DisplayName("检索召回率离线评测")
+class RetrievalRecallHarnessTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RetrievalRecallHarnessTest.class);
+
+    private static final int DIMENSION = 1024;
+    private static final int K = 10;
+    private static final int BLOCKS_PER_CHAPTER = 8;
+
+    private static final String HNSW_SEARCH_SQL = """
+            SELECT kc.id FROM knowledge_chunks kc
+            WHERE kc.project_id = ?
+              AND kc.chunk_level = 'child'
+              AND kc.is_active = true
+              AND kc.is_dirty = false
+              AND kc.embedding IS NOT NULL
+            ORDER BY kc.embedding <=> ?
+            LIMIT ?
+            """;
+
+    private static final String SET_CONFIG_SQL = "SELECT set_config(?, ?, true)";
+
+    private static final RagProperties PROPERTIES = RagProperties.defaults();
+    private static final HashingEmbeddingModel EMBEDDER = new HashingEmbeddingModel(DIMENSION);
+
+    private static SyntheticNovelCorpus corpus;
+    private static List<SyntheticNovelCorpus.Query> queries;
+    private static Map<UUID, float[]> embeddings;
+    private static double minRecall;
+
+    @BeforeAll
+    static void generateCorpus() {
+        corpus = SyntheticNovelCorpus.generate(42, Integer.getInteger("bench.corpus.chapters", 60), BLOCKS_PER_CHAPTER);
+        queries = corpus.queries(7, Integer.getInteger("bench.queries", 200));
+        minRecall = Double.parseDouble(System.getProperty("bench.recall.min", "0.9"));
+        embeddings = new HashMap<>();
+        for (SyntheticNovelCorpus.Chunk chunk : corpus.parents()) {
+            embeddings.put(chunk.id(), EMBEDDER.embed(chunk.content()));
+        }
+        for (SyntheticNovelCorpus.Chunk chunk : corpus.children()) {
+            embeddings.put(chunk.id(), EMBEDDER.embed(chunk.content()));
+        }
+    }
+
+    @Test
+    @DisplayName("进程内HNSW分片的recall@10应不低于阈值")
+    void inProcessIndex_recallShouldMeetThreshold() {
+        // Given
+        RagProperties.VectorIndexConfig config = PROPERTIES.vectorIndex();
+        ProjectVectorShard hnsw = new ProjectVectorShard(UUID.randomUUID(), new ProjectVectorShard.Settings(
+                config.m(), config.efConstruction(), config.efSearch(), false, 0));
+        ProjectVectorShard exact = new ProjectVectorShard(UUID.randomUUID(), new ProjectVectorShard.Settings(
+                config.m(), config.efConstruction(), config.efSearch(), true, 0));
+        List<ProjectVectorShard.Entry> entries = new ArrayList<>();
+        for (SyntheticNovelCorpus.Chunk chunk : corpus.children()) {
+            entries.add(new ProjectVectorShard.Entry(chunk.id(), chunk.sourceId(),
+                    KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK, true, embeddings.get(chunk.id())));
+        }
+        long buildStart = System.nanoTime();
+        hnsw.addAll(entries);
+        long buildMillis = (System.nanoTime() - buildStart) / 1_000_000;
+        exact.addAll(entries);
+
+        // When
+        LatencyRecorder latency = new LatencyRecorder(queries.size());
+        List<List<UUID>> actual = new ArrayList<>();
+        for (SyntheticNovelCorpus.Query query : queries) {
+            long start = System.nanoTime();
+            List<VectorHit> hits = hnsw.search(EMBEDDER.embed(query.text()), K, null, true);
+            latency.record(System.nanoTime() - start);
+            actual.add(hits.stream().map(VectorHit::chunkId).toList());
+        }
+        List<List<UUID>> expected = new ArrayList<>();
+        for (SyntheticNovelCorpus.Query query : queries) {
+            expected.add(exact.search(EMBEDDER.embed(query.text()), K, null, true).stream()
+                    .map(VectorHit::chunkId).toList());
+        }
+
+        // Then
+        double recall = report("进程内HNSW (m=" + config.m() + ", efConstruction=" + config.efConstruction()
+                + ", efSearch=" + config.efSearch() + ", 构建" + buildMillis + "ms)", actual, expected, latency);
+        assertThat(recall).as("进程内HNSW recall@%d", K).isGreaterThanOrEqualTo(minRecall);
+    }
+
+    @Test
+    @DisplayName("pgvector HNSW的recall@10应不低于阈值（需本地PostgreSQL）")
+    void pgvector_recallShouldMeetThreshold() throws SQLException {
+        String url = System.getProperty("bench.jdbc.url");
+        assumeTrue(url != null, "未配置 bench.jdbc.url，跳过pgvector评测");
+
+        try (Connection connection = DriverManager.getConnection(url,
+                System.getProperty("bench.jdbc.user", "postgres"),
+                System.getProperty("bench.jdbc.password", "postgres"))) {
+            connection.setAutoCommit(false);
+            try {
+                // Given
+                UUID projectId = firstProjectId(connection);
+                int rows = writeCorpus(connection, projectId);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ANALYZE knowledge_chunks");
+                }
+                RagProperties.HnswTuningConfig tuning = PROPERTIES.search().hnsw();
+                int efSearch = Math.min(tuning.maxEfSearch(),
+                        Math.max(tuning.minEfSearch(), (int) Math.ceil(K * tuning.efMultiplier())));
+
+                // When
+                LatencyRecorder latency = new LatencyRecorder(queries.size());
+                setLocal(connection, "hnsw.ef_search", String.valueOf(efSearch));
+                List<List<UUID>> actual = new ArrayList<>();
+                for (SyntheticNovelCorpus.Query query : queries) {
+                    long start = System.nanoTime();
+                    List<UUID> ids = searchChildren(connection, projectId, EMBEDDER.embed(query.text()));
+                    latency.record(System.nanoTime() - start);
+                    actual.add(ids);
+                }
+                // 关闭索引扫描得到精确排序作为基准（项目中已有的块同样参与排序）
+                setLocal(connection, "enable_indexscan", "off");
+                List<List<UUID>> expected = new ArrayList<>();
+                for (SyntheticNovelCorpus.Query query : queries) {
+                    expected.add(searchChildren(connection, projectId, EMBEDDER.embed(query.text())));
+                }
+
+                // Then
+                double recall = report("pgvector HNSW (ef_search=" + efSearch + ", 写入"
+                        + rows + "行)", actual, expected, latency);
+                assertThat(recall).as("pgvector HNSW recall@%d (ef_search=%d)", K, efSearch)
+                        .isGreaterThanOrEqualTo(minRecall);
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
+
+    // ==================== pgvector ====================
+
+    private UUID firstProjectId(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT id FROM projects LIMIT 1")) {
+            assumeTrue(rs.next(), "数据库中没有项目，跳过pgvector评测");
+            return rs.getObject(1, UUID.class);
+        }
+    }
+
+    /**
+     * 通过 KnowledgeChunkBulkWriter 写入语料（父块先于子块），返回写入行数
+     */
+    private int writeCorpus(Connection connection, UUID projectId) {
+        KnowledgeChunkBulkWriter writer = new KnowledgeChunkBulkWriter(
+                new JdbcTemplate(new SingleConnectionDataSource(connection, true)), null, new ObjectMapper(), PROPERTIES);
+
+        List<KnowledgeChunk> parents = corpus.parents().stream()
+                .map(chunk -> toKnowledgeChunk(projectId, chunk, null))
+                .toList();
+        writer.saveAll(parents);
+        Map<UUID, UUID> dbIdByCorpusId = new HashMap<>();
+        for (int i = 0; i < parents.size(); i++) {
+            dbIdByCorpusId.put(corpus.parents().get(i).id(), parents.get(i).getId());
+        }
+
+        List<KnowledgeChunk> children = corpus.children().stream()
+                .map(chunk -> toKnowledgeChunk(projectId, chunk, dbIdByCorpusId.get(chunk.parentId())))
+                .toList();
+        writer.saveAll(children);
+        return parents.size() + children.size();
+    }
+
+    private KnowledgeChunk toKnowledgeChunk(UUID projectId, SyntheticNovelCorpus.Chunk chunk, UUID parentId) {
+        return KnowledgeChunk.builder()
+                .projectId(projectId)
+                .sourceType(KnowledgeChunk.SOURCE_TYPE_STORY_BLOCK)
+                .sourceId(chunk.sourceId())
+                .parentId(parentId)
+                .content(chunk.content())
+                .embedding(embeddings.get(chunk.id()))
+                .chunkLevel(chunk.isChild() ? KnowledgeChunk.CHUNK_LEVEL_CHILD : KnowledgeChunk.CHUNK_LEVEL_PARENT)
+                .chunkOrder(chunk.order())
+                .metadata(Map.of("chapter", chunk.chapter()))
+                .build();
+    }
+
+    private List<UUID> searchChildren(Connection connection, UUID projectId, float[] embedding) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(HNSW_SEARCH_SQL)) {
+            ps.setObject(1, projectId);
+            ps.setObject(2, new PgHalfVec(embedding));
+            ps.setInt(3, K);
+            List<UUID> ids = new ArrayList<>(K);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getObject(1, UUID.class));
+                }
+            }
+            return ids;
+        }
+    }
+
+    private void setLocal(Connection connection, String name, String value) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(SET_CONFIG_SQL)) {
+            ps.setString(1, name);
+            ps.setString(2, value);
+            ps.execute();
+        }
+    }
+
+    // ==================== 报告 ====================
+
+    /**
+     * 记录 recall@k 与延迟分位数日志，返回平均recall
+     */
+    private double report(String label, List<List<UUID>> actual, List<List<UUID>> expected, LatencyRecorder latency) {
+        double recallSum = 0;
+        for (int i = 0; i < actual.size(); i++) {
+            Set<UUID> hits = new HashSet<>(actual.get(i));
+            List<UUID> truth = expected.get(i);
+            if (truth.isEmpty()) {
+                recallSum += 1.0;
+                continue;
+            }
+            hits.retainAll(truth);
+            recallSum += (double) hits.size() / truth.size();
+        }
+        double recall = recallSum / actual.size();
+        log.info("[召回评测] {}: 语料子块={}, 查询={}, recall@{}={}, 延迟 p50={}us p95={}us p99={}us",
+                label, corpus.children().size(), actual.size(), K, String.format("%.4f", recall),
+                latency.percentileMicros(50), latency.percentileMicros(95), latency.percentileMicros(99));
+        return recall;
+    }
+}
@@ -0,0 +1,163 @@
+package com.inkflow.module.rag.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 合成中文小说语料
+ *
+ * 按固定种子生成 章节 → 段落（父块）→ 句组（子块），子块内容是父块的连续片段，
+ * 与 SemanticChunkingService 的父子块关系一致。人物、地点、物品在全书中反复出现，
+ * 使近邻之间的相似度分布接近真实小说而不是均匀随机。
+ */
+final class SyntheticNovelCorpus {
+
+    private static final String[] PEOPLE = {
+            "沈青衣", "陆遥", "苏晚", "顾长风", "白鹤", "叶知秋", "温如玉", "萧寒", "林听雨", "秦无双",
+            "柳三娘", "韩老道", "楚云深", "宁小满", "燕北辰"
+    };
+    private static final String[] PLACES = {
+            "青云城", "落霞山", "天机阁", "北境雪原", "听涛渡", "万剑冢", "南疆密林", "临安旧巷", "断魂崖", "望月楼",
+            "寒山寺", "黑水泽"
+    };
+    private static final String[] ITEMS = {
+            "玄铁剑", "紫金葫芦", "天机阁密卷", "青铜罗盘", "半块玉佩", "赤焰弓", "寒冰匕首", "无字残碑"
+    };
+    private static final String[] ARTS = {"太虚剑诀", "九转归元功", "踏雪无痕", "焚天掌", "听风辨位术"};
+    private static final String[] REALMS = {"炼气境", "筑基境", "金丹境", "元婴境", "化神境"};
+    private static final String[] SCENES = {
+            "夜色渐深，城楼上的灯火一盏盏熄灭", "山风卷着细雪扑面而来", "檐下的雨声越来越密",
+            "远处传来三声悠长的钟鸣", "晨雾尚未散尽，江面一片灰白", "残阳如血，把半边天染成暗红"
+    };
+    private static final String[] MOODS = {
+            "心中说不出是喜是忧", "眼底闪过一丝杀意", "只觉得掌心全是冷汗", "嘴角不自觉地扬起",
+            "沉默了许久才开口", "隐隐察觉到哪里不对"
+    };
+    private static final String[] LINES = {
+            "这一战，我不会再退", "你早就知道真相了，对不对", "等到天亮，一切都会有答案",
+            "此物一旦现世，江湖再无宁日", "我答应过师父，要活着回去"
+    };
+
+    /** 每个子块包含的句子数 */
+    private static final int SENTENCES_PER_CHILD = 3;
+
+    private final List<Chunk> parents = new ArrayList<>();
+    private final List<Chunk> children = new ArrayList<>();
+
+    /**
+     * 语料中的块
+     *
+     * @param id 块ID
+     * @param parentId 父块ID，父块为null
+     * @param sourceId 来源StoryBlock ID
+     * @param chapter 章节序号（从1开始）
+     * @param order 块在来源内的顺序
+     * @param content 内容
+     */
+    record Chunk(UUID id, UUID parentId, UUID sourceId, int chapter, int order, String content) {
+        boolean isChild() {
+            return parentId != null;
+        }
+    }
+
+    /**
+     * 评测查询
+     *
+     * @param text 查询文本
+     * @param sourceChunkId 生成查询所用的子块
+     */
+    record Query(String text, UUID sourceChunkId) {
+    }
+
+    private SyntheticNovelCorpus() {
+    }
+
+    /**
+     * 生成语料
+     *
+     * @param seed 随机种子
+     * @param chapters 章节数
+     * @param blocksPerChapter 每章段落数
+     */
+    static SyntheticNovelCorpus generate(long seed, int chapters, int blocksPerChapter) {
+        Random random = new Random(seed);
+        SyntheticNovelCorpus corpus = new SyntheticNovelCorpus();
+        for (int chapter = 1; chapter <= chapters; chapter++) {
+            // 每章围绕少数几个人物和地点展开
+            String protagonist = pick(random, PEOPLE);
+            String place = pick(random, PLACES);
+            for (int block = 0; block < blocksPerChapter; block++) {
+                UUID sourceId = UUID.randomUUID();
+                UUID parentId = UUID.randomUUID();
+                int sentenceCount = 6 + random.nextInt(7);
+                List<String> sentences = new ArrayList<>(sentenceCount);
+                for (int i = 0; i < sentenceCount; i++) {
+                    String person = random.nextInt(3) == 0 ? pick(random, PEOPLE) : protagonist;
+                    String location = random.nextInt(4) == 0 ? pick(random, PLACES) : place;
+                    sentences.add(sentence(random, person, location));
+                }
+                corpus.parents.add(new Chunk(parentId, null, sourceId, chapter, 0, String.join("", sentences)));
+                for (int start = 0, order = 1; start < sentences.size(); start += SENTENCES_PER_CHILD, order++) {
+                    String content = String.join("", sentences.subList(start,
+                            Math.min(start + SENTENCES_PER_CHILD, sentences.size())));
+                    corpus.children.add(new Chunk(UUID.randomUUID(), parentId, sourceId, chapter, order, content));
+                }
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * 从子块中截取片段并加上提问语气生成查询，模拟作者按情节片段检索上下文
+     */
+    List<Query> queries(long seed, int count) {
+        Random random = new Random(seed);
+        List<Query> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Chunk child = children.get(random.nextInt(children.size()));
+            String content = child.content();
+            int length = Math.min(content.length(), 10 + random.nextInt(15));
+            int start = random.nextInt(content.length() - length + 1);
+            String fragment = content.substring(start, start + length);
+            String text = switch (random.nextInt(3)) {
+                case 0 -> fragment + "之后发生了什么";
+                case 1 -> "回忆一下" + fragment;
+                default -> fragment;
+            };
+            queries.add(new Query(text, child.id()));
+        }
+        return queries;
+    }
+
+    List<Chunk> parents() {
+        return parents;
+    }
+
+    List<Chunk> children() {
+        return children;
+    }
+
+    private static String sentence(Random random, String person, String place) {
+        return switch (random.nextInt(6)) {
+            case 0 -> person + "在" + place + pick(random, "缓缓拔出", "小心收起", "反复端详", "悄悄藏好")
+                    + pick(random, ITEMS) + "，" + pick(random, MOODS) + "。";
+            case 1 -> person + "握紧" + pick(random, ITEMS) + "，低声道：“" + pick(random, LINES) + "。”";
+            case 2 -> pick(random, SCENES) + "，" + person + "与" + pick(random, PEOPLE) + "并肩站在"
+                    + place + "，" + pick(random, MOODS) + "。";
+            case 3 -> {
+                int realm = random.nextInt(REALMS.length - 1);
+                yield person + "运转" + pick(random, ARTS) + "，一身修为自" + REALMS[realm]
+                        + "冲入" + REALMS[realm + 1] + "。";
+            }
+            case 4 -> "传闻" + place + "深处藏着" + pick(random, ITEMS) + "，" + person
+                    + pick(random, "决定连夜启程", "打算独自前往", "暗中派人打探", "犹豫再三") + "。";
+            default -> pick(random, SCENES) + "，" + person + "独自走过" + place + "，" + pick(random, MOODS) + "。";
+        };
+    }
+
+    private static String pick(Random random, String... values) {
+        return values[random.nextInt(values.length)];
+    }
+}
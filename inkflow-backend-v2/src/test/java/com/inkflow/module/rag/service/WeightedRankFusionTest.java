@@ -0,0 +1,131 @@
+package com.inkflow.module.rag.service;
+
+import com.inkflow.module.rag.dto.RankFusionStatistics;
+import com.inkflow.module.rag.dto.SearchResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 多路加权RRF融合单元测试
+ */
+@DisplayName("多路加权RRF融合测试")
+class WeightedRankFusionTest {
+
+    private final UUID[] docs = new UUID[64];
+
+    WeightedRankFusionTest() {
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = new UUID(0, i);
+        }
+    }
+
+    @Test
+    @DisplayName("同时出现在两路召回中的文档应排在前面")
+    void fuse_shouldRankOverlappingDocumentsFirst() {
+        // Given
+        WeightedRankFusion fusion = new WeightedRankFusion();
+        List<WeightedRankFusion.RankedList> lists = List.of(
+                new WeightedRankFusion.RankedList("vector", 1.0, 60, results(0, 1, 2)),
+                new WeightedRankFusion.RankedList("fullText", 1.0, 60, results(3, 1, 4)));
+
+        // When
+        List<SearchResult> fused = fusion.fuse(lists, 3);
+
+        // Then
+        assertThat(fused).extracting(SearchResult::getSourceId).containsExactly(docs[1], docs[0], docs[3]);
+        assertThat(fused.get(0).getRrfScore()).isCloseTo(2.0 / 62, within(1e-12));
+        RankFusionStatistics stats = fusion.getStatistics();
+        assertThat(stats.getFusions()).isEqualTo(1);
+        assertThat(stats.getRetrievers().get("vector").getTopHits()).isEqualTo(2);
+        assertThat(stats.getRetrievers().get("fullText").getExclusiveTopHits()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("权重更高的召回应主导排序，同一列表中的重复来源只计最佳排名")
+    void fuse_shouldApplyWeightsAndIgnoreDuplicateSources() {
+        // Given
+        WeightedRankFusion fusion = new WeightedRankFusion();
+        List<WeightedRankFusion.RankedList> lists = List.of(
+                new WeightedRankFusion.RankedList("vector", 0.2, 60, results(0, 0, 0)),
+                new WeightedRankFusion.RankedList("wikiTitle", 1.0, 60, results(1)));
+
+        // When
+        List<SearchResult> fused = fusion.fuse(lists, 2);
+
+        // Then
+        assertThat(fused).extracting(SearchResult::getSourceId).containsExactly(docs[1], docs[0]);
+        assertThat(fused.get(1).getRrfScore()).isCloseTo(0.2 / 61, within(1e-12));
+    }
+
+    @Test
+    @DisplayName("提前截断的融合结果应与完整计算一致")
+    void fuse_shouldMatchExhaustiveFusion() {
+        Random random = new Random(42);
+        WeightedRankFusion fusion = new WeightedRankFusion();
+        for (int round = 0; round < 500; round++) {
+            // Given
+            int listCount = 1 + random.nextInt(5);
+            List<WeightedRankFusion.RankedList> lists = new ArrayList<>();
+            for (int i = 0; i < listCount; i++) {
+                int length = random.nextInt(40);
+                int[] ids = new int[length];
+                for (int j = 0; j < length; j++) {
+                    ids[j] = random.nextInt(docs.length);
+                }
+                lists.add(new WeightedRankFusion.RankedList("r" + i,
+                        0.1 + random.nextDouble(), 1 + random.nextInt(80), results(ids)));
+            }
+            int limit = 1 + random.nextInt(15);
+
+            // When
+            List<SearchResult> fused = fusion.fuse(lists, limit);
+
+            // Then
+            List<Map.Entry<UUID, Double>> expected = exhaustive(lists, limit);
+            assertThat(fused).hasSize(expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(fused.get(i).getRrfScore()).isCloseTo(expected.get(i).getValue(), within(1e-9));
+            }
+        }
+        assertThat(fusion.getStatistics().getEarlyCutoffs()).isPositive();
+    }
+
+    private List<SearchResult> results(int... ids) {
+        List<SearchResult> results = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            results.add(SearchResult.builder().id(UUID.randomUUID()).sourceId(docs[id]).build());
+        }
+        return results;
+    }
+
+    private static List<Map.Entry<UUID, Double>> exhaustive(List<WeightedRankFusion.RankedList> lists, int limit) {
+        Map<UUID, Double> scores = new LinkedHashMap<>();
+        for (WeightedRankFusion.RankedList list : lists) {
+            Set<UUID> seen = new HashSet<>();
+            for (int rank = 0; rank < list.results().size(); rank++) {
+                UUID key = list.results().get(rank).getSourceId();
+                if (seen.add(key)) {
+                    scores.merge(key, list.weight() / (list.k() + rank + 1), Double::sum);
+                }
+            }
+        }
+        return new ArrayList<>(new HashMap<>(scores).entrySet()).stream()
+                .sorted(Map.Entry.<UUID, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .toList();
+    }
+}